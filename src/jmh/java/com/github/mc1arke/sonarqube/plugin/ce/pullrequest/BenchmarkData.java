@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.ce.pullrequest;
+
+import org.sonar.api.ce.posttask.QualityGate;
+import org.sonar.api.issue.Issue;
+import org.sonar.api.rule.Severity;
+import org.sonar.api.rules.RuleType;
+import org.sonar.ce.task.projectanalysis.analysis.AnalysisMetadataHolder;
+import org.sonar.ce.task.projectanalysis.component.Component;
+import org.sonar.ce.task.projectanalysis.component.ReportAttributes;
+import org.sonar.core.issue.DefaultIssue;
+import org.sonar.db.DbClient;
+import org.sonar.db.DbSession;
+import org.sonar.db.alm.setting.ProjectAlmSettingDao;
+import org.sonar.db.alm.setting.ProjectAlmSettingDto;
+import org.sonar.server.project.Project;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Synthetic analysis data shared by the decoration benchmarks.
+ */
+public final class BenchmarkData {
+
+    public static final String PROJECT_KEY = "benchmark-project";
+    public static final String PROJECT_UUID = "benchmark-project-uuid";
+    public static final String PULL_REQUEST_ID = "1";
+
+    private BenchmarkData() {
+        super();
+    }
+
+    public static Component createFileComponent() {
+        ReportAttributes reportAttributes = mock(ReportAttributes.class);
+        when(reportAttributes.getScmPath()).thenReturn(Optional.of("src/main/java/Benchmark.java"));
+
+        Component component = mock(Component.class);
+        when(component.getType()).thenReturn(Component.Type.FILE);
+        when(component.getReportAttributes()).thenReturn(reportAttributes);
+        return component;
+    }
+
+    /**
+     * Creates open issues on consecutive lines of the given component, cycling through every rule type and severity.
+     * The issues are collected by a pull request issue visitor, so are held the same way as during an analysis.
+     */
+    public static List<PostAnalysisIssueVisitor.ComponentIssue> createIssues(int count, Component component) {
+        RuleType[] ruleTypes = RuleType.values();
+        List<String> severities = Severity.ALL;
+        PostAnalysisIssueVisitor issueVisitor = createPullRequestIssueVisitor();
+        for (int i = 0; i < count; i++) {
+            DefaultIssue defaultIssue = new DefaultIssue()
+                    .setKey("issue-" + i)
+                    .setLine(i + 1)
+                    .setStatus(Issue.STATUS_OPEN)
+                    .setType(ruleTypes[i % ruleTypes.length])
+                    .setSeverity(severities.get(i % severities.size()))
+                    .setMessage("Synthetic issue " + i);
+            issueVisitor.onIssue(component, defaultIssue);
+        }
+        return new ArrayList<>(issueVisitor.getIssues());
+    }
+
+    private static PostAnalysisIssueVisitor createPullRequestIssueVisitor() {
+        Project project = mock(Project.class);
+        when(project.getUuid()).thenReturn(PROJECT_UUID);
+        AnalysisMetadataHolder analysisMetadataHolder = mock(AnalysisMetadataHolder.class);
+        when(analysisMetadataHolder.getProject()).thenReturn(project);
+        when(analysisMetadataHolder.isPullRequest()).thenReturn(true);
+
+        ProjectAlmSettingDao projectAlmSettingDao = mock(ProjectAlmSettingDao.class);
+        when(projectAlmSettingDao.selectByProject(any(), eq(PROJECT_UUID))).thenReturn(Optional.of(mock(ProjectAlmSettingDto.class)));
+        DbClient dbClient = mock(DbClient.class);
+        when(dbClient.openSession(false)).thenReturn(mock(DbSession.class));
+        when(dbClient.projectAlmSettingDao()).thenReturn(projectAlmSettingDao);
+        return new PostAnalysisIssueVisitor(analysisMetadataHolder, dbClient);
+    }
+
+    /**
+     * Creates analysis details for the benchmark project without needing a full post-analysis project context. The
+     * issues are aggregated up-front, as the issue visitor would have done, so every open issue on a file component is
+     * SCM reportable.
+     */
+    public static AnalysisDetails createAnalysisDetails(List<PostAnalysisIssueVisitor.ComponentIssue> issues, QualityGate qualityGate,
+                                                        Map<String, Double> measures, Map<String, String> issueRevisions) {
+        return new AnalysisDetails(PULL_REQUEST_ID, "commit-0", CollectedIssues.of(issues), qualityGate, null, measures, issueRevisions) {
+            @Override
+            public String getAnalysisProjectKey() {
+                return PROJECT_KEY;
+            }
+
+            @Override
+            public String getAnalysisProjectUuid() {
+                return PROJECT_UUID;
+            }
+        };
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.ce.pullrequest;
+
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.report.AnalysisIssueSummary;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.report.AnalysisSummary;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.report.ReportGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sonar.api.config.Configuration;
+import org.sonar.ce.task.projectanalysis.component.Component;
+import org.sonar.db.alm.setting.ALM;
+import org.sonar.db.alm.setting.AlmSettingDto;
+import org.sonar.db.alm.setting.ProjectAlmSettingDto;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Measures the matching of open Sonarqube issues against the discussions already present on a pull request, using
+ * in-memory ALM responses so only the reconciliation in {@link DiscussionAwarePullRequestDecorator} is timed. The pull
+ * request holds one discussion per issue, half of which refer to issues that are no longer open, and half of the
+ * uncommented issues were raised on commits outside the pull request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DiscussionReconciliationBenchmark {
+
+    @Param({"10", "1000", "10000", "100000"})
+    private int issueCount;
+
+    @Param("500")
+    private int commitCount;
+
+    private InMemoryDecorator decorator;
+    private AnalysisDetails analysisDetails;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Component component = BenchmarkData.createFileComponent();
+        List<PostAnalysisIssueVisitor.ComponentIssue> issues = BenchmarkData.createIssues(issueCount, component);
+
+        List<String> commitIds = new ArrayList<>();
+        for (int i = 0; i < commitCount; i++) {
+            commitIds.add("commit-" + i);
+        }
+
+        Map<String, String> issueRevisions = new HashMap<>();
+        for (int i = 0; i < issueCount; i++) {
+            issueRevisions.put("issue-" + i, "commit-" + (i % (commitCount * 2)));
+        }
+
+        List<BenchmarkDiscussion> discussions = new ArrayList<>();
+        Map<String, String> recordedDiscussionIds = new HashMap<>();
+        int firstDiscussedIssue = issueCount / 2;
+        for (int i = 0; i < issueCount; i++) {
+            String issueKey = "issue-" + (firstDiscussedIssue + i);
+            String discussionId = "discussion-" + i;
+            discussions.add(new BenchmarkDiscussion(discussionId, "[View in SonarQube](https://sonarqube.dummy/project/issues?id=" + BenchmarkData.PROJECT_KEY + "&issues=" + issueKey + ")"));
+            if (i % 2 == 0) {
+                recordedDiscussionIds.put(issueKey, discussionId);
+            }
+        }
+
+        DecoratedDiscussionRepository decoratedDiscussionRepository = mock(DecoratedDiscussionRepository.class);
+        when(decoratedDiscussionRepository.findDecorationRecord(any(), any())).thenReturn(new DecorationRecord(recordedDiscussionIds));
+
+        ReportGenerator reportGenerator = mock(ReportGenerator.class);
+        when(reportGenerator.createAnalysisIssueSummary(any(), any())).thenReturn(mock(AnalysisIssueSummary.class));
+        when(reportGenerator.createAnalysisSummary(any())).thenReturn(mock(AnalysisSummary.class));
+
+        decorator = new InMemoryDecorator(reportGenerator, decoratedDiscussionRepository, discussions, commitIds);
+        analysisDetails = BenchmarkData.createAnalysisDetails(issues, null, Map.of(), issueRevisions);
+    }
+
+    @Benchmark
+    public DecorationResult reconcileDiscussions() {
+        return decorator.decorateQualityGateStatus(analysisDetails, new AlmSettingDto(), new ProjectAlmSettingDto());
+    }
+
+    private static final class BenchmarkDiscussion {
+
+        private final String id;
+        private final List<String> notes;
+
+        BenchmarkDiscussion(String id, String note) {
+            this.id = id;
+            this.notes = List.of(note);
+        }
+    }
+
+    private static final class InMemoryDecorator extends DiscussionAwarePullRequestDecorator<Object, Object, String, BenchmarkDiscussion, String> {
+
+        private final List<BenchmarkDiscussion> discussions;
+        private final List<String> commitIds;
+
+        InMemoryDecorator(ReportGenerator reportGenerator,
+                          DecoratedDiscussionRepository decoratedDiscussionRepository, List<BenchmarkDiscussion> discussions,
+                          List<String> commitIds) {
+            super(reportGenerator, new SingleRequestConfiguration(), decoratedDiscussionRepository);
+            this.discussions = discussions;
+            this.commitIds = commitIds;
+        }
+
+        @Override
+        public List<ALM> alm() {
+            return List.of(ALM.GITLAB);
+        }
+
+        @Override
+        protected Object createClient(AlmSettingDto almSettingDto, ProjectAlmSettingDto projectAlmSettingDto) {
+            return new Object();
+        }
+
+        @Override
+        protected Optional<String> createFrontEndUrl(Object pullRequest, AnalysisDetails analysisDetails) {
+            return Optional.empty();
+        }
+
+        @Override
+        protected Object getPullRequest(Object client, AlmSettingDto almSettingDto, ProjectAlmSettingDto projectAlmSettingDto, AnalysisDetails analysis) {
+            return new Object();
+        }
+
+        @Override
+        protected String getCurrentUser(Object client) {
+            return "sonarqube";
+        }
+
+        @Override
+        protected List<String> getCommitIdsForPullRequest(Object client, Object pullRequest) {
+            return commitIds;
+        }
+
+        @Override
+        protected void submitPipelineStatus(Object client, Object pullRequest, AnalysisDetails analysis, AnalysisSummary analysisSummary) {
+            // no-op: only the reconciliation is being measured
+        }
+
+        @Override
+        protected BenchmarkDiscussion submitCommitNoteForIssue(Object client, Object pullRequest, PostAnalysisIssueVisitor.ComponentIssue issue,
+                                                               String filePath, AnalysisDetails analysis, AnalysisIssueSummary analysisIssueSummary) {
+            return new BenchmarkDiscussion("new-" + issue.getIssue().key(), "");
+        }
+
+        @Override
+        protected String getDiscussionId(BenchmarkDiscussion discussion) {
+            return discussion.id;
+        }
+
+        @Override
+        protected String getNoteContent(Object client, String note) {
+            return note;
+        }
+
+        @Override
+        protected List<String> getNotesForDiscussion(Object client, BenchmarkDiscussion discussion) {
+            return discussion.notes;
+        }
+
+        @Override
+        protected boolean isClosed(BenchmarkDiscussion discussion, List<String> notesInDiscussion) {
+            return false;
+        }
+
+        @Override
+        protected boolean isUserNote(String note) {
+            return true;
+        }
+
+        @Override
+        protected void addNoteToDiscussion(Object client, BenchmarkDiscussion discussion, Object pullRequest, String note) {
+            // no-op: only the reconciliation is being measured
+        }
+
+        @Override
+        protected void resolveDiscussion(Object client, BenchmarkDiscussion discussion, Object pullRequest) {
+            // no-op: only the reconciliation is being measured
+        }
+
+        @Override
+        protected void submitSummaryNote(Object client, Object pullRequest, AnalysisDetails analysis, AnalysisSummary analysisSummary) {
+            // no-op: only the reconciliation is being measured
+        }
+
+        @Override
+        protected List<BenchmarkDiscussion> getDiscussions(Object client, Object pullRequest) {
+            return discussions;
+        }
+
+        @Override
+        protected boolean isNoteFromCurrentUser(String note, String user) {
+            return true;
+        }
+    }
+
+    private static final class SingleRequestConfiguration implements Configuration {
+
+        @Override
+        public Optional<String> get(String key) {
+            return Optional.of("1");
+        }
+
+        @Override
+        public boolean hasKey(String key) {
+            return true;
+        }
+
+        @Override
+        public String[] getStringArray(String key) {
+            return new String[]{"1"};
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.ce.pullrequest.report;
+
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.AnalysisDetails;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.BenchmarkData;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.CollectedIssues;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.PostAnalysisIssueVisitor;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.markup.MarkdownFormatterFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.sonar.api.ce.posttask.QualityGate;
+import org.sonar.api.config.internal.MapSettings;
+import org.sonar.api.measures.CoreMetrics;
+import org.sonar.api.platform.Server;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Measures generation of the summary and per-issue reports used by every decorator, and rendering of the summary
+ * into Markdown.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReportGeneratorBenchmark {
+
+    @Param({"10", "1000", "10000", "100000"})
+    private int issueCount;
+
+    private ReportGenerator reportGenerator;
+    private List<PostAnalysisIssueVisitor.ComponentIssue> issues;
+    private AnalysisDetails analysisDetails;
+    private AnalysisSummary analysisSummary;
+    private MarkdownFormatterFactory formatterFactory;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Server server = mock(Server.class);
+        when(server.getPublicRootUrl()).thenReturn("https://sonarqube.dummy");
+
+
+        reportGenerator = new ReportGenerator(server, new MapSettings().asConfig());
+
+        List<QualityGate.Condition> conditions = List.of(
+                createFailedCondition(CoreMetrics.NEW_COVERAGE_KEY, QualityGate.Operator.LESS_THAN, "45.5", "80"),
+                createFailedCondition(CoreMetrics.NEW_DUPLICATED_LINES_DENSITY_KEY, QualityGate.Operator.GREATER_THAN, "4.2", "3"),
+                createFailedCondition(CoreMetrics.NEW_SECURITY_RATING_KEY, QualityGate.Operator.GREATER_THAN, "3", "1"));
+        QualityGate qualityGate = mock(QualityGate.class);
+        when(qualityGate.getStatus()).thenReturn(QualityGate.Status.ERROR);
+        when(qualityGate.getConditions()).thenReturn(conditions);
+
+        issues = BenchmarkData.createIssues(issueCount, BenchmarkData.createFileComponent());
+        analysisDetails = BenchmarkData.createAnalysisDetails(issues, qualityGate,
+                Map.of(CoreMetrics.COVERAGE_KEY, 72.5, CoreMetrics.DUPLICATED_LINES_DENSITY_KEY, 72.5), Map.of());
+        analysisSummary = reportGenerator.createAnalysisSummary(analysisDetails);
+        formatterFactory = new MarkdownFormatterFactory();
+    }
+
+    @Benchmark
+    public CollectedIssues aggregateCollectedIssues() {
+        return CollectedIssues.of(issues);
+    }
+
+    @Benchmark
+    public AnalysisSummary createAnalysisSummary() {
+        return reportGenerator.createAnalysisSummary(analysisDetails);
+    }
+
+    @Benchmark
+    public void createAnalysisIssueSummaries(Blackhole blackhole) {
+        for (PostAnalysisIssueVisitor.ComponentIssue issue : analysisDetails.getIssues()) {
+            blackhole.consume(reportGenerator.createAnalysisIssueSummary(issue, analysisDetails));
+        }
+    }
+
+    @Benchmark
+    public String formatAnalysisSummary() {
+        return analysisSummary.format(formatterFactory);
+    }
+
+    private static QualityGate.Condition createFailedCondition(String metricKey, QualityGate.Operator operator, String value, String errorThreshold) {
+        QualityGate.Condition condition = mock(QualityGate.Condition.class);
+        when(condition.getStatus()).thenReturn(QualityGate.EvaluationStatus.ERROR);
+        when(condition.getMetricKey()).thenReturn(metricKey);
+        when(condition.getOperator()).thenReturn(operator);
+        when(condition.getValue()).thenReturn(value);
+        when(condition.getErrorThreshold()).thenReturn(errorThreshold);
+        return condition;
+    }
+}
@@ -18,16 +18,22 @@
  */
 package com.github.mc1arke.sonarqube.plugin;
 
+import com.github.mc1arke.sonarqube.plugin.almclient.DefaultHttpClientProvider;
 import com.github.mc1arke.sonarqube.plugin.almclient.DefaultLinkHeaderReader;
 import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.DefaultAzureDevopsClientFactory;
+import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.BitbucketCloudTokenCache;
+import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.BitbucketHttpClientProvider;
+import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.BitbucketServerCapabilityCache;
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.DefaultBitbucketClientFactory;
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.HttpClientBuilderFactory;
 import com.github.mc1arke.sonarqube.plugin.almclient.github.DefaultGithubClientFactory;
 import com.github.mc1arke.sonarqube.plugin.almclient.github.v3.DefaultUrlConnectionProvider;
+import com.github.mc1arke.sonarqube.plugin.almclient.github.v3.InstallationTokenCache;
 import com.github.mc1arke.sonarqube.plugin.almclient.github.v3.RestApplicationAuthenticationProvider;
 import com.github.mc1arke.sonarqube.plugin.almclient.github.v4.DefaultGraphqlProvider;
 import com.github.mc1arke.sonarqube.plugin.almclient.gitlab.DefaultGitlabClientFactory;
 import com.github.mc1arke.sonarqube.plugin.ce.CommunityReportAnalysisComponentProvider;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.DecorationOutbox;
 import com.github.mc1arke.sonarqube.plugin.scanner.BranchConfigurationFactory;
 import com.github.mc1arke.sonarqube.plugin.scanner.CommunityBranchConfigurationLoader;
 import com.github.mc1arke.sonarqube.plugin.scanner.CommunityBranchParamsValidator;
@@ -73,6 +79,15 @@ import org.sonar.core.extension.CoreExtension;
 public class CommunityBranchPlugin implements Plugin, CoreExtension {
 
     public static final String IMAGE_URL_BASE = "com.github.mc1arke.sonarqube.plugin.branch.image-url-base";
+    public static final String HTTP_MAX_CONNECTIONS_PER_ROUTE = "com.github.mc1arke.sonarqube.plugin.branch.http.max-connections-per-route";
+    public static final String HTTP_MAX_CONNECTIONS_TOTAL = "com.github.mc1arke.sonarqube.plugin.branch.http.max-connections-total";
+    public static final String HTTP_MAX_IDLE_CONNECTIONS = "com.github.mc1arke.sonarqube.plugin.branch.http.max-idle-connections";
+    public static final String HTTP_IDLE_CONNECTION_TIMEOUT = "com.github.mc1arke.sonarqube.plugin.branch.http.idle-connection-timeout";
+    public static final String DECORATION_CONCURRENT_REQUESTS = "com.github.mc1arke.sonarqube.plugin.branch.decoration.%s.concurrent-requests";
+    public static final String GITLAB_PAGE_SIZE = "com.github.mc1arke.sonarqube.plugin.branch.gitlab.page-size";
+    public static final String DECORATION_WORKER_THREADS = "com.github.mc1arke.sonarqube.plugin.branch.decoration.worker-threads";
+    public static final String DECORATION_QUEUE_CAPACITY = "com.github.mc1arke.sonarqube.plugin.branch.decoration.queue-capacity";
+    public static final String DECORATION_MAX_ATTEMPTS = "com.github.mc1arke.sonarqube.plugin.branch.decoration.max-attempts";
 
     @Override
     public String getName() {
@@ -82,7 +97,8 @@ public class CommunityBranchPlugin implements Plugin, CoreExtension {
     @Override
     public void load(CoreExtension.Context context) {
         if (SonarQubeSide.COMPUTE_ENGINE == context.getRuntime().getSonarQubeSide()) {
-            context.addExtensions(CommunityReportAnalysisComponentProvider.class);
+            context.addExtensions(CommunityReportAnalysisComponentProvider.class, DefaultHttpClientProvider.class, InstallationTokenCache.class, BitbucketCloudTokenCache.class,
+                    BitbucketServerCapabilityCache.class, HttpClientBuilderFactory.class, BitbucketHttpClientProvider.class, DecorationOutbox.class);
         } else if (SonarQubeSide.SERVER == context.getRuntime().getSonarQubeSide()) {
             context.addExtensions(CommunityBranchFeatureExtension.class, CommunityBranchSupportDelegate.class,
                                   DeleteBindingAction.class,
@@ -100,10 +116,15 @@ public class CommunityBranchPlugin implements Plugin, CoreExtension {
                     DefaultGraphqlProvider.class,
                     DefaultGithubClientFactory.class,
                     DefaultLinkHeaderReader.class,
+                    DefaultHttpClientProvider.class,
                     DefaultUrlConnectionProvider.class,
                     RestApplicationAuthenticationProvider.class,
+                    InstallationTokenCache.class,
                     HttpClientBuilderFactory.class,
                     DefaultBitbucketClientFactory.class,
+                    BitbucketCloudTokenCache.class,
+                    BitbucketHttpClientProvider.class,
+                    BitbucketServerCapabilityCache.class,
                     BitbucketValidator.class,
                     GitlabValidator.class,
                     DefaultGitlabClientFactory.class,
@@ -157,6 +178,103 @@ public class CommunityBranchPlugin implements Plugin, CoreExtension {
                                           .build(),
                 MonoRepoFeature.class);
 
+            context.addExtensions(PropertyDefinition.builder(HTTP_MAX_CONNECTIONS_PER_ROUTE)
+                                          .category(CoreProperties.CATEGORY_GENERAL)
+                                          .subCategory(CoreProperties.SUBCATEGORY_GENERAL)
+                                          .name("Maximum ALM connections per host")
+                                          .description("Maximum number of pooled HTTP connections kept open to each ALM host for pull request decoration. Requires a restart to take effect.")
+                                          .type(PropertyType.INTEGER)
+                                          .defaultValue("10")
+                                          .build(),
+                                  PropertyDefinition.builder(HTTP_MAX_CONNECTIONS_TOTAL)
+                                          .category(CoreProperties.CATEGORY_GENERAL)
+                                          .subCategory(CoreProperties.SUBCATEGORY_GENERAL)
+                                          .name("Maximum ALM connections")
+                                          .description("Maximum number of HTTP connections open at once for each Gitlab or Azure DevOps ALM setting for pull request decoration. Requires a restart to take effect.")
+                                          .type(PropertyType.INTEGER)
+                                          .defaultValue("50")
+                                          .build(),
+                                  PropertyDefinition.builder(HTTP_MAX_IDLE_CONNECTIONS)
+                                          .category(CoreProperties.CATEGORY_GENERAL)
+                                          .subCategory(CoreProperties.SUBCATEGORY_GENERAL)
+                                          .name("Maximum idle Bitbucket connections")
+                                          .description("Maximum number of idle HTTP connections kept open for each Bitbucket ALM setting for pull request decoration. Requires a restart to take effect.")
+                                          .type(PropertyType.INTEGER)
+                                          .defaultValue("50")
+                                          .build(),
+                                  PropertyDefinition.builder(HTTP_IDLE_CONNECTION_TIMEOUT)
+                                          .category(CoreProperties.CATEGORY_GENERAL)
+                                          .subCategory(CoreProperties.SUBCATEGORY_GENERAL)
+                                          .name("ALM connection idle timeout")
+                                          .description("Number of seconds a pooled ALM connection can remain idle before being closed. Requires a restart to take effect.")
+                                          .type(PropertyType.INTEGER)
+                                          .defaultValue("60")
+                                          .build(),
+                                  PropertyDefinition.builder(String.format(DECORATION_CONCURRENT_REQUESTS, "gitlab"))
+                                          .category(CoreProperties.CATEGORY_GENERAL)
+                                          .subCategory(CoreProperties.SUBCATEGORY_GENERAL)
+                                          .name("Concurrent Gitlab decoration requests")
+                                          .description("Maximum number of comments created or resolved in parallel when decorating a Gitlab merge request.")
+                                          .type(PropertyType.INTEGER)
+                                          .defaultValue("4")
+                                          .build(),
+                                  PropertyDefinition.builder(String.format(DECORATION_CONCURRENT_REQUESTS, "github"))
+                                          .category(CoreProperties.CATEGORY_GENERAL)
+                                          .subCategory(CoreProperties.SUBCATEGORY_GENERAL)
+                                          .name("Concurrent Github decoration requests")
+                                          .description("Maximum number of check run annotation batches uploaded in parallel when decorating a Github pull request.")
+                                          .type(PropertyType.INTEGER)
+                                          .defaultValue("4")
+                                          .build(),
+                                  PropertyDefinition.builder(String.format(DECORATION_CONCURRENT_REQUESTS, "azure_devops"))
+                                          .category(CoreProperties.CATEGORY_GENERAL)
+                                          .subCategory(CoreProperties.SUBCATEGORY_GENERAL)
+                                          .name("Concurrent Azure DevOps decoration requests")
+                                          .description("Maximum number of comments created or resolved in parallel when decorating an Azure DevOps pull request.")
+                                          .type(PropertyType.INTEGER)
+                                          .defaultValue("4")
+                                          .build(),
+                                  PropertyDefinition.builder(String.format(DECORATION_CONCURRENT_REQUESTS, "bitbucket"))
+                                          .category(CoreProperties.CATEGORY_GENERAL)
+                                          .subCategory(CoreProperties.SUBCATEGORY_GENERAL)
+                                          .name("Concurrent Bitbucket decoration requests")
+                                          .description("Maximum number of Code Insights annotation chunks uploaded in parallel when decorating a Bitbucket pull request.")
+                                          .type(PropertyType.INTEGER)
+                                          .defaultValue("4")
+                                          .build(),
+                                  PropertyDefinition.builder(GITLAB_PAGE_SIZE)
+                                          .category(CoreProperties.CATEGORY_GENERAL)
+                                          .subCategory(CoreProperties.SUBCATEGORY_GENERAL)
+                                          .name("Gitlab page size")
+                                          .description("Number of commits or discussions requested per page when reading a Gitlab merge request. Gitlab does not allow more than 100.")
+                                          .type(PropertyType.INTEGER)
+                                          .defaultValue("100")
+                                          .build(),
+                                  PropertyDefinition.builder(DECORATION_WORKER_THREADS)
+                                          .category(CoreProperties.CATEGORY_GENERAL)
+                                          .subCategory(CoreProperties.SUBCATEGORY_GENERAL)
+                                          .name("Pull request decoration workers")
+                                          .description("Number of background workers decorating pull requests once analysis completes. Set to 0 to decorate pull requests within the Compute Engine task. Requires a restart to take effect.")
+                                          .type(PropertyType.INTEGER)
+                                          .defaultValue("2")
+                                          .build(),
+                                  PropertyDefinition.builder(DECORATION_QUEUE_CAPACITY)
+                                          .category(CoreProperties.CATEGORY_GENERAL)
+                                          .subCategory(CoreProperties.SUBCATEGORY_GENERAL)
+                                          .name("Pull request decoration queue capacity")
+                                          .description("Maximum number of pull request decorations waiting for a background worker. Pull requests are decorated within the Compute Engine task when the queue is full. Requires a restart to take effect.")
+                                          .type(PropertyType.INTEGER)
+                                          .defaultValue("100")
+                                          .build(),
+                                  PropertyDefinition.builder(DECORATION_MAX_ATTEMPTS)
+                                          .category(CoreProperties.CATEGORY_GENERAL)
+                                          .subCategory(CoreProperties.SUBCATEGORY_GENERAL)
+                                          .name("Pull request decoration attempts")
+                                          .description("Number of times a background worker attempts to decorate a pull request before giving up. Requires a restart to take effect.")
+                                          .type(PropertyType.INTEGER)
+                                          .defaultValue("3")
+                                          .build());
+
         }
     }
 
@@ -0,0 +1,279 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Collects the time spent in each phase of a pull request decoration, along with the ALM API calls made, the bytes
+ * transferred and the number of retried requests. A collector is bound to the thread that starts it and to any task
+ * that thread hands to {@link ConcurrentRequestExecutor}, so calls made from the shared request pool are attributed to
+ * the decoration that submitted them. Recording when no collector is bound is a no-op, so clients used outside of
+ * decoration (e.g. when validating ALM settings) are unaffected.
+ */
+public final class AlmClientMetrics implements AutoCloseable {
+
+    private static final ThreadLocal<AlmClientMetrics> CURRENT = new ThreadLocal<>();
+
+    private static final Pattern IDENTIFIER_PATH_SEGMENT = Pattern.compile("\\d+|[0-9a-fA-F]{40}|[0-9a-fA-F-]{36}|.*%.*");
+
+    private final long startTime;
+    private final Map<String, LongAdder> phaseNanos = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> apiCalls = new ConcurrentHashMap<>();
+    private final LongAdder bytesSent = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private volatile long endTime = -1;
+
+    private AlmClientMetrics() {
+        super();
+        this.startTime = System.nanoTime();
+    }
+
+    /**
+     * Starts a new collector and binds it to the current thread, replacing any collector already bound.
+     */
+    public static AlmClientMetrics start() {
+        AlmClientMetrics metrics = new AlmClientMetrics();
+        CURRENT.set(metrics);
+        return metrics;
+    }
+
+    /**
+     * Starts timing the named phase, which is recorded when the returned phase is closed. Time spent in a phase that is
+     * entered more than once is accumulated.
+     */
+    public static Phase startPhase(String name) {
+        Optional<AlmClientMetrics> metrics = current();
+        long phaseStart = System.nanoTime();
+        return () -> metrics.ifPresent(m -> m.phaseNanos.computeIfAbsent(name, k -> new LongAdder()).add(System.nanoTime() - phaseStart));
+    }
+
+    public static <T, E extends Exception> T time(String phase, TimedOperation<T, E> operation) throws E {
+        try (Phase ignored = startPhase(phase)) {
+            return operation.execute();
+        }
+    }
+
+    public static <E extends Exception> void run(String phase, TimedAction<E> action) throws E {
+        time(phase, () -> {
+            action.execute();
+            return null;
+        });
+    }
+
+    public static void recordApiCall(String method, String url, long requestBytes, long responseBytes) {
+        current().ifPresent(metrics -> {
+            metrics.apiCalls.computeIfAbsent(method.toUpperCase(Locale.ENGLISH) + " " + normaliseEndpoint(url), k -> new LongAdder()).increment();
+            metrics.bytesSent.add(Math.max(0, requestBytes));
+            metrics.bytesReceived.add(Math.max(0, responseBytes));
+        });
+    }
+
+    /**
+     * Records bytes received for a call whose response size is only known once the response has been read, rather than
+     * when the call itself is recorded.
+     */
+    public static void recordBytesReceived(long responseBytes) {
+        current().ifPresent(metrics -> metrics.bytesReceived.add(Math.max(0, responseBytes)));
+    }
+
+    /**
+     * Wraps a response body so the call is recorded, along with the number of bytes read from the body, once the body
+     * is closed.
+     */
+    public static InputStream recordApiCall(String method, String url, long requestBytes, InputStream responseBody) {
+        return new RecordingInputStream(responseBody, method, url, requestBytes);
+    }
+
+    public static void recordRetry() {
+        current().ifPresent(metrics -> metrics.retries.increment());
+    }
+
+    /**
+     * Wraps the given task so it records against the collector bound to the calling thread, whichever thread it
+     * eventually runs on. The thread it runs on is left with whichever collector it had bound beforehand, so pooled
+     * threads don't hold on to the collectors of decorations they've served.
+     */
+    static Runnable bindToCurrent(Runnable task) {
+        AlmClientMetrics metrics = CURRENT.get();
+        return () -> {
+            AlmClientMetrics previous = CURRENT.get();
+            CURRENT.set(metrics);
+            try {
+                task.run();
+            } finally {
+                if (previous == null) {
+                    CURRENT.remove();
+                } else {
+                    CURRENT.set(previous);
+                }
+            }
+        };
+    }
+
+    private static Optional<AlmClientMetrics> current() {
+        return Optional.ofNullable(CURRENT.get()).filter(metrics -> metrics.endTime < 0);
+    }
+
+    /**
+     * Replaces the parts of a request path that identify a specific entity with a placeholder, and drops the host and
+     * query, so calls to the same API endpoint are counted together.
+     */
+    static String normaliseEndpoint(String url) {
+        String path = url;
+        int schemeSeparator = path.indexOf("://");
+        if (schemeSeparator >= 0) {
+            int pathStart = path.indexOf('/', schemeSeparator + 3);
+            path = pathStart < 0 ? "" : path.substring(pathStart);
+        }
+        int queryStart = path.indexOf('?');
+        if (queryStart >= 0) {
+            path = path.substring(0, queryStart);
+        }
+        return Arrays.stream(path.split("/"))
+                .map(segment -> IDENTIFIER_PATH_SEGMENT.matcher(segment).matches() ? "{id}" : segment)
+                .collect(Collectors.joining("/"));
+    }
+
+    public long getWallTimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis((endTime < 0 ? System.nanoTime() : endTime) - startTime);
+    }
+
+    public Map<String, Long> getPhaseTimeMillis() {
+        return phaseNanos.entrySet().stream()
+                .collect(Collectors.toMap(Map.Entry::getKey, entry -> TimeUnit.NANOSECONDS.toMillis(entry.getValue().sum()), (a, b) -> a, TreeMap::new));
+    }
+
+    public Map<String, Long> getApiCalls() {
+        return apiCalls.entrySet().stream()
+                .collect(Collectors.toMap(Map.Entry::getKey, entry -> entry.getValue().sum(), (a, b) -> a, TreeMap::new));
+    }
+
+    public long getApiCallCount() {
+        return apiCalls.values().stream().mapToLong(LongAdder::sum).sum();
+    }
+
+    public long getBytesSent() {
+        return bytesSent.sum();
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived.sum();
+    }
+
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    /**
+     * Stops recording against this collector and unbinds it from the current thread.
+     */
+    @Override
+    public void close() {
+        endTime = System.nanoTime();
+        if (CURRENT.get() == this) {
+            CURRENT.remove();
+        }
+    }
+
+    private static final class RecordingInputStream extends FilterInputStream {
+
+        private final String method;
+        private final String url;
+        private final long requestBytes;
+        private long responseBytes;
+        private boolean closed;
+
+        private RecordingInputStream(InputStream responseBody, String method, String url, long requestBytes) {
+            super(responseBody);
+            this.method = method;
+            this.url = url;
+            this.requestBytes = requestBytes;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int value = super.read();
+            if (value >= 0) {
+                responseBytes++;
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int count = super.read(buffer, offset, length);
+            if (count > 0) {
+                responseBytes += count;
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long length) throws IOException {
+            long count = super.skip(length);
+            responseBytes += count;
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                if (!closed) {
+                    closed = true;
+                    AlmClientMetrics.recordApiCall(method, url, requestBytes, responseBytes);
+                }
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface Phase extends AutoCloseable {
+
+        @Override
+        void close();
+    }
+
+    @FunctionalInterface
+    public interface TimedOperation<T, E extends Exception> {
+
+        T execute() throws E;
+    }
+
+    @FunctionalInterface
+    public interface TimedAction<E extends Exception> {
+
+        void execute() throws E;
+    }
+}
@@ -0,0 +1,294 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+
+/**
+ * Throttles the requests sent to an ALM host so they stay within the rate limit the host reports. The remaining request
+ * budget and the time the budget is reset are taken from the rate limit headers returned by Github
+ * (<code>X-RateLimit-*</code>), Gitlab (<code>RateLimit-*</code>) and Azure DevOps, and requests wait for the budget to
+ * be reset once it has been used rather than being sent and rejected. Responses that indicate a request was rate
+ * limited, or that the host was temporarily unavailable, hold back the requests sharing its budget for the period given
+ * in the <code>Retry-After</code> header or an exponential backoff with jitter, after which the request can be retried.
+ * <p>
+ * Hosts apply their limits to each credential rather than to the host as a whole, and Github keeps separate budgets for
+ * its REST (<code>core</code>) and GraphQL (<code>graphql</code>) APIs, so a throttler is held for each combination of
+ * host, credential and rate limit resource. All decorations running in the JVM that use the same credential share its
+ * budget, and budgets for credentials that are no longer used, such as expired Github installation tokens, are
+ * discarded once they've been idle for an hour. Idle budgets are looked for at most once a minute, by whichever request
+ * happens to retrieve a throttler once the minute has passed.
+ */
+public final class AlmRequestThrottler {
+
+    public static final int MAX_ATTEMPTS = 4;
+
+    static final String DEFAULT_RESOURCE = "core";
+    static final String GRAPHQL_RESOURCE = "graphql";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AlmRequestThrottler.class);
+
+    private static final Map<String, AlmRequestThrottler> THROTTLERS = new ConcurrentHashMap<>();
+    private static final AtomicLong NEXT_EXPIRY_SWEEP = new AtomicLong();
+    private static final Set<String> IDEMPOTENT_METHODS = Set.of("GET", "HEAD", "OPTIONS", "PUT", "DELETE");
+    private static final long BASE_BACKOFF_MILLIS = 1000;
+    private static final long MAX_BACKOFF_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    private static final long MAX_WAIT_MILLIS = TimeUnit.MINUTES.toMillis(15);
+    private static final long EPOCH_SECONDS_THRESHOLD = 1_000_000_000L;
+    private static final long IDLE_EXPIRY_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final long EXPIRY_SWEEP_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    private static final String[] CREDENTIAL_HEADERS = {"Authorization", "PRIVATE-TOKEN"};
+
+    private final String host;
+    private final String credentialId;
+    private final String resource;
+    private final String name;
+    private volatile long lastUsed;
+    private long remaining = -1;
+    private long resetAt;
+    private long blockedUntil;
+    private int waitingRequests;
+
+    private AlmRequestThrottler(String host, String credentialId, String resource) {
+        super();
+        this.host = host;
+        this.credentialId = credentialId;
+        this.resource = resource;
+        this.name = host + (DEFAULT_RESOURCE.equals(resource) ? "" : "/" + resource) + (null == credentialId ? "" : " [" + credentialId + "]");
+        this.lastUsed = System.currentTimeMillis();
+    }
+
+    /**
+     * Retrieves the throttler for requests to a host that aren't made with any credentials.
+     */
+    public static AlmRequestThrottler forHost(String host) {
+        return forRequest(host, "", name -> null);
+    }
+
+    /**
+     * Retrieves the throttler for a request, based on the host it's sent to, the credential in its
+     * <code>Authorization</code> or <code>PRIVATE-TOKEN</code> header, and the rate limit resource its path uses.
+     */
+    public static AlmRequestThrottler forRequest(String host, String path, UnaryOperator<String> requestHeaders) {
+        // only a hash of the credential is retained, so tokens aren't held any longer than the request using them
+        String credentialId = findHeader(requestHeaders, CREDENTIAL_HEADERS)
+                .map(credential -> Integer.toHexString(credential.hashCode()))
+                .orElse(null);
+        String resource = null != path && path.endsWith("/" + GRAPHQL_RESOURCE) ? GRAPHQL_RESOURCE : DEFAULT_RESOURCE;
+        return getThrottler(Optional.ofNullable(host).orElse("").toLowerCase(Locale.ENGLISH), credentialId, resource);
+    }
+
+    private static AlmRequestThrottler getThrottler(String host, String credentialId, String resource) {
+        long now = System.currentTimeMillis();
+        long nextSweep = NEXT_EXPIRY_SWEEP.get();
+        if (now >= nextSweep && NEXT_EXPIRY_SWEEP.compareAndSet(nextSweep, now + EXPIRY_SWEEP_INTERVAL_MILLIS)) {
+            removeExpired(now);
+        }
+
+        // the throttler is marked as used whilst its entry is locked, so a concurrent sweep can't discard it once returned
+        return THROTTLERS.compute(host + "|" + credentialId + "|" + resource, (key, existing) -> {
+            AlmRequestThrottler throttler = null == existing ? new AlmRequestThrottler(host, credentialId, resource) : existing;
+            throttler.lastUsed = now;
+            return throttler;
+        });
+    }
+
+    static void removeExpired(long now) {
+        THROTTLERS.keySet().forEach(key -> THROTTLERS.computeIfPresent(key, (k, throttler) -> throttler.isExpired(now) ? null : throttler));
+    }
+
+    /**
+     * The request budget remaining for each host, resource and credential that has reported a rate limit.
+     */
+    public static Map<String, Long> getRemainingBudgets() {
+        Map<String, Long> budgets = new TreeMap<>();
+        THROTTLERS.values().forEach(throttler -> throttler.getRemainingBudget().ifPresent(remaining -> budgets.put(throttler.name, remaining)));
+        return budgets;
+    }
+
+    /**
+     * The number of requests currently waiting for the rate limit of each host, resource and credential.
+     */
+    public static Map<String, Integer> getWaitingRequests() {
+        Map<String, Integer> waiting = new TreeMap<>();
+        THROTTLERS.values().forEach(throttler -> waiting.put(throttler.name, throttler.getWaitingRequestCount()));
+        return waiting;
+    }
+
+    /**
+     * Decides whether a response indicates the request can be sent again: the request was rate limited, or the host was
+     * unavailable and the request can safely be repeated.
+     */
+    public static boolean isRetryable(int statusCode, String method, UnaryOperator<String> headers) {
+        if (statusCode == 429) {
+            return true;
+        }
+        if (statusCode == 403) {
+            return null != headers.apply("Retry-After") || "0".equals(findHeader(headers, "X-RateLimit-Remaining", "RateLimit-Remaining").orElse(null));
+        }
+        return (statusCode == 502 || statusCode == 503 || statusCode == 504) && IDEMPOTENT_METHODS.contains(method.toUpperCase(Locale.ENGLISH));
+    }
+
+    /**
+     * Waits until the host has budget for another request and any backoff has passed, then takes a request from the
+     * budget. A request is never held for longer than 15 minutes, after which it's sent regardless.
+     */
+    public synchronized void acquire() {
+        long deadline = System.currentTimeMillis() + MAX_WAIT_MILLIS;
+        waitingRequests++;
+        try {
+            while (true) {
+                long now = System.currentTimeMillis();
+                long waitUntil = getWaitUntil(now);
+                if (waitUntil <= now) {
+                    break;
+                }
+                if (now >= deadline) {
+                    LOGGER.warn("Request to {} has been waiting {}ms for the rate limit to reset. Sending request anyway", name, MAX_WAIT_MILLIS);
+                    break;
+                }
+                LOGGER.debug("Waiting {}ms for rate limit on {}", waitUntil - now, name);
+                wait(Math.min(waitUntil, deadline) - now);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted whilst waiting for rate limit on " + name, ex);
+        } finally {
+            waitingRequests--;
+        }
+
+        if (remaining > 0) {
+            remaining--;
+        }
+    }
+
+    /**
+     * Refills the request budget from the rate limit headers in a response. Where the response reports that the request
+     * was counted against a different resource to the one expected from its path, that resource's budget is refilled
+     * instead.
+     */
+    public void update(UnaryOperator<String> headers) {
+        Optional<String> reportedResource = findHeader(headers, "X-RateLimit-Resource").map(value -> value.toLowerCase(Locale.ENGLISH));
+        if (reportedResource.isPresent() && !reportedResource.get().equals(resource)) {
+            getThrottler(host, credentialId, reportedResource.get()).updateBudget(headers);
+        } else {
+            updateBudget(headers);
+        }
+    }
+
+    private synchronized void updateBudget(UnaryOperator<String> headers) {
+        findHeader(headers, "X-RateLimit-Remaining", "RateLimit-Remaining")
+                .flatMap(AlmRequestThrottler::parseLong)
+                .ifPresent(value -> remaining = value);
+        findHeader(headers, "X-RateLimit-Reset", "RateLimit-Reset")
+                .flatMap(AlmRequestThrottler::parseLong)
+                .ifPresent(value -> resetAt = value < EPOCH_SECONDS_THRESHOLD
+                        ? System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(value)
+                        : TimeUnit.SECONDS.toMillis(value));
+        notifyAll();
+    }
+
+    /**
+     * Holds back all requests sharing this budget before a request is retried, for the period requested in the
+     * response's <code>Retry-After</code> header or, if none was given, a random period of up to twice as long as the
+     * previous attempt's backoff.
+     *
+     * @return the number of milliseconds requests are being held back for.
+     */
+    public long backoff(int attempt, UnaryOperator<String> headers) {
+        long delay = Optional.ofNullable(headers.apply("Retry-After"))
+                .flatMap(AlmRequestThrottler::parseRetryAfter)
+                .orElseGet(() -> ThreadLocalRandom.current().nextLong(Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << Math.min(attempt, 16)) + 1));
+        synchronized (this) {
+            blockedUntil = Math.max(blockedUntil, System.currentTimeMillis() + delay);
+        }
+        AlmClientMetrics.recordRetry();
+        LOGGER.info("Request to {} was rejected or rate limited on attempt {}. Retrying in {}ms", name, attempt, delay);
+        return delay;
+    }
+
+    synchronized Optional<Long> getRemainingBudget() {
+        return remaining < 0 ? Optional.empty() : Optional.of(remaining);
+    }
+
+    synchronized int getWaitingRequestCount() {
+        return waitingRequests;
+    }
+
+    private synchronized boolean isExpired(long now) {
+        return waitingRequests == 0 && now - lastUsed > IDLE_EXPIRY_MILLIS && blockedUntil <= now && (remaining != 0 || resetAt <= now);
+    }
+
+    private long getWaitUntil(long now) {
+        if (remaining == 0 && resetAt <= now) {
+            remaining = -1;
+        }
+        return remaining == 0 ? Math.max(blockedUntil, resetAt) : blockedUntil;
+    }
+
+    private static Optional<String> findHeader(UnaryOperator<String> headers, String... names) {
+        return Stream.of(names)
+                .map(headers)
+                .filter(value -> null != value && !value.isBlank())
+                .map(String::trim)
+                .findFirst();
+    }
+
+    private static Optional<Long> parseLong(String value) {
+        try {
+            return Optional.of(Long.parseLong(value));
+        } catch (NumberFormatException ex) {
+            return Optional.empty();
+        }
+    }
+
+    private static Optional<Long> parseRetryAfter(String value) {
+        Optional<Long> seconds = parseLong(value.trim());
+        if (seconds.isPresent()) {
+            return Optional.of(TimeUnit.SECONDS.toMillis(Math.max(0, seconds.get())));
+        }
+        try {
+            long retryAt = ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+            return Optional.of(Math.max(0, retryAt - System.currentTimeMillis()));
+        } catch (DateTimeParseException ex) {
+            return Optional.empty();
+        }
+    }
+
+    static void reset() {
+        THROTTLERS.clear();
+        NEXT_EXPIRY_SWEEP.set(0);
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Runs ALM requests with bounded parallelism on a pool of daemon threads shared by every decoration on this Compute
+ * Engine. The calling thread works through the tasks alongside the pooled threads, so a call still completes, with
+ * less parallelism, when every pooled thread is busy serving other decorations.
+ */
+public final class ConcurrentRequestExecutor {
+
+    private static final int MAX_POOLED_THREADS = 32;
+    private static final long IDLE_THREAD_TIMEOUT_SECONDS = 60;
+
+    private static final ThreadPoolExecutor EXECUTOR = createExecutor();
+
+    private ConcurrentRequestExecutor() {
+        super();
+    }
+
+    /**
+     * Runs every task using at most {@code concurrentRequests} threads, including the calling one. Every task is
+     * attempted even if an earlier one fails, and the failures are returned in task order.
+     */
+    public static List<Exception> invokeAll(List<? extends Callable<?>> tasks, int concurrentRequests) {
+        AtomicReferenceArray<Exception> failures = new AtomicReferenceArray<>(tasks.size());
+        AtomicInteger nextTask = new AtomicInteger();
+        Runnable worker = AlmClientMetrics.bindToCurrent(() -> {
+            int taskIndex;
+            while ((taskIndex = nextTask.getAndIncrement()) < tasks.size()) {
+                try {
+                    tasks.get(taskIndex).call();
+                } catch (Exception ex) {
+                    failures.set(taskIndex, ex);
+                }
+            }
+        });
+
+        List<Future<?>> pooledWorkers = new ArrayList<>();
+        int additionalWorkers = Math.min(tasks.size(), concurrentRequests) - 1;
+        for (int i = 0; i < additionalWorkers; i++) {
+            try {
+                pooledWorkers.add(EXECUTOR.submit(worker));
+            } catch (RejectedExecutionException ex) {
+                // the shared pool is saturated so the calling thread handles the remaining tasks itself
+                break;
+            }
+        }
+
+        worker.run();
+        for (Future<?> pooledWorker : pooledWorkers) {
+            try {
+                pooledWorker.get();
+            } catch (ExecutionException ex) {
+                throw new IllegalStateException("Could not complete ALM requests", ex.getCause());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                pooledWorkers.forEach(future -> future.cancel(true));
+                throw new IllegalStateException("Interrupted whilst waiting for ALM requests to complete", ex);
+            }
+        }
+
+        return IntStream.range(0, tasks.size())
+                .mapToObj(failures::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Runs every task as {@link #invokeAll(List, int)} does, throwing the first failure (in task order) with any later
+     * failures suppressed on it.
+     */
+    public static void runAll(List<? extends Runnable> tasks, int concurrentRequests) {
+        List<Exception> failures = invokeAll(tasks.stream().map(Executors::callable).collect(Collectors.toList()), concurrentRequests);
+        if (failures.isEmpty()) {
+            return;
+        }
+
+        RuntimeException firstFailure = (RuntimeException) failures.get(0);
+        failures.subList(1, failures.size()).forEach(firstFailure::addSuppressed);
+        throw firstFailure;
+    }
+
+    private static ThreadPoolExecutor createExecutor() {
+        AtomicInteger threadCounter = new AtomicInteger();
+        return new ThreadPoolExecutor(0, MAX_POOLED_THREADS, IDLE_THREAD_TIMEOUT_SECONDS, TimeUnit.SECONDS, new SynchronousQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "alm-request-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient;
+
+import com.github.mc1arke.sonarqube.plugin.CommunityBranchPlugin;
+import org.apache.commons.lang.StringUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpMessage;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.ServiceUnavailableRetryStrategy;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpCoreContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.Startable;
+import org.sonar.api.ce.ComputeEngineSide;
+import org.sonar.api.config.Configuration;
+import org.sonar.api.server.ServerSide;
+import org.sonar.db.alm.setting.AlmSettingDto;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+@ComputeEngineSide
+@ServerSide
+public class DefaultHttpClientProvider implements HttpClientProvider, Startable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DefaultHttpClientProvider.class);
+
+    private static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 10;
+    private static final int DEFAULT_MAX_CONNECTIONS_TOTAL = 50;
+    private static final int DEFAULT_IDLE_CONNECTION_TIMEOUT_SECONDS = 60;
+
+    private final Configuration configuration;
+    private final Map<String, PooledHttpClient> httpClients = new ConcurrentHashMap<>();
+    private final Queue<PooledHttpClient> retiredHttpClients = new ConcurrentLinkedQueue<>();
+    private final AtomicLong poolHits = new AtomicLong();
+    private final AtomicLong poolMisses = new AtomicLong();
+
+    public DefaultHttpClientProvider(Configuration configuration) {
+        super();
+        this.configuration = configuration;
+    }
+
+    @Override
+    public CloseableHttpClient getHttpClient(AlmSettingDto almSettingDto) {
+        String fingerprint = almSettingDto.getUrl() + "|" + almSettingDto.getUpdatedAt();
+        PooledHttpClient pooledHttpClient = httpClients.compute(String.valueOf(almSettingDto.getUuid()), (uuid, existingClient) -> {
+            if (null != existingClient && existingClient.getFingerprint().equals(fingerprint)) {
+                poolHits.incrementAndGet();
+                return existingClient;
+            }
+
+            poolMisses.incrementAndGet();
+            if (null != existingClient) {
+                LOGGER.debug("ALM setting {} has changed since its HTTP client was created. Replacing client", uuid);
+                existingClient.retire();
+                retiredHttpClients.add(existingClient);
+            }
+            return new PooledHttpClient(fingerprint, configuration);
+        });
+        closeIdleRetiredClients();
+
+        LOGGER.atDebug().setMessage("HTTP client pool statistics - hits: {}, misses: {}, connections: {}")
+                .addArgument(poolHits::get)
+                .addArgument(poolMisses::get)
+                .addArgument(pooledHttpClient::getConnectionStatistics)
+                .log();
+
+        return pooledHttpClient.getHttpClient();
+    }
+
+    public long getPoolHits() {
+        return poolHits.get();
+    }
+
+    public long getPoolMisses() {
+        return poolMisses.get();
+    }
+
+    @Override
+    public void start() {
+        // no-op: clients are created lazily on first use
+    }
+
+    @Override
+    public void stop() {
+        httpClients.values().forEach(PooledHttpClient::close);
+        httpClients.clear();
+        retiredHttpClients.forEach(PooledHttpClient::close);
+        retiredHttpClients.clear();
+    }
+
+    /**
+     * Close any replaced clients that are no longer in use. A decoration that retrieved a client before it was replaced
+     * may still be sending requests through it, so a replaced client is only closed once it has no connections leased
+     * and hasn't sent a request for the idle connection timeout.
+     */
+    private void closeIdleRetiredClients() {
+        long now = System.currentTimeMillis();
+        retiredHttpClients.removeIf(retiredClient -> retiredClient.closeIfIdle(now));
+    }
+
+    private static final class PooledHttpClient {
+
+        private final String fingerprint;
+        private final PoolingHttpClientConnectionManager connectionManager;
+        private final CloseableHttpClient httpClient;
+        private final long idleTimeoutMillis;
+        private volatile long lastRequestTime;
+
+        private PooledHttpClient(String fingerprint, Configuration configuration) {
+            this.fingerprint = fingerprint;
+            int idleTimeoutSeconds = configuration.getInt(CommunityBranchPlugin.HTTP_IDLE_CONNECTION_TIMEOUT).orElse(DEFAULT_IDLE_CONNECTION_TIMEOUT_SECONDS);
+            this.idleTimeoutMillis = TimeUnit.SECONDS.toMillis(idleTimeoutSeconds);
+            this.lastRequestTime = System.currentTimeMillis();
+
+            Registry<ConnectionSocketFactory> socketFactoryRegistry = RegistryBuilder.<ConnectionSocketFactory>create()
+                    .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                    .register("https", SSLConnectionSocketFactory.getSystemSocketFactory())
+                    .build();
+            this.connectionManager = new PoolingHttpClientConnectionManager(socketFactoryRegistry);
+            this.connectionManager.setDefaultMaxPerRoute(configuration.getInt(CommunityBranchPlugin.HTTP_MAX_CONNECTIONS_PER_ROUTE).orElse(DEFAULT_MAX_CONNECTIONS_PER_ROUTE));
+            this.connectionManager.setMaxTotal(configuration.getInt(CommunityBranchPlugin.HTTP_MAX_CONNECTIONS_TOTAL).orElse(DEFAULT_MAX_CONNECTIONS_TOTAL));
+
+            this.httpClient = HttpClientBuilder.create()
+                    .useSystemProperties()
+                    .setConnectionManager(connectionManager)
+                    .setKeepAliveStrategy(DefaultConnectionKeepAliveStrategy.INSTANCE)
+                    .evictExpiredConnections()
+                    .evictIdleConnections(idleTimeoutSeconds, TimeUnit.SECONDS)
+                    .addInterceptorFirst(this::recordRequestTime)
+                    .addInterceptorLast(PooledHttpClient::acquireRequestPermit)
+                    .addInterceptorFirst(PooledHttpClient::updateRateLimit)
+                    .addInterceptorLast(PooledHttpClient::recordApiCall)
+                    .setServiceUnavailableRetryStrategy(new RateLimitRetryStrategy())
+                    .build();
+        }
+
+        private void recordRequestTime(HttpRequest request, HttpContext context) {
+            lastRequestTime = System.currentTimeMillis();
+        }
+
+        private static void acquireRequestPermit(HttpRequest request, HttpContext context) {
+            getThrottler(request, context).acquire();
+        }
+
+        private static void updateRateLimit(HttpResponse response, HttpContext context) {
+            getThrottler(HttpCoreContext.adapt(context).getRequest(), context).update(name -> getHeader(response, name));
+        }
+
+        private static AlmRequestThrottler getThrottler(HttpRequest request, HttpContext context) {
+            HttpHost targetHost = HttpCoreContext.adapt(context).getTargetHost();
+            String host = null == targetHost ? "" : targetHost.getHostName();
+            if (null == request) {
+                return AlmRequestThrottler.forHost(host);
+            }
+            return AlmRequestThrottler.forRequest(host, StringUtils.substringBefore(request.getRequestLine().getUri(), "?"), name -> getHeader(request, name));
+        }
+
+        private static String getHeader(HttpMessage message, String name) {
+            Header header = message.getFirstHeader(name);
+            return null == header ? null : header.getValue();
+        }
+
+        private static void recordApiCall(HttpResponse response, HttpContext context) {
+            HttpRequest request = HttpCoreContext.adapt(context).getRequest();
+            if (null == request) {
+                return;
+            }
+            long requestBytes = request instanceof HttpEntityEnclosingRequest && null != ((HttpEntityEnclosingRequest) request).getEntity()
+                    ? ((HttpEntityEnclosingRequest) request).getEntity().getContentLength() : 0;
+            long responseBytes = null == response.getEntity() ? 0 : response.getEntity().getContentLength();
+            AlmClientMetrics.recordApiCall(request.getRequestLine().getMethod(), request.getRequestLine().getUri(), requestBytes, responseBytes);
+        }
+
+        /**
+         * Retries requests that were rate limited or hit an unavailable host, once the throttler for the host has
+         * backed off. The backoff is waited out when the retried request acquires its permit from the throttler, so no
+         * additional interval is applied here.
+         */
+        private static final class RateLimitRetryStrategy implements ServiceUnavailableRetryStrategy {
+
+            @Override
+            public boolean retryRequest(HttpResponse response, int executionCount, HttpContext context) {
+                HttpRequest request = HttpCoreContext.adapt(context).getRequest();
+                String method = null == request ? "" : request.getRequestLine().getMethod();
+                if (executionCount >= AlmRequestThrottler.MAX_ATTEMPTS
+                        || !AlmRequestThrottler.isRetryable(response.getStatusLine().getStatusCode(), method, name -> getHeader(response, name))) {
+                    return false;
+                }
+                getThrottler(request, context).backoff(executionCount, name -> getHeader(response, name));
+                return true;
+            }
+
+            @Override
+            public long getRetryInterval() {
+                return 0;
+            }
+        }
+
+        private String getFingerprint() {
+            return fingerprint;
+        }
+
+        private CloseableHttpClient getHttpClient() {
+            return httpClient;
+        }
+
+        private PoolStats getConnectionStatistics() {
+            return connectionManager.getTotalStats();
+        }
+
+        private void retire() {
+            // in-flight requests keep their connections, only connections that aren't in use are released
+            connectionManager.closeIdleConnections(0, TimeUnit.MILLISECONDS);
+        }
+
+        private boolean closeIfIdle(long now) {
+            if (connectionManager.getTotalStats().getLeased() > 0 || now - lastRequestTime < idleTimeoutMillis) {
+                return false;
+            }
+            close();
+            return true;
+        }
+
+        private void close() {
+            try {
+                httpClient.close();
+            } catch (IOException ex) {
+                LOGGER.warn("Could not close pooled HTTP client", ex);
+            }
+        }
+    }
+}
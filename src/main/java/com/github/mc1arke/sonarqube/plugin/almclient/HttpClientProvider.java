@@ -0,0 +1,33 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient;
+
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.sonar.db.alm.setting.AlmSettingDto;
+
+public interface HttpClientProvider {
+
+    /**
+     * Retrieves a connection-pooled client for the given ALM setting. The client is shared across all decorations using
+     * the same ALM setting so must not be closed by the caller, although any response retrieved from it must be closed
+     * to release the underlying connection back to the pool.
+     */
+    CloseableHttpClient getHttpClient(AlmSettingDto almSettingDto);
+
+}
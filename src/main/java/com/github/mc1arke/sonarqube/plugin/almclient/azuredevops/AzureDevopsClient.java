@@ -27,15 +27,27 @@ import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.PullReque
 import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.Repository;
 
 import java.io.IOException;
-import java.util.List;
+import java.util.stream.Stream;
 
 public interface AzureDevopsClient {
 
     PullRequest retrievePullRequest(String projectName, String repositoryName, int pullRequestId) throws IOException;
 
-    List<Commit> getPullRequestCommits(String projectName, String repositoryName, int pullRequestId) throws IOException;
-
-    List<CommentThread> retrieveThreads(String projectName, String repositoryName, int pullRequestId) throws IOException;
+    /**
+     * Lazily pages through the commits in the given pull request. The returned stream holds an open connection to
+     * Azure Devops until it has been fully consumed or closed.
+     *
+     * @throws java.io.UncheckedIOException if a page cannot be retrieved whilst the stream is being consumed
+     */
+    Stream<Commit> getPullRequestCommits(String projectName, String repositoryName, int pullRequestId);
+
+    /**
+     * Lazily pages through the comment threads in the given pull request. The returned stream holds an open
+     * connection to Azure Devops until it has been fully consumed or closed.
+     *
+     * @throws java.io.UncheckedIOException if a page cannot be retrieved whilst the stream is being consumed
+     */
+    Stream<CommentThread> retrieveThreads(String projectName, String repositoryName, int pullRequestId);
 
     CommentThread createThread(String projectName, String repositoryName, int pullRequestId, CreateCommentThreadRequest commentThreadRequest) throws IOException;
 
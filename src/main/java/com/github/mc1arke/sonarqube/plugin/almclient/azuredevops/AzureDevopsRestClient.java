@@ -18,11 +18,11 @@
  */
 package com.github.mc1arke.sonarqube.plugin.almclient.azuredevops;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.CommentThread;
-import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.CommentThreadResponse;
 import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.Commit;
-import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.Commits;
 import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.CreateCommentRequest;
 import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.CreateCommentThreadRequest;
 import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.GitPullRequestStatus;
@@ -30,7 +30,9 @@ import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.PullReque
 import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.Repository;
 import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.UpdateCommentThreadStatusRequest;
 import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.enums.CommentThreadStatus;
+import org.apache.http.Header;
 import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.RequestBuilder;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
@@ -39,31 +41,41 @@ import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
-import java.util.List;
-import java.util.Objects;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 import java.util.Optional;
-import java.util.function.Supplier;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class AzureDevopsRestClient implements AzureDevopsClient {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(AzureDevopsRestClient.class);
     private static final String API_VERSION = "4.1";
     private static final String API_VERSION_PREVIEW = API_VERSION + "-preview";
+    private static final String CONTINUATION_TOKEN_HEADER = "x-ms-continuation-token";
+    private static final int PAGE_SIZE = 100;
 
     private final String authToken;
     private final String apiUrl;
     private final ObjectMapper objectMapper;
-    private final Supplier<CloseableHttpClient> httpClientFactory;
+    private final CloseableHttpClient httpClient;
 
-    AzureDevopsRestClient(String apiUrl, String authToken, ObjectMapper objectMapper, Supplier<CloseableHttpClient> httpClientFactory) {
+    AzureDevopsRestClient(String apiUrl, String authToken, ObjectMapper objectMapper, CloseableHttpClient httpClient) {
         super();
         this.apiUrl = apiUrl;
         this.authToken = authToken;
         this.objectMapper = objectMapper;
-        this.httpClientFactory = httpClientFactory;
+        this.httpClient = httpClient;
     }
 
     @Override
@@ -79,9 +91,9 @@ public class AzureDevopsRestClient implements AzureDevopsClient {
     }
 
     @Override
-    public List<CommentThread> retrieveThreads(String projectId, String repositoryName, int pullRequestId) throws IOException {
+    public Stream<CommentThread> retrieveThreads(String projectId, String repositoryName, int pullRequestId) {
         String url = String.format("%s/%s/_apis/git/repositories/%s/pullRequests/%s/threads?api-version=%s", apiUrl, encode(projectId), encode(repositoryName), pullRequestId, API_VERSION);
-        return Objects.requireNonNull(execute(url, "get", null, CommentThreadResponse.class)).getValue();
+        return streamPages(url, CommentThread.class, CommentThread::getId);
     }
 
     @Override
@@ -111,31 +123,50 @@ public class AzureDevopsRestClient implements AzureDevopsClient {
     }
 
     @Override
-    public List<Commit> getPullRequestCommits(String projectId, String repositoryName, int pullRequestId) throws IOException {
+    public Stream<Commit> getPullRequestCommits(String projectId, String repositoryName, int pullRequestId) {
         String url = String.format("%s/%s/_apis/git/repositories/%s/pullRequests/%s/commits?api-version=%s", apiUrl, encode(projectId), encode(repositoryName), pullRequestId, API_VERSION);
-        return Objects.requireNonNull(execute(url, "get", null, Commits.class)).getValue();
+        return streamPages(url, Commit.class, Commit::getCommitId);
     }
 
-
     private <T> T execute(String url, String method, String content, Class<T> type) throws IOException {
+        try (CloseableHttpResponse httpResponse = executeRequest(url, method, content, null != type)) {
+            if (null == type) {
+                return null;
+            }
+            return objectMapper.readValue(EntityUtils.toString(httpResponse.getEntity(), StandardCharsets.UTF_8), type);
+        }
+    }
+
+    private CloseableHttpResponse executeRequest(String url, String method, String content, boolean expectResponseBody) throws IOException {
         RequestBuilder requestBuilder = RequestBuilder.create(method)
                 .setUri(url)
                 .addHeader("Authorization", "Basic " + authToken)
                 .addHeader("Content-type", ContentType.APPLICATION_JSON.withCharset(StandardCharsets.UTF_8).toString());
 
         Optional.ofNullable(content).ifPresent(body -> requestBuilder.setEntity(new StringEntity(body, StandardCharsets.UTF_8)));
-        Optional.ofNullable(type).ifPresent(responseType -> requestBuilder.addHeader("Accept", ContentType.APPLICATION_JSON.getMimeType()));
-
-        try (CloseableHttpClient httpClient = httpClientFactory.get()) {
-            HttpResponse httpResponse = httpClient.execute(requestBuilder.build());
+        if (expectResponseBody) {
+            requestBuilder.addHeader("Accept", ContentType.APPLICATION_JSON.getMimeType());
+        }
 
+        CloseableHttpResponse httpResponse = httpClient.execute(requestBuilder.build());
+        try {
             validateResponse(httpResponse);
-
-            if (null == type) {
-                return null;
-            }
-            return objectMapper.readValue(EntityUtils.toString(httpResponse.getEntity(), StandardCharsets.UTF_8), type);
+        } catch (RuntimeException ex) {
+            httpResponse.close();
+            throw ex;
         }
+        return httpResponse;
+    }
+
+    /**
+     * Lazily reads every item from a paged Azure Devops collection endpoint. A page is only requested once the
+     * consumer has read all items from the previous page, and each page is parsed from the response stream one item
+     * at a time rather than being buffered in full. The returned stream should be closed if it is not fully consumed.
+     */
+    private <T> Stream<T> streamPages(String url, Class<T> type, Function<T, Object> keyExtractor) {
+        PagedResponseIterator<T> iterator = new PagedResponseIterator<>(url, type, keyExtractor);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(iterator::close);
     }
 
     private static void validateResponse(HttpResponse httpResponse) {
@@ -161,6 +192,150 @@ public class AzureDevopsRestClient implements AzureDevopsClient {
         throw new IllegalStateException("An unexpected response code was returned from the Azure Devops API - Expected: 200, Got: " + httpResponse.getStatusLine().getStatusCode());
     }
 
+    private final class PagedResponseIterator<T> implements Iterator<T>, Closeable {
+
+        private final String url;
+        private final Class<T> type;
+        private final Function<T, Object> keyExtractor;
+        private final Set<Object> seenKeys = new HashSet<>();
+
+        private CloseableHttpResponse currentResponse;
+        private JsonParser currentParser;
+        private String continuationToken;
+        private int skip;
+        private int pageItemCount;
+        private boolean pageContainedNewItems;
+        private boolean finished;
+        private T next;
+
+        private PagedResponseIterator(String url, Class<T> type, Function<T, Object> keyExtractor) {
+            this.url = url;
+            this.type = type;
+            this.keyExtractor = keyExtractor;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (null == next) {
+                try {
+                    next = readNextItem();
+                } catch (IOException ex) {
+                    close();
+                    throw new UncheckedIOException("Could not read paged response from Azure Devops", ex);
+                }
+            }
+            return null != next;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            T item = next;
+            next = null;
+            return item;
+        }
+
+        private T readNextItem() throws IOException {
+            while (true) {
+                if (null == currentParser) {
+                    if (finished) {
+                        return null;
+                    }
+                    openNextPage();
+                    if (null == currentParser) {
+                        return null;
+                    }
+                }
+
+                if (currentParser.nextToken() == JsonToken.START_OBJECT) {
+                    T item = objectMapper.readValue(currentParser, type);
+                    pageItemCount++;
+                    // servers that ignore the paging parameters return the same items again, so only new items count
+                    if (seenKeys.add(keyExtractor.apply(item))) {
+                        pageContainedNewItems = true;
+                        return item;
+                    }
+                    continue;
+                }
+
+                closeCurrentPage();
+                // an oversized page means the server ignored the paging parameters and has returned everything,
+                // whilst a page without new items means further requests would only repeat what has been read
+                if (pageItemCount > PAGE_SIZE || !pageContainedNewItems) {
+                    finished = true;
+                } else if (null == continuationToken) {
+                    finished = pageItemCount < PAGE_SIZE;
+                    skip += pageItemCount;
+                }
+            }
+        }
+
+        private void openNextPage() throws IOException {
+            StringBuilder pageUrl = new StringBuilder(url).append("&$top=").append(PAGE_SIZE);
+            if (null != continuationToken) {
+                pageUrl.append("&continuationToken=").append(encode(continuationToken));
+            } else if (skip > 0) {
+                pageUrl.append("&$skip=").append(skip);
+            }
+
+            currentResponse = executeRequest(pageUrl.toString(), "get", null, true);
+            continuationToken = Optional.ofNullable(currentResponse.getFirstHeader(CONTINUATION_TOKEN_HEADER))
+                    .map(Header::getValue)
+                    .filter(value -> !value.isBlank())
+                    .orElse(null);
+            pageItemCount = 0;
+            pageContainedNewItems = false;
+
+            currentParser = objectMapper.getFactory().createParser(currentResponse.getEntity().getContent());
+            if (!moveToValueArray(currentParser)) {
+                closeCurrentPage();
+                finished = true;
+            }
+        }
+
+        private void closeCurrentPage() throws IOException {
+            try {
+                if (null != currentParser) {
+                    currentParser.close();
+                }
+            } finally {
+                currentParser = null;
+                if (null != currentResponse) {
+                    currentResponse.close();
+                    currentResponse = null;
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            finished = true;
+            next = null;
+            try {
+                closeCurrentPage();
+            } catch (IOException ex) {
+                LOGGER.warn("Could not close Azure Devops response", ex);
+            }
+        }
+    }
+
+    private static boolean moveToValueArray(JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            return false;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.getCurrentName();
+            JsonToken valueToken = parser.nextToken();
+            if ("value".equals(fieldName) && valueToken == JsonToken.START_ARRAY) {
+                return true;
+            }
+            parser.skipChildren();
+        }
+        return false;
+    }
+
     private static String encode(String input) {
         return URLEncoder.encode(input, StandardCharsets.UTF_8).replace("+", "%20");
     }
@@ -56,11 +56,24 @@ public interface BitbucketClient {
                                                 String logoUrl, ReportStatus reportStatus);
 
     /**
-     * Deletes all code insights annotations for the given parameters.
+     * Retrieves the code insights annotations currently attached to the given report.
+     *
+     * @throws IOException if the annotations cannot be retrieved
+     */
+    Set<CodeInsightsAnnotation> retrieveAnnotations(String commitSha, String reportKey) throws IOException;
+
+    /**
+     * @return true if uploading an annotation replaces any annotation already attached to the report with the same
+     * external ID, or false if the existing annotation has to be deleted before it can be uploaded again
+     */
+    boolean replacesAnnotationsOnUpload();
+
+    /**
+     * Deletes the code insights annotations with the given external IDs from the given report.
      *
      * @throws IOException if the annotations cannot be deleted
      */
-    void deleteAnnotations(String commitSha, String reportKey) throws IOException;
+    void deleteAnnotations(String commitSha, String reportKey, Set<String> externalIds) throws IOException;
 
     /**
      * Uploads CodeInsights Annotations for the given commit.
@@ -30,7 +30,9 @@ import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.model.ReportData;
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.model.ReportStatus;
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.model.Repository;
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.model.cloud.CloudAnnotation;
+import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.model.cloud.CloudAnnotationsPage;
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.model.cloud.CloudCreateReportRequest;
+import okhttp3.HttpUrl;
 import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
@@ -44,6 +46,7 @@ import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.util.Base64;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
@@ -70,7 +73,7 @@ class BitbucketCloudClient implements BitbucketClient {
         this.bitbucketConfiguration = bitbucketConfiguration;
     }
 
-    static String negotiateBearerToken(String clientId, String clientSecret, ObjectMapper objectMapper, OkHttpClient okHttpClient) {
+    static AuthToken negotiateBearerToken(String clientId, String clientSecret, ObjectMapper objectMapper, OkHttpClient okHttpClient) {
         Request request = new Request.Builder()
                 .header("Authorization", "Basic " + Base64.getEncoder().encodeToString((clientId + ":" + clientSecret).getBytes(StandardCharsets.UTF_8)))
                 .url("https://bitbucket.org/site/oauth2/access_token")
@@ -78,9 +81,8 @@ class BitbucketCloudClient implements BitbucketClient {
                 .build();
 
         try (Response response = okHttpClient.newCall(request).execute()) {
-            BitbucketCloudClient.AuthToken authToken = objectMapper.readValue(
+            return objectMapper.readValue(
                     Optional.ofNullable(response.body()).orElseThrow(() -> new IllegalStateException("No response returned by Bitbucket Oauth")).string(), BitbucketCloudClient.AuthToken.class);
-            return authToken.getAccessToken();
         } catch (IOException ex) {
             throw new IllegalStateException("Could not retrieve bearer token", ex);
         }
@@ -116,8 +118,55 @@ class BitbucketCloudClient implements BitbucketClient {
     }
 
     @Override
-    public void deleteAnnotations(String commitSha, String reportKey) {
-        // not needed here.
+    public Set<CodeInsightsAnnotation> retrieveAnnotations(String commit, String reportKey) throws IOException {
+        Set<CodeInsightsAnnotation> annotations = new HashSet<>();
+        String url = format("https://api.bitbucket.org/2.0/repositories/%s/%s/commit/%s/reports/%s/annotations?pagelen=100", bitbucketConfiguration.getProject(), bitbucketConfiguration.getRepository(), commit, reportKey);
+        while (url != null) {
+            Request req = new Request.Builder()
+                    .get()
+                    .url(url)
+                    .build();
+            try (Response response = okHttpClient.newCall(req).execute()) {
+                if (response.code() == 404) {
+                    return annotations;
+                }
+                validate(response);
+
+                CloudAnnotationsPage page = objectMapper.readValue(Optional.ofNullable(response.body())
+                        .orElseThrow(() -> new IllegalStateException("No response body from BitBucket"))
+                        .string(), CloudAnnotationsPage.class);
+                annotations.addAll(page.getValues());
+                url = page.getNext().orElse(null);
+            }
+        }
+        return annotations;
+    }
+
+    @Override
+    public boolean replacesAnnotationsOnUpload() {
+        // the bulk annotation upload replaces any annotation with the same external id
+        return true;
+    }
+
+    @Override
+    public void deleteAnnotations(String commit, String reportKey, Set<String> externalIds) throws IOException {
+        for (String externalId : externalIds) {
+            HttpUrl url = HttpUrl.get(format("https://api.bitbucket.org/2.0/repositories/%s/%s/commit/%s/reports/%s/annotations", bitbucketConfiguration.getProject(), bitbucketConfiguration.getRepository(), commit, reportKey))
+                    .newBuilder()
+                    .addPathSegment(externalId)
+                    .build();
+            Request req = new Request.Builder()
+                    .delete()
+                    .url(url)
+                    .build();
+
+            try (Response response = okHttpClient.newCall(req).execute()) {
+                // an annotation that has already gone is as good as deleted
+                if (response.code() != 404) {
+                    validate(response);
+                }
+            }
+        }
     }
 
     @Override
@@ -155,8 +204,6 @@ class BitbucketCloudClient implements BitbucketClient {
 
     @Override
     public void uploadReport(String commit, CodeInsightsReport codeInsightReport, String reportKey) throws IOException {
-        deleteExistingReport(commit, reportKey);
-
         String targetUrl = format("https://api.bitbucket.org/2.0/repositories/%s/%s/commit/%s/reports/%s", bitbucketConfiguration.getProject(), bitbucketConfiguration.getRepository(), commit, reportKey);
         String body = objectMapper.writeValueAsString(codeInsightReport);
         Request req = new Request.Builder()
@@ -198,19 +245,6 @@ class BitbucketCloudClient implements BitbucketClient {
         }
     }
 
-    void deleteExistingReport(String commit, String reportKey) throws IOException {
-        Request req = new Request.Builder()
-                .delete()
-                .url(format("https://api.bitbucket.org/2.0/repositories/%s/%s/commit/%s/reports/%s", bitbucketConfiguration.getProject(), bitbucketConfiguration.getRepository(), commit, reportKey))
-                .build();
-
-        LOGGER.info("Deleting existing reports on bitbucket cloud");
-
-        try (Response response = okHttpClient.newCall(req).execute()) {
-            // we dont need to validate the output here since most of the time this call will just return a 404
-        }
-    }
-
     void validate(Response response) {
         if (!response.isSuccessful()) {
             String error = Optional.ofNullable(response.body()).map(b -> {
@@ -224,16 +258,22 @@ class BitbucketCloudClient implements BitbucketClient {
         }
     }
 
-    private static class AuthToken {
+    static class AuthToken {
 
         private final String accessToken;
+        private final Long expiresIn;
 
-        AuthToken(@JsonProperty("access_token") String accessToken) {
+        AuthToken(@JsonProperty("access_token") String accessToken, @JsonProperty("expires_in") Long expiresIn) {
             this.accessToken = accessToken;
+            this.expiresIn = expiresIn;
         }
 
         String getAccessToken() {
             return accessToken;
         }
+
+        Long getExpiresIn() {
+            return expiresIn;
+        }
     }
 }
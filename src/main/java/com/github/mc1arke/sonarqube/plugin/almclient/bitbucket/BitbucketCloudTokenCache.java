@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient.bitbucket;
+
+import org.sonar.api.ce.ComputeEngineSide;
+import org.sonar.api.server.ServerSide;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Retains the OAuth bearer tokens negotiated for each Bitbucket Cloud client ID so that each decoration doesn't need to
+ * negotiate a new token. Tokens are reused until shortly before they expire, and concurrent requests for a token that
+ * needs refreshed wait for a single negotiation to complete rather than each negotiating their own token.
+ */
+@ServerSide
+@ComputeEngineSide
+public class BitbucketCloudTokenCache {
+
+    private static final Duration EXPIRY_MARGIN = Duration.ofMinutes(1);
+
+    private final Clock clock;
+    private final Map<String, TokenHolder> tokens = new ConcurrentHashMap<>();
+
+    public BitbucketCloudTokenCache() {
+        this(Clock.systemUTC());
+    }
+
+    BitbucketCloudTokenCache(Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Retrieve the cached token for the given client credentials, negotiating a new token if no token is cached, the
+     * cached token was negotiated with a different secret, or the cached token is close to expiring.
+     */
+    String getToken(String clientId, String clientSecret, Supplier<BitbucketCloudClient.AuthToken> tokenNegotiator) {
+        return tokens.computeIfAbsent(clientId, k -> new TokenHolder()).getToken(clientSecret, tokenNegotiator);
+    }
+
+    /**
+     * Remove the given token from the cache, as long as it's still the token being held for the client, so that a
+     * rejected token doesn't cause a token that's just been refreshed by another request to be discarded.
+     */
+    void invalidate(String clientId, String token) {
+        TokenHolder tokenHolder = tokens.get(clientId);
+        if (null != tokenHolder) {
+            tokenHolder.invalidate(token);
+        }
+    }
+
+    private final class TokenHolder {
+
+        private String clientSecret;
+        private String token;
+        private Instant expiresAt;
+
+        synchronized String getToken(String clientSecret, Supplier<BitbucketCloudClient.AuthToken> tokenNegotiator) {
+            if (null != token && Objects.equals(this.clientSecret, clientSecret) && clock.instant().isBefore(expiresAt)) {
+                return token;
+            }
+
+            BitbucketCloudClient.AuthToken authToken = tokenNegotiator.get();
+            this.clientSecret = clientSecret;
+            this.token = authToken.getAccessToken();
+            this.expiresAt = null == authToken.getExpiresIn() ? clock.instant()
+                    : clock.instant().plusSeconds(authToken.getExpiresIn()).minus(EXPIRY_MARGIN);
+            return token;
+        }
+
+        synchronized void invalidate(String token) {
+            if (Objects.equals(this.token, token)) {
+                this.token = null;
+                this.expiresAt = null;
+            }
+        }
+    }
+}
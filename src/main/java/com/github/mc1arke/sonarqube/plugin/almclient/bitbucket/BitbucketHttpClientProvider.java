@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient.bitbucket;
+
+import com.github.mc1arke.sonarqube.plugin.CommunityBranchPlugin;
+import okhttp3.ConnectionPool;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Response;
+import okhttp3.logging.HttpLoggingInterceptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.Startable;
+import org.sonar.api.ce.ComputeEngineSide;
+import org.sonar.api.config.Configuration;
+import org.sonar.api.server.ServerSide;
+import org.sonar.db.alm.setting.AlmSettingDto;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Retains a single OkHttp client for each Bitbucket ALM setting so that decorations against the same Bitbucket instance
+ * share a connection pool and dispatcher. Callers should add any authentication to a copy of the client created through
+ * {@link OkHttpClient#newBuilder()}, which continues to share the pool and dispatcher of the original client. A client is
+ * replaced when the ALM setting it was created for is updated.
+ */
+@ComputeEngineSide
+@ServerSide
+public class BitbucketHttpClientProvider implements Startable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BitbucketHttpClientProvider.class);
+
+    private static final int DEFAULT_MAX_IDLE_CONNECTIONS = 50;
+    private static final int DEFAULT_KEEP_ALIVE_SECONDS = 60;
+
+    private final Configuration configuration;
+    private final HttpClientBuilderFactory httpClientBuilderFactory;
+    private final Map<String, SharedHttpClient> httpClients = new ConcurrentHashMap<>();
+
+    public BitbucketHttpClientProvider(Configuration configuration, HttpClientBuilderFactory httpClientBuilderFactory) {
+        super();
+        this.configuration = configuration;
+        this.httpClientBuilderFactory = httpClientBuilderFactory;
+    }
+
+    public OkHttpClient getHttpClient(AlmSettingDto almSettingDto) {
+        String fingerprint = almSettingDto.getUrl() + "|" + almSettingDto.getUpdatedAt();
+        return httpClients.compute(String.valueOf(almSettingDto.getUuid()), (uuid, existingClient) -> {
+            if (null != existingClient && existingClient.getFingerprint().equals(fingerprint)) {
+                return existingClient;
+            }
+
+            if (null != existingClient) {
+                LOGGER.debug("ALM setting {} has changed since its HTTP client was created. Replacing client", uuid);
+                existingClient.close();
+            }
+            return new SharedHttpClient(fingerprint, createHttpClient());
+        }).getHttpClient();
+    }
+
+    @Override
+    public void start() {
+        // no-op: clients are created lazily on first use
+    }
+
+    @Override
+    public void stop() {
+        httpClients.values().forEach(SharedHttpClient::close);
+        httpClients.clear();
+    }
+
+    private OkHttpClient createHttpClient() {
+        HttpLoggingInterceptor httpLoggingInterceptor = new HttpLoggingInterceptor(LOGGER::debug);
+        httpLoggingInterceptor.setLevel(HttpLoggingInterceptor.Level.BODY);
+        // authorisation is added ahead of this client's interceptors, so credentials would otherwise be logged
+        httpLoggingInterceptor.redactHeader("Authorization");
+
+        return httpClientBuilderFactory.createClientBuilder()
+                .connectionPool(new ConnectionPool(configuration.getInt(CommunityBranchPlugin.HTTP_MAX_IDLE_CONNECTIONS).orElse(DEFAULT_MAX_IDLE_CONNECTIONS),
+                        configuration.getInt(CommunityBranchPlugin.HTTP_IDLE_CONNECTION_TIMEOUT).orElse(DEFAULT_KEEP_ALIVE_SECONDS), TimeUnit.SECONDS))
+                .addInterceptor(chain -> logIfDebugEnabled(httpLoggingInterceptor, chain))
+                .build();
+    }
+
+    /**
+     * Only pass requests through the body logging interceptor when debug logging is enabled, since logging the body
+     * requires the request and response bodies to be buffered.
+     */
+    private static Response logIfDebugEnabled(Interceptor loggingInterceptor, Interceptor.Chain chain) throws IOException {
+        if (LOGGER.isDebugEnabled()) {
+            return loggingInterceptor.intercept(chain);
+        }
+        return chain.proceed(chain.request());
+    }
+
+    private static final class SharedHttpClient {
+
+        private final String fingerprint;
+        private final OkHttpClient httpClient;
+
+        private SharedHttpClient(String fingerprint, OkHttpClient httpClient) {
+            this.fingerprint = fingerprint;
+            this.httpClient = httpClient;
+        }
+
+        String getFingerprint() {
+            return fingerprint;
+        }
+
+        OkHttpClient getHttpClient() {
+            return httpClient;
+        }
+
+        void close() {
+            // calls that are still in progress keep their connections, only idle connections and threads are released
+            httpClient.connectionPool().evictAll();
+            httpClient.dispatcher().executorService().shutdown();
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient.bitbucket;
+
+import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.model.AnnotationUploadLimit;
+import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.model.server.ServerProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.Startable;
+import org.sonar.api.ce.ComputeEngineSide;
+import org.sonar.api.server.ServerSide;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Retains the version and capabilities reported by each Bitbucket Server instance so that decorations don't need to
+ * query the server properties every time they check whether Code Insights are supported. Capabilities older than the
+ * refresh interval are reloaded by the next decoration that requests them, using that decoration's own client, with
+ * the previous values returned to any decoration requesting them whilst the reload is in progress, or if the reload
+ * fails. Capabilities older than the expiry interval are always reloaded before being returned. No loader is retained
+ * beyond the call it was passed to, so the cache never holds on to a decoration's client or credentials.
+ */
+@ServerSide
+@ComputeEngineSide
+public class BitbucketServerCapabilityCache implements Startable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BitbucketServerCapabilityCache.class);
+
+    static final Duration REFRESH_AFTER = Duration.ofMinutes(15);
+    static final Duration EXPIRE_AFTER = Duration.ofHours(1);
+    static final AnnotationUploadLimit ANNOTATION_UPLOAD_LIMIT = new AnnotationUploadLimit(1000, 1000);
+
+    private final Clock clock;
+    private final Map<String, CapabilityHolder> capabilities = new ConcurrentHashMap<>();
+
+    public BitbucketServerCapabilityCache() {
+        this(Clock.systemUTC());
+    }
+
+    BitbucketServerCapabilityCache(Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Retrieve the capabilities of the Bitbucket Server at the given URL, using the loader to query the server if the
+     * capabilities haven't been cached or have expired.
+     */
+    Capabilities getCapabilities(String url, ServerPropertiesLoader loader) throws IOException {
+        return capabilities.computeIfAbsent(url, k -> new CapabilityHolder()).getCapabilities(url, loader);
+    }
+
+    /**
+     * Retrieve the capabilities of the Bitbucket Server at the given URL, as long as they have already been loaded and
+     * haven't expired.
+     */
+    Optional<Capabilities> getCachedCapabilities(String url) {
+        return Optional.ofNullable(capabilities.get(url))
+                .map(CapabilityHolder::getCachedCapabilities)
+                .filter(cachedCapabilities -> !isOlderThan(cachedCapabilities, EXPIRE_AFTER));
+    }
+
+    @Override
+    public void start() {
+        // no-op: capabilities are loaded on first use
+    }
+
+    @Override
+    public void stop() {
+        capabilities.clear();
+    }
+
+    private boolean isOlderThan(Capabilities cachedCapabilities, Duration age) {
+        return !clock.instant().isBefore(cachedCapabilities.getLoadedAt().plus(age));
+    }
+
+    private Capabilities load(ServerPropertiesLoader loader) throws IOException {
+        ServerProperties serverProperties = loader.load();
+        return new Capabilities(serverProperties.getVersion(), serverProperties.hasCodeInsightsApi(),
+                ANNOTATION_UPLOAD_LIMIT, clock.instant());
+    }
+
+    @FunctionalInterface
+    interface ServerPropertiesLoader {
+        ServerProperties load() throws IOException;
+    }
+
+    private final class CapabilityHolder {
+
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+        private volatile Capabilities cachedCapabilities;
+
+        Capabilities getCachedCapabilities() {
+            return cachedCapabilities;
+        }
+
+        Capabilities getCapabilities(String url, ServerPropertiesLoader loader) throws IOException {
+            Capabilities currentCapabilities = cachedCapabilities;
+            if (null == currentCapabilities || isOlderThan(currentCapabilities, EXPIRE_AFTER)) {
+                return loadExpired(loader);
+            }
+            if (isOlderThan(currentCapabilities, REFRESH_AFTER) && refreshing.compareAndSet(false, true)) {
+                try {
+                    currentCapabilities = load(loader);
+                    cachedCapabilities = currentCapabilities;
+                } catch (IOException | RuntimeException ex) {
+                    LOGGER.warn("Could not refresh Bitbucket Server capabilities for {}. Previously loaded capabilities will be used", url, ex);
+                } finally {
+                    refreshing.set(false);
+                }
+            }
+            return currentCapabilities;
+        }
+
+        private synchronized Capabilities loadExpired(ServerPropertiesLoader loader) throws IOException {
+            Capabilities currentCapabilities = cachedCapabilities;
+            if (null == currentCapabilities || isOlderThan(currentCapabilities, EXPIRE_AFTER)) {
+                currentCapabilities = load(loader);
+                cachedCapabilities = currentCapabilities;
+            }
+            return currentCapabilities;
+        }
+    }
+
+    static final class Capabilities {
+
+        private final String version;
+        private final boolean codeInsightsSupported;
+        private final AnnotationUploadLimit annotationUploadLimit;
+        private final Instant loadedAt;
+
+        private Capabilities(String version, boolean codeInsightsSupported, AnnotationUploadLimit annotationUploadLimit, Instant loadedAt) {
+            this.version = version;
+            this.codeInsightsSupported = codeInsightsSupported;
+            this.annotationUploadLimit = annotationUploadLimit;
+            this.loadedAt = loadedAt;
+        }
+
+        String getVersion() {
+            return version;
+        }
+
+        boolean isCodeInsightsSupported() {
+            return codeInsightsSupported;
+        }
+
+        AnnotationUploadLimit getAnnotationUploadLimit() {
+            return annotationUploadLimit;
+        }
+
+        Instant getLoadedAt() {
+            return loadedAt;
+        }
+    }
+}
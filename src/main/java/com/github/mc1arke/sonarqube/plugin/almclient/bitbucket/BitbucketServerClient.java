@@ -27,11 +27,13 @@ import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.model.ReportData;
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.model.ReportStatus;
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.model.Repository;
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.model.server.Annotation;
+import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.model.server.AnnotationsResponse;
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.model.server.BitbucketServerConfiguration;
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.model.server.CreateAnnotationsRequest;
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.model.server.CreateReportRequest;
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.model.server.ErrorResponse;
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.model.server.ServerProperties;
+import okhttp3.HttpUrl;
 import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
@@ -42,6 +44,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.time.Instant;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
@@ -59,11 +62,14 @@ class BitbucketServerClient implements BitbucketClient {
     private final BitbucketServerConfiguration config;
     private final ObjectMapper objectMapper;
     private final OkHttpClient okHttpClient;
+    private final BitbucketServerCapabilityCache capabilityCache;
 
-    BitbucketServerClient(BitbucketServerConfiguration config, ObjectMapper objectMapper, OkHttpClient okHttpClient) {
+    BitbucketServerClient(BitbucketServerConfiguration config, ObjectMapper objectMapper, OkHttpClient okHttpClient,
+                          BitbucketServerCapabilityCache capabilityCache) {
         this.config = config;
         this.objectMapper = objectMapper;
         this.okHttpClient = okHttpClient;
+        this.capabilityCache = capabilityCache;
     }
 
     @Override
@@ -92,11 +98,43 @@ class BitbucketServerClient implements BitbucketClient {
     }
 
     @Override
-    public void deleteAnnotations(String commit, String reportKey) throws IOException {
+    public Set<CodeInsightsAnnotation> retrieveAnnotations(String commit, String reportKey) throws IOException {
         Request req = new Request.Builder()
-                .delete()
+                .get()
                 .url(format("%s/rest/insights/1.0/projects/%s/repos/%s/commits/%s/reports/%s/annotations", config.getUrl(), config.getProject(), config.getRepository(), commit, reportKey))
                 .build();
+        try (Response response = okHttpClient.newCall(req).execute()) {
+            if (response.code() == 404) {
+                return Set.of();
+            }
+            validate(response);
+
+            AnnotationsResponse annotationsResponse = objectMapper.reader().forType(AnnotationsResponse.class)
+                    .readValue(Optional.ofNullable(response.body())
+                            .orElseThrow(() -> new IllegalStateException("No response body from BitBucket"))
+                            .string());
+            return new HashSet<>(annotationsResponse.getAnnotations());
+        }
+    }
+
+    @Override
+    public boolean replacesAnnotationsOnUpload() {
+        // annotations can't be edited, and uploading one with an external id already on the report is rejected
+        return false;
+    }
+
+    @Override
+    public void deleteAnnotations(String commit, String reportKey, Set<String> externalIds) throws IOException {
+        if (externalIds.isEmpty()) {
+            return;
+        }
+        HttpUrl.Builder urlBuilder = HttpUrl.get(format("%s/rest/insights/1.0/projects/%s/repos/%s/commits/%s/reports/%s/annotations", config.getUrl(), config.getProject(), config.getRepository(), commit, reportKey))
+                .newBuilder();
+        externalIds.forEach(externalId -> urlBuilder.addQueryParameter("externalId", externalId));
+        Request req = new Request.Builder()
+                .delete()
+                .url(urlBuilder.build())
+                .build();
         try (Response response = okHttpClient.newCall(req).execute()) {
             validate(response);
         }
@@ -139,12 +177,12 @@ class BitbucketServerClient implements BitbucketClient {
     @Override
     public boolean supportsCodeInsights() {
         try {
-            ServerProperties server = getServerProperties();
+            BitbucketServerCapabilityCache.Capabilities capabilities = capabilityCache.getCapabilities(config.getUrl(), this::getServerProperties);
             LOGGER.atDebug()
                     .setMessage("Your Bitbucket Server installation is version {}")
-                    .addArgument(server::getVersion)
+                    .addArgument(capabilities::getVersion)
                     .log();
-            if (server.hasCodeInsightsApi()) {
+            if (capabilities.isCodeInsightsSupported()) {
                 return true;
             } else {
                 LOGGER.atInfo().setMessage("Bitbucket Server version is to old. {} is the minimum version that supports Code Insights")
@@ -160,7 +198,9 @@ class BitbucketServerClient implements BitbucketClient {
 
     @Override
     public AnnotationUploadLimit getAnnotationUploadLimit() {
-        return new AnnotationUploadLimit(1000, 1000);
+        return capabilityCache.getCachedCapabilities(config.getUrl())
+                .map(BitbucketServerCapabilityCache.Capabilities::getAnnotationUploadLimit)
+                .orElse(BitbucketServerCapabilityCache.ANNOTATION_UPLOAD_LIMIT);
     }
 
     @Override
@@ -24,9 +24,10 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.mc1arke.sonarqube.plugin.InvalidConfigurationException;
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.model.BitbucketConfiguration;
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.model.server.BitbucketServerConfiguration;
+import okhttp3.Interceptor;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
-import okhttp3.logging.HttpLoggingInterceptor;
+import okhttp3.Response;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -38,6 +39,8 @@ import org.sonar.db.alm.setting.AlmSettingDto;
 import org.sonar.db.alm.setting.ProjectAlmSettingDto;
 
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import static java.lang.String.format;
 
@@ -47,12 +50,17 @@ public class DefaultBitbucketClientFactory implements BitbucketClientFactory {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(DefaultBitbucketClientFactory.class);
 
-    private final HttpClientBuilderFactory httpClientBuilderFactory;
+    private final BitbucketHttpClientProvider bitbucketHttpClientProvider;
     private final Settings settings;
+    private final BitbucketCloudTokenCache bitbucketCloudTokenCache;
+    private final BitbucketServerCapabilityCache bitbucketServerCapabilityCache;
 
-    public DefaultBitbucketClientFactory(Settings settings, HttpClientBuilderFactory httpClientBuilderFactory) {
-        this.httpClientBuilderFactory = httpClientBuilderFactory;
+    public DefaultBitbucketClientFactory(Settings settings, BitbucketHttpClientProvider bitbucketHttpClientProvider, BitbucketCloudTokenCache bitbucketCloudTokenCache,
+                                         BitbucketServerCapabilityCache bitbucketServerCapabilityCache) {
+        this.bitbucketHttpClientProvider = bitbucketHttpClientProvider;
         this.settings = settings;
+        this.bitbucketCloudTokenCache = bitbucketCloudTokenCache;
+        this.bitbucketServerCapabilityCache = bitbucketServerCapabilityCache;
     }
 
     @Override
@@ -61,7 +69,7 @@ public class DefaultBitbucketClientFactory implements BitbucketClientFactory {
                 .orElseThrow(() -> new InvalidConfigurationException(InvalidConfigurationException.Scope.PROJECT, "ALM Repo must be set in configuration"));
 
         ObjectMapper objectMapper = createObjectMapper();
-        OkHttpClient.Builder clientBuilder = createBaseClientBuilder(httpClientBuilderFactory);
+        OkHttpClient baseClient = bitbucketHttpClientProvider.getHttpClient(almSettingDto);
 
         if (almSettingDto.getAlm() == ALM.BITBUCKET_CLOUD) {
             String appId = Optional.ofNullable(StringUtils.trimToNull(almSettingDto.getAppId()))
@@ -70,8 +78,12 @@ public class DefaultBitbucketClientFactory implements BitbucketClientFactory {
                     .orElseThrow(() -> new InvalidConfigurationException(InvalidConfigurationException.Scope.GLOBAL, "Client ID must be set in configuration"));
             String clientSecret = Optional.ofNullable(StringUtils.trimToNull(almSettingDto.getDecryptedClientSecret(settings.getEncryption())))
                     .orElseThrow(() -> new InvalidConfigurationException(InvalidConfigurationException.Scope.GLOBAL, "Client Secret must be set in configuration"));
-            String bearerToken = BitbucketCloudClient.negotiateBearerToken(clientId, clientSecret, objectMapper, clientBuilder.build());
-            return new BitbucketCloudClient(objectMapper, createAuthorisingClient(clientBuilder, bearerToken), new BitbucketConfiguration(appId, almRepo));
+            Supplier<String> bearerTokenSupplier = () -> bitbucketCloudTokenCache.getToken(clientId, clientSecret,
+                    () -> BitbucketCloudClient.negotiateBearerToken(clientId, clientSecret, objectMapper, baseClient));
+            // retrieve the token up-front so invalid credentials are reported when the client is created
+            bearerTokenSupplier.get();
+            return new BitbucketCloudClient(objectMapper, createBearerTokenClient(baseClient, bearerTokenSupplier,
+                    token -> bitbucketCloudTokenCache.invalidate(clientId, token)), new BitbucketConfiguration(appId, almRepo));
         } else {
             String almSlug = Optional.ofNullable(StringUtils.trimToNull(projectAlmSettingDto.getAlmSlug()))
                     .orElseThrow(() -> new InvalidConfigurationException(InvalidConfigurationException.Scope.PROJECT, "ALM slug must be set in configuration"));
@@ -79,7 +91,8 @@ public class DefaultBitbucketClientFactory implements BitbucketClientFactory {
                     .orElseThrow(() -> new InvalidConfigurationException(InvalidConfigurationException.Scope.GLOBAL, "URL must be set in configuration"));
             String personalAccessToken = Optional.ofNullable(StringUtils.trimToNull(almSettingDto.getDecryptedPersonalAccessToken(settings.getEncryption())))
                     .orElseThrow(() -> new InvalidConfigurationException(InvalidConfigurationException.Scope.PROJECT, "Personal access token must be set in configuration"));
-            return new BitbucketServerClient(new BitbucketServerConfiguration(almRepo, almSlug, url), objectMapper, createAuthorisingClient(clientBuilder, personalAccessToken));
+            return new BitbucketServerClient(new BitbucketServerConfiguration(almRepo, almSlug, url), objectMapper, createAuthorisingClient(baseClient, personalAccessToken),
+                    bitbucketServerCapabilityCache);
         }
     }
 
@@ -90,19 +103,50 @@ public class DefaultBitbucketClientFactory implements BitbucketClientFactory {
                 .findAndRegisterModules();
     }
 
-    private static OkHttpClient.Builder createBaseClientBuilder(HttpClientBuilderFactory httpClientBuilderFactory) {
-        HttpLoggingInterceptor httpLoggingInterceptor = new HttpLoggingInterceptor(LOGGER::debug);
-        httpLoggingInterceptor.setLevel(HttpLoggingInterceptor.Level.BODY);
-        return httpClientBuilderFactory.createClientBuilder().addInterceptor(httpLoggingInterceptor);
+    /**
+     * Create a client that authorises each request with the current cached bearer token. If Bitbucket rejects the token
+     * then it's removed from the cache and the request is retried once with a newly negotiated token.
+     */
+    private static OkHttpClient createBearerTokenClient(OkHttpClient baseClient, Supplier<String> bearerTokenSupplier,
+                                                        Consumer<String> tokenInvalidator) {
+        return withAuthorisation(baseClient, chain -> {
+                    String bearerToken = bearerTokenSupplier.get();
+                    Response response = chain.proceed(authorise(chain.request(), bearerToken));
+                    if (response.code() != 401) {
+                        return response;
+                    }
+
+                    LOGGER.debug("Bitbucket Cloud rejected the cached bearer token, negotiating a new token");
+                    tokenInvalidator.accept(bearerToken);
+                    response.close();
+                    return chain.proceed(authorise(chain.request(), bearerTokenSupplier.get()));
+                });
+    }
+
+    private static Request authorise(Request request, String bearerToken) {
+        return request.newBuilder()
+                .addHeader("Authorization", format("Bearer %s", bearerToken))
+                .addHeader("Accept", "application/json")
+                .build();
     }
 
-    private static OkHttpClient createAuthorisingClient(OkHttpClient.Builder clientBuilder, String bearerToken) {
-        return clientBuilder.addInterceptor(chain -> {
+    private static OkHttpClient createAuthorisingClient(OkHttpClient baseClient, String bearerToken) {
+        return withAuthorisation(baseClient, chain -> {
                     Request newRequest = chain.request().newBuilder()
                             .addHeader("Authorization", format("Bearer %s", bearerToken))
                             .addHeader("Accept", "application/json")
                             .build();
                     return chain.proceed(newRequest);
-                }).build();
+                });
+    }
+
+    /**
+     * Adds the authorising interceptor ahead of the interceptors on the shared client, so requests are throttled and
+     * recorded against the credential they're sent with rather than only the host they're sent to.
+     */
+    private static OkHttpClient withAuthorisation(OkHttpClient baseClient, Interceptor authorisingInterceptor) {
+        OkHttpClient.Builder builder = baseClient.newBuilder();
+        builder.interceptors().add(0, authorisingInterceptor);
+        return builder.build();
     }
 }
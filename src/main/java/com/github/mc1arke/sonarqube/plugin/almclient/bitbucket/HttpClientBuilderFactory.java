@@ -18,15 +18,48 @@
  */
 package com.github.mc1arke.sonarqube.plugin.almclient.bitbucket;
 
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmClientMetrics;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmRequestThrottler;
+import okhttp3.Interceptor;
 import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
 import org.sonar.api.ce.ComputeEngineSide;
 import org.sonar.api.server.ServerSide;
 
+import java.io.IOException;
+
 @ServerSide
 @ComputeEngineSide
 public class HttpClientBuilderFactory {
 
     public OkHttpClient.Builder createClientBuilder() {
-        return new OkHttpClient.Builder();
+        return new OkHttpClient.Builder()
+                .addInterceptor(HttpClientBuilderFactory::throttle)
+                .addInterceptor(HttpClientBuilderFactory::recordApiCall);
+    }
+
+    private static Response throttle(Interceptor.Chain chain) throws IOException {
+        Request request = chain.request();
+        AlmRequestThrottler throttler = AlmRequestThrottler.forRequest(request.url().host(), request.url().encodedPath(), request::header);
+        for (int attempt = 1; ; attempt++) {
+            throttler.acquire();
+            Response response = chain.proceed(request);
+            throttler.update(response::header);
+            if (attempt >= AlmRequestThrottler.MAX_ATTEMPTS || !AlmRequestThrottler.isRetryable(response.code(), request.method(), response::header)) {
+                return response;
+            }
+            throttler.backoff(attempt, response::header);
+            response.close();
+        }
+    }
+
+    private static Response recordApiCall(Interceptor.Chain chain) throws IOException {
+        Request request = chain.request();
+        Response response = chain.proceed(request);
+        long requestBytes = null == request.body() ? 0 : request.body().contentLength();
+        long responseBytes = null == response.body() ? 0 : response.body().contentLength();
+        AlmClientMetrics.recordApiCall(request.method(), request.url().toString(), requestBytes, responseBytes);
+        return response;
     }
 }
@@ -20,10 +20,12 @@ package com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.model;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 
+import java.util.Objects;
+
 /**
  * Class for reusing models between the cloud and the server version
  */
-public class CodeInsightsAnnotation {
+public abstract class CodeInsightsAnnotation {
     private final int line;
     private final String message;
     private final String path;
@@ -36,6 +38,11 @@ public class CodeInsightsAnnotation {
         this.severity = severity;
     }
 
+    /**
+     * The identifier SonarQube assigns to the annotation, which is the key of the issue being annotated.
+     */
+    public abstract String getExternalId();
+
     @JsonProperty("line")
     public int getLine() {
         return line;
@@ -56,4 +63,22 @@ public class CodeInsightsAnnotation {
         return severity;
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        CodeInsightsAnnotation that = (CodeInsightsAnnotation) o;
+        return line == that.line && Objects.equals(message, that.message) && Objects.equals(path, that.path)
+                && Objects.equals(severity, that.severity);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(line, message, path, severity);
+    }
+
 }
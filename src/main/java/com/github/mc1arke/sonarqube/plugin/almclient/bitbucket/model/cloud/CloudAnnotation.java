@@ -22,19 +22,21 @@ import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.model.CodeInsightsAnnotation;
 
+import java.util.Objects;
+
 public class CloudAnnotation extends CodeInsightsAnnotation {
     private final String externalId;
     private final String link;
     private final String annotationType;
 
     @JsonCreator
-    public CloudAnnotation(String externalId,
-                           int line,
-                           String link,
-                           String message,
-                           String path,
-                           String severity,
-                           String annotationType) {
+    public CloudAnnotation(@JsonProperty("external_id") String externalId,
+                           @JsonProperty("line") int line,
+                           @JsonProperty("link") String link,
+                           @JsonProperty("summary") String message,
+                           @JsonProperty("path") String path,
+                           @JsonProperty("severity") String severity,
+                           @JsonProperty("annotation_type") String annotationType) {
         super(line, message, path, severity);
         this.externalId = externalId;
         this.link = link;
@@ -47,6 +49,7 @@ public class CloudAnnotation extends CodeInsightsAnnotation {
         return super.getMessage();
     }
 
+    @Override
     @JsonProperty("external_id")
     public String getExternalId() {
         return externalId;
@@ -61,4 +64,19 @@ public class CloudAnnotation extends CodeInsightsAnnotation {
     public String getAnnotationType() {
         return annotationType;
     }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!super.equals(o)) {
+            return false;
+        }
+        CloudAnnotation that = (CloudAnnotation) o;
+        return Objects.equals(externalId, that.externalId) && Objects.equals(link, that.link)
+                && Objects.equals(annotationType, that.annotationType);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(super.hashCode(), externalId, link, annotationType);
+    }
 }
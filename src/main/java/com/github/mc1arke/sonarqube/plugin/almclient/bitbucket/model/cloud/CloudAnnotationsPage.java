@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.model.cloud;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+import java.util.Optional;
+
+public class CloudAnnotationsPage {
+    private final List<CloudAnnotation> values;
+    private final String next;
+
+    @JsonCreator
+    public CloudAnnotationsPage(@JsonProperty("values") List<CloudAnnotation> values, @JsonProperty("next") String next) {
+        this.values = Optional.ofNullable(values).orElse(List.of());
+        this.next = next;
+    }
+
+    public List<CloudAnnotation> getValues() {
+        return values;
+    }
+
+    public Optional<String> getNext() {
+        return Optional.ofNullable(next);
+    }
+}
@@ -22,6 +22,8 @@ import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.model.CodeInsightsAnnotation;
 
+import java.util.Objects;
+
 public class Annotation extends CodeInsightsAnnotation {
     private final String externalId;
 
@@ -32,10 +34,10 @@ public class Annotation extends CodeInsightsAnnotation {
     @JsonCreator
     public Annotation(@JsonProperty("externalId") String externalId,
                       @JsonProperty("line") int line,
-                      String link,
-                      String message,
-                      String path,
-                      String severity,
+                      @JsonProperty("link") String link,
+                      @JsonProperty("message") String message,
+                      @JsonProperty("path") String path,
+                      @JsonProperty("severity") String severity,
                       @JsonProperty("type") String type) {
         super(line, message, path, severity);
         this.externalId = externalId;
@@ -43,6 +45,7 @@ public class Annotation extends CodeInsightsAnnotation {
         this.type = type;
     }
 
+    @Override
     public String getExternalId() {
         return externalId;
     }
@@ -54,4 +57,18 @@ public class Annotation extends CodeInsightsAnnotation {
     public String getType() {
         return type;
     }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!super.equals(o)) {
+            return false;
+        }
+        Annotation that = (Annotation) o;
+        return Objects.equals(externalId, that.externalId) && Objects.equals(link, that.link) && Objects.equals(type, that.type);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(super.hashCode(), externalId, link, type);
+    }
 }
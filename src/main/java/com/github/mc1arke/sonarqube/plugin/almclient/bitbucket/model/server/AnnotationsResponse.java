@@ -1,5 +1,5 @@
 /*
- * Copyright (C) 2021 Michael Clarke
+ * Copyright (C) 2024 Michael Clarke
  *
  * This program is free software; you can redistribute it and/or
  * modify it under the terms of the GNU Lesser General Public
@@ -16,23 +16,23 @@
  * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
  *
  */
-package com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model;
+package com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.model.server;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 import java.util.List;
+import java.util.Optional;
 
-public class Commits {
-
-    private final List<Commit> value;
+public class AnnotationsResponse {
+    private final List<Annotation> annotations;
 
     @JsonCreator
-    public Commits(@JsonProperty("value") List<Commit> value) {
-        this.value = value;
+    public AnnotationsResponse(@JsonProperty("annotations") List<Annotation> annotations) {
+        this.annotations = Optional.ofNullable(annotations).orElse(List.of());
     }
 
-    public List<Commit> getValue() {
-        return value;
+    public List<Annotation> getAnnotations() {
+        return annotations;
     }
 }
@@ -18,7 +18,9 @@
  */
 package com.github.mc1arke.sonarqube.plugin.almclient.github;
 
+import com.github.mc1arke.sonarqube.plugin.CommunityBranchPlugin;
 import com.github.mc1arke.sonarqube.plugin.InvalidConfigurationException;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmClientMetrics;
 import com.github.mc1arke.sonarqube.plugin.almclient.github.v4.GraphqlGithubClient;
 import com.github.mc1arke.sonarqube.plugin.almclient.github.v4.GraphqlProvider;
 import org.sonar.api.ce.ComputeEngineSide;
@@ -52,10 +54,17 @@ public class DefaultGithubClientFactory implements GithubClientFactory {
         String appId = Optional.ofNullable(almSettingDto.getAppId()).orElseThrow(() -> new InvalidConfigurationException(InvalidConfigurationException.Scope.GLOBAL, "No App ID has been set for Github connections"));
 
         try {
-            RepositoryAuthenticationToken repositoryAuthenticationToken =
-                    githubApplicationAuthenticationProvider.getInstallationToken(apiUrl, appId, apiPrivateKey, projectPath);
+            RepositoryAuthenticationToken repositoryAuthenticationToken = AlmClientMetrics.time("authenticate",
+                    () -> githubApplicationAuthenticationProvider.getInstallationToken(apiUrl, appId, apiPrivateKey, projectPath));
 
-            return new GraphqlGithubClient(graphqlProvider, apiUrl, repositoryAuthenticationToken);
+            int concurrentRequests = Optional.ofNullable(settings.getString(String.format(CommunityBranchPlugin.DECORATION_CONCURRENT_REQUESTS, "github")))
+                    .map(Integer::parseInt)
+                    .orElse(GraphqlGithubClient.DEFAULT_CONCURRENT_REQUESTS);
+
+            return new GraphqlGithubClient(graphqlProvider, apiUrl, repositoryAuthenticationToken, concurrentRequests, rejectedToken -> {
+                githubApplicationAuthenticationProvider.invalidateInstallationToken(apiUrl, appId, projectPath, rejectedToken);
+                return githubApplicationAuthenticationProvider.getInstallationToken(apiUrl, appId, apiPrivateKey, projectPath).getAuthenticationToken();
+            });
         } catch (IOException ex) {
             throw new InvalidConfigurationException(InvalidConfigurationException.Scope.PROJECT, "Could not create Github client - " + ex.getMessage(), ex);
         }
@@ -25,4 +25,10 @@ public interface GithubApplicationAuthenticationProvider {
     RepositoryAuthenticationToken getInstallationToken(String apiUrl, String appId, String apiPrivateKey,
                                                        String projectPath) throws IOException;
 
+    /**
+     * Discard a token Github has rejected so the next call to {@link #getInstallationToken(String, String, String, String)}
+     * mints a new token rather than returning the rejected one.
+     */
+    void invalidateInstallationToken(String apiUrl, String appId, String projectPath, String token);
+
 }
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient.github.v3;
+
+import com.github.mc1arke.sonarqube.plugin.almclient.github.v3.model.AppInstallation;
+import com.github.mc1arke.sonarqube.plugin.almclient.github.v3.model.Repository;
+import org.sonar.api.ce.ComputeEngineSide;
+import org.sonar.api.server.ServerSide;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Retains the installation each Github repository was found under, and the access tokens minted for each installation,
+ * so that subsequent analyses don't need to scan every installation of the application to find the target repository.
+ * Entries are keyed on the API URL and application ID the lookup was performed for, so multiple Github configurations
+ * can share the same cache.
+ */
+@ServerSide
+@ComputeEngineSide
+public class InstallationTokenCache {
+
+    private final Map<String, InstallationRepository> installationRepositories = new ConcurrentHashMap<>();
+    private final Map<String, InstallationToken> installationTokens = new ConcurrentHashMap<>();
+
+    Optional<InstallationRepository> getInstallationRepository(String applicationKey, String projectPath) {
+        return Optional.ofNullable(installationRepositories.get(applicationKey + "/" + projectPath));
+    }
+
+    void putInstallationRepository(String applicationKey, String projectPath, AppInstallation installation, Repository repository) {
+        installationRepositories.put(applicationKey + "/" + projectPath, new InstallationRepository(installation, repository));
+    }
+
+    /**
+     * Retrieve a cached token for the given installation, as long as the token will still be valid at the requested time.
+     */
+    Optional<String> getToken(String applicationKey, long installationId, Instant validUntil) {
+        return Optional.ofNullable(installationTokens.get(applicationKey + "#" + installationId))
+                .filter(token -> token.getExpiresAt().isAfter(validUntil))
+                .map(InstallationToken::getToken);
+    }
+
+    void putToken(String applicationKey, long installationId, String token, Instant expiresAt) {
+        installationTokens.put(applicationKey + "#" + installationId, new InstallationToken(token, expiresAt));
+    }
+
+    /**
+     * Remove a token Github has rejected, unless it has already been replaced by a newly minted token.
+     */
+    void invalidateToken(String applicationKey, long installationId, String token) {
+        installationTokens.computeIfPresent(applicationKey + "#" + installationId, (key, cachedToken) -> cachedToken.getToken().equals(token) ? null : cachedToken);
+    }
+
+    void invalidate(String applicationKey, String projectPath, long installationId) {
+        installationRepositories.remove(applicationKey + "/" + projectPath);
+        installationTokens.remove(applicationKey + "#" + installationId);
+    }
+
+    static final class InstallationRepository {
+
+        private final AppInstallation installation;
+        private final Repository repository;
+
+        private InstallationRepository(AppInstallation installation, Repository repository) {
+            this.installation = installation;
+            this.repository = repository;
+        }
+
+        AppInstallation getInstallation() {
+            return installation;
+        }
+
+        Repository getRepository() {
+            return repository;
+        }
+    }
+
+    private static final class InstallationToken {
+
+        private final String token;
+        private final Instant expiresAt;
+
+        private InstallationToken(String token, Instant expiresAt) {
+            this.token = token;
+            this.expiresAt = expiresAt;
+        }
+
+        String getToken() {
+            return token;
+        }
+
+        Instant getExpiresAt() {
+            return expiresAt;
+        }
+    }
+}
@@ -21,6 +21,7 @@ package com.github.mc1arke.sonarqube.plugin.almclient.github.v3;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.mc1arke.sonarqube.plugin.InvalidConfigurationException;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmClientMetrics;
 import com.github.mc1arke.sonarqube.plugin.almclient.LinkHeaderReader;
 import com.github.mc1arke.sonarqube.plugin.almclient.github.GithubApplicationAuthenticationProvider;
 import com.github.mc1arke.sonarqube.plugin.almclient.github.RepositoryAuthenticationToken;
@@ -33,10 +34,13 @@ import io.jsonwebtoken.impl.DefaultJwtBuilder;
 import org.bouncycastle.openssl.PEMKeyPair;
 import org.bouncycastle.openssl.PEMParser;
 import org.bouncycastle.openssl.jcajce.JcaPEMKeyConverter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.sonar.api.ce.ComputeEngineSide;
 import org.sonar.api.server.ServerSide;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.StringReader;
@@ -44,6 +48,7 @@ import java.net.HttpURLConnection;
 import java.net.URLConnection;
 import java.security.PrivateKey;
 import java.time.Clock;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.Date;
@@ -53,49 +58,132 @@ import java.util.Optional;
 @ComputeEngineSide
 public class RestApplicationAuthenticationProvider implements GithubApplicationAuthenticationProvider {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(RestApplicationAuthenticationProvider.class);
+
     private static final String ACCEPT_HEADER = "Accept";
     private static final String AUTHORIZATION_HEADER = "Authorization";
     private static final String BEARER_AUTHORIZATION_HEADER_PREFIX = "Bearer ";
 
     private static final String APP_PREVIEW_ACCEPT_HEADER = "application/vnd.github.machine-man-preview+json";
 
+    private static final Duration TOKEN_REFRESH_MARGIN = Duration.ofMinutes(5);
+
     private final Clock clock;
     private final LinkHeaderReader linkHeaderReader;
     private final UrlConnectionProvider urlProvider;
+    private final InstallationTokenCache installationTokenCache;
     private final ObjectMapper objectMapper;
 
-    public RestApplicationAuthenticationProvider(Clock clock, LinkHeaderReader linkHeaderReader, UrlConnectionProvider urlProvider) {
+    public RestApplicationAuthenticationProvider(Clock clock, LinkHeaderReader linkHeaderReader, UrlConnectionProvider urlProvider,
+                                                 InstallationTokenCache installationTokenCache) {
         super();
         this.clock = clock;
         this.urlProvider = urlProvider;
         this.linkHeaderReader = linkHeaderReader;
+        this.installationTokenCache = installationTokenCache;
         this.objectMapper = new ObjectMapper().disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
     }
 
     @Override
     public RepositoryAuthenticationToken getInstallationToken(String apiUrl, String appId, String apiPrivateKey,
                                                               String projectPath) throws IOException {
+        String v3Url = getV3Url(apiUrl);
+        String applicationKey = v3Url + "|" + appId;
+
+        Optional<InstallationTokenCache.InstallationRepository> cachedInstallationRepository = installationTokenCache.getInstallationRepository(applicationKey, projectPath);
+        if (cachedInstallationRepository.isPresent()) {
+            Optional<String> cachedToken = findCachedToken(applicationKey, cachedInstallationRepository.get().getInstallation());
+            if (cachedToken.isPresent()) {
+                return createRepositoryAuthenticationToken(cachedInstallationRepository.get().getRepository(), cachedToken.get());
+            }
+        }
 
         Instant issued = clock.instant().minus(10, ChronoUnit.SECONDS);
         Instant expiry = issued.plus(2, ChronoUnit.MINUTES);
         String jwtToken = new DefaultJwtBuilder().setIssuedAt(Date.from(issued)).setExpiration(Date.from(expiry))
                 .claim("iss", appId).signWith(createPrivateKey(apiPrivateKey), SignatureAlgorithm.RS256).compact();
 
-        Optional<RepositoryAuthenticationToken> repositoryAuthenticationToken = findTokenFromAppInstallationList(getV3Url(apiUrl) + "/app/installations", jwtToken, projectPath);
+        if (cachedInstallationRepository.isPresent()) {
+            Optional<RepositoryAuthenticationToken> refreshedToken = refreshCachedInstallationToken(applicationKey, projectPath, cachedInstallationRepository.get(), jwtToken);
+            if (refreshedToken.isPresent()) {
+                return refreshedToken.get();
+            }
+        }
+
+        Optional<RepositoryAuthenticationToken> repositoryAuthenticationToken = findTokenFromRepositoryInstallation(v3Url, jwtToken, applicationKey, projectPath);
+        if (repositoryAuthenticationToken.isEmpty()) {
+            repositoryAuthenticationToken = findTokenFromAppInstallationList(v3Url + "/app/installations", jwtToken, applicationKey, projectPath);
+        }
 
         return repositoryAuthenticationToken.orElseThrow(() -> new InvalidConfigurationException(InvalidConfigurationException.Scope.PROJECT,
             "No token could be found with access to the requested repository using the given application ID and key"));
     }
 
-    private Optional<RepositoryAuthenticationToken> findTokenFromAppInstallationList(String apiUrl, String jwtToken, String projectPath) throws IOException {
+    @Override
+    public void invalidateInstallationToken(String apiUrl, String appId, String projectPath, String token) {
+        String applicationKey = getV3Url(apiUrl) + "|" + appId;
+        installationTokenCache.getInstallationRepository(applicationKey, projectPath)
+                .ifPresent(installationRepository -> installationTokenCache.invalidateToken(applicationKey, installationRepository.getInstallation().getId(), token));
+    }
+
+    private Optional<RepositoryAuthenticationToken> refreshCachedInstallationToken(String applicationKey, String projectPath,
+                                                                                  InstallationTokenCache.InstallationRepository installationRepository,
+                                                                                  String jwtToken) throws IOException {
+        AppInstallation installation = installationRepository.getInstallation();
+        URLConnection accessTokenConnection = createAccessTokenConnection(installation, jwtToken);
+        AppToken appToken;
+        try {
+            appToken = readAppToken(applicationKey, installation, accessTokenConnection);
+        } catch (IOException ex) {
+            if (((HttpURLConnection) accessTokenConnection).getResponseCode() != HttpURLConnection.HTTP_UNAUTHORIZED) {
+                throw ex;
+            }
+            installationTokenCache.invalidate(applicationKey, projectPath, installation.getId());
+            return Optional.empty();
+        }
+
+        return Optional.of(createRepositoryAuthenticationToken(installationRepository.getRepository(), appToken.getToken()));
+    }
+
+    private Optional<RepositoryAuthenticationToken> findTokenFromRepositoryInstallation(String apiUrl, String jwtToken, String applicationKey, String projectPath) throws IOException {
+        String repositoryUrl = apiUrl + "/repos/" + projectPath;
+        URLConnection installationConnection = urlProvider.createUrlConnection(repositoryUrl + "/installation");
+        installationConnection.setRequestProperty(ACCEPT_HEADER, APP_PREVIEW_ACCEPT_HEADER);
+        installationConnection.setRequestProperty(AUTHORIZATION_HEADER, BEARER_AUTHORIZATION_HEADER_PREFIX + jwtToken);
+
+        AppInstallation installation;
+        try (Reader reader = new InputStreamReader(openResponse(installationConnection))) {
+            installation = objectMapper.readerFor(AppInstallation.class).readValue(reader);
+        } catch (IOException ex) {
+            if (((HttpURLConnection) installationConnection).getResponseCode() != HttpURLConnection.HTTP_NOT_FOUND) {
+                throw ex;
+            }
+            LOGGER.debug("Could not retrieve installation for repository {}. Searching all application installations", projectPath);
+            return Optional.empty();
+        }
+
+        String token = getInstallationToken(applicationKey, installation, jwtToken);
+
+        URLConnection repositoryConnection = urlProvider.createUrlConnection(repositoryUrl);
+        repositoryConnection.setRequestProperty(ACCEPT_HEADER, APP_PREVIEW_ACCEPT_HEADER);
+        repositoryConnection.setRequestProperty(AUTHORIZATION_HEADER, BEARER_AUTHORIZATION_HEADER_PREFIX + token);
+
+        try (Reader reader = new InputStreamReader(openResponse(repositoryConnection))) {
+            Repository repository = objectMapper.readerFor(Repository.class).readValue(reader);
+            installationTokenCache.putInstallationRepository(applicationKey, projectPath, installation, repository);
+            return Optional.of(createRepositoryAuthenticationToken(repository, token));
+        }
+    }
+
+    private Optional<RepositoryAuthenticationToken> findTokenFromAppInstallationList(String apiUrl, String jwtToken, String applicationKey, String projectPath) throws IOException {
         URLConnection appConnection = urlProvider.createUrlConnection(apiUrl);
         appConnection.setRequestProperty(ACCEPT_HEADER, APP_PREVIEW_ACCEPT_HEADER);
         appConnection.setRequestProperty(AUTHORIZATION_HEADER, BEARER_AUTHORIZATION_HEADER_PREFIX + jwtToken);
 
-        try (Reader reader = new InputStreamReader(appConnection.getInputStream())) {
+        try (Reader reader = new InputStreamReader(openResponse(appConnection))) {
             AppInstallation[] appInstallations = objectMapper.readerFor(AppInstallation[].class).readValue(reader);
             for (AppInstallation appInstallation : appInstallations) {
-                Optional<RepositoryAuthenticationToken> repositoryAuthenticationToken = findAppTokenFromAppInstallation(appInstallation, jwtToken, projectPath);
+                Optional<RepositoryAuthenticationToken> repositoryAuthenticationToken = findAppTokenFromAppInstallation(appInstallation, jwtToken, applicationKey, projectPath);
 
                 if (repositoryAuthenticationToken.isPresent()) {
                     return repositoryAuthenticationToken;
@@ -108,47 +196,66 @@ public class RestApplicationAuthenticationProvider implements GithubApplicationA
             return Optional.empty();
         }
 
-        return findTokenFromAppInstallationList(nextLink.get(), jwtToken, projectPath);
+        return findTokenFromAppInstallationList(nextLink.get(), jwtToken, applicationKey, projectPath);
     }
 
-    private Optional<RepositoryAuthenticationToken> findAppTokenFromAppInstallation(AppInstallation installation, String jwtToken, String projectPath) throws IOException {
+    private Optional<RepositoryAuthenticationToken> findAppTokenFromAppInstallation(AppInstallation installation, String jwtToken, String applicationKey, String projectPath) throws IOException {
+        String token = getInstallationToken(applicationKey, installation, jwtToken);
+
+        Optional<Repository> repository = findRepository(token, installation.getRepositoriesUrl(), projectPath);
+        if (repository.isEmpty()) {
+            return Optional.empty();
+        }
+
+        installationTokenCache.putInstallationRepository(applicationKey, projectPath, installation, repository.get());
+        return Optional.of(createRepositoryAuthenticationToken(repository.get(), token));
+    }
+
+    private String getInstallationToken(String applicationKey, AppInstallation installation, String jwtToken) throws IOException {
+        Optional<String> cachedToken = findCachedToken(applicationKey, installation);
+        if (cachedToken.isPresent()) {
+            return cachedToken.get();
+        }
+        return readAppToken(applicationKey, installation, createAccessTokenConnection(installation, jwtToken)).getToken();
+    }
+
+    private Optional<String> findCachedToken(String applicationKey, AppInstallation installation) {
+        return installationTokenCache.getToken(applicationKey, installation.getId(), clock.instant().plus(TOKEN_REFRESH_MARGIN));
+    }
+
+    private URLConnection createAccessTokenConnection(AppInstallation installation, String jwtToken) throws IOException {
         URLConnection accessTokenConnection = urlProvider.createUrlConnection(installation.getAccessTokensUrl());
         ((HttpURLConnection) accessTokenConnection).setRequestMethod("POST");
         accessTokenConnection.setRequestProperty(ACCEPT_HEADER, APP_PREVIEW_ACCEPT_HEADER);
         accessTokenConnection
                 .setRequestProperty(AUTHORIZATION_HEADER, BEARER_AUTHORIZATION_HEADER_PREFIX + jwtToken);
+        return accessTokenConnection;
+    }
 
-        try (Reader reader = new InputStreamReader(accessTokenConnection.getInputStream())) {
+    private AppToken readAppToken(String applicationKey, AppInstallation installation, URLConnection accessTokenConnection) throws IOException {
+        try (Reader reader = new InputStreamReader(openResponse(accessTokenConnection))) {
             AppToken appToken = objectMapper.readerFor(AppToken.class).readValue(reader);
-
-            String targetUrl = installation.getRepositoriesUrl();
-
-            Optional<RepositoryAuthenticationToken> potentialRepositoryAuthenticationToken = findRepositoryAuthenticationToken(appToken, targetUrl, projectPath);
-
-            if (potentialRepositoryAuthenticationToken.isPresent()) {
-                return potentialRepositoryAuthenticationToken;
+            if (null != appToken.getExpiresAt()) {
+                installationTokenCache.putToken(applicationKey, installation.getId(), appToken.getToken(), Instant.parse(appToken.getExpiresAt()));
             }
-
+            return appToken;
         }
-
-        return Optional.empty();
     }
 
-    private Optional<RepositoryAuthenticationToken> findRepositoryAuthenticationToken(AppToken appToken, String targetUrl,
-                                                                                      String projectPath) throws IOException {
+    private Optional<Repository> findRepository(String token, String targetUrl, String projectPath) throws IOException {
         URLConnection installationRepositoriesConnection = urlProvider.createUrlConnection(targetUrl);
         ((HttpURLConnection) installationRepositoriesConnection).setRequestMethod("GET");
         installationRepositoriesConnection.setRequestProperty(ACCEPT_HEADER, APP_PREVIEW_ACCEPT_HEADER);
         installationRepositoriesConnection.setRequestProperty(AUTHORIZATION_HEADER,
-                                                              BEARER_AUTHORIZATION_HEADER_PREFIX + appToken.getToken());
+                                                              BEARER_AUTHORIZATION_HEADER_PREFIX + token);
 
         try (Reader installationRepositoriesReader = new InputStreamReader(
-                installationRepositoriesConnection.getInputStream())) {
+                openResponse(installationRepositoriesConnection))) {
             InstallationRepositories installationRepositories =
                     objectMapper.readerFor(InstallationRepositories.class).readValue(installationRepositoriesReader);
             for (Repository repository : installationRepositories.getRepositories()) {
                 if (projectPath.equals(repository.getFullName())) {
-                    return Optional.of(new RepositoryAuthenticationToken(repository.getNodeId(), appToken.getToken(), repository.getHtmlUrl(), repository.getName(), repository.getOwner().getLogin()));
+                    return Optional.of(repository);
                 }
             }
 
@@ -160,7 +267,26 @@ public class RestApplicationAuthenticationProvider implements GithubApplicationA
             return Optional.empty();
         }
 
-        return findRepositoryAuthenticationToken(appToken, nextLink.get(), projectPath);
+        return findRepository(token, nextLink.get(), projectPath);
+    }
+
+    /**
+     * Opens the response to a request, recording the call against the current decoration's metrics once the response
+     * has been read, or straight away if Github responded with an error.
+     */
+    private static InputStream openResponse(URLConnection connection) throws IOException {
+        String method = connection instanceof HttpURLConnection ? ((HttpURLConnection) connection).getRequestMethod() : "GET";
+        String url = String.valueOf(connection.getURL());
+        try {
+            return AlmClientMetrics.recordApiCall(method, url, 0, connection.getInputStream());
+        } catch (IOException ex) {
+            AlmClientMetrics.recordApiCall(method, url, 0, 0);
+            throw ex;
+        }
+    }
+
+    private static RepositoryAuthenticationToken createRepositoryAuthenticationToken(Repository repository, String token) {
+        return new RepositoryAuthenticationToken(repository.getNodeId(), token, repository.getHtmlUrl(), repository.getName(), repository.getOwner().getLogin());
     }
 
     private static String getV3Url(String apiUrl) {
@@ -23,17 +23,24 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 
 public class AppInstallation {
 
+    private final long id;
     private final String repositoriesUrl;
     private final String accessTokensUrl;
 
     @JsonCreator
-    public AppInstallation(@JsonProperty("repositories_url") String repositoriesUrl,
+    public AppInstallation(@JsonProperty("id") long id,
+                           @JsonProperty("repositories_url") String repositoriesUrl,
                            @JsonProperty("access_tokens_url") String accessTokensUrl) {
         super();
+        this.id = id;
         this.repositoriesUrl = repositoriesUrl;
         this.accessTokensUrl = accessTokensUrl;
     }
 
+    public long getId() {
+        return id;
+    }
+
     public String getRepositoriesUrl() {
         return repositoriesUrl;
     }
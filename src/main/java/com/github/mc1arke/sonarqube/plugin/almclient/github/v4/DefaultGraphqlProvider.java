@@ -18,19 +18,30 @@
  */
 package com.github.mc1arke.sonarqube.plugin.almclient.github.v4;
 
+import com.fasterxml.jackson.core.io.IOContext;
+import com.fasterxml.jackson.core.io.InputDecorator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmClientMetrics;
 import io.aexp.nodes.graphql.GraphQLRequestEntity;
 import io.aexp.nodes.graphql.GraphQLTemplate;
 import io.aexp.nodes.graphql.InputObject;
+import io.aexp.nodes.graphql.ObjectMapperFactory;
+import io.aexp.nodes.graphql.internal.DefaultObjectMapperFactory;
 import org.sonar.api.ce.ComputeEngineSide;
 import org.sonar.api.server.ServerSide;
 
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+
 @ComputeEngineSide
 @ServerSide
 public final class DefaultGraphqlProvider implements GraphqlProvider {
 
     @Override
     public GraphQLTemplate createGraphQLTemplate() {
-        return new GraphQLTemplate();
+        return new GraphQLTemplate(new ResponseSizeRecordingObjectMapperFactory());
     }
 
     @Override
@@ -42,4 +53,98 @@ public final class DefaultGraphqlProvider implements GraphqlProvider {
     public <T> InputObject.Builder<T> createInputObject() {
         return new InputObject.Builder<>();
     }
+
+    /**
+     * The GraphQL client doesn't expose the responses it receives, so the size of each response is counted as it's
+     * parsed and recorded against the current decoration's metrics. The client parses each response with the mapper it
+     * serialises the request with, only using the deserializer mapper for the parts of the response already parsed.
+     */
+    private static final class ResponseSizeRecordingObjectMapperFactory implements ObjectMapperFactory {
+
+        private final ObjectMapperFactory delegate = new DefaultObjectMapperFactory();
+
+        @Override
+        public ObjectMapper newSerializerMapper() {
+            ObjectMapper objectMapper = delegate.newSerializerMapper();
+            return objectMapper.copyWith(objectMapper.getFactory().rebuild().inputDecorator(new ResponseSizeRecordingDecorator()).build());
+        }
+
+        @Override
+        public ObjectMapper newDeserializerMapper() {
+            return delegate.newDeserializerMapper();
+        }
+    }
+
+    private static final class ResponseSizeRecordingDecorator extends InputDecorator {
+
+        @Override
+        public InputStream decorate(IOContext context, InputStream in) {
+            return in;
+        }
+
+        @Override
+        public InputStream decorate(IOContext context, byte[] src, int offset, int length) {
+            return null;
+        }
+
+        @Override
+        public Reader decorate(IOContext context, Reader reader) {
+            return new ResponseSizeRecordingReader(reader);
+        }
+    }
+
+    /**
+     * Counts the UTF-8 encoded size of the characters read, since the client decodes responses as UTF-8 before they're
+     * deserialised.
+     */
+    private static final class ResponseSizeRecordingReader extends FilterReader {
+
+        private long responseBytes;
+        private boolean closed;
+
+        private ResponseSizeRecordingReader(Reader reader) {
+            super(reader);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int value = super.read();
+            if (value >= 0) {
+                responseBytes += encodedLength((char) value);
+            }
+            return value;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            int count = super.read(buffer, offset, length);
+            for (int i = offset; i < offset + count; i++) {
+                responseBytes += encodedLength(buffer[i]);
+            }
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                if (!closed) {
+                    closed = true;
+                    AlmClientMetrics.recordBytesReceived(responseBytes);
+                }
+            }
+        }
+
+        private static int encodedLength(char character) {
+            if (character < 0x80) {
+                return 1;
+            }
+            if (character < 0x800 || Character.isSurrogate(character)) {
+                // each half of a surrogate pair accounts for half of the pair's four byte encoding
+                return 2;
+            }
+            return 3;
+        }
+    }
 }
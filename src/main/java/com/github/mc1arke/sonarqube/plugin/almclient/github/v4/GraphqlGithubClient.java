@@ -18,6 +18,9 @@
  */
 package com.github.mc1arke.sonarqube.plugin.almclient.github.v4;
 
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmClientMetrics;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmRequestThrottler;
+import com.github.mc1arke.sonarqube.plugin.almclient.ConcurrentRequestExecutor;
 import com.github.mc1arke.sonarqube.plugin.almclient.github.GithubClient;
 import com.github.mc1arke.sonarqube.plugin.almclient.github.RepositoryAuthenticationToken;
 import com.github.mc1arke.sonarqube.plugin.almclient.github.model.Annotation;
@@ -30,20 +33,31 @@ import io.aexp.nodes.graphql.GraphQLRequestEntity;
 import io.aexp.nodes.graphql.GraphQLResponseEntity;
 import io.aexp.nodes.graphql.GraphQLTemplate;
 import io.aexp.nodes.graphql.InputObject;
+import io.aexp.nodes.graphql.exceptions.GraphQLException;
 import io.aexp.nodes.graphql.internal.Error;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.math.NumberUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiFunction;
+import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
 
 import static org.apache.commons.lang.ArrayUtils.isEmpty;
@@ -54,27 +68,48 @@ public class GraphqlGithubClient implements GithubClient {
     private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ssXXX")
             .withZone(ZoneId.of("UTC"));
     private static final String INPUT = "input";
+    private static final int MINIMIZE_COMMENT_BATCH_SIZE = 25;
+    private static final int ANNOTATION_BATCH_SIZE = 50;
+    private static final String AUTHORIZATION_HEADER = "Authorization";
+    private static final String BEARER_AUTHORIZATION_HEADER_PREFIX = "Bearer ";
+    public static final int DEFAULT_CONCURRENT_REQUESTS = 4;
 
     private final GraphqlProvider graphqlProvider;
     private final RepositoryAuthenticationToken repositoryAuthenticationToken;
     private final String apiUrl;
+    private final int concurrentRequests;
+    private final TokenRefresher tokenRefresher;
+    // requests share the headers, so a token replaced after Github rejects it is used by every subsequent request
+    private final Map<String, String> headers = new ConcurrentHashMap<>();
 
 
     public GraphqlGithubClient(GraphqlProvider graphqlProvider, String apiUrl,
                                RepositoryAuthenticationToken repositoryAuthenticationToken) {
+        this(graphqlProvider, apiUrl, repositoryAuthenticationToken, DEFAULT_CONCURRENT_REQUESTS);
+    }
+
+    public GraphqlGithubClient(GraphqlProvider graphqlProvider, String apiUrl,
+                               RepositoryAuthenticationToken repositoryAuthenticationToken, int concurrentRequests) {
+        this(graphqlProvider, apiUrl, repositoryAuthenticationToken, concurrentRequests, null);
+    }
+
+    public GraphqlGithubClient(GraphqlProvider graphqlProvider, String apiUrl,
+                               RepositoryAuthenticationToken repositoryAuthenticationToken, int concurrentRequests,
+                               TokenRefresher tokenRefresher) {
         super();
         this.graphqlProvider = graphqlProvider;
         this.apiUrl = apiUrl;
         this.repositoryAuthenticationToken = repositoryAuthenticationToken;
+        this.concurrentRequests = Math.max(1, concurrentRequests);
+        this.tokenRefresher = tokenRefresher;
+        this.headers.put(AUTHORIZATION_HEADER, BEARER_AUTHORIZATION_HEADER_PREFIX + repositoryAuthenticationToken.getAuthenticationToken());
+        this.headers.put("Accept", "application/vnd.github.antiope-preview+json");
     }
 
     @Override
     public String createCheckRun(CheckRunDetails checkRunDetails, boolean postSummaryComment) throws IOException {
-        Map<String, String> headers = new HashMap<>();
-        headers.put("Authorization", "Bearer " + repositoryAuthenticationToken.getAuthenticationToken());
-        headers.put("Accept", "application/vnd.github.antiope-preview+json");
-
-        List<InputObject<Object>> annotations = createAnnotations(checkRunDetails.getAnnotations());
+        List<List<Annotation>> annotationBatches = partitionAnnotations(checkRunDetails.getAnnotations());
+        List<InputObject<Object>> annotations = createAnnotations(annotationBatches.isEmpty() ? List.of() : annotationBatches.get(0));
 
         InputObject.Builder<Object> checkRunOutputContentBuilder = graphqlProvider.createInputObject().put("title", checkRunDetails.getTitle())
                 .put("summary", checkRunDetails.getSummary())
@@ -111,8 +146,8 @@ public class GraphqlGithubClient implements GithubClient {
         GraphQLResponseEntity<CreateCheckRun> graphQLResponseEntity = executeRequest((r, t) -> graphqlProvider.createGraphQLTemplate().mutate(r, t),
                                                                                      graphQLRequestEntity, CreateCheckRun.class);
 
-        reportRemainingAnnotations(checkRunDetails.getAnnotations(), graphQLResponseEntity.getResponse().getCheckRun().getId(),
-                              inputObjectArguments, checkRunOutputContentBuilder, graphQLRequestEntityBuilder);
+        reportRemainingAnnotations(annotationBatches, graphQLResponseEntity.getResponse().getCheckRun().getId(),
+                              inputObjectArguments, checkRunDetails, graphqlUrl, headers);
 
 
         if (postSummaryComment) {
@@ -129,16 +164,19 @@ public class GraphqlGithubClient implements GithubClient {
     }
 
     private void postSummaryComment(String graphqlUrl, Map<String, String> headers, int pullRequestKey, String summary) throws IOException {
-        String login = getLogin(graphqlUrl, headers);
-
-        GetRepository.PullRequest pullRequest = getPullRequest(graphqlUrl, headers, pullRequestKey);
+        SummaryCommentContext summaryCommentContext = querySummaryCommentContext(graphqlUrl, headers, pullRequestKey, null, true);
+        String login = summaryCommentContext.getViewer().getLogin().replace("[bot]", "");
+        GetRepository.PullRequest pullRequest = summaryCommentContext.getRepository().getPullRequest();
         String pullRequestId = pullRequest.getId();
 
-        getComments(pullRequest, graphqlUrl, headers, pullRequestKey).stream()
+        List<String> commentIdsToMinimize = getComments(pullRequest, graphqlUrl, headers, pullRequestKey).stream()
             .filter(c -> "Bot".equalsIgnoreCase(c.getAuthor().getType()) && login.equalsIgnoreCase(c.getAuthor().getLogin()))
             .filter(c -> !c.isMinimized())
             .map(Comments.CommentNode::getId)
-            .forEach(commentId -> this.minimizeComment(graphqlUrl, headers, commentId));
+            .collect(Collectors.toList());
+        for (int i = 0; i < commentIdsToMinimize.size(); i += MINIMIZE_COMMENT_BATCH_SIZE) {
+            minimizeComments(graphqlUrl, headers, commentIdsToMinimize.subList(i, Math.min(i + MINIMIZE_COMMENT_BATCH_SIZE, commentIdsToMinimize.size())));
+        }
 
         InputObject.Builder<Object> repositoryInputObjectBuilder = graphqlProvider.createInputObject();
 
@@ -164,75 +202,99 @@ public class GraphqlGithubClient implements GithubClient {
         List<Comments.CommentNode> comments = new ArrayList<>(pullRequest.getComments().getNodes());
 
         PageInfo currentPageInfo = pullRequest.getComments().getPageInfo();
-        if (currentPageInfo.hasNextPage()) {
-            GetRepository.PullRequest response = getPullRequest(graphqlUrl, headers, pullRequestKey, currentPageInfo);
-            comments.addAll(getComments(response, graphqlUrl, headers, pullRequestKey));
+        while (currentPageInfo.hasNextPage()) {
+            Comments page = querySummaryCommentContext(graphqlUrl, headers, pullRequestKey, currentPageInfo.getEndCursor(), false)
+                    .getRepository().getPullRequest().getComments();
+            comments.addAll(page.getNodes());
+            currentPageInfo = page.getPageInfo();
         }
 
         return comments;
     }
 
-    private GetRepository.PullRequest getPullRequest(String graphqlUrl, Map<String, String> headers, int pullRequestKey) throws MalformedURLException {
-        return getPullRequest(graphqlUrl, headers, pullRequestKey, null);
-    }
+    /**
+     * Retrieves a page of the Pull Request's comments. The first page is requested alongside the authenticated user's
+     * login and the Pull Request's ID so all the details needed for posting a summary are retrieved in one request, whereas
+     * subsequent pages only request the comments connection.
+     */
+    private SummaryCommentContext querySummaryCommentContext(String graphqlUrl, Map<String, String> headers, int pullRequestKey,
+                                                             String afterCursor, boolean includePullRequestDetails) throws MalformedURLException {
+        StringBuilder query = new StringBuilder("query {");
+        if (includePullRequestDetails) {
+            query.append(" viewer { login }");
+        }
+        query.append(" repository (owner:\"").append(escapeGraphqlString(repositoryAuthenticationToken.getOwnerName()))
+                .append("\",name:\"").append(escapeGraphqlString(repositoryAuthenticationToken.getRepositoryName()))
+                .append("\") { pullRequest (number:").append(pullRequestKey).append(") {");
+        if (includePullRequestDetails) {
+            query.append(" id");
+        }
+        query.append(" comments (first:100");
+        if (null != afterCursor) {
+            query.append(",after:\"").append(escapeGraphqlString(afterCursor)).append('"');
+        }
+        query.append(") { nodes { id isMinimized author { __typename login } } pageInfo { hasNextPage endCursor } } } } }");
 
-    private GetRepository.PullRequest getPullRequest(String graphqlUrl, Map<String, String> headers, int pullRequestKey, PageInfo pageInfo) throws MalformedURLException {
-        GraphQLRequestEntity getPullRequest =
-                graphqlProvider.createRequestBuilder()
-                        .url(graphqlUrl)
-                        .headers(headers)
-                        .request(GetRepository.class)
-                        .arguments(
-                                new Arguments("repository", new Argument<>("owner", repositoryAuthenticationToken.getOwnerName()), new Argument<>("name", repositoryAuthenticationToken.getRepositoryName())),
-                                new Arguments("repository.pullRequest", new Argument<>("number", pullRequestKey)),
-                                new Arguments("repository.pullRequest.comments", new Argument<>("first", 100), new Argument<>("after", Optional.ofNullable(pageInfo).map(PageInfo::getEndCursor).orElse(null)))
-                        )
-                        .build();
-
-        return executeRequest((r, t) -> graphqlProvider.createGraphQLTemplate().query(r, t), getPullRequest, GetRepository.class).getResponse().getPullRequest();
+        GraphQLRequestEntity graphQLRequestEntity = graphqlProvider.createRequestBuilder()
+                .url(graphqlUrl)
+                .headers(headers)
+                .request(query.toString())
+                .build();
+
+        return executeRequest((r, t) -> graphqlProvider.createGraphQLTemplate().query(r, t), graphQLRequestEntity, SummaryCommentContext.class).getResponse();
     }
 
-    private void minimizeComment(String graphqlUrl, Map<String, String> headers, String commentId) {
-            InputObject<Object> input = graphqlProvider.createInputObject()
-                .put("subjectId", commentId)
-                .put("classifier", CommentClassifiers.OUTDATED)
-                .build();
+    /**
+     * Minimizes a batch of comments in a single request, using an aliased <code>minimizeComment</code> mutation for each
+     * comment. A comment that can't be minimized doesn't prevent the rest of the batch from being minimized.
+     */
+    private void minimizeComments(String graphqlUrl, Map<String, String> headers, List<String> commentIds) {
+        StringBuilder mutation = new StringBuilder("mutation {");
+        for (int i = 0; i < commentIds.size(); i++) {
+            mutation.append(" minimize").append(i)
+                    .append(": minimizeComment (input:{classifier:").append(CommentClassifiers.OUTDATED)
+                    .append(",subjectId:\"").append(escapeGraphqlString(commentIds.get(i)))
+                    .append("\"}) { clientMutationId }");
+        }
+        mutation.append(" }");
 
         try {
-
             GraphQLRequestEntity graphQLRequestEntity = graphqlProvider.createRequestBuilder()
                 .url(graphqlUrl)
                 .headers(headers)
-                .request(MinimizeComment.class)
-                .arguments(new Arguments("minimizeComment", new Argument<>(INPUT, input)))
+                .request(mutation.toString())
                 .requestMethod(GraphQLTemplate.GraphQLMethod.MUTATE)
                 .build();
 
-            executeRequest((r, t) -> graphqlProvider.createGraphQLTemplate().mutate(r, t), graphQLRequestEntity, MinimizeComment.class);
-
-        } catch (IOException e) {
+            LOGGER.atDebug().setMessage("Using request: {}").addArgument(graphQLRequestEntity::getRequest).log();
+            GraphQLResponseEntity<MinimizeComments> response = executeThrottledRequest((r, t) -> graphqlProvider.createGraphQLTemplate().mutate(r, t),
+                    graphQLRequestEntity, MinimizeComments.class);
+
+            Map<String, MinimizeComment> results = Optional.ofNullable(response.getResponse())
+                    .map(MinimizeComments::getResults)
+                    .orElse(Map.of());
+            for (int i = 0; i < commentIds.size(); i++) {
+                if (null == results.get("minimize" + i)) {
+                    LOGGER.warn("Could not minimize comment {}", commentIds.get(i));
+                }
+            }
+            if (!isEmpty(response.getErrors())) {
+                LOGGER.warn("Errors were returned when minimizing comments: {}", Arrays.toString(response.getErrors()));
+            }
+        } catch (IOException | RuntimeException e) {
             LOGGER.error("Error during minimize comment", e);
         }
     }
 
-    private String getLogin(String graphqlUrl, Map<String, String> headers) throws IOException {
-        GraphQLRequestEntity viewerQuery = graphqlProvider.createRequestBuilder()
-                .url(graphqlUrl)
-                .headers(headers)
-                .request(Viewer.class)
-                .build();
-
-        GraphQLResponseEntity<Viewer> response =
-            executeRequest((r, t) -> graphqlProvider.createGraphQLTemplate().query(r, t), viewerQuery, Viewer.class);
-
-        return response.getResponse().getLogin().replace("[bot]", "");
+    private static String escapeGraphqlString(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
     }
 
-    private static <R> GraphQLResponseEntity<R> executeRequest(
+    private <R> GraphQLResponseEntity<R> executeRequest(
             BiFunction<GraphQLRequestEntity, Class<R>, GraphQLResponseEntity<R>> executor, GraphQLRequestEntity graphQLRequestEntity, Class<R> responseType) {
         LOGGER.atDebug().setMessage("Using request: {}").addArgument(graphQLRequestEntity::getRequest).log();
 
-        GraphQLResponseEntity<R> response = executor.apply(graphQLRequestEntity, responseType);
+        GraphQLResponseEntity<R> response = executeThrottledRequest(executor, graphQLRequestEntity, responseType);
 
         LOGGER.debug("Received response: {}", response);
 
@@ -249,17 +311,129 @@ public class GraphqlGithubClient implements GithubClient {
         return response;
     }
 
-    private void reportRemainingAnnotations(List<Annotation> outstandingAnnotations, String checkRunId,
-                                            Map<String, Object> repositoryInputArguments, InputObject.Builder<Object> outputObjectBuilder,
-                                            GraphQLRequestEntity.RequestBuilder graphQLRequestEntityBuilder) {
+    private <R> GraphQLResponseEntity<R> executeThrottledRequest(
+            BiFunction<GraphQLRequestEntity, Class<R>, GraphQLResponseEntity<R>> executor, GraphQLRequestEntity graphQLRequestEntity, Class<R> responseType) {
+        AlmRequestThrottler throttler = getThrottler(graphQLRequestEntity);
+        boolean reauthenticated = false;
+        for (int attempt = 1; ; attempt++) {
+            throttler.acquire();
+            try {
+                GraphQLResponseEntity<R> response = executor.apply(graphQLRequestEntity, responseType);
+                UnaryOperator<String> responseHeaders = createHeaderLookup(response);
+                throttler.update(responseHeaders);
+                if (attempt < AlmRequestThrottler.MAX_ATTEMPTS && isRateLimited(response)) {
+                    throttler.backoff(attempt, responseHeaders);
+                    continue;
+                }
+                return response;
+            } catch (GraphQLException ex) {
+                int statusCode = NumberUtils.toInt(ex.getStatus(), 0);
+                if (statusCode == HttpURLConnection.HTTP_UNAUTHORIZED && !reauthenticated && null != tokenRefresher) {
+                    reauthenticate(graphQLRequestEntity.getHeaders().get(AUTHORIZATION_HEADER));
+                    reauthenticated = true;
+                    throttler = getThrottler(graphQLRequestEntity);
+                    continue;
+                }
+                if (attempt >= AlmRequestThrottler.MAX_ATTEMPTS || !AlmRequestThrottler.isRetryable(statusCode, "POST", name -> null)) {
+                    throw ex;
+                }
+                throttler.backoff(attempt, name -> null);
+            } finally {
+                // the response size is recorded by the template as the response is read
+                AlmClientMetrics.recordApiCall("POST", graphQLRequestEntity.getUrl().getPath() + "/" + responseType.getSimpleName(),
+                        graphQLRequestEntity.getRequest().length(), 0);
+            }
+        }
+    }
+
+    private static AlmRequestThrottler getThrottler(GraphQLRequestEntity graphQLRequestEntity) {
+        return AlmRequestThrottler.forRequest(graphQLRequestEntity.getUrl().getHost(), graphQLRequestEntity.getUrl().getPath(),
+                Optional.ofNullable(graphQLRequestEntity.getHeaders()).<UnaryOperator<String>>map(headers -> headers::get).orElse(name -> null));
+    }
+
+    /**
+     * Replaces a token Github has rejected, such as an installation token that was revoked before it expired, with a
+     * newly minted token. Where concurrent requests are rejected together, only the first replaces the token and the
+     * others pick up its replacement.
+     */
+    private synchronized void reauthenticate(String rejectedAuthorization) {
+        if (!Objects.equals(headers.get(AUTHORIZATION_HEADER), rejectedAuthorization)) {
+            return;
+        }
+        LOGGER.debug("Github rejected the installation token, requesting a new token");
+        try {
+            String refreshedToken = tokenRefresher.refreshToken(StringUtils.removeStart(rejectedAuthorization, BEARER_AUTHORIZATION_HEADER_PREFIX));
+            headers.put(AUTHORIZATION_HEADER, BEARER_AUTHORIZATION_HEADER_PREFIX + refreshedToken);
+        } catch (IOException ex) {
+            throw new IllegalStateException("Could not refresh the rejected Github installation token", ex);
+        }
+    }
+
+    /**
+     * Github reports GraphQL rate limiting as a successful response containing a <code>RATE_LIMITED</code> error rather
+     * than through the response status. The client library doesn't expose the error type, so the error message is
+     * checked instead.
+     */
+    private static boolean isRateLimited(GraphQLResponseEntity<?> response) {
+        return !isEmpty(response.getErrors()) && Arrays.stream(response.getErrors())
+                .map(Error::getMessage)
+                .anyMatch(message -> null != message && message.toLowerCase(Locale.ENGLISH).contains("rate limit"));
+    }
+
+    private static UnaryOperator<String> createHeaderLookup(GraphQLResponseEntity<?> response) {
+        // the client library only sets the headers on responses containing data, and reading unset headers fails
+        if (null == response.getResponse()) {
+            return name -> null;
+        }
+        Map<String, String> caseInsensitiveHeaders = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        response.getHeaders().forEach((name, values) -> {
+            if (null != name && null != values && !values.isEmpty()) {
+                caseInsensitiveHeaders.put(name, values.get(0));
+            }
+        });
+        return caseInsensitiveHeaders::get;
+    }
 
-        if (outstandingAnnotations.size() <= 50) {
+    /**
+     * Uploads all annotations after the first batch to the check run. Each batch's mutation is built up-front so the
+     * annotation list is only traversed once, and the requests are then sent with bounded concurrency, relying on the
+     * request throttling to back off if Github reports the rate limit has been reached.
+     */
+    private void reportRemainingAnnotations(List<List<Annotation>> annotationBatches, String checkRunId,
+                                            Map<String, Object> repositoryInputArguments, CheckRunDetails checkRunDetails,
+                                            String graphqlUrl, Map<String, String> headers) throws MalformedURLException {
+        int totalAnnotations = annotationBatches.stream().mapToInt(List::size).sum();
+        AtomicInteger acceptedAnnotations = new AtomicInteger(annotationBatches.isEmpty() ? 0 : annotationBatches.get(0).size());
+
+        if (annotationBatches.size() <= 1) {
+            logAcceptedAnnotations(checkRunId, acceptedAnnotations.get(), totalAnnotations);
             return;
         }
 
-        List<Annotation> annotations = outstandingAnnotations.subList(50, outstandingAnnotations.size());
+        List<Runnable> uploads = new ArrayList<>();
+        for (List<Annotation> annotations : annotationBatches.subList(1, annotationBatches.size())) {
+            GraphQLRequestEntity graphQLRequestEntity = createUpdateCheckRunRequest(annotations, checkRunId, repositoryInputArguments,
+                    checkRunDetails, graphqlUrl, headers);
+            uploads.add(() -> {
+                executeRequest((r, t) -> graphqlProvider.createGraphQLTemplate().mutate(r, t), graphQLRequestEntity, UpdateCheckRun.class);
+                acceptedAnnotations.addAndGet(annotations.size());
+            });
+        }
+
+        try {
+            ConcurrentRequestExecutor.runAll(uploads, concurrentRequests);
+        } finally {
+            logAcceptedAnnotations(checkRunId, acceptedAnnotations.get(), totalAnnotations);
+        }
+    }
 
-        InputObject<Object> outputObject = outputObjectBuilder
+    private GraphQLRequestEntity createUpdateCheckRunRequest(List<Annotation> annotations, String checkRunId,
+                                                             Map<String, Object> repositoryInputArguments, CheckRunDetails checkRunDetails,
+                                                             String graphqlUrl, Map<String, String> headers) throws MalformedURLException {
+        // input objects are rendered when the request is sent, so each request needs its own rather than sharing a builder
+        InputObject<Object> outputObject = graphqlProvider.createInputObject()
+                .put("title", checkRunDetails.getTitle())
+                .put("summary", checkRunDetails.getSummary())
                 .put("annotations", createAnnotations(annotations))
                 .build();
 
@@ -271,20 +445,33 @@ public class GraphqlGithubClient implements GithubClient {
                 .put("output", outputObject)
                 .build();
 
-       GraphQLRequestEntity graphQLRequestEntity = graphQLRequestEntityBuilder
-               .request(UpdateCheckRun.class)
-               .arguments(new Arguments("updateCheckRun", new Argument<>(INPUT, repositoryInputObject)))
-                        .requestMethod(GraphQLTemplate.GraphQLMethod.MUTATE)
-                        .build();
+        return graphqlProvider.createRequestBuilder()
+                .url(graphqlUrl)
+                .headers(headers)
+                .request(UpdateCheckRun.class)
+                .arguments(new Arguments("updateCheckRun", new Argument<>(INPUT, repositoryInputObject)))
+                .requestMethod(GraphQLTemplate.GraphQLMethod.MUTATE)
+                .build();
+    }
 
-       executeRequest((r, t) -> graphqlProvider.createGraphQLTemplate().mutate(r, t), graphQLRequestEntity, UpdateCheckRun.class);
+    private static void logAcceptedAnnotations(String checkRunId, int acceptedAnnotations, int totalAnnotations) {
+        if (acceptedAnnotations < totalAnnotations) {
+            LOGGER.warn("{} of {} annotations were accepted for check run {}", acceptedAnnotations, totalAnnotations, checkRunId);
+        } else {
+            LOGGER.info("{} annotations were accepted for check run {}", acceptedAnnotations, checkRunId);
+        }
+    }
 
-       reportRemainingAnnotations(annotations, checkRunId, repositoryInputArguments, outputObjectBuilder, graphQLRequestEntityBuilder);
+    private static List<List<Annotation>> partitionAnnotations(List<Annotation> annotations) {
+        List<List<Annotation>> batches = new ArrayList<>();
+        for (int i = 0; i < annotations.size(); i += ANNOTATION_BATCH_SIZE) {
+            batches.add(annotations.subList(i, Math.min(i + ANNOTATION_BATCH_SIZE, annotations.size())));
+        }
+        return batches;
     }
 
     private List<InputObject<Object>> createAnnotations(List<Annotation> annotations) {
         return annotations.stream()
-                .limit(50)
                 .map(annotation -> {
             InputObject<Object> issueLocation = graphqlProvider.createInputObject()
                     .put("startLine", Optional.ofNullable(annotation.getLine()).orElse(0))
@@ -311,4 +498,12 @@ public class GraphqlGithubClient implements GithubClient {
         return apiUrl;
     }
 
+    /**
+     * Provides a replacement for an authentication token that Github has rejected.
+     */
+    @FunctionalInterface
+    public interface TokenRefresher {
+
+        String refreshToken(String rejectedToken) throws IOException;
+    }
 }
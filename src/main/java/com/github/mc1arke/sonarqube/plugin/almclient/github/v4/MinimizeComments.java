@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient.github.v4;
+
+import com.fasterxml.jackson.annotation.JsonAnySetter;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The response to a mutation that minimizes multiple comments, with the result of each aliased
+ * <code>minimizeComment</code> mutation held against its alias. A mutation that failed has a <code>null</code> result.
+ */
+public class MinimizeComments {
+
+    private final Map<String, MinimizeComment> results = new HashMap<>();
+
+    @JsonAnySetter
+    void addResult(String alias, MinimizeComment result) {
+        results.put(alias, result);
+    }
+
+    public Map<String, MinimizeComment> getResults() {
+        return Collections.unmodifiableMap(results);
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient.github.v4;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Response for the query used before posting a summary comment, which retrieves the authenticated user, the Pull Request
+ * and a page of the Pull Request's comments in a single request. Subsequent comment pages only populate the repository.
+ */
+public class SummaryCommentContext {
+
+    private final Viewer viewer;
+    private final GetRepository repository;
+
+    @JsonCreator
+    public SummaryCommentContext(@JsonProperty("viewer") Viewer viewer, @JsonProperty("repository") GetRepository repository) {
+        this.viewer = viewer;
+        this.repository = repository;
+    }
+
+    public Viewer getViewer() {
+        return viewer;
+    }
+
+    public GetRepository getRepository() {
+        return repository;
+    }
+}
@@ -20,10 +20,11 @@ package com.github.mc1arke.sonarqube.plugin.almclient.gitlab;
 
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.mc1arke.sonarqube.plugin.CommunityBranchPlugin;
 import com.github.mc1arke.sonarqube.plugin.InvalidConfigurationException;
+import com.github.mc1arke.sonarqube.plugin.almclient.HttpClientProvider;
 import com.github.mc1arke.sonarqube.plugin.almclient.LinkHeaderReader;
 import org.apache.commons.lang.StringUtils;
-import org.apache.http.impl.client.HttpClients;
 import org.sonar.api.ce.ComputeEngineSide;
 import org.sonar.api.config.internal.Settings;
 import org.sonar.api.server.ServerSide;
@@ -36,14 +37,18 @@ import java.util.Optional;
 @ComputeEngineSide
 public class DefaultGitlabClientFactory implements GitlabClientFactory {
 
+    private static final int MAXIMUM_PAGE_SIZE = 100;
+
     private final ObjectMapper objectMapper;
     private final LinkHeaderReader linkHeaderReader;
     private final Settings settings;
+    private final HttpClientProvider httpClientProvider;
 
-    public DefaultGitlabClientFactory(LinkHeaderReader linkHeaderReader, Settings settings) {
+    public DefaultGitlabClientFactory(LinkHeaderReader linkHeaderReader, Settings settings, HttpClientProvider httpClientProvider) {
         super();
         this.linkHeaderReader = linkHeaderReader;
         this.settings = settings;
+        this.httpClientProvider = httpClientProvider;
         this.objectMapper = new ObjectMapper()
                 .configure(DeserializationFeature.ACCEPT_EMPTY_ARRAY_AS_NULL_OBJECT, true)
                 .configure(DeserializationFeature.ACCEPT_SINGLE_VALUE_AS_ARRAY, true)
@@ -56,6 +61,9 @@ public class DefaultGitlabClientFactory implements GitlabClientFactory {
                 .orElseThrow(() -> new InvalidConfigurationException(InvalidConfigurationException.Scope.GLOBAL, "ALM URL must be specified"));
         String apiToken = almSettingDto.getDecryptedPersonalAccessToken(settings.getEncryption());
 
-        return new GitlabRestClient(apiURL, apiToken, linkHeaderReader, objectMapper, HttpClients::createSystem);
+        int configuredPageSize = settings.getInt(CommunityBranchPlugin.GITLAB_PAGE_SIZE);
+        int pageSize = configuredPageSize > 0 ? Math.min(configuredPageSize, MAXIMUM_PAGE_SIZE) : MAXIMUM_PAGE_SIZE;
+
+        return new GitlabRestClient(apiURL, apiToken, linkHeaderReader, objectMapper, httpClientProvider.getHttpClient(almSettingDto), pageSize);
     }
 }
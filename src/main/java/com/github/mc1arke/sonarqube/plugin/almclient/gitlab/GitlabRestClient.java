@@ -18,6 +18,8 @@
  */
 package com.github.mc1arke.sonarqube.plugin.almclient.gitlab;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.mc1arke.sonarqube.plugin.almclient.LinkHeaderReader;
 import com.github.mc1arke.sonarqube.plugin.almclient.gitlab.model.Commit;
@@ -31,6 +33,7 @@ import com.github.mc1arke.sonarqube.plugin.almclient.gitlab.model.User;
 import org.apache.http.HttpResponse;
 import org.apache.http.NameValuePair;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
@@ -43,15 +46,22 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.function.Consumer;
-import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 class GitlabRestClient implements GitlabClient {
 
@@ -61,14 +71,16 @@ class GitlabRestClient implements GitlabClient {
     private final String authToken;
     private final ObjectMapper objectMapper;
     private final LinkHeaderReader linkHeaderReader;
-    private final Supplier<CloseableHttpClient> httpClientFactory;
+    private final CloseableHttpClient httpClient;
+    private final int pageSize;
 
-    GitlabRestClient(String baseGitlabApiUrl, String authToken, LinkHeaderReader linkHeaderReader, ObjectMapper objectMapper, Supplier<CloseableHttpClient> httpClientFactory) {
+    GitlabRestClient(String baseGitlabApiUrl, String authToken, LinkHeaderReader linkHeaderReader, ObjectMapper objectMapper, CloseableHttpClient httpClient, int pageSize) {
         this.baseGitlabApiUrl = baseGitlabApiUrl;
         this.authToken = authToken;
         this.linkHeaderReader = linkHeaderReader;
         this.objectMapper = objectMapper;
-        this.httpClientFactory = httpClientFactory;
+        this.httpClient = httpClient;
+        this.pageSize = pageSize;
     }
 
     @Override
@@ -83,12 +95,12 @@ class GitlabRestClient implements GitlabClient {
 
     @Override
     public List<Commit> getMergeRequestCommits(long projectId, long mergeRequestIid) throws IOException {
-        return entities(new HttpGet(String.format("%s/projects/%s/merge_requests/%s/commits", baseGitlabApiUrl, projectId, mergeRequestIid)), Commit.class);
+        return collect(entities(String.format("%s/projects/%s/merge_requests/%s/commits", baseGitlabApiUrl, projectId, mergeRequestIid), Commit.class));
     }
 
     @Override
     public List<Discussion> getMergeRequestDiscussions(long projectId, long mergeRequestIid) throws IOException {
-        return entities(new HttpGet(String.format("%s/projects/%s/merge_requests/%s/discussions", baseGitlabApiUrl, projectId, mergeRequestIid)), Discussion.class);
+        return collect(entities(String.format("%s/projects/%s/merge_requests/%s/discussions", baseGitlabApiUrl, projectId, mergeRequestIid), Discussion.class));
     }
 
     @Override
@@ -171,9 +183,7 @@ class GitlabRestClient implements GitlabClient {
     private <X> X entity(HttpRequestBase httpRequest, Class<X> type, Consumer<HttpResponse> responseValidator) throws IOException {
         httpRequest.addHeader("PRIVATE-TOKEN", authToken);
 
-        try (CloseableHttpClient httpClient = httpClientFactory.get()) {
-            HttpResponse httpResponse = httpClient.execute(httpRequest);
-
+        try (CloseableHttpResponse httpResponse = httpClient.execute(httpRequest)) {
             responseValidator.accept(httpResponse);
 
             if (null == type) {
@@ -183,29 +193,49 @@ class GitlabRestClient implements GitlabClient {
         }
     }
 
-    private <X> List<X> entities(HttpGet httpRequest, Class<X> type) throws IOException {
-        return entities(httpRequest, type, httpResponse -> validateResponse(httpResponse, 200, null));
+    /**
+     * Lazily retrieves all entities from a paginated Gitlab endpoint. Each page is only requested once the entities from
+     * the previous page have been consumed, and each response is closed as soon as its page has been read, so callers
+     * that stop consuming the stream early don't trigger any further requests. Gitlab only offers keyset pagination on a
+     * handful of endpoints, none of which are merge request resources, so this relies on the offset based
+     * {@code Link} headers.
+     */
+    private <X> Stream<X> entities(String url, Class<X> type) {
+        Iterator<X> iterator = new PagedEntityIterator<>(url + (url.contains("?") ? "&" : "?") + "per_page=" + pageSize, type);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false);
     }
 
-    private <X> List<X> entities(HttpGet httpRequest, Class<X> type, Consumer<HttpResponse> responseValidator) throws IOException {
-        httpRequest.addHeader("PRIVATE-TOKEN", authToken);
-
-        try (CloseableHttpClient httpClient = httpClientFactory.get()) {
-            HttpResponse httpResponse = httpClient.execute(httpRequest);
+    private static <X> List<X> collect(Stream<X> entities) throws IOException {
+        try {
+            return entities.collect(Collectors.toList());
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+    }
 
-            responseValidator.accept(httpResponse);
+    private <X> Page<X> readPage(HttpGet httpRequest, Class<X> type) throws IOException {
+        httpRequest.addHeader("PRIVATE-TOKEN", authToken);
 
-            List<X> entities = new ArrayList<>(objectMapper.readValue(EntityUtils.toString(httpResponse.getEntity(), StandardCharsets.UTF_8),
-                    objectMapper.getTypeFactory().constructCollectionType(List.class, type)));
+        try (CloseableHttpResponse httpResponse = httpClient.execute(httpRequest)) {
+            validateResponse(httpResponse, 200, null);
+
+            List<X> entities = new ArrayList<>();
+            long byteCount;
+            try (JsonParser jsonParser = objectMapper.getFactory().createParser(httpResponse.getEntity().getContent())) {
+                if (jsonParser.nextToken() != JsonToken.START_ARRAY) {
+                    throw new IllegalStateException("Expected an array of entities in the response from " + httpRequest.getURI());
+                }
+                while (jsonParser.nextToken() != JsonToken.END_ARRAY) {
+                    entities.add(objectMapper.readValue(jsonParser, type));
+                }
+                byteCount = jsonParser.getCurrentLocation().getByteOffset();
+            }
 
-            Optional<String> nextURL = Optional.ofNullable(httpResponse.getFirstHeader("Link"))
+            Optional<String> nextUrl = Optional.ofNullable(httpResponse.getFirstHeader("Link"))
                     .map(NameValuePair::getValue)
                     .flatMap(linkHeaderReader::findNextLink);
-            if (nextURL.isPresent()) {
-                entities.addAll(entities(new HttpGet(nextURL.get()), type, responseValidator));
-            }
 
-            return entities;
+            return new Page<>(entities, nextUrl, byteCount);
         }
     }
 
@@ -233,4 +263,62 @@ class GitlabRestClient implements GitlabClient {
 
     }
 
+    private final class PagedEntityIterator<X> implements Iterator<X> {
+
+        private final String url;
+        private final Class<X> type;
+        private Optional<String> nextUrl;
+        private Iterator<X> currentPage = Collections.emptyIterator();
+        private int pageCount;
+        private int entityCount;
+        private long byteCount;
+
+        private PagedEntityIterator(String url, Class<X> type) {
+            this.url = url;
+            this.type = type;
+            this.nextUrl = Optional.of(url);
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!currentPage.hasNext() && nextUrl.isPresent()) {
+                try {
+                    Page<X> page = readPage(new HttpGet(nextUrl.get()), type);
+                    currentPage = page.entities.iterator();
+                    nextUrl = page.nextUrl;
+                    pageCount++;
+                    entityCount += page.entities.size();
+                    byteCount += page.byteCount;
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+                if (nextUrl.isEmpty()) {
+                    LOGGER.debug("Retrieved {} {} entities from {} in {} page(s) totalling {} bytes", entityCount, type.getSimpleName(), url, pageCount, byteCount);
+                }
+            }
+            return currentPage.hasNext();
+        }
+
+        @Override
+        public X next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return currentPage.next();
+        }
+    }
+
+    private static final class Page<X> {
+
+        private final List<X> entities;
+        private final Optional<String> nextUrl;
+        private final long byteCount;
+
+        private Page(List<X> entities, Optional<String> nextUrl, long byteCount) {
+            this.entities = entities;
+            this.nextUrl = nextUrl;
+            this.byteCount = byteCount;
+        }
+    }
+
 }
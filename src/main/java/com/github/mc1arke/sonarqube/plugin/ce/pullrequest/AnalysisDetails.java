@@ -23,34 +23,35 @@ import org.sonar.api.ce.posttask.Analysis;
 import org.sonar.api.ce.posttask.PostProjectAnalysisTask;
 import org.sonar.api.ce.posttask.Project;
 import org.sonar.api.ce.posttask.QualityGate;
-import org.sonar.api.issue.Issue;
-import org.sonar.ce.task.projectanalysis.component.Component;
+import org.sonar.api.rules.RuleType;
 
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
 public class AnalysisDetails {
 
-    private static final List<String> OPEN_ISSUE_STATUSES =
-            Issue.STATUSES.stream().filter(s -> !Issue.STATUS_CLOSED.equals(s) && !Issue.STATUS_RESOLVED.equals(s))
-                    .collect(Collectors.toList());
-
     private final String pullRequestId;
     private final String commitId;
-    private final List<PostAnalysisIssueVisitor.ComponentIssue> issues;
+    private final CollectedIssues issues;
     private final QualityGate qualityGate;
     private final PostProjectAnalysisTask.ProjectAnalysis projectAnalysis;
+    private final Map<String, Double> measures;
+    private final Map<String, String> issueRevisions;
 
-    AnalysisDetails(String pullRequestId, String commitId, List<PostAnalysisIssueVisitor.ComponentIssue> issues,
-                    QualityGate qualityGate, PostProjectAnalysisTask.ProjectAnalysis projectAnalysis) {
+    AnalysisDetails(String pullRequestId, String commitId, CollectedIssues issues,
+                    QualityGate qualityGate, PostProjectAnalysisTask.ProjectAnalysis projectAnalysis,
+                    Map<String, Double> measures, Map<String, String> issueRevisions) {
         super();
         this.pullRequestId = pullRequestId;
         this.commitId = commitId;
         this.issues = issues;
         this.qualityGate = qualityGate;
         this.projectAnalysis = projectAnalysis;
+        this.measures = measures;
+        this.issueRevisions = issueRevisions;
     }
 
     public String getPullRequestId() {
@@ -87,27 +88,50 @@ public class AnalysisDetails {
         return getProject().getKey();
     }
 
+    public String getAnalysisProjectUuid() {
+        return getProject().getUuid();
+    }
+
     public String getAnalysisProjectName() {
         return getProject().getName();
     }
 
     public List<PostAnalysisIssueVisitor.ComponentIssue> getIssues() {
-        return issues;
+        return issues.getIssues();
     }
 
+    /**
+     * @return the open issues raised against files with SCM details. The list is maintained as the issues are
+     * collected, so can be retrieved repeatedly without re-filtering every issue.
+     */
     public List<PostAnalysisIssueVisitor.ComponentIssue> getScmReportableIssues() {
-        return getIssues().stream()
-                .filter(i -> i.getComponent().getReportAttributes().getScmPath().isPresent())
-                .filter(i -> i.getComponent().getType() == Component.Type.FILE)
-                .filter(i -> i.getIssue().resolution() == null)
-                .filter(i -> OPEN_ISSUE_STATUSES.contains(i.getIssue().status()))
-                .collect(Collectors.toList());
+        return issues.getScmReportableIssues();
+    }
+
+    public Map<RuleType, Long> getIssueCountsByType() {
+        return issues.getIssueCountsByType();
     }
 
     public Optional<QualityGate.Condition> findQualityGateCondition(String metricKey) {
         return qualityGate.getConditions().stream().filter(c -> metricKey.equals(c.getMetricKey())).findFirst();
     }
 
+    /**
+     * @return the value the analysis recorded for the given metric against the project, as captured when the analysis
+     * completed.
+     */
+    public Optional<Double> findMeasure(String metricKey) {
+        return Optional.ofNullable(measures.get(metricKey));
+    }
+
+    /**
+     * @return the revision of the commit that last changed the line the issue is raised against, as captured from the
+     * analysis SCM data when the analysis completed.
+     */
+    public Optional<String> findIssueRevision(PostAnalysisIssueVisitor.ComponentIssue componentIssue) {
+        return Optional.ofNullable(issueRevisions.get(componentIssue.getIssue().key()));
+    }
+
     private Analysis getAnalysis() {
         return projectAnalysis.getAnalysis().orElseThrow();
     }
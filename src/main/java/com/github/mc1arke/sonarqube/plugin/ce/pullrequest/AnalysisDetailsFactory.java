@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.ce.pullrequest;
+
+import org.sonar.api.ce.posttask.PostProjectAnalysisTask;
+import org.sonar.api.ce.posttask.QualityGate;
+import org.sonar.api.measures.CoreMetrics;
+import org.sonar.ce.task.projectanalysis.component.TreeRootHolder;
+import org.sonar.ce.task.projectanalysis.measure.Measure;
+import org.sonar.ce.task.projectanalysis.measure.MeasureRepository;
+import org.sonar.ce.task.projectanalysis.metric.MetricRepository;
+import org.sonar.ce.task.projectanalysis.scm.Changeset;
+import org.sonar.ce.task.projectanalysis.scm.ScmInfoRepository;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Creates the {@link AnalysisDetails} for a pull request decoration, capturing everything the decorators read from the
+ * analysis report whilst the Compute Engine task is still running: the project measures shown in the summary and the
+ * revision that last changed the line of each issue. The repositories these are read from belong to the task, so can't
+ * be used by a decoration that runs once the task has completed.
+ */
+public class AnalysisDetailsFactory {
+
+    private static final List<String> SUMMARY_MEASURE_KEYS = List.of(CoreMetrics.COVERAGE_KEY, CoreMetrics.DUPLICATED_LINES_DENSITY_KEY);
+
+    private final PostAnalysisIssueVisitor postAnalysisIssueVisitor;
+    private final MeasureRepository measureRepository;
+    private final MetricRepository metricRepository;
+    private final TreeRootHolder treeRootHolder;
+    private final ScmInfoRepository scmInfoRepository;
+
+    public AnalysisDetailsFactory(PostAnalysisIssueVisitor postAnalysisIssueVisitor, MeasureRepository measureRepository,
+                                  MetricRepository metricRepository, TreeRootHolder treeRootHolder,
+                                  ScmInfoRepository scmInfoRepository) {
+        super();
+        this.postAnalysisIssueVisitor = postAnalysisIssueVisitor;
+        this.measureRepository = measureRepository;
+        this.metricRepository = metricRepository;
+        this.treeRootHolder = treeRootHolder;
+        this.scmInfoRepository = scmInfoRepository;
+    }
+
+    public AnalysisDetails createAnalysisDetails(String pullRequestId, String commitId, QualityGate qualityGate,
+                                                 PostProjectAnalysisTask.ProjectAnalysis projectAnalysis) {
+        CollectedIssues collectedIssues = postAnalysisIssueVisitor.getCollectedIssues();
+        return new AnalysisDetails(pullRequestId, commitId, collectedIssues, qualityGate, projectAnalysis,
+                captureMeasures(), captureIssueRevisions(collectedIssues));
+    }
+
+    private Map<String, Double> captureMeasures() {
+        Map<String, Double> measures = new HashMap<>();
+        for (String metricKey : SUMMARY_MEASURE_KEYS) {
+            measureRepository.getRawMeasure(treeRootHolder.getRoot(), metricRepository.getByKey(metricKey))
+                    .map(Measure::getDoubleValue)
+                    .ifPresent(value -> measures.put(metricKey, value));
+        }
+        return measures;
+    }
+
+    private Map<String, String> captureIssueRevisions(CollectedIssues collectedIssues) {
+        Map<String, String> issueRevisions = new HashMap<>();
+        for (PostAnalysisIssueVisitor.ComponentIssue componentIssue : collectedIssues.getScmReportableIssues()) {
+            Integer line = componentIssue.getIssue().getLine();
+            if (null == line) {
+                continue;
+            }
+            scmInfoRepository.getScmInfo(componentIssue.getComponent())
+                    .filter(scmInfo -> scmInfo.hasChangesetForLine(line))
+                    .map(scmInfo -> scmInfo.getChangesetForLine(line))
+                    .map(Changeset::getRevision)
+                    .ifPresent(revision -> issueRevisions.put(componentIssue.getIssue().key(), revision));
+        }
+        return issueRevisions;
+    }
+
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.ce.pullrequest;
+
+import org.sonar.api.issue.Issue;
+import org.sonar.api.rules.RuleType;
+import org.sonar.ce.task.projectanalysis.component.Component;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+
+/**
+ * The issues raised by an analysis, along with the aggregates the decorators and report generation need. The
+ * aggregates are updated as each issue is added, so reading them never requires another pass over the issues.
+ */
+public final class CollectedIssues {
+
+    private static final Set<String> CLOSED_ISSUE_STATUSES = Set.of(Issue.STATUS_CLOSED, Issue.STATUS_RESOLVED);
+    private static final Set<String> OPEN_ISSUE_STATUSES = Issue.STATUSES.stream()
+            .filter(status -> !CLOSED_ISSUE_STATUSES.contains(status))
+            .collect(Collectors.toSet());
+
+    private final IntFunction<PostAnalysisIssueVisitor.ComponentIssue> issueLookup;
+    private final Map<RuleType, Long> issueCountsByType = new EnumMap<>(RuleType.class);
+    private int size;
+    private int[] scmReportableIndexes = new int[16];
+    private int scmReportableCount;
+    private Component lastComponent;
+    private boolean lastComponentScmReportable;
+
+    /**
+     * @param issueLookup retrieves an issue by the order it was added in
+     */
+    CollectedIssues(IntFunction<PostAnalysisIssueVisitor.ComponentIssue> issueLookup) {
+        this.issueLookup = issueLookup;
+        Arrays.stream(RuleType.values()).forEach(type -> issueCountsByType.put(type, 0L));
+    }
+
+    public static CollectedIssues of(List<PostAnalysisIssueVisitor.ComponentIssue> issues) {
+        CollectedIssues collectedIssues = new CollectedIssues(issues::get);
+        issues.forEach(issue -> collectedIssues.add(issue.getComponent(), issue.getIssue()));
+        return collectedIssues;
+    }
+
+    void add(Component component, PostAnalysisIssueVisitor.LightIssue issue) {
+        int index = size++;
+
+        String status = issue.status();
+        boolean closed = null != status && CLOSED_ISSUE_STATUSES.contains(status);
+        if (!closed && null != issue.type()) {
+            issueCountsByType.merge(issue.type(), 1L, Long::sum);
+        }
+
+        if (isScmReportable(component) && null == issue.resolution() && null != status && OPEN_ISSUE_STATUSES.contains(status)) {
+            if (scmReportableCount == scmReportableIndexes.length) {
+                scmReportableIndexes = Arrays.copyOf(scmReportableIndexes, scmReportableCount * 2);
+            }
+            scmReportableIndexes[scmReportableCount++] = index;
+        }
+    }
+
+    public List<PostAnalysisIssueVisitor.ComponentIssue> getIssues() {
+        return new AbstractList<>() {
+            @Override
+            public PostAnalysisIssueVisitor.ComponentIssue get(int index) {
+                Objects.checkIndex(index, size);
+                return issueLookup.apply(index);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * @return the open issues raised against files with SCM details, in the order they were added. Since issues are
+     * visited one component at a time, issues for the same file are adjacent in this list.
+     */
+    public List<PostAnalysisIssueVisitor.ComponentIssue> getScmReportableIssues() {
+        int count = scmReportableCount;
+        int[] indexes = scmReportableIndexes;
+        return new AbstractList<>() {
+            @Override
+            public PostAnalysisIssueVisitor.ComponentIssue get(int index) {
+                Objects.checkIndex(index, count);
+                return issueLookup.apply(indexes[index]);
+            }
+
+            @Override
+            public int size() {
+                return count;
+            }
+        };
+    }
+
+    /**
+     * @return the number of issues that are not closed or resolved, for every rule type
+     */
+    public Map<RuleType, Long> getIssueCountsByType() {
+        return Collections.unmodifiableMap(issueCountsByType);
+    }
+
+    private boolean isScmReportable(Component component) {
+        // issues arrive grouped by component, so the SCM details only need resolving when the component changes
+        if (component != lastComponent) {
+            lastComponent = component;
+            lastComponentScmReportable = null != component
+                    && Component.Type.FILE == component.getType()
+                    && component.getReportAttributes().getScmPath().isPresent();
+        }
+        return lastComponentScmReportable;
+    }
+}
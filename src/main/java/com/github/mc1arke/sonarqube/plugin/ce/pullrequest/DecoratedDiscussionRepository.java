@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.ce.pullrequest;
+
+import org.sonar.db.DbClient;
+import org.sonar.db.DbSession;
+import org.sonar.db.component.BranchDao;
+import org.sonar.db.component.BranchDto;
+import org.sonar.db.protobuf.DbProjectBranches;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Records which ALM discussion each Sonarqube issue has been posted to for a pull request, so a subsequent decoration
+ * can identify its own discussions without having to parse the content of every comment. The entries are held as
+ * attributes on the pull request's {@link DbProjectBranches.PullRequestData}, which is read once at the start of each
+ * decoration and written once at the end, along with the pull request's URL.
+ */
+public class DecoratedDiscussionRepository {
+
+    private static final String ATTRIBUTE_PREFIX = "communityBranchPlugin.issueDiscussion.";
+
+    private final DbClient dbClient;
+
+    public DecoratedDiscussionRepository(DbClient dbClient) {
+        super();
+        this.dbClient = dbClient;
+    }
+
+    /**
+     * @return the details recorded by the previous decoration of this pull request, or an empty record if it has not
+     * been decorated before
+     */
+    public DecorationRecord findDecorationRecord(String projectUuid, String pullRequestKey) {
+        try (DbSession dbSession = dbClient.openSession(false)) {
+            return dbClient.branchDao().selectByPullRequestKey(dbSession, projectUuid, pullRequestKey)
+                    .map(BranchDto::getPullRequestData)
+                    .map(DbProjectBranches.PullRequestData::getAttributesMap)
+                    .map(attributes -> new DecorationRecord(extractIssueDiscussionIds(attributes)))
+                    .orElse(DecorationRecord.empty());
+        }
+    }
+
+    /**
+     * Stores the pull request URL and issue discussions reported by a decoration in a single update, leaving any detail the decoration did not report unchanged. Nothing is written if the stored details
+     * already match.
+     */
+    public void saveDecorationResult(String projectUuid, String pullRequestKey, DecorationResult decorationResult) {
+        if (decorationResult.getPullRequestUrl().isEmpty() && decorationResult.getIssueDiscussionIds().isEmpty()) {
+            return;
+        }
+
+        try (DbSession dbSession = dbClient.openSession(false)) {
+            BranchDao branchDao = dbClient.branchDao();
+            Optional<BranchDto> optionalBranchDto = branchDao.selectByPullRequestKey(dbSession, projectUuid, pullRequestKey);
+            if (optionalBranchDto.isEmpty()) {
+                return;
+            }
+
+            BranchDto branchDto = optionalBranchDto.get();
+            DbProjectBranches.PullRequestData pullRequestData = branchDto.getPullRequestData();
+            DbProjectBranches.PullRequestData.Builder pullRequestDataBuilder = null == pullRequestData
+                    ? DbProjectBranches.PullRequestData.newBuilder()
+                    : DbProjectBranches.PullRequestData.newBuilder(pullRequestData);
+            decorationResult.getPullRequestUrl().ifPresent(pullRequestDataBuilder::setUrl);
+            decorationResult.getIssueDiscussionIds().ifPresent(issueDiscussionIds -> {
+                if (null != pullRequestData) {
+                    pullRequestData.getAttributesMap().keySet().stream()
+                            .filter(key -> key.startsWith(ATTRIBUTE_PREFIX))
+                            .forEach(pullRequestDataBuilder::removeAttributes);
+                }
+                issueDiscussionIds.forEach((issueKey, discussionId) -> pullRequestDataBuilder.putAttributes(ATTRIBUTE_PREFIX + issueKey, discussionId));
+            });
+
+            DbProjectBranches.PullRequestData updatedPullRequestData = pullRequestDataBuilder.build();
+            if (updatedPullRequestData.equals(pullRequestData)) {
+                return;
+            }
+
+            branchDto.setPullRequestData(updatedPullRequestData);
+            branchDao.upsert(dbSession, branchDto);
+            dbSession.commit();
+        }
+    }
+
+    private static Map<String, String> extractIssueDiscussionIds(Map<String, String> attributes) {
+        return attributes.entrySet().stream()
+                .filter(entry -> entry.getKey().startsWith(ATTRIBUTE_PREFIX))
+                .collect(Collectors.toMap(entry -> entry.getKey().substring(ATTRIBUTE_PREFIX.length()), Map.Entry::getValue));
+    }
+}
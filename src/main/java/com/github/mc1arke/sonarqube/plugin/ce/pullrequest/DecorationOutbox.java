@@ -0,0 +1,255 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.ce.pullrequest;
+
+import com.github.mc1arke.sonarqube.plugin.CommunityBranchPlugin;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.Startable;
+import org.sonar.api.ce.ComputeEngineSide;
+import org.sonar.api.config.Configuration;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Holds pull request decorations that have been prepared by a Compute Engine task and hands them to a bounded pool of
+ * decoration workers, so the Compute Engine worker is released as soon as a decoration has been queued rather than
+ * waiting on the ALM. Decorations are keyed by project and pull request: queueing a decoration for a pull request that
+ * already has one waiting replaces the waiting decoration, and decorations for the same pull request are never run
+ * concurrently. Failed decorations are retried with an exponential backoff: each attempt reconciles the pull request
+ * against the comments and statuses already on it, so repeating a decoration doesn't duplicate what an earlier attempt
+ * posted.
+ * <p>
+ * A queued decoration only holds what the task captured before queueing it: the {@link AnalysisDetails} snapshot and
+ * the ALM settings, never the task's report repositories. It is held in memory rather than persisted, since plugins
+ * can't create database tables: a decoration that hasn't completed when the Compute Engine stops is dropped, and the
+ * pull request is decorated by its next analysis.
+ */
+@ComputeEngineSide
+public class DecorationOutbox implements Startable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DecorationOutbox.class);
+
+    private static final int DEFAULT_WORKER_THREADS = 2;
+    private static final int DEFAULT_QUEUE_CAPACITY = 100;
+    private static final int DEFAULT_MAX_ATTEMPTS = 3;
+    private static final long DEFAULT_RETRY_DELAY_MILLIS = 5000;
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
+
+    private final Map<String, Entry> queuedDecorations = new LinkedHashMap<>();
+    private final Set<String> runningDecorations = new HashSet<>();
+    private final int workerThreads;
+    private final int queueCapacity;
+    private final int maxAttempts;
+    private final long retryDelayMillis;
+    private ScheduledExecutorService executorService;
+
+    public DecorationOutbox(Configuration configuration) {
+        this(configuration, DEFAULT_RETRY_DELAY_MILLIS);
+    }
+
+    DecorationOutbox(Configuration configuration, long retryDelayMillis) {
+        super();
+        this.workerThreads = configuration.getInt(CommunityBranchPlugin.DECORATION_WORKER_THREADS).orElse(DEFAULT_WORKER_THREADS);
+        this.queueCapacity = configuration.getInt(CommunityBranchPlugin.DECORATION_QUEUE_CAPACITY).orElse(DEFAULT_QUEUE_CAPACITY);
+        this.maxAttempts = Math.max(1, configuration.getInt(CommunityBranchPlugin.DECORATION_MAX_ATTEMPTS).orElse(DEFAULT_MAX_ATTEMPTS));
+        this.retryDelayMillis = retryDelayMillis;
+    }
+
+    @Override
+    public synchronized void start() {
+        if (workerThreads <= 0) {
+            LOGGER.info("Pull request decoration workers are disabled. Pull requests will be decorated by the Compute Engine task");
+            return;
+        }
+        AtomicInteger threadCounter = new AtomicInteger();
+        executorService = Executors.newScheduledThreadPool(workerThreads, runnable -> {
+            Thread thread = new Thread(runnable, "pull-request-decoration-worker-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public void stop() {
+        ScheduledExecutorService currentExecutorService;
+        int abandonedDecorations;
+        synchronized (this) {
+            currentExecutorService = executorService;
+            executorService = null;
+            abandonedDecorations = queuedDecorations.size();
+            queuedDecorations.clear();
+        }
+        if (null == currentExecutorService) {
+            return;
+        }
+        if (abandonedDecorations > 0) {
+            LOGGER.warn("Dropping {} queued pull request decorations on shutdown", abandonedDecorations);
+        }
+        currentExecutorService.shutdown();
+        try {
+            if (!currentExecutorService.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                currentExecutorService.shutdownNow();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            currentExecutorService.shutdownNow();
+        }
+    }
+
+    /**
+     * Queues a decoration to be run by a decoration worker.
+     *
+     * @return <code>true</code> if the decoration was queued, or <code>false</code> if the decoration workers are
+     * disabled or the queue is full, in which case the caller should run the decoration itself.
+     */
+    public synchronized boolean enqueue(String projectUuid, String pullRequestId, Decoration decoration) {
+        if (null == executorService) {
+            return false;
+        }
+        String key = projectUuid + ":" + pullRequestId;
+        if (queuedDecorations.size() >= queueCapacity && !queuedDecorations.containsKey(key)) {
+            LOGGER.warn("Pull request decoration queue is full ({} decorations queued). Pull request {} will be decorated by the Compute Engine task",
+                    queuedDecorations.size(), pullRequestId);
+            return false;
+        }
+
+        Entry previous = queuedDecorations.remove(key);
+        queuedDecorations.put(key, new Entry(pullRequestId, decoration, System.currentTimeMillis(), 1));
+        if (null != previous) {
+            LOGGER.debug("Replacing queued decoration for pull request {} with decoration from newer analysis", pullRequestId);
+        }
+        if (!runningDecorations.contains(key) && (null == previous || previous.isRetry())) {
+            executorService.execute(() -> runDecoration(key));
+        }
+        LOGGER.info("Queued decoration for pull request {}. Queue depth: {}, oldest queued decoration: {}ms",
+                pullRequestId, queuedDecorations.size(), getOldestQueuedDecorationAgeMillis());
+        return true;
+    }
+
+    public synchronized int getQueueDepth() {
+        return queuedDecorations.size();
+    }
+
+    public synchronized long getOldestQueuedDecorationAgeMillis() {
+        long now = System.currentTimeMillis();
+        return queuedDecorations.values().stream()
+                .mapToLong(entry -> now - entry.getQueuedAt())
+                .max()
+                .orElse(0);
+    }
+
+    private void runDecoration(String key) {
+        Entry entry;
+        synchronized (this) {
+            if (runningDecorations.contains(key)) {
+                return;
+            }
+            entry = queuedDecorations.remove(key);
+            if (null == entry) {
+                return;
+            }
+            runningDecorations.add(key);
+        }
+
+        LOGGER.atDebug().setMessage("Running decoration for pull request {} (attempt {}) after waiting {}ms in queue")
+                .addArgument(entry::getPullRequestId)
+                .addArgument(entry::getAttempt)
+                .addArgument(() -> System.currentTimeMillis() - entry.getQueuedAt())
+                .log();
+
+        boolean failed = false;
+        try {
+            entry.getDecoration().decorate();
+        } catch (RuntimeException ex) {
+            failed = true;
+            if (entry.getAttempt() < maxAttempts) {
+                LOGGER.warn("Could not decorate pull request {} on attempt {} of {}. Decoration will be retried", entry.getPullRequestId(), entry.getAttempt(), maxAttempts, ex);
+            } else {
+                LOGGER.error("Could not decorate pull request {} after {} attempts", entry.getPullRequestId(), entry.getAttempt(), ex);
+            }
+        }
+
+        synchronized (this) {
+            runningDecorations.remove(key);
+            if (null == executorService) {
+                return;
+            }
+            if (queuedDecorations.containsKey(key)) {
+                executorService.execute(() -> runDecoration(key));
+            } else if (failed && entry.getAttempt() < maxAttempts) {
+                Entry retry = entry.retry();
+                queuedDecorations.put(key, retry);
+                executorService.schedule(() -> runDecoration(key), retryDelayMillis << (entry.getAttempt() - 1), TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface Decoration {
+
+        void decorate();
+    }
+
+    private static final class Entry {
+
+        private final String pullRequestId;
+        private final Decoration decoration;
+        private final long queuedAt;
+        private final int attempt;
+
+        private Entry(String pullRequestId, Decoration decoration, long queuedAt, int attempt) {
+            this.pullRequestId = pullRequestId;
+            this.decoration = decoration;
+            this.queuedAt = queuedAt;
+            this.attempt = attempt;
+        }
+
+        String getPullRequestId() {
+            return pullRequestId;
+        }
+
+        Decoration getDecoration() {
+            return decoration;
+        }
+
+        long getQueuedAt() {
+            return queuedAt;
+        }
+
+        int getAttempt() {
+            return attempt;
+        }
+
+        boolean isRetry() {
+            return attempt > 1;
+        }
+
+        Entry retry() {
+            return new Entry(pullRequestId, decoration, queuedAt, attempt + 1);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.ce.pullrequest;
+
+import java.util.Map;
+
+/**
+ * What the previous decoration of a pull request recorded: the ALM discussion each Sonarqube issue was posted to.
+ */
+public final class DecorationRecord {
+
+    private static final DecorationRecord EMPTY = new DecorationRecord(Map.of());
+
+    private final Map<String, String> issueDiscussionIds;
+
+    public DecorationRecord(Map<String, String> issueDiscussionIds) {
+        super();
+        this.issueDiscussionIds = Map.copyOf(issueDiscussionIds);
+    }
+
+    public static DecorationRecord empty() {
+        return EMPTY;
+    }
+
+    /**
+     * @return the ALM discussion IDs keyed by the Sonarqube issue key they were posted for
+     */
+    public Map<String, String> getIssueDiscussionIds() {
+        return issueDiscussionIds;
+    }
+}
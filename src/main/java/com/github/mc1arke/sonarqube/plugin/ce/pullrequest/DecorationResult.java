@@ -18,21 +18,32 @@
  */
 package com.github.mc1arke.sonarqube.plugin.ce.pullrequest;
 
+import java.util.Map;
 import java.util.Optional;
 
 public final class DecorationResult {
 
     private final String pullRequestUrl;
+    private final Map<String, String> issueDiscussionIds;
 
     private DecorationResult(Builder builder) {
         super();
         this.pullRequestUrl = builder.pullRequestUrl;
+        this.issueDiscussionIds = builder.issueDiscussionIds;
     }
 
     public Optional<String> getPullRequestUrl() {
         return Optional.ofNullable(pullRequestUrl);
     }
 
+    /**
+     * @return the ALM discussion IDs keyed by the Sonarqube issue key they were posted for, if the decorator tracks
+     * the discussions it creates
+     */
+    public Optional<Map<String, String>> getIssueDiscussionIds() {
+        return Optional.ofNullable(issueDiscussionIds);
+    }
+
     public static Builder builder() {
         return new Builder();
     }
@@ -40,6 +51,7 @@ public final class DecorationResult {
     public static final class Builder {
 
         private String pullRequestUrl;
+        private Map<String, String> issueDiscussionIds;
 
         private Builder() {
             super();
@@ -50,6 +62,11 @@ public final class DecorationResult {
             return this;
         }
 
+        public Builder withIssueDiscussionIds(Map<String, String> issueDiscussionIds) {
+            this.issueDiscussionIds = Map.copyOf(issueDiscussionIds);
+            return this;
+        }
+
         public DecorationResult build() {
             return new DecorationResult(this);
         }
@@ -18,17 +18,19 @@
  */
 package com.github.mc1arke.sonarqube.plugin.ce.pullrequest;
 
+import com.github.mc1arke.sonarqube.plugin.CommunityBranchPlugin;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmClientMetrics;
+import com.github.mc1arke.sonarqube.plugin.almclient.ConcurrentRequestExecutor;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.report.AnalysisIssueSummary;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.report.AnalysisSummary;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.report.ReportGenerator;
 import org.apache.commons.lang3.tuple.ImmutablePair;
-import org.apache.commons.lang3.tuple.ImmutableTriple;
 import org.apache.commons.lang3.tuple.Pair;
-import org.apache.commons.lang3.tuple.Triple;
 import org.apache.http.NameValuePair;
 import org.apache.http.client.utils.URLEncodedUtils;
-import org.sonar.ce.task.projectanalysis.scm.Changeset;
-import org.sonar.ce.task.projectanalysis.scm.ScmInfoRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.config.Configuration;
 import org.sonar.db.alm.setting.AlmSettingDto;
 import org.sonar.db.alm.setting.ProjectAlmSettingDto;
 
@@ -38,14 +40,25 @@ import java.io.StringReader;
 import java.net.URI;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Executors;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 public abstract class DiscussionAwarePullRequestDecorator<C, P, U, D, N> implements PullRequestBuildStatusDecorator {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(DiscussionAwarePullRequestDecorator.class);
+
+    private static final int DEFAULT_CONCURRENT_REQUESTS = 4;
+
     private static final String RESOLVED_ISSUE_NEEDING_CLOSED_MESSAGE =
             "This issue no longer exists in SonarQube, but due to other comments being present in this discussion, the discussion is not being being closed automatically. " +
                     "Please manually resolve this discussion once the other comments have been reviewed.";
@@ -53,59 +66,82 @@ public abstract class DiscussionAwarePullRequestDecorator<C, P, U, D, N> impleme
     private static final String VIEW_IN_SONARQUBE_LABEL = "View in SonarQube";
     private static final Pattern NOTE_MARKDOWN_VIEW_LINK_PATTERN = Pattern.compile("^\\[" + VIEW_IN_SONARQUBE_LABEL + "]\\((.*?)\\)$");
 
-    private final ScmInfoRepository scmInfoRepository;
     private final ReportGenerator reportGenerator;
+    private final Configuration configuration;
+    private final DecoratedDiscussionRepository decoratedDiscussionRepository;
 
-    protected DiscussionAwarePullRequestDecorator(ScmInfoRepository scmInfoRepository, ReportGenerator reportGenerator) {
+    protected DiscussionAwarePullRequestDecorator(ReportGenerator reportGenerator, Configuration configuration,
+                                                  DecoratedDiscussionRepository decoratedDiscussionRepository) {
         super();
-        this.scmInfoRepository = scmInfoRepository;
         this.reportGenerator = reportGenerator;
+        this.configuration = configuration;
+        this.decoratedDiscussionRepository = decoratedDiscussionRepository;
     }
 
     @Override
     public DecorationResult decorateQualityGateStatus(AnalysisDetails analysis, AlmSettingDto almSettingDto,
                                                       ProjectAlmSettingDto projectAlmSettingDto) {
-        C client = createClient(almSettingDto, projectAlmSettingDto);
-        
-        P pullRequest = getPullRequest(client, almSettingDto, projectAlmSettingDto, analysis);
-        U user = getCurrentUser(client);
+        C client = AlmClientMetrics.time("createClient", () -> createClient(almSettingDto, projectAlmSettingDto));
+
+        P pullRequest = AlmClientMetrics.time("getPullRequest", () -> getPullRequest(client, almSettingDto, projectAlmSettingDto, analysis));
+        U user = AlmClientMetrics.time("getCurrentUser", () -> getCurrentUser(client));
         List<PostAnalysisIssueVisitor.ComponentIssue> openSonarqubeIssues = analysis.getScmReportableIssues();
 
-        List<Triple<D, N, Optional<ProjectIssueIdentifier>>> currentProjectSonarqubeComments = findOpenSonarqubeComments(client,
-                pullRequest,
-                user)
+        DecorationRecord previousDecoration = AlmClientMetrics.time("loadDiscussionRecord",
+                () -> decoratedDiscussionRepository.findDecorationRecord(analysis.getAnalysisProjectUuid(), analysis.getPullRequestId()));
+        Map<String, String> issueKeysByDiscussionId = previousDecoration.getIssueDiscussionIds()
+                .entrySet().stream()
+                .collect(Collectors.toMap(Map.Entry::getValue, Map.Entry::getKey, (first, second) -> first));
+
+        List<SonarqubeDiscussion<D, N>> currentProjectSonarqubeComments = AlmClientMetrics.time("listDiscussions",
+                () -> findOpenSonarqubeComments(client,
+                        pullRequest,
+                        user,
+                        issueKeysByDiscussionId,
+                        analysis.getAnalysisProjectKey()))
                 .stream()
                 .filter(comment -> !projectAlmSettingDto.getMonorepo() || isCommentFromCurrentProject(comment, analysis.getAnalysisProjectKey()))
                 .collect(Collectors.toList());
 
-        List<String> commentKeysForOpenComments = closeOldDiscussionsAndExtractRemainingKeys(client,
-                user,
-                currentProjectSonarqubeComments,
-                openSonarqubeIssues,
-                pullRequest);
+        Map<String, String> issueDiscussionIds = Collections.synchronizedMap(AlmClientMetrics.time("closeDiscussions",
+                () -> closeOldDiscussionsAndExtractRemainingKeys(client,
+                        user,
+                        currentProjectSonarqubeComments,
+                        openSonarqubeIssues,
+                        pullRequest)));
 
-        List<String> commitIds = getCommitIdsForPullRequest(client, pullRequest);
         List<Pair<PostAnalysisIssueVisitor.ComponentIssue, String>> uncommentedIssues = findIssuesWithoutComments(openSonarqubeIssues,
-                commentKeysForOpenComments)
+                issueDiscussionIds.keySet())
                 .stream()
                 .map(DiscussionAwarePullRequestDecorator::loadScmPathsForIssues)
                 .filter(Optional::isPresent)
                 .map(Optional::get)
-                .filter(issue -> isIssueFromCommitInCurrentRequest(issue.getLeft(), commitIds, scmInfoRepository))
-                .collect(Collectors.toList());
+                .collect(Collectors.toCollection(ArrayList::new));
+        if (!uncommentedIssues.isEmpty()) {
+            // the commits are only needed to work out which of the uncommented issues were raised by this pull request
+            Set<String> commitIds = new HashSet<>(AlmClientMetrics.time("listCommits", () -> getCommitIdsForPullRequest(client, pullRequest)));
+            uncommentedIssues.removeIf(issue -> !isIssueFromCommitInCurrentRequest(issue.getLeft(), commitIds, analysis));
+        }
 
-        uncommentedIssues.forEach(issue -> submitCommitNoteForIssue(client,
-                pullRequest,
-                issue.getLeft(),
-                issue.getRight(),
-                analysis,
-                reportGenerator.createAnalysisIssueSummary(issue.getLeft(), analysis)));
+        List<Runnable> commitNoteSubmissions = new ArrayList<>();
+        for (Pair<PostAnalysisIssueVisitor.ComponentIssue, String> issue : uncommentedIssues) {
+            AnalysisIssueSummary analysisIssueSummary = reportGenerator.createAnalysisIssueSummary(issue.getLeft(), analysis);
+            commitNoteSubmissions.add(() -> Optional.ofNullable(submitCommitNoteForIssue(client,
+                    pullRequest,
+                    issue.getLeft(),
+                    issue.getRight(),
+                    analysis,
+                    analysisIssueSummary))
+                    .ifPresent(discussion -> issueDiscussionIds.put(issue.getLeft().getIssue().key(), getDiscussionId(discussion))));
+        }
+        AlmClientMetrics.run("postIssueComments", () -> executeConcurrently(commitNoteSubmissions));
 
         AnalysisSummary analysisSummary = reportGenerator.createAnalysisSummary(analysis);
-        submitSummaryNote(client, pullRequest, analysis, analysisSummary);
-        submitPipelineStatus(client, pullRequest, analysis, analysisSummary);
+        AlmClientMetrics.run("postSummary", () -> submitSummaryNote(client, pullRequest, analysis, analysisSummary));
+        AlmClientMetrics.run("setPipelineStatus", () -> submitPipelineStatus(client, pullRequest, analysis, analysisSummary));
 
-        DecorationResult.Builder builder = DecorationResult.builder();
+        DecorationResult.Builder builder = DecorationResult.builder()
+                .withIssueDiscussionIds(issueDiscussionIds);
         createFrontEndUrl(pullRequest, analysis).ifPresent(builder::withPullRequestUrl);
         return builder.build();
     }
@@ -122,8 +158,10 @@ public abstract class DiscussionAwarePullRequestDecorator<C, P, U, D, N> impleme
 
     protected abstract void submitPipelineStatus(C client, P pullRequest, AnalysisDetails analysis, AnalysisSummary analysisSummary);
 
-    protected abstract void submitCommitNoteForIssue(C client, P pullRequest, PostAnalysisIssueVisitor.ComponentIssue issue, String filePath,
-                                                     AnalysisDetails analysis, AnalysisIssueSummary analysisIssueSummary);
+    protected abstract D submitCommitNoteForIssue(C client, P pullRequest, PostAnalysisIssueVisitor.ComponentIssue issue, String filePath,
+                                                  AnalysisDetails analysis, AnalysisIssueSummary analysisIssueSummary);
+
+    protected abstract String getDiscussionId(D discussion);
 
     protected abstract String getNoteContent(C client, N note);
 
@@ -144,7 +182,7 @@ public abstract class DiscussionAwarePullRequestDecorator<C, P, U, D, N> impleme
     protected abstract boolean isNoteFromCurrentUser(N note, U user);
 
     private static List<PostAnalysisIssueVisitor.ComponentIssue> findIssuesWithoutComments(List<PostAnalysisIssueVisitor.ComponentIssue> openSonarqubeIssues,
-                                                                                           List<String> openGitlabIssueIdentifiers) {
+                                                                                           Set<String> openGitlabIssueIdentifiers) {
         return openSonarqubeIssues.stream()
                 .filter(issue -> !openGitlabIssueIdentifiers.contains(issue.getIssue().key()))
                 .filter(issue -> issue.getIssue().getLine() != null)
@@ -158,71 +196,109 @@ public abstract class DiscussionAwarePullRequestDecorator<C, P, U, D, N> impleme
                 .map(pair -> new ImmutablePair<>(pair.getLeft(), pair.getRight().get()));
     }
 
-    private static boolean isIssueFromCommitInCurrentRequest(PostAnalysisIssueVisitor.ComponentIssue componentIssue, List<String> commitIds, ScmInfoRepository scmInfoRepository) {
-        return Optional.of(componentIssue)
-                .map(issue -> new ImmutablePair<>(issue.getIssue(), scmInfoRepository.getScmInfo(issue.getComponent())))
-                .filter(issuePair -> issuePair.getRight().isPresent())
-                .map(issuePair -> new ImmutablePair<>(issuePair.getLeft(), issuePair.getRight().get()))
-                .filter(issuePair -> null != issuePair.getLeft().getLine())
-                .filter(issuePair -> issuePair.getRight().hasChangesetForLine(issuePair.getLeft().getLine()))
-                .map(issuePair -> issuePair.getRight().getChangesetForLine(issuePair.getLeft().getLine()))
-                .map(Changeset::getRevision)
+    private static boolean isIssueFromCommitInCurrentRequest(PostAnalysisIssueVisitor.ComponentIssue componentIssue, Set<String> commitIds, AnalysisDetails analysis) {
+        return analysis.findIssueRevision(componentIssue)
                 .filter(commitIds::contains)
                 .isPresent();
     }
 
-    private List<Triple<D, N, Optional<ProjectIssueIdentifier>>> findOpenSonarqubeComments(C client, P pullRequest,
-                                                                                           U currentUser) {
+    private List<SonarqubeDiscussion<D, N>> findOpenSonarqubeComments(C client, P pullRequest,
+                                                                       U currentUser,
+                                                                       Map<String, String> issueKeysByDiscussionId,
+                                                                       String projectKey) {
         return getDiscussions(client, pullRequest).stream()
-                .map(discussion -> {
-                    List<N> commentsForDiscussion = getNotesForDiscussion(client, discussion);
-                    return commentsForDiscussion.stream()
-                        .findFirst()
-                        .filter(note -> isNoteFromCurrentUser(note, currentUser))
-                        .filter(note -> !isResolved(client, discussion, commentsForDiscussion, currentUser))
-                        .map(note -> new ImmutableTriple<>(discussion, note, parseIssueDetails(client, note)));
-                })
+                .map(discussion -> Optional.ofNullable(issueKeysByDiscussionId.get(getDiscussionId(discussion)))
+                        // a recorded discussion was started by this decorator for the given issue, so its notes only
+                        // need inspecting if the discussion has to be closed
+                        .map(issueKey -> Optional.of(new SonarqubeDiscussion<D, N>(discussion, null, Optional.of(new ProjectIssueIdentifier(projectKey, issueKey)))))
+                        .orElseGet(() -> findOpenSonarqubeComment(client, discussion, currentUser)))
                 .filter(Optional::isPresent)
                 .map(Optional::get)
                 .collect(Collectors.toList());
     }
 
-    private List<String> closeOldDiscussionsAndExtractRemainingKeys(C client, U currentUser,
-                                                                    List<Triple<D, N, Optional<ProjectIssueIdentifier>>> openSonarqubeComments,
+    private Optional<SonarqubeDiscussion<D, N>> findOpenSonarqubeComment(C client, D discussion, U currentUser) {
+        List<N> commentsForDiscussion = getNotesForDiscussion(client, discussion);
+        return commentsForDiscussion.stream()
+                .findFirst()
+                .filter(note -> isNoteFromCurrentUser(note, currentUser))
+                .filter(note -> !isResolved(client, discussion, commentsForDiscussion, currentUser))
+                .map(note -> new SonarqubeDiscussion<>(discussion, commentsForDiscussion, parseIssueDetails(client, note)));
+    }
+
+    private Map<String, String> closeOldDiscussionsAndExtractRemainingKeys(C client, U currentUser,
+                                                                    List<SonarqubeDiscussion<D, N>> openSonarqubeComments,
                                                                     List<PostAnalysisIssueVisitor.ComponentIssue> openIssues,
                                                                     P pullRequest) {
-        List<String> openIssueKeys = openIssues.stream()
+        Set<String> openIssueKeys = openIssues.stream()
                 .map(issue -> issue.getIssue().key())
-                .collect(Collectors.toList());
+                .collect(Collectors.toSet());
 
-        List<String> remainingCommentKeys = new ArrayList<>();
+        Map<String, String> remainingCommentKeys = new HashMap<>();
+        List<Runnable> discussionClosures = new ArrayList<>();
 
-        for (Triple<D, N, Optional<ProjectIssueIdentifier>> openSonarqubeComment : openSonarqubeComments) {
-            Optional<ProjectIssueIdentifier> noteIdentifier = openSonarqubeComment.getRight();
-            D discussion = openSonarqubeComment.getLeft();
+        for (SonarqubeDiscussion<D, N> openSonarqubeComment : openSonarqubeComments) {
+            Optional<ProjectIssueIdentifier> noteIdentifier = openSonarqubeComment.getIssueIdentifier();
             if (noteIdentifier.isEmpty()) {
                 continue;
             }
 
             String issueKey = noteIdentifier.get().getIssueKey();
             if (!openIssueKeys.contains(issueKey)) {
-                resolveOrPlaceFinalCommentOnDiscussion(client, currentUser, discussion, pullRequest);
+                discussionClosures.add(() -> resolveOrPlaceFinalCommentOnDiscussion(client, currentUser, openSonarqubeComment, pullRequest));
             } else {
-                remainingCommentKeys.add(issueKey);
+                remainingCommentKeys.put(issueKey, getDiscussionId(openSonarqubeComment.getDiscussion()));
             }
         }
 
+        executeConcurrently(discussionClosures);
+
         return remainingCommentKeys;
     }
 
+    /**
+     * Runs the given ALM write operations with bounded parallelism. Every task is attempted even if an earlier one
+     * fails, after which the first failure (in submission order) is rethrown with any later failures suppressed on it.
+     */
+    private void executeConcurrently(List<Runnable> tasks) {
+        List<Exception> failures = ConcurrentRequestExecutor.invokeAll(tasks.stream()
+                .map(Executors::callable)
+                .collect(Collectors.toList()), getConcurrentRequests());
+        throwCollectedFailures(failures);
+    }
+
+    private int getConcurrentRequests() {
+        String almId = alm().get(0).name().toLowerCase(Locale.ENGLISH);
+        return configuration.getInt(String.format(CommunityBranchPlugin.DECORATION_CONCURRENT_REQUESTS, almId))
+                .orElse(DEFAULT_CONCURRENT_REQUESTS);
+    }
+
+    private static void throwCollectedFailures(List<Exception> failures) {
+        if (failures.isEmpty()) {
+            return;
+        }
+
+        LOGGER.warn("{} pull request decoration request(s) failed", failures.size());
+        RuntimeException firstFailure = (RuntimeException) failures.get(0);
+        failures.subList(1, failures.size()).forEach(firstFailure::addSuppressed);
+        throw firstFailure;
+    }
+
     private boolean isResolved(C client, D discussion, List<N> notesInDiscussion, U currentUser) {
         return isClosed(discussion, notesInDiscussion) || notesInDiscussion.stream()
                 .filter(message -> isNoteFromCurrentUser(message, currentUser))
                 .anyMatch(message -> RESOLVED_ISSUE_NEEDING_CLOSED_MESSAGE.equals(getNoteContent(client, message)));
     }
 
-    private void resolveOrPlaceFinalCommentOnDiscussion(C client, U currentUser, D discussion, P pullRequest) {
-        if (getNotesForDiscussion(client, discussion).stream()
+    private void resolveOrPlaceFinalCommentOnDiscussion(C client, U currentUser, SonarqubeDiscussion<D, N> sonarqubeDiscussion, P pullRequest) {
+        D discussion = sonarqubeDiscussion.getDiscussion();
+        Optional<List<N>> retrievedNotes = sonarqubeDiscussion.getNotes();
+        List<N> notes = retrievedNotes.orElseGet(() -> getNotesForDiscussion(client, discussion));
+        if (retrievedNotes.isEmpty() && isResolved(client, discussion, notes, currentUser)) {
+            return;
+        }
+
+        if (notes.stream()
                 .filter(this::isUserNote)
                 .anyMatch(note -> !isNoteFromCurrentUser(note, currentUser))) {
             addNoteToDiscussion(client, discussion, pullRequest, RESOLVED_ISSUE_NEEDING_CLOSED_MESSAGE);
@@ -290,8 +366,36 @@ public abstract class DiscussionAwarePullRequestDecorator<C, P, U, D, N> impleme
         }
     }
 
-    private static boolean isCommentFromCurrentProject(Triple<?, ?, Optional<ProjectIssueIdentifier>> comment, String projectId) {
-        return comment.getRight().filter(projectIssueIdentifier -> projectId.equals(projectIssueIdentifier.getProjectKey())).isPresent();
+    private static boolean isCommentFromCurrentProject(SonarqubeDiscussion<?, ?> comment, String projectId) {
+        return comment.getIssueIdentifier().filter(projectIssueIdentifier -> projectId.equals(projectIssueIdentifier.getProjectKey())).isPresent();
+    }
+
+    private static final class SonarqubeDiscussion<D, N> {
+
+        private final D discussion;
+        private final List<N> notes;
+        private final Optional<ProjectIssueIdentifier> issueIdentifier;
+
+        private SonarqubeDiscussion(D discussion, List<N> notes, Optional<ProjectIssueIdentifier> issueIdentifier) {
+            this.discussion = discussion;
+            this.notes = notes;
+            this.issueIdentifier = issueIdentifier;
+        }
+
+        D getDiscussion() {
+            return discussion;
+        }
+
+        /**
+         * @return the notes in the discussion, or an empty Optional if they have not been retrieved
+         */
+        Optional<List<N>> getNotes() {
+            return Optional.ofNullable(notes);
+        }
+
+        Optional<ProjectIssueIdentifier> getIssueIdentifier() {
+            return issueIdentifier;
+        }
     }
 
     protected static class ProjectIssueIdentifier {
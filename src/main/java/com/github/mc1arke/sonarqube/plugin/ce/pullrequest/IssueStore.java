@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.ce.pullrequest;
+
+import org.sonar.api.rule.RuleKey;
+import org.sonar.api.rules.RuleType;
+import org.sonar.ce.task.projectanalysis.component.Component;
+import org.sonar.core.issue.DefaultIssue;
+import org.sonar.db.protobuf.DbIssues;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Column-oriented storage for the issues collected during an analysis. Each field is held in its own array rather than
+ * as an object per issue, and values that repeat across issues (components, rules, severities, statuses, resolutions
+ * and types) are stored once and referenced by index. Of the issue locations, only the primary text range is retained,
+ * since that's all the decorators read.
+ */
+final class IssueStore {
+
+    private static final int INITIAL_CAPACITY = 64;
+    private static final long NO_EFFORT = Long.MIN_VALUE;
+    private static final int NO_VALUE = Integer.MIN_VALUE;
+    private static final int TEXT_RANGE_FIELDS = 4;
+
+    private final Interner<Component> components = new Interner<>(new IdentityHashMap<>());
+    private final Interner<RuleKey> ruleKeys = new Interner<>(new HashMap<>());
+    private final Interner<String> severities = new Interner<>(new HashMap<>());
+    private final Interner<String> statuses = new Interner<>(new HashMap<>());
+    private final Interner<String> resolutions = new Interner<>(new HashMap<>());
+    private final Interner<RuleType> types = new Interner<>(new HashMap<>());
+
+    private int size;
+    private int[] componentIndexes = new int[INITIAL_CAPACITY];
+    private String[] keys = new String[INITIAL_CAPACITY];
+    private String[] messages = new String[INITIAL_CAPACITY];
+    private long[] efforts = new long[INITIAL_CAPACITY];
+    private int[] lines = new int[INITIAL_CAPACITY];
+    private int[] ruleKeyIndexes = new int[INITIAL_CAPACITY];
+    private int[] severityIndexes = new int[INITIAL_CAPACITY];
+    private int[] statusIndexes = new int[INITIAL_CAPACITY];
+    private int[] resolutionIndexes = new int[INITIAL_CAPACITY];
+    private int[] typeIndexes = new int[INITIAL_CAPACITY];
+    private int[] textRanges = new int[INITIAL_CAPACITY * TEXT_RANGE_FIELDS];
+
+    /**
+     * @param status the issue's status, as already read by the caller to decide whether the issue needs storing
+     * @return the index the issue has been stored at
+     */
+    int add(Component component, DefaultIssue issue, String status) {
+        ensureCapacity(size + 1);
+        int index = size;
+
+        componentIndexes[index] = components.indexOf(component);
+        keys[index] = issue.key();
+        messages[index] = issue.getMessage();
+        Long effort = issue.effortInMinutes();
+        efforts[index] = null == effort ? NO_EFFORT : effort;
+        Integer line = issue.getLine();
+        lines[index] = null == line ? NO_VALUE : line;
+        ruleKeyIndexes[index] = ruleKeys.indexOf(issue.getRuleKey());
+        severityIndexes[index] = severities.indexOf(issue.severity());
+        statusIndexes[index] = statuses.indexOf(status);
+        resolutionIndexes[index] = resolutions.indexOf(issue.resolution());
+        typeIndexes[index] = types.indexOf(issue.type());
+
+        DbIssues.Locations locations = issue.getLocations();
+        int textRangeOffset = index * TEXT_RANGE_FIELDS;
+        if (null != locations && locations.hasTextRange()) {
+            DbIssues.TextRange textRange = locations.getTextRange();
+            textRanges[textRangeOffset] = textRange.getStartLine();
+            textRanges[textRangeOffset + 1] = textRange.getStartOffset();
+            textRanges[textRangeOffset + 2] = textRange.getEndLine();
+            textRanges[textRangeOffset + 3] = textRange.getEndOffset();
+        } else {
+            textRanges[textRangeOffset] = NO_VALUE;
+        }
+
+        size++;
+        return index;
+    }
+
+    Component getComponent(int index) {
+        return components.get(componentIndexes[index]);
+    }
+
+    String getKey(int index) {
+        return keys[index];
+    }
+
+    String getMessage(int index) {
+        return messages[index];
+    }
+
+    Long getEffortInMinutes(int index) {
+        return efforts[index] == NO_EFFORT ? null : efforts[index];
+    }
+
+    Integer getLine(int index) {
+        return lines[index] == NO_VALUE ? null : lines[index];
+    }
+
+    RuleKey getRuleKey(int index) {
+        return ruleKeys.get(ruleKeyIndexes[index]);
+    }
+
+    String getSeverity(int index) {
+        return severities.get(severityIndexes[index]);
+    }
+
+    String getStatus(int index) {
+        return statuses.get(statusIndexes[index]);
+    }
+
+    String getResolution(int index) {
+        return resolutions.get(resolutionIndexes[index]);
+    }
+
+    RuleType getType(int index) {
+        return types.get(typeIndexes[index]);
+    }
+
+    /**
+     * Rebuilds the issue's locations from the retained primary text range. Nothing is allocated until a caller
+     * actually needs the locations.
+     */
+    DbIssues.Locations getLocations(int index) {
+        DbIssues.Locations.Builder builder = DbIssues.Locations.newBuilder();
+        int textRangeOffset = index * TEXT_RANGE_FIELDS;
+        if (textRanges[textRangeOffset] != NO_VALUE) {
+            builder.setTextRange(DbIssues.TextRange.newBuilder()
+                    .setStartLine(textRanges[textRangeOffset])
+                    .setStartOffset(textRanges[textRangeOffset + 1])
+                    .setEndLine(textRanges[textRangeOffset + 2])
+                    .setEndOffset(textRanges[textRangeOffset + 3])
+                    .build());
+        }
+        return builder.build();
+    }
+
+    private void ensureCapacity(int requiredCapacity) {
+        if (requiredCapacity <= keys.length) {
+            return;
+        }
+        int capacity = Math.max(requiredCapacity, keys.length + (keys.length >> 1));
+        componentIndexes = Arrays.copyOf(componentIndexes, capacity);
+        keys = Arrays.copyOf(keys, capacity);
+        messages = Arrays.copyOf(messages, capacity);
+        efforts = Arrays.copyOf(efforts, capacity);
+        lines = Arrays.copyOf(lines, capacity);
+        ruleKeyIndexes = Arrays.copyOf(ruleKeyIndexes, capacity);
+        severityIndexes = Arrays.copyOf(severityIndexes, capacity);
+        statusIndexes = Arrays.copyOf(statusIndexes, capacity);
+        resolutionIndexes = Arrays.copyOf(resolutionIndexes, capacity);
+        typeIndexes = Arrays.copyOf(typeIndexes, capacity);
+        textRanges = Arrays.copyOf(textRanges, capacity * TEXT_RANGE_FIELDS);
+    }
+
+    private static final class Interner<T> {
+
+        private final Map<T, Integer> indexes;
+        private final List<T> values = new ArrayList<>();
+
+        Interner(Map<T, Integer> indexes) {
+            this.indexes = indexes;
+        }
+
+        int indexOf(T value) {
+            return indexes.computeIfAbsent(value, v -> {
+                values.add(v);
+                return values.size() - 1;
+            });
+        }
+
+        T get(int index) {
+            return values.get(index);
+        }
+    }
+}
@@ -18,31 +18,94 @@
  */
 package com.github.mc1arke.sonarqube.plugin.ce.pullrequest;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.issue.Issue;
 import org.sonar.api.rule.RuleKey;
 import org.sonar.api.rules.RuleType;
+import org.sonar.ce.task.projectanalysis.analysis.AnalysisMetadataHolder;
 import org.sonar.ce.task.projectanalysis.component.Component;
 import org.sonar.ce.task.projectanalysis.issue.IssueVisitor;
 import org.sonar.core.issue.DefaultIssue;
+import org.sonar.db.DbClient;
+import org.sonar.db.DbSession;
 import org.sonar.db.protobuf.DbIssues;
 
 import javax.annotation.CheckForNull;
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 
 public class PostAnalysisIssueVisitor extends IssueVisitor {
 
-    private final List<ComponentIssue> collectedIssues = new ArrayList<>();
+    private static final Logger LOGGER = LoggerFactory.getLogger(PostAnalysisIssueVisitor.class);
+
+    private final IssueStore issueStore = new IssueStore();
+    private final CollectedIssues collectedIssues = new CollectedIssues(this::getIssue);
+    private final AnalysisMetadataHolder analysisMetadataHolder;
+    private final DbClient dbClient;
+    private Boolean collectingIssues;
+
+    public PostAnalysisIssueVisitor(AnalysisMetadataHolder analysisMetadataHolder, DbClient dbClient) {
+        super();
+        this.analysisMetadataHolder = analysisMetadataHolder;
+        this.dbClient = dbClient;
+    }
 
     @Override
     public void onIssue(Component component, DefaultIssue defaultIssue) {
-        collectedIssues.add(new ComponentIssue(component, new LightIssue(defaultIssue)));
+        if (!isCollectingIssues()) {
+            return;
+        }
+        // closed and resolved issues are never reported or counted, so aren't worth holding for the rest of the task
+        String status = defaultIssue.status();
+        if (Issue.STATUS_CLOSED.equals(status) || Issue.STATUS_RESOLVED.equals(status)) {
+            return;
+        }
+        int index = issueStore.add(component, defaultIssue, status);
+        collectedIssues.add(component, new LightIssue(issueStore, index));
+    }
+
+    /**
+     * The visitor runs for every analysis, but the issues are only used to decorate a pull request, so there's no point
+     * holding them for branch analyses or for projects that aren't bound to an ALM. The check is made on the first
+     * issue, by which point the analysis metadata has been loaded, and the result kept for the rest of the visit.
+     */
+    private boolean isCollectingIssues() {
+        if (null == collectingIssues) {
+            collectingIssues = isDecorationPossible();
+        }
+        return collectingIssues;
     }
 
+    private boolean isDecorationPossible() {
+        if (!analysisMetadataHolder.isPullRequest()) {
+            LOGGER.trace("Current analysis is not for a Pull Request. Issues will not be collected");
+            return false;
+        }
+
+        try (DbSession dbSession = dbClient.openSession(false)) {
+            if (dbClient.projectAlmSettingDao().selectByProject(dbSession, analysisMetadataHolder.getProject().getUuid()).isEmpty()) {
+                LOGGER.debug("No ALM has been set on the current project. Issues will not be collected");
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return a read-only view of the collected issues. Each element is created on access rather than held in memory.
+     */
     public List<ComponentIssue> getIssues() {
-        return Collections.unmodifiableList(collectedIssues);
+        return collectedIssues.getIssues();
+    }
+
+    public CollectedIssues getCollectedIssues() {
+        return collectedIssues;
+    }
+
+    private ComponentIssue getIssue(int index) {
+        return new ComponentIssue(issueStore.getComponent(index), new LightIssue(issueStore, index));
     }
 
     public static class ComponentIssue {
@@ -70,6 +133,23 @@ public class PostAnalysisIssueVisitor extends IssueVisitor {
             }
             return Optional.empty();
         }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(component, issue);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj == null || getClass() != obj.getClass()) {
+                return false;
+            }
+            ComponentIssue other = (ComponentIssue) obj;
+            return Objects.equals(component, other.component) && Objects.equals(issue, other.issue);
+        }
     }
 
     /**
@@ -80,82 +160,69 @@ public class PostAnalysisIssueVisitor extends IssueVisitor {
      */
     public static class LightIssue {
 
-        private final Long effortInMinutes;
-        private final String key;
-        private final Integer line;
-        private final String message;
-        private final String resolution;
-        private final String severity;
-        private final String status;
-        private final RuleType type;
-        private final DbIssues.Locations locations;
-        private final RuleKey ruleKey;
-
-        LightIssue(DefaultIssue issue) {
-            this.effortInMinutes = issue.effortInMinutes();
-            this.key = issue.key();
-            this.line = issue.getLine();
-            this.message = issue.getMessage();
-
-            this.resolution = issue.resolution();
-            this.severity = issue.severity();
-            this.status = issue.status();
-            this.type = issue.type();
-            this.locations = issue.getLocations();
-            this.ruleKey = issue.getRuleKey();
+        private final IssueStore issueStore;
+        private final int index;
+
+        private LightIssue(IssueStore issueStore, int index) {
+            this.issueStore = issueStore;
+            this.index = index;
         }
 
         @CheckForNull
         public Long effortInMinutes() {
-            return effortInMinutes;
+            return issueStore.getEffortInMinutes(index);
         }
 
         public String key() {
-            return key;
+            return issueStore.getKey(index);
         }
 
         @CheckForNull
         public Integer getLine() {
-            return line;
+            return issueStore.getLine(index);
         }
 
         @CheckForNull
         public String getMessage() {
-            return message;
+            return issueStore.getMessage(index);
         }
 
         @CheckForNull
         public String resolution() {
-            return resolution;
+            return issueStore.getResolution(index);
         }
 
         public String severity() {
-            return severity;
+            return issueStore.getSeverity(index);
         }
 
         public String getStatus() {
-            return status;
+            return status();
         }
 
         public String status() {
-            return status;
+            return issueStore.getStatus(index);
         }
 
         public RuleType type() {
-            return type;
+            return issueStore.getType(index);
         }
 
+        /**
+         * @return the issue's locations, limited to the primary text range. The result is rebuilt on each call, so
+         * callers needing it repeatedly should hold on to it.
+         */
         public DbIssues.Locations getLocations() {
-            return locations;
+            return issueStore.getLocations(index);
         }
 
         public RuleKey getRuleKey() {
-            return ruleKey; 
+            return issueStore.getRuleKey(index);
         }
 
         @Override
         public int hashCode() {
-            return Objects.hash(effortInMinutes, key, line, message, resolution, severity, status, type);
+            return Objects.hash(effortInMinutes(), key(), getLine(), getMessage(), resolution(), severity(), status(), type());
         }
 
         @Override
@@ -167,14 +234,14 @@ public class PostAnalysisIssueVisitor extends IssueVisitor {
                 return false;
             }
             LightIssue other = (LightIssue) obj;
-            return Objects.equals(effortInMinutes, other.effortInMinutes)
-                    && Objects.equals(key, other.key)
-                    && Objects.equals(line, other.line)
-                    && Objects.equals(message, other.message)
-                    && Objects.equals(resolution, other.resolution)
-                    && Objects.equals(severity, other.severity)
-                    && Objects.equals(status, other.status)
-                    && type == other.type;
+            return Objects.equals(effortInMinutes(), other.effortInMinutes())
+                    && Objects.equals(key(), other.key())
+                    && Objects.equals(getLine(), other.getLine())
+                    && Objects.equals(getMessage(), other.getMessage())
+                    && Objects.equals(resolution(), other.resolution())
+                    && Objects.equals(severity(), other.severity())
+                    && Objects.equals(status(), other.status())
+                    && type() == other.type();
         }
 
     }
@@ -18,6 +18,8 @@
  */
 package com.github.mc1arke.sonarqube.plugin.ce.pullrequest;
 
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmClientMetrics;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmRequestThrottler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonar.api.ce.posttask.Analysis;
@@ -29,9 +31,6 @@ import org.sonar.db.DbSession;
 import org.sonar.db.alm.setting.ALM;
 import org.sonar.db.alm.setting.AlmSettingDto;
 import org.sonar.db.alm.setting.ProjectAlmSettingDto;
-import org.sonar.db.component.BranchDao;
-import org.sonar.db.component.BranchDto;
-import org.sonar.db.protobuf.DbProjectBranches;
 
 import java.util.List;
 import java.util.Optional;
@@ -41,15 +40,20 @@ public class PullRequestPostAnalysisTask implements PostProjectAnalysisTask {
     private static final Logger LOGGER = LoggerFactory.getLogger(PullRequestPostAnalysisTask.class);
 
     private final List<PullRequestBuildStatusDecorator> pullRequestDecorators;
-    private final PostAnalysisIssueVisitor postAnalysisIssueVisitor;
+    private final AnalysisDetailsFactory analysisDetailsFactory;
     private final DbClient dbClient;
+    private final DecorationOutbox decorationOutbox;
+    private final DecoratedDiscussionRepository decoratedDiscussionRepository;
 
     public PullRequestPostAnalysisTask(List<PullRequestBuildStatusDecorator> pullRequestDecorators,
-                                       PostAnalysisIssueVisitor postAnalysisIssueVisitor, DbClient dbClient) {
+                                       AnalysisDetailsFactory analysisDetailsFactory, DbClient dbClient,
+                                       DecorationOutbox decorationOutbox, DecoratedDiscussionRepository decoratedDiscussionRepository) {
         super();
         this.pullRequestDecorators = pullRequestDecorators;
-        this.postAnalysisIssueVisitor = postAnalysisIssueVisitor;
+        this.analysisDetailsFactory = analysisDetailsFactory;
         this.dbClient = dbClient;
+        this.decorationOutbox = decorationOutbox;
+        this.decoratedDiscussionRepository = decoratedDiscussionRepository;
     }
 
     @Override
@@ -75,16 +79,57 @@ public class PullRequestPostAnalysisTask implements PostProjectAnalysisTask {
             return;
         }
 
+        String pullRequestId = optionalPullRequestId.get();
+        try (AlmClientMetrics metrics = AlmClientMetrics.start()) {
+            Optional<PreparedDecoration> optionalPreparedDecoration = prepareDecoration(projectAnalysis, pullRequestId);
+            if (optionalPreparedDecoration.isEmpty()) {
+                return;
+            }
+
+            PreparedDecoration preparedDecoration = optionalPreparedDecoration.get();
+            if (decorationOutbox.enqueue(projectAnalysis.getProject().getUuid(), pullRequestId, () -> decorateFromQueue(preparedDecoration))) {
+                LogStatistics logStatistics = context.getLogStatistics();
+                logStatistics.add("decorationQueued", true);
+                logStatistics.add("decorationQueueDepth", decorationOutbox.getQueueDepth());
+                logStatistics.add("decorationQueueAgeMs", decorationOutbox.getOldestQueuedDecorationAgeMillis());
+                return;
+            }
+
+            decorate(preparedDecoration);
+            reportMetrics(context, preparedDecoration.getPullRequestDecorator(), metrics);
+        }
+    }
+
+    private void decorateFromQueue(PreparedDecoration preparedDecoration) {
+        try (AlmClientMetrics metrics = AlmClientMetrics.start()) {
+            decorate(preparedDecoration);
+            logMetrics(preparedDecoration.getPullRequestDecorator(), metrics);
+        }
+    }
+
+    private void decorate(PreparedDecoration preparedDecoration) {
+        PullRequestBuildStatusDecorator pullRequestDecorator = preparedDecoration.getPullRequestDecorator();
+        LOGGER.info("Using pull request decorator {}", pullRequestDecorator.getClass().getName());
+        DecorationResult decorationResult = AlmClientMetrics.time("decorate",
+                () -> pullRequestDecorator.decorateQualityGateStatus(preparedDecoration.getAnalysisDetails(),
+                        preparedDecoration.getAlmSettingDto(), preparedDecoration.getProjectAlmSettingDto()));
+
+        AlmClientMetrics.run("saveDecorationRecord", () -> decoratedDiscussionRepository.saveDecorationResult(
+                preparedDecoration.getProjectAnalysis().getProject().getUuid(), preparedDecoration.getAnalysisDetails().getPullRequestId(), decorationResult));
+    }
+
+    private Optional<PreparedDecoration> prepareDecoration(ProjectAnalysis projectAnalysis, String pullRequestId) {
         ProjectAlmSettingDto projectAlmSettingDto;
         Optional<AlmSettingDto> optionalAlmSettingDto;
-        try (DbSession dbSession = dbClient.openSession(false)) {
+        try (AlmClientMetrics.Phase ignored = AlmClientMetrics.startPhase("loadAlmSettings");
+             DbSession dbSession = dbClient.openSession(false)) {
 
             Optional<ProjectAlmSettingDto> optionalProjectAlmSettingDto =
                     dbClient.projectAlmSettingDao().selectByProject(dbSession, projectAnalysis.getProject().getUuid());
 
             if (optionalProjectAlmSettingDto.isEmpty()) {
                 LOGGER.debug("No ALM has been set on the current project");
-                return;
+                return Optional.empty();
             }
 
             projectAlmSettingDto = optionalProjectAlmSettingDto.get();
@@ -95,7 +140,7 @@ public class PullRequestPostAnalysisTask implements PostProjectAnalysisTask {
 
         if (optionalAlmSettingDto.isEmpty()) {
             LOGGER.warn("The ALM configured for this project could not be found");
-            return;
+            return Optional.empty();
         }
 
         AlmSettingDto almSettingDto = optionalAlmSettingDto.get();
@@ -104,14 +149,14 @@ public class PullRequestPostAnalysisTask implements PostProjectAnalysisTask {
 
         if (optionalPullRequestDecorator.isEmpty()) {
             LOGGER.info("No decorator found for this Pull Request");
-            return;
+            return Optional.empty();
         }
 
         Optional<Analysis> optionalAnalysis = projectAnalysis.getAnalysis();
         if (optionalAnalysis.isEmpty()) {
             LOGGER.warn(
                     "No analysis results were created for this project analysis. This is likely to be due to an earlier failure");
-            return;
+            return Optional.empty();
         }
 
         Analysis analysis = optionalAnalysis.get();
@@ -119,28 +164,54 @@ public class PullRequestPostAnalysisTask implements PostProjectAnalysisTask {
         Optional<String> revision = analysis.getRevision();
         if (revision.isEmpty()) {
             LOGGER.warn("No commit details were submitted with this analysis. Check the project is committed to Git");
-            return;
+            return Optional.empty();
         }
 
         QualityGate qualityGate = projectAnalysis.getQualityGate();
         if (null == qualityGate) {
             LOGGER.warn("No quality gate was found on the analysis, so no results are available");
-            return;
+            return Optional.empty();
         }
 
         String commitId = revision.get();
 
         AnalysisDetails analysisDetails =
-                new AnalysisDetails(optionalPullRequestId.get(), commitId,
-                                    postAnalysisIssueVisitor.getIssues(), qualityGate, projectAnalysis);
+                analysisDetailsFactory.createAnalysisDetails(pullRequestId, commitId, qualityGate, projectAnalysis);
 
-        PullRequestBuildStatusDecorator pullRequestDecorator = optionalPullRequestDecorator.get();
-        LOGGER.info("Using pull request decorator {}", pullRequestDecorator.getClass().getName());
-        DecorationResult decorationResult = pullRequestDecorator.decorateQualityGateStatus(analysisDetails, almSettingDto, projectAlmSettingDto);
+        return Optional.of(new PreparedDecoration(optionalPullRequestDecorator.get(), analysisDetails, almSettingDto,
+                projectAlmSettingDto, projectAnalysis));
+    }
 
-        decorationResult.getPullRequestUrl().ifPresent(pullRequestUrl -> persistPullRequestUrl(pullRequestUrl, projectAnalysis, optionalPullRequestId.get()));
+    /**
+     * Publishes the decoration metrics as statistics on the Compute Engine task log line, and as a structured log line
+     * holding the breakdown of API calls by endpoint.
+     */
+    private static void reportMetrics(Context context, PullRequestBuildStatusDecorator pullRequestDecorator, AlmClientMetrics metrics) {
+        LogStatistics logStatistics = context.getLogStatistics();
+        logStatistics.add("decorator", pullRequestDecorator.getClass().getSimpleName());
+        logStatistics.add("decorationTimeMs", metrics.getWallTimeMillis());
+        logStatistics.add("almApiCalls", metrics.getApiCallCount());
+        logStatistics.add("almBytesSent", metrics.getBytesSent());
+        logStatistics.add("almBytesReceived", metrics.getBytesReceived());
+        logStatistics.add("almRetries", metrics.getRetries());
+        metrics.getPhaseTimeMillis().forEach((phase, time) -> logStatistics.add(phase + "TimeMs", time));
+        logMetrics(pullRequestDecorator, metrics);
     }
 
+    private static void logMetrics(PullRequestBuildStatusDecorator pullRequestDecorator, AlmClientMetrics metrics) {
+        LOGGER.atInfo().setMessage("Pull request decoration metrics | decorator={} | wallTimeMs={} | apiCalls={} | bytesSent={} | bytesReceived={} | retries={} | phaseTimeMs={} | callsByEndpoint={} | rateLimitRemaining={} | rateLimitWaiting={}")
+                .addArgument(() -> pullRequestDecorator.getClass().getSimpleName())
+                .addArgument(metrics::getWallTimeMillis)
+                .addArgument(metrics::getApiCallCount)
+                .addArgument(metrics::getBytesSent)
+                .addArgument(metrics::getBytesReceived)
+                .addArgument(metrics::getRetries)
+                .addArgument(metrics::getPhaseTimeMillis)
+                .addArgument(metrics::getApiCalls)
+                .addArgument(AlmRequestThrottler::getRemainingBudgets)
+                .addArgument(AlmRequestThrottler::getWaitingRequests)
+                .log();
+    }
 
     private static Optional<PullRequestBuildStatusDecorator> findCurrentPullRequestStatusDecorator(
             AlmSettingDto almSetting, List<PullRequestBuildStatusDecorator> pullRequestDecorators) {
@@ -156,19 +227,42 @@ public class PullRequestPostAnalysisTask implements PostProjectAnalysisTask {
         return Optional.empty();
     }
 
-    private void persistPullRequestUrl(String pullRequestUrl, ProjectAnalysis projectAnalysis, String branchName) {
-        try (DbSession dbSession = dbClient.openSession(false)) {
-            BranchDao branchDao = dbClient.branchDao();
-            Optional<BranchDto> optionalBranchDto = branchDao
-                    .selectByPullRequestKey(dbSession, projectAnalysis.getProject().getUuid(), branchName);
-            if (optionalBranchDto.isPresent()) {
-                BranchDto branchDto = optionalBranchDto.get();
-                DbProjectBranches.PullRequestData.Builder pullRequestDataBuilder = DbProjectBranches.PullRequestData.newBuilder(branchDto.getPullRequestData());
-                pullRequestDataBuilder.setUrl(pullRequestUrl);
-                branchDto.setPullRequestData(pullRequestDataBuilder.build());
-                branchDao.upsert(dbSession, branchDto);
-                dbSession.commit();
-            }
+    private static final class PreparedDecoration {
+
+        private final PullRequestBuildStatusDecorator pullRequestDecorator;
+        private final AnalysisDetails analysisDetails;
+        private final AlmSettingDto almSettingDto;
+        private final ProjectAlmSettingDto projectAlmSettingDto;
+        private final ProjectAnalysis projectAnalysis;
+
+        private PreparedDecoration(PullRequestBuildStatusDecorator pullRequestDecorator, AnalysisDetails analysisDetails,
+                                   AlmSettingDto almSettingDto, ProjectAlmSettingDto projectAlmSettingDto,
+                                   ProjectAnalysis projectAnalysis) {
+            this.pullRequestDecorator = pullRequestDecorator;
+            this.analysisDetails = analysisDetails;
+            this.almSettingDto = almSettingDto;
+            this.projectAlmSettingDto = projectAlmSettingDto;
+            this.projectAnalysis = projectAnalysis;
+        }
+
+        PullRequestBuildStatusDecorator getPullRequestDecorator() {
+            return pullRequestDecorator;
+        }
+
+        AnalysisDetails getAnalysisDetails() {
+            return analysisDetails;
+        }
+
+        AlmSettingDto getAlmSettingDto() {
+            return almSettingDto;
+        }
+
+        ProjectAlmSettingDto getProjectAlmSettingDto() {
+            return projectAlmSettingDto;
+        }
+
+        ProjectAnalysis getProjectAnalysis() {
+            return projectAnalysis;
         }
     }
 }
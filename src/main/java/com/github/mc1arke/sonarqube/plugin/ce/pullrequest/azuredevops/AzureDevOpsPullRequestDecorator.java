@@ -34,6 +34,7 @@ import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.enums.Com
 import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.enums.CommentType;
 import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.mappers.GitStatusStateMapper;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.AnalysisDetails;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.DecoratedDiscussionRepository;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.DiscussionAwarePullRequestDecorator;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.PostAnalysisIssueVisitor;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.PullRequestBuildStatusDecorator;
@@ -45,13 +46,14 @@ import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonar.api.ce.posttask.QualityGate;
-import org.sonar.ce.task.projectanalysis.scm.ScmInfoRepository;
+import org.sonar.api.config.Configuration;
 import org.sonar.db.alm.setting.ALM;
 import org.sonar.db.alm.setting.AlmSettingDto;
 import org.sonar.db.alm.setting.ProjectAlmSettingDto;
 import org.sonar.db.protobuf.DbIssues;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.Collections;
@@ -59,6 +61,7 @@ import java.util.List;
 import java.util.Optional;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class AzureDevOpsPullRequestDecorator extends DiscussionAwarePullRequestDecorator<AzureDevopsClient, PullRequest, Void, CommentThread, Comment> implements PullRequestBuildStatusDecorator {
 
@@ -67,10 +70,10 @@ public class AzureDevOpsPullRequestDecorator extends DiscussionAwarePullRequestD
     private final AzureDevopsClientFactory azureDevopsClientFactory;
     private final MarkdownFormatterFactory markdownFormatterFactory;
 
-    public AzureDevOpsPullRequestDecorator(ScmInfoRepository scmInfoRepository,
-                                           AzureDevopsClientFactory azureDevopsClientFactory,
-                                           ReportGenerator reportGenerator, MarkdownFormatterFactory markdownFormatterFactory) {
-        super(scmInfoRepository, reportGenerator);
+    public AzureDevOpsPullRequestDecorator(AzureDevopsClientFactory azureDevopsClientFactory,
+                                           ReportGenerator reportGenerator, MarkdownFormatterFactory markdownFormatterFactory,
+                                           Configuration configuration, DecoratedDiscussionRepository decoratedDiscussionRepository) {
+        super(reportGenerator, configuration, decoratedDiscussionRepository);
         this.azureDevopsClientFactory = azureDevopsClientFactory;
         this.markdownFormatterFactory = markdownFormatterFactory;
     }
@@ -121,11 +124,10 @@ public class AzureDevOpsPullRequestDecorator extends DiscussionAwarePullRequestD
 
     @Override
     protected List<String> getCommitIdsForPullRequest(AzureDevopsClient client, PullRequest pullRequest) {
-        try {
-            return client.getPullRequestCommits(pullRequest.getRepository().getProject().getName(), pullRequest.getRepository().getName(), pullRequest.getId()).stream()
-                    .map(Commit::getCommitId)
+        try (Stream<Commit> commits = client.getPullRequestCommits(pullRequest.getRepository().getProject().getName(), pullRequest.getRepository().getName(), pullRequest.getId())) {
+            return commits.map(Commit::getCommitId)
                     .collect(Collectors.toList());
-        } catch (IOException ex) {
+        } catch (UncheckedIOException ex) {
             throw new IllegalStateException("Could not retrieve commit details for Pull Request", ex);
         }
     }
@@ -147,7 +149,7 @@ public class AzureDevOpsPullRequestDecorator extends DiscussionAwarePullRequestD
     }
 
     @Override
-    protected void submitCommitNoteForIssue(AzureDevopsClient client, PullRequest pullRequest, PostAnalysisIssueVisitor.ComponentIssue issue, String filePath,
+    protected CommentThread submitCommitNoteForIssue(AzureDevopsClient client, PullRequest pullRequest, PostAnalysisIssueVisitor.ComponentIssue issue, String filePath,
                                             AnalysisDetails analysis, AnalysisIssueSummary analysisIssueSummary) {
         DbIssues.Locations location = issue.getIssue().getLocations();
 
@@ -164,7 +166,7 @@ public class AzureDevOpsPullRequestDecorator extends DiscussionAwarePullRequestD
             String file = filePath.startsWith("/") ? filePath : "/" + filePath;
             CommentThreadContext commentThreadContext = new CommentThreadContext(file, fileStart, fileEnd);
             CreateCommentThreadRequest thread = new CreateCommentThreadRequest(commentThreadContext, Collections.singletonList(comment), CommentThreadStatus.ACTIVE);
-            client.createThread(pullRequest.getRepository().getProject().getName(), pullRequest.getRepository().getName(), pullRequest.getId(), thread);
+            return client.createThread(pullRequest.getRepository().getProject().getName(), pullRequest.getRepository().getName(), pullRequest.getId(), thread);
         } catch (IOException ex) {
             throw new IllegalStateException("Could not submit commit comment to Azure Devops", ex);
         }
@@ -186,9 +188,9 @@ public class AzureDevOpsPullRequestDecorator extends DiscussionAwarePullRequestD
     }
 
     protected List<CommentThread> getDiscussions(AzureDevopsClient client, PullRequest pullRequest) {
-        try {
-            return client.retrieveThreads(pullRequest.getRepository().getProject().getName(), pullRequest.getRepository().getName(), pullRequest.getId());
-        } catch (IOException ex) {
+        try (Stream<CommentThread> threads = client.retrieveThreads(pullRequest.getRepository().getProject().getName(), pullRequest.getRepository().getName(), pullRequest.getId())) {
+            return threads.collect(Collectors.toList());
+        } catch (UncheckedIOException ex) {
             throw new IllegalStateException("Could not retrieve discussions from Azure Devops", ex);
         }
     }
@@ -203,6 +205,11 @@ public class AzureDevOpsPullRequestDecorator extends DiscussionAwarePullRequestD
         return note.getContent();
     }
 
+    @Override
+    protected String getDiscussionId(CommentThread discussion) {
+        return String.valueOf(discussion.getId());
+    }
+
     @Override
     protected List<Comment> getNotesForDiscussion(AzureDevopsClient client, CommentThread discussion) {
         return discussion.getComments();
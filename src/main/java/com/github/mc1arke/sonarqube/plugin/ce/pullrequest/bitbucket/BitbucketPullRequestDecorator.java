@@ -18,6 +18,9 @@
  */
 package com.github.mc1arke.sonarqube.plugin.ce.pullrequest.bitbucket;
 
+import com.github.mc1arke.sonarqube.plugin.CommunityBranchPlugin;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmClientMetrics;
+import com.github.mc1arke.sonarqube.plugin.almclient.ConcurrentRequestExecutor;
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.BitbucketClient;
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.BitbucketClientFactory;
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.BitbucketException;
@@ -32,11 +35,13 @@ import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.report.AnalysisSummary
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.report.ReportGenerator;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.AnalysisDetails;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.DecorationResult;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.PostAnalysisIssueVisitor;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.PullRequestBuildStatusDecorator;
-import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Lists;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonar.api.ce.posttask.QualityGate;
+import org.sonar.api.config.Configuration;
 import org.sonar.api.issue.Issue;
 import org.sonar.api.rule.Severity;
 import org.sonar.api.rules.RuleType;
@@ -49,15 +54,19 @@ import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import static java.lang.String.format;
-import static java.util.stream.Collectors.toSet;
 
 public class BitbucketPullRequestDecorator implements PullRequestBuildStatusDecorator {
 
@@ -65,17 +74,21 @@ public class BitbucketPullRequestDecorator implements PullRequestBuildStatusDeco
 
     private static final DecorationResult DEFAULT_DECORATION_RESULT = DecorationResult.builder().build();
 
+    private static final int DEFAULT_CONCURRENT_REQUESTS = 4;
+
     private final BitbucketClientFactory bitbucketClientFactory;
     private final ReportGenerator reportGenerator;
+    private final Configuration configuration;
 
-    public BitbucketPullRequestDecorator(BitbucketClientFactory bitbucketClientFactory, ReportGenerator reportGenerator) {
+    public BitbucketPullRequestDecorator(BitbucketClientFactory bitbucketClientFactory, ReportGenerator reportGenerator, Configuration configuration) {
         this.bitbucketClientFactory = bitbucketClientFactory;
         this.reportGenerator = reportGenerator;
+        this.configuration = configuration;
     }
 
     @Override
     public DecorationResult decorateQualityGateStatus(AnalysisDetails analysisDetails, AlmSettingDto almSettingDto, ProjectAlmSettingDto projectAlmSettingDto) {
-        BitbucketClient client = bitbucketClientFactory.createClient(projectAlmSettingDto, almSettingDto);
+        BitbucketClient client = AlmClientMetrics.time("createClient", () -> bitbucketClientFactory.createClient(projectAlmSettingDto, almSettingDto));
         try {
             if (!client.supportsCodeInsights()) {
                 LOGGER.warn("Your Bitbucket instance does not support the Code Insights API.");
@@ -93,9 +106,9 @@ public class BitbucketPullRequestDecorator implements PullRequestBuildStatusDeco
                     analysisDetails.getQualityGateStatus() == QualityGate.Status.OK ? ReportStatus.PASSED : ReportStatus.FAILED
             );
 
-            client.uploadReport(analysisDetails.getCommitSha(), codeInsightsReport, analysisDetails.getAnalysisProjectKey());
+            AlmClientMetrics.run("uploadReport", () -> client.uploadReport(analysisDetails.getCommitSha(), codeInsightsReport, analysisDetails.getAnalysisProjectKey()));
 
-            updateAnnotations(client, analysisDetails);
+            AlmClientMetrics.run("updateAnnotations", () -> updateAnnotations(client, analysisDetails));
         } catch (IOException e) {
             LOGGER.error("Could not decorate pull request for project {}", analysisDetails.getAnalysisProjectKey(), e);
         }
@@ -121,51 +134,132 @@ public class BitbucketPullRequestDecorator implements PullRequestBuildStatusDeco
     }
 
     private void updateAnnotations(BitbucketClient client, AnalysisDetails analysisDetails) throws IOException {
-        final AtomicInteger chunkCounter = new AtomicInteger(0);
-
-        client.deleteAnnotations(analysisDetails.getCommitSha(), analysisDetails.getAnalysisProjectKey());
+        Map<String, CodeInsightsAnnotation> existingAnnotations = client.retrieveAnnotations(analysisDetails.getCommitSha(), analysisDetails.getAnalysisProjectKey()).stream()
+                .collect(Collectors.toMap(CodeInsightsAnnotation::getExternalId, Function.identity(), (first, second) -> first));
 
         AnnotationUploadLimit uploadLimit = client.getAnnotationUploadLimit();
 
-        Map<Integer, Set<CodeInsightsAnnotation>> annotationChunks = analysisDetails.getScmReportableIssues().stream()
+        Iterator<PostAnalysisIssueVisitor.ComponentIssue> issues = analysisDetails.getScmReportableIssues().stream()
                 .filter(i -> !(i.getIssue().type() == RuleType.SECURITY_HOTSPOT && Issue.SECURITY_HOTSPOT_RESOLUTIONS
                         .contains(i.getIssue().resolution())))
-                .sorted(Comparator.comparing(a -> Severity.ALL.indexOf(a.getIssue().severity())))
-                .map(componentIssue -> {
-                    String path = componentIssue.getComponent().getReportAttributes().getScmPath().orElseThrow();
-                    AnalysisIssueSummary analysisIssueSummary = reportGenerator.createAnalysisIssueSummary(componentIssue, analysisDetails);
-                    return client.createCodeInsightsAnnotation(componentIssue.getIssue().key(),
-                            Optional.ofNullable(componentIssue.getIssue().getLine()).orElse(0),
-                            analysisIssueSummary.getIssueUrl(),
-                            componentIssue.getIssue().getMessage(),
-                            path,
-                            toBitbucketSeverity(componentIssue.getIssue().severity()),
-                            toBitbucketType(componentIssue.getIssue().type()));
-                }).collect(Collectors.groupingBy(s -> chunkCounter.getAndIncrement() / uploadLimit.getAnnotationBatchSize(), toSet()));
-
-        int totalAnnotationsCounter = 1;
-        for (Set<CodeInsightsAnnotation> annotations : annotationChunks.values()) {
-            try {
-                if (exceedsMaximumNumberOfAnnotations(totalAnnotationsCounter++, uploadLimit)) {
-                    LOGGER.warn("This project has too many issues. The provider only supports {}." +
-                            " The remaining annotations will be truncated.", uploadLimit.getTotalAllowedAnnotations());
-                    break;
-                }
+                .sorted(Comparator.comparing((PostAnalysisIssueVisitor.ComponentIssue i) -> Severity.ALL.indexOf(i.getIssue().severity())).reversed())
+                .iterator();
 
-                client.uploadAnnotations(analysisDetails.getCommitSha(), annotations, analysisDetails.getAnalysisProjectKey());
-            } catch (BitbucketException e) {
-                if (e.isError(BitbucketException.PAYLOAD_TOO_LARGE)) {
-                    LOGGER.warn("The annotations will be truncated since the maximum number of annotations for this report has been reached.");
-                } else {
-                    throw e;
-                }
+        int annotationCount = 0;
+        List<CodeInsightsAnnotation> annotationsToUpload = new ArrayList<>();
+        Set<String> annotationsToDelete = new HashSet<>();
+        while (issues.hasNext()) {
+            PostAnalysisIssueVisitor.ComponentIssue componentIssue = issues.next();
+            if (annotationCount >= uploadLimit.getTotalAllowedAnnotations()) {
+                LOGGER.warn("This project has too many issues. The provider only supports {}." +
+                        " The remaining annotations will be truncated.", uploadLimit.getTotalAllowedAnnotations());
+                break;
+            }
+
+            CodeInsightsAnnotation annotation = createAnnotation(client, componentIssue, analysisDetails);
+            annotationCount++;
+
+            CodeInsightsAnnotation existingAnnotation = existingAnnotations.remove(annotation.getExternalId());
+            if (annotation.equals(existingAnnotation)) {
+                continue;
+            }
+            if (existingAnnotation != null && !client.replacesAnnotationsOnUpload()) {
+                annotationsToDelete.add(existingAnnotation.getExternalId());
+            }
+            annotationsToUpload.add(annotation);
+        }
+        annotationsToDelete.addAll(existingAnnotations.keySet());
+
+        LOGGER.atInfo().setMessage("Synchronising annotations: {} unchanged, {} to upload, {} to delete")
+                .addArgument(annotationCount - annotationsToUpload.size())
+                .addArgument(annotationsToUpload.size())
+                .addArgument(annotationsToDelete.size())
+                .log();
+
+        client.deleteAnnotations(analysisDetails.getCommitSha(), analysisDetails.getAnalysisProjectKey(), annotationsToDelete);
+
+        List<List<CodeInsightsAnnotation>> chunks = Lists.partition(annotationsToUpload, Math.max(1, uploadLimit.getAnnotationBatchSize()));
+        if (chunks.isEmpty()) {
+            return;
+        }
+
+        // the first chunk holds the most severe issues so is uploaded on its own before any further chunks are sent
+        if (uploadChunk(client, analysisDetails, chunks.get(0))) {
+            uploadConcurrently(client, analysisDetails, chunks.subList(1, chunks.size()));
+        }
+    }
+
+    private CodeInsightsAnnotation createAnnotation(BitbucketClient client, PostAnalysisIssueVisitor.ComponentIssue componentIssue, AnalysisDetails analysisDetails) {
+        String path = componentIssue.getComponent().getReportAttributes().getScmPath().orElseThrow();
+        AnalysisIssueSummary analysisIssueSummary = reportGenerator.createAnalysisIssueSummary(componentIssue, analysisDetails);
+        return client.createCodeInsightsAnnotation(componentIssue.getIssue().key(),
+                Optional.ofNullable(componentIssue.getIssue().getLine()).orElse(0),
+                analysisIssueSummary.getIssueUrl(),
+                componentIssue.getIssue().getMessage(),
+                path,
+                toBitbucketSeverity(componentIssue.getIssue().severity()),
+                toBitbucketType(componentIssue.getIssue().type()));
+    }
+
+    /**
+     * Uploads a single chunk of annotations, returning false if Bitbucket reports the report cannot hold any more
+     * annotations.
+     */
+    private static boolean uploadChunk(BitbucketClient client, AnalysisDetails analysisDetails, List<CodeInsightsAnnotation> annotations) throws IOException {
+        try {
+            client.uploadAnnotations(analysisDetails.getCommitSha(), new LinkedHashSet<>(annotations), analysisDetails.getAnalysisProjectKey());
+            return true;
+        } catch (BitbucketException e) {
+            if (e.isError(BitbucketException.PAYLOAD_TOO_LARGE)) {
+                LOGGER.warn("The annotations will be truncated since the maximum number of annotations for this report has been reached.");
+                return false;
             }
+            throw e;
+        }
+    }
+
+    /**
+     * Uploads the given chunks with bounded parallelism. Rate limited responses are retried by the throttling
+     * interceptor on the underlying HTTP client, so only the first failure (in chunk order) is rethrown here with any
+     * later failures suppressed on it. Once Bitbucket reports the report is full, chunks that have not yet been started
+     * are skipped.
+     */
+    private void uploadConcurrently(BitbucketClient client, AnalysisDetails analysisDetails, List<List<CodeInsightsAnnotation>> chunks) throws IOException {
+        AtomicBoolean reportFull = new AtomicBoolean();
+        List<Callable<Void>> uploads = new ArrayList<>();
+        for (List<CodeInsightsAnnotation> chunk : chunks) {
+            uploads.add(() -> {
+                if (!reportFull.get() && !uploadChunk(client, analysisDetails, chunk)) {
+                    reportFull.set(true);
+                }
+                return null;
+            });
         }
+        throwCollectedFailures(ConcurrentRequestExecutor.invokeAll(uploads, getConcurrentRequests()));
+    }
+
+    private int getConcurrentRequests() {
+        return configuration.getInt(String.format(CommunityBranchPlugin.DECORATION_CONCURRENT_REQUESTS, "bitbucket"))
+                .orElse(DEFAULT_CONCURRENT_REQUESTS);
     }
 
-    @VisibleForTesting
-    static boolean exceedsMaximumNumberOfAnnotations(int chunkCounter, AnnotationUploadLimit uploadLimit) {
-        return (chunkCounter * uploadLimit.getAnnotationBatchSize()) > uploadLimit.getTotalAllowedAnnotations();
+    private static void throwCollectedFailures(List<Exception> failures) throws IOException {
+        if (failures.isEmpty()) {
+            return;
+        }
+
+        LOGGER.warn("{} annotation upload request(s) failed", failures.size());
+        Exception firstFailure = failures.get(0);
+        for (Exception failure : failures.subList(1, failures.size())) {
+            firstFailure.addSuppressed(failure);
+        }
+        if (firstFailure instanceof IOException) {
+            throw (IOException) firstFailure;
+        }
+        if (firstFailure instanceof RuntimeException) {
+            throw (RuntimeException) firstFailure;
+        }
+        throw new IllegalStateException(firstFailure);
     }
 
     private static String toBitbucketSeverity(String severity) {
@@ -18,6 +18,7 @@
  */
 package com.github.mc1arke.sonarqube.plugin.ce.pullrequest.github;
 
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmClientMetrics;
 import com.github.mc1arke.sonarqube.plugin.almclient.github.GithubClient;
 import com.github.mc1arke.sonarqube.plugin.almclient.github.GithubClientFactory;
 import com.github.mc1arke.sonarqube.plugin.almclient.github.model.Annotation;
@@ -82,11 +83,11 @@ public class GithubPullRequestDecorator implements PullRequestBuildStatusDecorat
                 .build();
 
         try {
-            GithubClient githubClient = githubClientFactory.createClient(projectAlmSettingDto, almSettingDto);
+            GithubClient githubClient = AlmClientMetrics.time("createClient", () -> githubClientFactory.createClient(projectAlmSettingDto, almSettingDto));
 
-            githubClient.createCheckRun(checkRunDetails,
+            AlmClientMetrics.time("createCheckRun", () -> githubClient.createCheckRun(checkRunDetails,
                             Optional.ofNullable(projectAlmSettingDto.getSummaryCommentEnabled())
-                                    .orElse(false));
+                                    .orElse(false)));
 
             return DecorationResult.builder()
                     .withPullRequestUrl(githubClient.getRepositoryUrl() + "/pull/" + checkRunDetails.getPullRequestId())
@@ -29,6 +29,7 @@ import com.github.mc1arke.sonarqube.plugin.almclient.gitlab.model.Note;
 import com.github.mc1arke.sonarqube.plugin.almclient.gitlab.model.PipelineStatus;
 import com.github.mc1arke.sonarqube.plugin.almclient.gitlab.model.User;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.AnalysisDetails;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.DecoratedDiscussionRepository;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.DiscussionAwarePullRequestDecorator;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.PostAnalysisIssueVisitor;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.markup.MarkdownFormatterFactory;
@@ -36,7 +37,7 @@ import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.report.AnalysisIssueSu
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.report.AnalysisSummary;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.report.ReportGenerator;
 import org.sonar.api.ce.posttask.QualityGate;
-import org.sonar.ce.task.projectanalysis.scm.ScmInfoRepository;
+import org.sonar.api.config.Configuration;
 import org.sonar.db.alm.setting.ALM;
 import org.sonar.db.alm.setting.AlmSettingDto;
 import org.sonar.db.alm.setting.ProjectAlmSettingDto;
@@ -56,8 +57,9 @@ public class GitlabMergeRequestDecorator extends DiscussionAwarePullRequestDecor
     private final GitlabClientFactory gitlabClientFactory;
     private final MarkdownFormatterFactory formatterFactory;
 
-    public GitlabMergeRequestDecorator(ScmInfoRepository scmInfoRepository, GitlabClientFactory gitlabClientFactory, ReportGenerator reportGenerator, MarkdownFormatterFactory formatterFactory) {
-        super(scmInfoRepository, reportGenerator);
+    public GitlabMergeRequestDecorator(GitlabClientFactory gitlabClientFactory, ReportGenerator reportGenerator, MarkdownFormatterFactory formatterFactory, Configuration configuration,
+                                       DecoratedDiscussionRepository decoratedDiscussionRepository) {
+        super(reportGenerator, configuration, decoratedDiscussionRepository);
         this.gitlabClientFactory = gitlabClientFactory;
         this.formatterFactory = formatterFactory;
     }
@@ -137,11 +139,11 @@ public class GitlabMergeRequestDecorator extends DiscussionAwarePullRequestDecor
     }
 
     @Override
-    protected void submitCommitNoteForIssue(GitlabClient client, MergeRequest mergeRequest, PostAnalysisIssueVisitor.ComponentIssue issue, String path, AnalysisDetails analysis, AnalysisIssueSummary analysisIssueSummary) {
+    protected Discussion submitCommitNoteForIssue(GitlabClient client, MergeRequest mergeRequest, PostAnalysisIssueVisitor.ComponentIssue issue, String path, AnalysisDetails analysis, AnalysisIssueSummary analysisIssueSummary) {
         Integer line = Optional.ofNullable(issue.getIssue().getLine()).orElseThrow(() -> new IllegalStateException("No line is associated with this issue"));
 
         try {
-            client.addMergeRequestDiscussion(mergeRequest.getTargetProjectId(), mergeRequest.getIid(),
+            return client.addMergeRequestDiscussion(mergeRequest.getTargetProjectId(), mergeRequest.getIid(),
                     new CommitNote(analysisIssueSummary.format(formatterFactory),
                     mergeRequest.getDiffRefs().getBaseSha(),
                     mergeRequest.getDiffRefs().getStartSha(),
@@ -188,6 +190,11 @@ public class GitlabMergeRequestDecorator extends DiscussionAwarePullRequestDecor
         return note.getBody();
     }
 
+    @Override
+    protected String getDiscussionId(Discussion discussion) {
+        return discussion.getId();
+    }
+
     @Override
     protected List<Note> getNotesForDiscussion(GitlabClient client, Discussion discussion) {
         return discussion.getNotes();
@@ -23,15 +23,10 @@ import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.AnalysisDetails;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.PostAnalysisIssueVisitor;
 import org.sonar.api.ce.posttask.QualityGate;
 import org.sonar.api.config.Configuration;
-import org.sonar.api.issue.Issue;
 import org.sonar.api.measures.CoreMetrics;
 import org.sonar.api.measures.Metric;
 import org.sonar.api.platform.Server;
 import org.sonar.api.rules.RuleType;
-import org.sonar.ce.task.projectanalysis.component.TreeRootHolder;
-import org.sonar.ce.task.projectanalysis.measure.Measure;
-import org.sonar.ce.task.projectanalysis.measure.MeasureRepository;
-import org.sonar.ce.task.projectanalysis.metric.MetricRepository;
 import org.sonar.server.measure.Rating;
 
 import java.math.BigDecimal;
@@ -40,17 +35,13 @@ import java.nio.charset.StandardCharsets;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
 import java.text.NumberFormat;
-import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.Optional;
 import java.util.stream.Collectors;
 
 public class ReportGenerator {
 
-    private static final List<String> CLOSED_ISSUE_STATUS = Arrays.asList(Issue.STATUS_CLOSED, Issue.STATUS_RESOLVED);
-
     private static final List<BigDecimal> COVERAGE_LEVELS = List.of(BigDecimal.valueOf(100),
                     BigDecimal.valueOf(90),
                     BigDecimal.valueOf(60),
@@ -65,16 +56,10 @@ public class ReportGenerator {
 
     private final Server server;
     private final Configuration configuration;
-    private final MeasureRepository measureRepository;
-    private final MetricRepository metricRepository;
-    private final TreeRootHolder treeRootHolder;
 
-    public ReportGenerator(Server server, Configuration configuration, MeasureRepository measureRepository, MetricRepository metricRepository, TreeRootHolder treeRootHolder) {
+    public ReportGenerator(Server server, Configuration configuration) {
         this.server = server;
         this.configuration = configuration;
-        this.measureRepository = measureRepository;
-        this.metricRepository = metricRepository;
-        this.treeRootHolder = treeRootHolder;
     }
 
     public AnalysisIssueSummary createAnalysisIssueSummary(PostAnalysisIssueVisitor.ComponentIssue componentIssue, AnalysisDetails analysisDetails) {
@@ -103,8 +88,7 @@ public class ReportGenerator {
                 .map(BigDecimal::new)
                 .orElse(null);
 
-        BigDecimal coverage = findMeasure(CoreMetrics.COVERAGE_KEY)
-                .map(Measure::getDoubleValue)
+        BigDecimal coverage = analysisDetails.findMeasure(CoreMetrics.COVERAGE_KEY)
                 .map(BigDecimal::new)
                 .orElse(null);
 
@@ -114,12 +98,11 @@ public class ReportGenerator {
                 .map(BigDecimal::new)
                 .orElse(null);
 
-        BigDecimal duplications = findMeasure(CoreMetrics.DUPLICATED_LINES_DENSITY_KEY)
-                .map(Measure::getDoubleValue)
+        BigDecimal duplications = analysisDetails.findMeasure(CoreMetrics.DUPLICATED_LINES_DENSITY_KEY)
                 .map(BigDecimal::valueOf)
                 .orElse(null);
 
-        Map<RuleType, Long> issueCounts = countRuleByType(analysisDetails.getIssues());
+        Map<RuleType, Long> issueCounts = analysisDetails.getIssueCountsByType();
         long issueTotal = issueCounts.values().stream().mapToLong(l -> l).sum();
 
         List<QualityGate.Condition> failedConditions = analysisDetails.findFailedQualityGateConditions();
@@ -191,10 +174,6 @@ public class ReportGenerator {
         }
     }
 
-    private Optional<Measure> findMeasure(String metricKey) {
-        return measureRepository.getRawMeasure(treeRootHolder.getRoot(), metricRepository.getByKey(metricKey));
-    }
-
     private String getDashboardUrl(AnalysisDetails analysisDetails) {
         return server.getPublicRootUrl() + "/dashboard?id=" + URLEncoder.encode(analysisDetails.getAnalysisProjectKey(), StandardCharsets.UTF_8) + "&pullRequest=" + analysisDetails.getPullRequestId();
     }
@@ -247,15 +226,6 @@ public class ReportGenerator {
         }
     }
 
-    private static Map<RuleType, Long> countRuleByType(List<PostAnalysisIssueVisitor.ComponentIssue> issues) {
-        return Arrays.stream(RuleType.values()).collect(Collectors.toMap(k -> k,
-                k -> issues.stream()
-                        .map(PostAnalysisIssueVisitor.ComponentIssue::getIssue)
-                        .filter(i -> !CLOSED_ISSUE_STATUS.contains(i.status()))
-                        .filter(i -> k == i.type())
-                        .count()));
-    }
-
     private static class DuplicationMapping {
 
         private final BigDecimal duplicationLevel;
@@ -18,16 +18,22 @@
  */
 package com.github.mc1arke.sonarqube.plugin;
 
+import com.github.mc1arke.sonarqube.plugin.almclient.DefaultHttpClientProvider;
 import com.github.mc1arke.sonarqube.plugin.almclient.DefaultLinkHeaderReader;
 import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.DefaultAzureDevopsClientFactory;
+import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.BitbucketCloudTokenCache;
+import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.BitbucketHttpClientProvider;
+import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.BitbucketServerCapabilityCache;
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.DefaultBitbucketClientFactory;
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.HttpClientBuilderFactory;
 import com.github.mc1arke.sonarqube.plugin.almclient.github.DefaultGithubClientFactory;
 import com.github.mc1arke.sonarqube.plugin.almclient.github.v3.DefaultUrlConnectionProvider;
+import com.github.mc1arke.sonarqube.plugin.almclient.github.v3.InstallationTokenCache;
 import com.github.mc1arke.sonarqube.plugin.almclient.github.v3.RestApplicationAuthenticationProvider;
 import com.github.mc1arke.sonarqube.plugin.almclient.github.v4.DefaultGraphqlProvider;
 import com.github.mc1arke.sonarqube.plugin.almclient.gitlab.DefaultGitlabClientFactory;
 import com.github.mc1arke.sonarqube.plugin.ce.CommunityReportAnalysisComponentProvider;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.DecorationOutbox;
 import com.github.mc1arke.sonarqube.plugin.scanner.BranchConfigurationFactory;
 import com.github.mc1arke.sonarqube.plugin.scanner.CommunityBranchConfigurationLoader;
 import com.github.mc1arke.sonarqube.plugin.scanner.CommunityBranchParamsValidator;
@@ -116,8 +122,13 @@ class CommunityBranchPluginTest {
 
         testCase.load(context);
 
-        verify(context).addExtensions(CommunityReportAnalysisComponentProvider.class);
+        verify(context).addExtensions(CommunityReportAnalysisComponentProvider.class, DefaultHttpClientProvider.class, InstallationTokenCache.class, BitbucketCloudTokenCache.class,
+                BitbucketServerCapabilityCache.class, HttpClientBuilderFactory.class, BitbucketHttpClientProvider.class, DecorationOutbox.class);
         verify(context).addExtensions(any(PropertyDefinition.class), eq(MonoRepoFeature.class));
+        verify(context).addExtensions(any(PropertyDefinition.class), any(PropertyDefinition.class), any(PropertyDefinition.class),
+                any(PropertyDefinition.class), any(PropertyDefinition.class), any(PropertyDefinition.class),
+                any(PropertyDefinition.class), any(PropertyDefinition.class), any(PropertyDefinition.class),
+                any(PropertyDefinition.class), any(PropertyDefinition.class), any(PropertyDefinition.class));
     }
 
 
@@ -147,10 +158,15 @@ class CommunityBranchPluginTest {
                 eq(DefaultGraphqlProvider.class),
                 eq(DefaultGithubClientFactory.class),
                 eq(DefaultLinkHeaderReader.class),
+                eq(DefaultHttpClientProvider.class),
                 eq(DefaultUrlConnectionProvider.class),
                 eq(RestApplicationAuthenticationProvider.class),
+                eq(InstallationTokenCache.class),
                 eq(HttpClientBuilderFactory.class),
                 eq(DefaultBitbucketClientFactory.class),
+                eq(BitbucketCloudTokenCache.class),
+                eq(BitbucketHttpClientProvider.class),
+                eq(BitbucketServerCapabilityCache.class),
                 eq(BitbucketValidator.class),
                 eq(GitlabValidator.class),
                 eq(DefaultGitlabClientFactory.class),
@@ -160,6 +176,10 @@ class CommunityBranchPluginTest {
                 any(PropertyDefinition.class));
 
         verify(context).addExtensions(any(PropertyDefinition.class), eq(MonoRepoFeature.class));
+        verify(context).addExtensions(any(PropertyDefinition.class), any(PropertyDefinition.class), any(PropertyDefinition.class),
+                any(PropertyDefinition.class), any(PropertyDefinition.class), any(PropertyDefinition.class),
+                any(PropertyDefinition.class), any(PropertyDefinition.class), any(PropertyDefinition.class),
+                any(PropertyDefinition.class), any(PropertyDefinition.class), any(PropertyDefinition.class));
     }
 
     @Test
@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AlmClientMetricsTest {
+
+    @AfterEach
+    void cleanUp() {
+        AlmClientMetrics.start().close();
+    }
+
+    @Test
+    void shouldNotRecordWhenNoCollectorStarted() {
+        AlmClientMetrics.recordApiCall("GET", "https://api.github.com/repos/owner/repo", 10, 20);
+        AlmClientMetrics.recordRetry();
+
+        try (AlmClientMetrics metrics = AlmClientMetrics.start()) {
+            assertThat(metrics.getApiCallCount()).isZero();
+            assertThat(metrics.getRetries()).isZero();
+        }
+    }
+
+    @Test
+    void shouldRecordApiCallsAgainstNormalisedEndpoint() {
+        try (AlmClientMetrics metrics = AlmClientMetrics.start()) {
+            AlmClientMetrics.recordApiCall("get", "https://gitlab.example.com/api/v4/projects/123/merge_requests/4/discussions?page=2", 0, 100);
+            AlmClientMetrics.recordApiCall("GET", "https://gitlab.example.com/api/v4/projects/456/merge_requests/7/discussions?page=1", 0, 50);
+            AlmClientMetrics.recordApiCall("POST", "/rest/api/1.0/projects/KEY/repos/repo/commits/0123456789abcdef0123456789abcdef01234567/reports", 30, 5);
+            AlmClientMetrics.recordRetry();
+
+            assertThat(metrics.getApiCalls()).isEqualTo(Map.of(
+                    "GET /api/v4/projects/{id}/merge_requests/{id}/discussions", 2L,
+                    "POST /rest/api/1.0/projects/KEY/repos/repo/commits/{id}/reports", 1L));
+            assertThat(metrics.getApiCallCount()).isEqualTo(3);
+            assertThat(metrics.getBytesSent()).isEqualTo(30);
+            assertThat(metrics.getBytesReceived()).isEqualTo(155);
+            assertThat(metrics.getRetries()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void shouldRecordResponseBodySizeOnceStreamIsClosed() throws IOException {
+        try (AlmClientMetrics metrics = AlmClientMetrics.start()) {
+            InputStream responseBody = AlmClientMetrics.recordApiCall("GET", "https://api.github.com/repos/owner/repo", 5, new ByteArrayInputStream(new byte[]{1, 2, 3, 4, 5, 6}));
+            assertThat(responseBody.read()).isEqualTo(1);
+            assertThat(responseBody.read(new byte[3], 0, 3)).isEqualTo(3);
+            assertThat(metrics.getApiCallCount()).isZero();
+
+            responseBody.close();
+            responseBody.close();
+
+            assertThat(metrics.getApiCalls()).isEqualTo(Map.of("GET /repos/owner/repo", 1L));
+            assertThat(metrics.getBytesSent()).isEqualTo(5);
+            assertThat(metrics.getBytesReceived()).isEqualTo(4);
+        }
+    }
+
+    @Test
+    void shouldRecordBytesReceivedWithoutCountingCall() {
+        try (AlmClientMetrics metrics = AlmClientMetrics.start()) {
+            AlmClientMetrics.recordBytesReceived(42);
+
+            assertThat(metrics.getApiCallCount()).isZero();
+            assertThat(metrics.getBytesReceived()).isEqualTo(42);
+        }
+    }
+
+    @Test
+    void shouldNormaliseEncodedAndUuidSegments() {
+        assertThat(AlmClientMetrics.normaliseEndpoint("https://dev.azure.com/org/project%20name/_apis/git/repositories/0f8fad5b-d9cb-469f-a165-70867728950e"))
+                .isEqualTo("/org/{id}/_apis/git/repositories/{id}");
+        assertThat(AlmClientMetrics.normaliseEndpoint("https://host")).isEmpty();
+    }
+
+    @Test
+    void shouldAttributeCallsFromBoundTasksToCollector() throws Exception {
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        try (AlmClientMetrics metrics = AlmClientMetrics.start()) {
+            executorService.submit(AlmClientMetrics.bindToCurrent(() -> AlmClientMetrics.recordApiCall("GET", "/api/v4/user", 0, 0))).get(10, TimeUnit.SECONDS);
+
+            assertThat(metrics.getApiCalls()).containsEntry("GET /api/v4/user", 1L);
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    @Test
+    void shouldNotAttributeCallsFromUnboundThreadsToCollector() throws Exception {
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        try (AlmClientMetrics metrics = AlmClientMetrics.start()) {
+            executorService.submit(() -> AlmClientMetrics.recordApiCall("GET", "/api/v4/user", 0, 0)).get(10, TimeUnit.SECONDS);
+
+            assertThat(metrics.getApiCallCount()).isZero();
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    @Test
+    void shouldUnbindCollectorFromPooledThreadOnceTaskCompletes() throws Exception {
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        try (AlmClientMetrics metrics = AlmClientMetrics.start()) {
+            executorService.submit(AlmClientMetrics.bindToCurrent(() -> AlmClientMetrics.recordApiCall("GET", "/api/v4/user", 0, 0))).get(10, TimeUnit.SECONDS);
+            executorService.submit(() -> AlmClientMetrics.recordApiCall("GET", "/api/v4/projects", 0, 0)).get(10, TimeUnit.SECONDS);
+
+            assertThat(metrics.getApiCalls()).containsOnlyKeys("GET /api/v4/user");
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    @Test
+    void shouldAccumulateTimeForRepeatedPhases() {
+        try (AlmClientMetrics metrics = AlmClientMetrics.start()) {
+            AlmClientMetrics.run("decorate", () -> Thread.sleep(5));
+            assertThat(AlmClientMetrics.time("decorate", () -> {
+                Thread.sleep(5);
+                return "result";
+            })).isEqualTo("result");
+
+            assertThat(metrics.getPhaseTimeMillis()).containsOnlyKeys("decorate");
+            assertThat(metrics.getPhaseTimeMillis().get("decorate")).isGreaterThanOrEqualTo(10);
+            assertThat(metrics.getWallTimeMillis()).isGreaterThanOrEqualTo(metrics.getPhaseTimeMillis().get("decorate"));
+        } catch (InterruptedException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    @Test
+    void shouldStopRecordingOnceClosed() {
+        AlmClientMetrics metrics = AlmClientMetrics.start();
+        metrics.close();
+        long wallTime = metrics.getWallTimeMillis();
+
+        AlmClientMetrics.recordApiCall("GET", "/api/v4/user", 0, 0);
+        AlmClientMetrics.run("decorate", () -> {});
+
+        assertThat(metrics.getApiCallCount()).isZero();
+        assertThat(metrics.getPhaseTimeMillis()).isEmpty();
+        assertThat(metrics.getWallTimeMillis()).isEqualTo(wallTime);
+    }
+}
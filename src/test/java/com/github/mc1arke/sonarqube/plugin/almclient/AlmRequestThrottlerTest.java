@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AlmRequestThrottlerTest {
+
+    @AfterEach
+    void cleanUp() {
+        AlmRequestThrottler.reset();
+    }
+
+    @Test
+    void shouldRetryRateLimitedAndUnavailableResponses() {
+        assertThat(AlmRequestThrottler.isRetryable(429, "POST", name -> null)).isTrue();
+        assertThat(AlmRequestThrottler.isRetryable(403, "POST", Map.of("Retry-After", "60")::get)).isTrue();
+        assertThat(AlmRequestThrottler.isRetryable(403, "GET", Map.of("X-RateLimit-Remaining", "0")::get)).isTrue();
+        assertThat(AlmRequestThrottler.isRetryable(403, "GET", Map.of("X-RateLimit-Remaining", "10")::get)).isFalse();
+        assertThat(AlmRequestThrottler.isRetryable(503, "get", name -> null)).isTrue();
+        assertThat(AlmRequestThrottler.isRetryable(502, "PUT", name -> null)).isTrue();
+        assertThat(AlmRequestThrottler.isRetryable(503, "POST", name -> null)).isFalse();
+        assertThat(AlmRequestThrottler.isRetryable(500, "GET", name -> null)).isFalse();
+        assertThat(AlmRequestThrottler.isRetryable(200, "GET", name -> null)).isFalse();
+    }
+
+    @Test
+    void shouldShareThrottlerForHostCredentialAndResource() {
+        AlmRequestThrottler underTest = AlmRequestThrottler.forRequest("API.github.com", "/graphql", Map.of("Authorization", "Bearer token")::get);
+
+        assertThat(underTest)
+                .isSameAs(AlmRequestThrottler.forRequest("api.github.com", "/graphql", Map.of("Authorization", "Bearer token")::get))
+                .isNotSameAs(AlmRequestThrottler.forRequest("api.github.com", "/graphql", Map.of("Authorization", "Bearer other")::get))
+                .isNotSameAs(AlmRequestThrottler.forRequest("api.github.com", "/repos/owner/repo", Map.of("Authorization", "Bearer token")::get))
+                .isNotSameAs(AlmRequestThrottler.forHost("api.github.com"));
+        assertThat(AlmRequestThrottler.forRequest("gitlab.com", "/api/v4/projects", Map.of("PRIVATE-TOKEN", "token")::get))
+                .isSameAs(AlmRequestThrottler.forRequest("gitlab.com", "/api/v4/user", Map.of("PRIVATE-TOKEN", "token")::get))
+                .isNotSameAs(AlmRequestThrottler.forHost("gitlab.com"));
+    }
+
+    @Test
+    void shouldDiscardThrottlersOnceIdle() {
+        AlmRequestThrottler idle = AlmRequestThrottler.forHost("idle.example.com");
+        AlmRequestThrottler exhausted = AlmRequestThrottler.forHost("exhausted.example.com");
+        exhausted.update(Map.of("RateLimit-Remaining", "0", "RateLimit-Reset", "7200")::get);
+
+        AlmRequestThrottler.removeExpired(System.currentTimeMillis());
+        assertThat(AlmRequestThrottler.forHost("idle.example.com")).isSameAs(idle);
+
+        AlmRequestThrottler.removeExpired(System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(61));
+
+        assertThat(AlmRequestThrottler.getWaitingRequests()).containsOnlyKeys("exhausted.example.com");
+        assertThat(AlmRequestThrottler.forHost("idle.example.com")).isNotSameAs(idle);
+        assertThat(AlmRequestThrottler.forHost("exhausted.example.com")).isSameAs(exhausted);
+    }
+
+    @Test
+    void shouldUpdateBudgetOfResourceReportedByHost() {
+        AlmRequestThrottler underTest = AlmRequestThrottler.forRequest("api.github.example.com", "/repos/owner/repo", Map.of("Authorization", "Bearer token")::get);
+        String credentialId = Integer.toHexString("Bearer token".hashCode());
+
+        underTest.update(Map.of("X-RateLimit-Resource", "graphql", "X-RateLimit-Remaining", "7", "X-RateLimit-Reset", "60")::get);
+        underTest.update(Map.of("X-RateLimit-Resource", "core", "X-RateLimit-Remaining", "4999", "X-RateLimit-Reset", "60")::get);
+
+        assertThat(AlmRequestThrottler.getRemainingBudgets()).isEqualTo(Map.of(
+                "api.github.example.com [" + credentialId + "]", 4999L,
+                "api.github.example.com/graphql [" + credentialId + "]", 7L));
+        assertThat(AlmRequestThrottler.forRequest("api.github.example.com", "/graphql", Map.of("Authorization", "Bearer token")::get).getRemainingBudget())
+                .hasValue(7L);
+    }
+
+    @Test
+    void shouldTakeRequestsFromBudgetReportedByHost() {
+        AlmRequestThrottler underTest = AlmRequestThrottler.forHost("gitlab.example.com");
+        AlmRequestThrottler.forHost("unreported.example.com");
+
+        underTest.update(Map.of("RateLimit-Remaining", "5", "RateLimit-Reset", "60")::get);
+        underTest.acquire();
+        underTest.acquire();
+
+        assertThat(AlmRequestThrottler.getRemainingBudgets()).isEqualTo(Map.of("gitlab.example.com", 3L));
+        assertThat(AlmRequestThrottler.getWaitingRequests()).isEqualTo(Map.of("gitlab.example.com", 0, "unreported.example.com", 0));
+    }
+
+    @Test
+    void shouldQueueRequestsUntilBudgetReset() {
+        AlmRequestThrottler underTest = AlmRequestThrottler.forHost("api.github.example.com");
+        long resetAt = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) + 2;
+        underTest.update(Map.of("X-RateLimit-Remaining", "0", "X-RateLimit-Reset", String.valueOf(resetAt))::get);
+
+        long start = System.currentTimeMillis();
+        CompletableFuture<Void> request = CompletableFuture.runAsync(underTest::acquire);
+
+        assertThat(request).succeedsWithin(10, TimeUnit.SECONDS);
+        assertThat(System.currentTimeMillis()).isGreaterThanOrEqualTo(TimeUnit.SECONDS.toMillis(resetAt));
+        assertThat(System.currentTimeMillis() - start).isPositive();
+        assertThat(AlmRequestThrottler.getRemainingBudgets()).isEmpty();
+    }
+
+    @Test
+    void shouldReleaseQueuedRequestsWhenBudgetRefilled() {
+        AlmRequestThrottler underTest = AlmRequestThrottler.forHost("dev.azure.example.com");
+        underTest.update(Map.of("X-RateLimit-Remaining", "0", "X-RateLimit-Reset", "600")::get);
+
+        CompletableFuture<Void> request = CompletableFuture.runAsync(underTest::acquire);
+        assertThat(request).isNotDone();
+
+        underTest.update(Map.of("X-RateLimit-Remaining", "100")::get);
+
+        assertThat(request).succeedsWithin(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void shouldHoldBackRequestsForRetryAfterPeriod() {
+        AlmRequestThrottler underTest = AlmRequestThrottler.forHost("bitbucket.example.com");
+
+        long start = System.currentTimeMillis();
+        try (AlmClientMetrics metrics = AlmClientMetrics.start()) {
+            assertThat(underTest.backoff(1, Map.of("Retry-After", "1")::get)).isEqualTo(1000);
+            assertThat(metrics.getRetries()).isEqualTo(1);
+        }
+
+        underTest.acquire();
+        assertThat(System.currentTimeMillis() - start).isGreaterThanOrEqualTo(1000);
+    }
+
+    @Test
+    void shouldBackoffWithJitterWhenNoRetryAfterGiven() {
+        AlmRequestThrottler underTest = AlmRequestThrottler.forHost("jitter.example.com");
+
+        assertThat(underTest.backoff(1, name -> null)).isBetween(0L, 2000L);
+        assertThat(underTest.backoff(10, Map.of("Retry-After", "soon")::get)).isBetween(0L, 60000L);
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ConcurrentRequestExecutorTest {
+
+    @AfterEach
+    void cleanUp() {
+        AlmClientMetrics.start().close();
+    }
+
+    @Test
+    void shouldRunAllTasksOnCallingThreadWhenConcurrencyIsOne() {
+        Set<Thread> threads = ConcurrentHashMap.newKeySet();
+        List<Callable<?>> tasks = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            tasks.add(() -> threads.add(Thread.currentThread()));
+        }
+
+        assertThat(ConcurrentRequestExecutor.invokeAll(tasks, 1)).isEmpty();
+        assertThat(threads).containsExactly(Thread.currentThread());
+    }
+
+    @Test
+    void shouldNotExceedRequestedConcurrency() throws InterruptedException {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CountDownLatch concurrencyReached = new CountDownLatch(3);
+        List<Callable<?>> tasks = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            tasks.add(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                concurrencyReached.countDown();
+                concurrencyReached.await(5, TimeUnit.SECONDS);
+                running.decrementAndGet();
+                return null;
+            });
+        }
+
+        assertThat(ConcurrentRequestExecutor.invokeAll(tasks, 3)).isEmpty();
+        assertThat(concurrencyReached.await(0, TimeUnit.SECONDS)).isTrue();
+        assertThat(maxRunning).hasValue(3);
+    }
+
+    @Test
+    void shouldAttemptEveryTaskAndReturnFailuresInTaskOrder() {
+        IOException firstFailure = new IOException("first");
+        IllegalStateException secondFailure = new IllegalStateException("second");
+        AtomicInteger completed = new AtomicInteger();
+        List<Callable<?>> tasks = List.of(
+                completed::incrementAndGet,
+                () -> {
+                    throw firstFailure;
+                },
+                completed::incrementAndGet,
+                () -> {
+                    throw secondFailure;
+                },
+                completed::incrementAndGet);
+
+        assertThat(ConcurrentRequestExecutor.invokeAll(tasks, 4)).containsExactly(firstFailure, secondFailure);
+        assertThat(completed).hasValue(3);
+    }
+
+    @Test
+    void shouldThrowFirstRunnableFailureWithLaterFailuresSuppressed() {
+        IllegalStateException firstFailure = new IllegalStateException("first");
+        IllegalArgumentException secondFailure = new IllegalArgumentException("second");
+        List<Runnable> tasks = List.of(
+                () -> {
+                    throw firstFailure;
+                },
+                () -> {
+                    throw secondFailure;
+                });
+
+        assertThatThrownBy(() -> ConcurrentRequestExecutor.runAll(tasks, 2))
+                .isSameAs(firstFailure)
+                .hasSuppressedException(secondFailure);
+    }
+
+    @Test
+    void shouldRecordPooledRequestsAgainstSubmittingDecoration() {
+        List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            tasks.add(() -> AlmClientMetrics.recordApiCall("GET", "/api/v4/projects/1", 0, 0));
+        }
+
+        try (AlmClientMetrics metrics = AlmClientMetrics.start()) {
+            ConcurrentRequestExecutor.runAll(tasks, 4);
+            assertThat(metrics.getApiCallCount()).isEqualTo(8);
+        }
+
+        try (AlmClientMetrics metrics = AlmClientMetrics.start()) {
+            ConcurrentRequestExecutor.runAll(tasks, 4);
+            assertThat(metrics.getApiCallCount()).isEqualTo(8);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient;
+
+import com.github.mc1arke.sonarqube.plugin.CommunityBranchPlugin;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.junit.jupiter.api.Test;
+import org.sonar.api.config.Configuration;
+import org.sonar.db.alm.setting.AlmSettingDto;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class DefaultHttpClientProviderTest {
+
+    private final Configuration configuration = mock(Configuration.class);
+    private final DefaultHttpClientProvider underTest = new DefaultHttpClientProvider(configuration);
+
+    @Test
+    void shouldReturnSameClientForUnchangedAlmSetting() {
+        when(configuration.getInt(any())).thenReturn(Optional.of(5));
+        AlmSettingDto almSettingDto = createAlmSettingDto("uuid", "http://url.test", 1234);
+
+        CloseableHttpClient first = underTest.getHttpClient(almSettingDto);
+        CloseableHttpClient second = underTest.getHttpClient(createAlmSettingDto("uuid", "http://url.test", 1234));
+
+        assertThat(second).isSameAs(first);
+        assertThat(underTest.getPoolMisses()).isEqualTo(1);
+        assertThat(underTest.getPoolHits()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldReturnDifferentClientsForDifferentAlmSettings() {
+        CloseableHttpClient first = underTest.getHttpClient(createAlmSettingDto("uuid1", "http://url.test", 1234));
+        CloseableHttpClient second = underTest.getHttpClient(createAlmSettingDto("uuid2", "http://url.test", 1234));
+
+        assertThat(second).isNotSameAs(first);
+        assertThat(underTest.getPoolMisses()).isEqualTo(2);
+        assertThat(underTest.getPoolHits()).isZero();
+    }
+
+    @Test
+    void shouldReplaceClientWhenAlmSettingUpdated() {
+        CloseableHttpClient first = underTest.getHttpClient(createAlmSettingDto("uuid", "http://url.test", 1234));
+        CloseableHttpClient second = underTest.getHttpClient(createAlmSettingDto("uuid", "http://url.test", 5678));
+        CloseableHttpClient third = underTest.getHttpClient(createAlmSettingDto("uuid", "http://other.url.test", 5678));
+
+        assertThat(second).isNotSameAs(first);
+        assertThat(third).isNotSameAs(second);
+        assertThat(underTest.getPoolMisses()).isEqualTo(3);
+    }
+
+    @Test
+    void shouldKeepReplacedClientUsableUntilIdle() throws IOException {
+        when(configuration.getInt(CommunityBranchPlugin.HTTP_IDLE_CONNECTION_TIMEOUT)).thenReturn(Optional.of(3600));
+        HttpServer httpServer = startServer();
+        try {
+            CloseableHttpClient first = underTest.getHttpClient(createAlmSettingDto("uuid", "http://url.test", 1234));
+            underTest.getHttpClient(createAlmSettingDto("uuid", "http://url.test", 5678));
+            underTest.getHttpClient(createAlmSettingDto("uuid", "http://url.test", 5678));
+
+            try (CloseableHttpResponse response = first.execute(new HttpGet(getUrl(httpServer)))) {
+                assertThat(response.getStatusLine().getStatusCode()).isEqualTo(204);
+            }
+        } finally {
+            httpServer.stop(0);
+        }
+    }
+
+    @Test
+    void shouldCloseReplacedClientOnceIdle() throws IOException {
+        when(configuration.getInt(CommunityBranchPlugin.HTTP_IDLE_CONNECTION_TIMEOUT)).thenReturn(Optional.of(0));
+        HttpServer httpServer = startServer();
+        try {
+            CloseableHttpClient first = underTest.getHttpClient(createAlmSettingDto("uuid", "http://url.test", 1234));
+            try (CloseableHttpResponse response = first.execute(new HttpGet(getUrl(httpServer)))) {
+                assertThat(response.getStatusLine().getStatusCode()).isEqualTo(204);
+            }
+            underTest.getHttpClient(createAlmSettingDto("uuid", "http://url.test", 5678));
+
+            HttpGet request = new HttpGet(getUrl(httpServer));
+            assertThatThrownBy(() -> first.execute(request))
+                    .isInstanceOf(IllegalStateException.class)
+                    .hasMessage("Connection pool shut down");
+        } finally {
+            httpServer.stop(0);
+        }
+    }
+
+    @Test
+    void shouldCreateNewClientAfterStop() {
+        underTest.start();
+        CloseableHttpClient first = underTest.getHttpClient(createAlmSettingDto("uuid", "http://url.test", 1234));
+        underTest.stop();
+        CloseableHttpClient second = underTest.getHttpClient(createAlmSettingDto("uuid", "http://url.test", 1234));
+
+        assertThat(second).isNotSameAs(first);
+    }
+
+    private static HttpServer startServer() throws IOException {
+        HttpServer httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        httpServer.createContext("/", exchange -> {
+            exchange.sendResponseHeaders(204, -1);
+            exchange.close();
+        });
+        httpServer.start();
+        return httpServer;
+    }
+
+    private static String getUrl(HttpServer httpServer) {
+        return "http://localhost:" + httpServer.getAddress().getPort() + "/";
+    }
+
+    private static AlmSettingDto createAlmSettingDto(String uuid, String url, long updatedAt) {
+        AlmSettingDto almSettingDto = mock(AlmSettingDto.class);
+        when(almSettingDto.getUuid()).thenReturn(uuid);
+        when(almSettingDto.getUrl()).thenReturn(url);
+        when(almSettingDto.getUpdatedAt()).thenReturn(updatedAt);
+        return almSettingDto;
+    }
+}
@@ -1,6 +1,8 @@
 package com.github.mc1arke.sonarqube.plugin.almclient.azuredevops;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.CommentThread;
+import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.Commit;
 import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.CreateCommentRequest;
 import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.GitPullRequestStatus;
 import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.GitStatusContext;
@@ -12,18 +14,25 @@ import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.client.methods.RequestBuilder;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.message.BasicHeader;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
 
 import java.io.IOException;
 import java.net.URI;
 import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -34,7 +43,7 @@ class AzureDevopsRestClientTest {
 
     @Test
     void checkErrorThrownOnNonSuccessResponseStatus() throws IOException {
-        AzureDevopsRestClient underTest = new AzureDevopsRestClient("http://url.test/api", "token", objectMapper, () -> closeableHttpClient);
+        AzureDevopsRestClient underTest = new AzureDevopsRestClient("http://url.test/api", "token", objectMapper, closeableHttpClient);
 
         CloseableHttpResponse closeableHttpResponse = mock(CloseableHttpResponse.class);
         StatusLine statusLine = mock(StatusLine.class);
@@ -61,7 +70,7 @@ class AzureDevopsRestClientTest {
 
     @Test
     void checkSubmitPullRequestStatusSubmitsCorrectContent() throws IOException {
-        AzureDevopsRestClient underTest = new AzureDevopsRestClient("http://url.test/api", "token", objectMapper, () -> closeableHttpClient);
+        AzureDevopsRestClient underTest = new AzureDevopsRestClient("http://url.test/api", "token", objectMapper, closeableHttpClient);
 
         CloseableHttpResponse closeableHttpResponse = mock(CloseableHttpResponse.class);
         StatusLine statusLine = mock(StatusLine.class);
@@ -84,7 +93,7 @@ class AzureDevopsRestClientTest {
 
     @Test
     void checkAddCommentToThreadSubmitsCorrectContent() throws IOException {
-        AzureDevopsRestClient underTest = new AzureDevopsRestClient("http://test.url", "authToken", objectMapper, () -> closeableHttpClient);
+        AzureDevopsRestClient underTest = new AzureDevopsRestClient("http://test.url", "authToken", objectMapper, closeableHttpClient);
 
         CloseableHttpResponse closeableHttpResponse = mock(CloseableHttpResponse.class);
         StatusLine statusLine = mock(StatusLine.class);
@@ -107,7 +116,7 @@ class AzureDevopsRestClientTest {
 
     @Test
     void checkRetrievePullRequestReturnsCorrectContent() throws IOException {
-        AzureDevopsRestClient underTest = new AzureDevopsRestClient("http://test.url", "authToken", objectMapper, () -> closeableHttpClient);
+        AzureDevopsRestClient underTest = new AzureDevopsRestClient("http://test.url", "authToken", objectMapper, closeableHttpClient);
 
         CloseableHttpResponse closeableHttpResponse = mock(CloseableHttpResponse.class);
         StatusLine statusLine = mock(StatusLine.class);
@@ -130,4 +139,149 @@ class AzureDevopsRestClientTest {
         assertThat(request.getEntity()).isNull();
         assertThat(result).isSameAs(pullRequest);
     }
+
+    @Test
+    void checkRetrieveThreadsFollowsContinuationTokens() throws IOException {
+        AzureDevopsRestClient underTest = new AzureDevopsRestClient("http://test.url", "authToken", new ObjectMapper(), closeableHttpClient);
+
+        CloseableHttpResponse firstPage = mockPagedResponse("{\"count\": 1, \"value\": [{\"id\": 1, \"comments\": [], \"isDeleted\": false}]}", "token value");
+        CloseableHttpResponse secondPage = mockPagedResponse("{\"value\": [{\"id\": 2, \"comments\": [], \"isDeleted\": false}], \"count\": 1}", null);
+        when(closeableHttpClient.execute(any())).thenReturn(firstPage, secondPage);
+
+        List<CommentThread> result;
+        try (Stream<CommentThread> threads = underTest.retrieveThreads("projectId", "repository Name", 123)) {
+            result = threads.collect(Collectors.toList());
+        }
+
+        ArgumentCaptor<HttpUriRequest> requestArgumentCaptor = ArgumentCaptor.forClass(HttpUriRequest.class);
+        verify(closeableHttpClient, times(2)).execute(requestArgumentCaptor.capture());
+        assertThat(requestArgumentCaptor.getAllValues()).extracting(HttpUriRequest::getURI).containsExactly(
+                URI.create("http://test.url/projectId/_apis/git/repositories/repository%20Name/pullRequests/123/threads?api-version=4.1&$top=100"),
+                URI.create("http://test.url/projectId/_apis/git/repositories/repository%20Name/pullRequests/123/threads?api-version=4.1&$top=100&continuationToken=token%20value"));
+        assertThat(result).extracting(CommentThread::getId).containsExactly(1, 2);
+        verify(firstPage).close();
+        verify(secondPage).close();
+    }
+
+    @Test
+    void checkGetPullRequestCommitsPagesWithSkipWhenNoContinuationTokenReturned() throws IOException {
+        AzureDevopsRestClient underTest = new AzureDevopsRestClient("http://test.url", "authToken", new ObjectMapper(), closeableHttpClient);
+
+        CloseableHttpResponse firstPage = mockPagedResponse(commitsPage(0, 100), null);
+        CloseableHttpResponse secondPage = mockPagedResponse(commitsPage(100, 5), null);
+        when(closeableHttpClient.execute(any())).thenReturn(firstPage, secondPage);
+
+        List<Commit> result;
+        try (Stream<Commit> commits = underTest.getPullRequestCommits("projectId", "repository Name", 123)) {
+            result = commits.collect(Collectors.toList());
+        }
+
+        ArgumentCaptor<HttpUriRequest> requestArgumentCaptor = ArgumentCaptor.forClass(HttpUriRequest.class);
+        verify(closeableHttpClient, times(2)).execute(requestArgumentCaptor.capture());
+        assertThat(requestArgumentCaptor.getAllValues()).extracting(HttpUriRequest::getURI).containsExactly(
+                URI.create("http://test.url/projectId/_apis/git/repositories/repository%20Name/pullRequests/123/commits?api-version=4.1&$top=100"),
+                URI.create("http://test.url/projectId/_apis/git/repositories/repository%20Name/pullRequests/123/commits?api-version=4.1&$top=100&$skip=100"));
+        assertThat(result).hasSize(105).extracting(Commit::getCommitId).startsWith("commit0").endsWith("commit104");
+    }
+
+    @Test
+    void checkGetPullRequestCommitsStopsWhenServerIgnoresPaging() throws IOException {
+        AzureDevopsRestClient underTest = new AzureDevopsRestClient("http://test.url", "authToken", new ObjectMapper(), closeableHttpClient);
+
+        CloseableHttpResponse firstPage = mockPagedResponse(commitsPage(0, 100), null);
+        CloseableHttpResponse secondPage = mockPagedResponse(commitsPage(0, 100), null);
+        when(closeableHttpClient.execute(any())).thenReturn(firstPage, secondPage);
+
+        List<Commit> result;
+        try (Stream<Commit> commits = underTest.getPullRequestCommits("projectId", "repository Name", 123)) {
+            result = commits.collect(Collectors.toList());
+        }
+
+        verify(closeableHttpClient, times(2)).execute(any());
+        assertThat(result).hasSize(100);
+    }
+
+    @Test
+    void checkGetPullRequestCommitsStopsWhenServerReturnsOversizedPage() throws IOException {
+        AzureDevopsRestClient underTest = new AzureDevopsRestClient("http://test.url", "authToken", new ObjectMapper(), closeableHttpClient);
+
+        CloseableHttpResponse firstPage = mockPagedResponse(commitsPage(0, 150), null);
+        when(closeableHttpClient.execute(any())).thenReturn(firstPage);
+
+        List<Commit> result;
+        try (Stream<Commit> commits = underTest.getPullRequestCommits("projectId", "repository Name", 123)) {
+            result = commits.collect(Collectors.toList());
+        }
+
+        verify(closeableHttpClient).execute(any());
+        assertThat(result).hasSize(150);
+    }
+
+    @Test
+    void checkRetrieveThreadsStopsWhenContinuationPageContainsNoNewItems() throws IOException {
+        AzureDevopsRestClient underTest = new AzureDevopsRestClient("http://test.url", "authToken", new ObjectMapper(), closeableHttpClient);
+
+        CloseableHttpResponse firstPage = mockPagedResponse("{\"value\": [{\"id\": 1, \"comments\": [], \"isDeleted\": false}]}", "token");
+        CloseableHttpResponse secondPage = mockPagedResponse("{\"value\": [{\"id\": 1, \"comments\": [], \"isDeleted\": false}]}", "token");
+        when(closeableHttpClient.execute(any())).thenReturn(firstPage, secondPage);
+
+        List<CommentThread> result;
+        try (Stream<CommentThread> threads = underTest.retrieveThreads("projectId", "repository Name", 123)) {
+            result = threads.collect(Collectors.toList());
+        }
+
+        verify(closeableHttpClient, times(2)).execute(any());
+        assertThat(result).extracting(CommentThread::getId).containsExactly(1);
+    }
+
+    @Test
+    void checkGetPullRequestCommitsOnlyRequestsPagesThatAreConsumed() throws IOException {
+        AzureDevopsRestClient underTest = new AzureDevopsRestClient("http://test.url", "authToken", new ObjectMapper(), closeableHttpClient);
+
+        CloseableHttpResponse firstPage = mockPagedResponse(commitsPage(0, 100), "token");
+        when(closeableHttpClient.execute(any())).thenReturn(firstPage);
+
+        Optional<Commit> result;
+        try (Stream<Commit> commits = underTest.getPullRequestCommits("projectId", "repository Name", 123)) {
+            result = commits.findFirst();
+        }
+
+        verify(closeableHttpClient).execute(any());
+        verify(firstPage).close();
+        assertThat(result).map(Commit::getCommitId).hasValue("commit0");
+    }
+
+    @Test
+    void checkRetrieveThreadsThrowsUncheckedExceptionOnErrorResponse() throws IOException {
+        AzureDevopsRestClient underTest = new AzureDevopsRestClient("http://test.url", "authToken", new ObjectMapper(), closeableHttpClient);
+
+        CloseableHttpResponse closeableHttpResponse = mockPagedResponse("{\"value\": []}", null);
+        when(closeableHttpResponse.getStatusLine().getStatusCode()).thenReturn(500);
+        when(closeableHttpClient.execute(any())).thenReturn(closeableHttpResponse);
+
+        try (Stream<CommentThread> threads = underTest.retrieveThreads("projectId", "repository Name", 123)) {
+            assertThatThrownBy(threads::count)
+                    .isExactlyInstanceOf(IllegalStateException.class)
+                    .hasMessage("An unexpected response code was returned from the Azure Devops API - Expected: 200, Got: 500");
+        }
+        verify(closeableHttpResponse).close();
+    }
+
+    private static CloseableHttpResponse mockPagedResponse(String body, String continuationToken) {
+        CloseableHttpResponse closeableHttpResponse = mock(CloseableHttpResponse.class);
+        StatusLine statusLine = mock(StatusLine.class);
+        when(statusLine.getStatusCode()).thenReturn(200);
+        when(closeableHttpResponse.getStatusLine()).thenReturn(statusLine);
+        when(closeableHttpResponse.getEntity()).thenReturn(new StringEntity(body, StandardCharsets.UTF_8));
+        if (null != continuationToken) {
+            when(closeableHttpResponse.getFirstHeader("x-ms-continuation-token")).thenReturn(new BasicHeader("x-ms-continuation-token", continuationToken));
+        }
+        return closeableHttpResponse;
+    }
+
+    private static String commitsPage(int start, int count) {
+        return IntStream.range(start, start + count)
+                .mapToObj(i -> "{\"commitId\": \"commit" + i + "\"}")
+                .collect(Collectors.joining(",", "{\"value\": [", "]}"));
+    }
 }
\ No newline at end of file
@@ -26,6 +26,7 @@ import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.model.CodeInsight
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.model.DataValue;
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.model.ReportStatus;
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.model.cloud.CloudAnnotation;
+import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.model.cloud.CloudAnnotationsPage;
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.model.cloud.CloudCreateReportRequest;
 import com.google.common.collect.Sets;
 import okhttp3.Call;
@@ -43,6 +44,8 @@ import org.mockito.junit.MockitoJUnitRunner;
 import java.io.IOException;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
 
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
@@ -92,30 +95,61 @@ public class BitbucketCloudClientUnitTest {
         underTest.uploadReport("commit", report, "reportKey");
 
         // then
-        verify(client, times(2)).newCall(captor.capture());
+        verify(client).newCall(captor.capture());
         Request request = captor.getValue();
         assertEquals("PUT", request.method());
         assertEquals("https://api.bitbucket.org/2.0/repositories/project/repository/commit/commit/reports/reportKey", request.url().toString());
     }
 
     @Test
-    public void testDeleteReport() throws IOException {
+    public void testRetrieveAnnotationsFollowsPages() throws IOException {
         // given
         Call call = mock(Call.class);
         Response response = mock(Response.class);
+        ResponseBody responseBody = mock(ResponseBody.class);
         ArgumentCaptor<Request> captor = ArgumentCaptor.forClass(Request.class);
+        CloudAnnotation firstAnnotation = new CloudAnnotation("issue1", 1, "link", "message", "path", "HIGH", "BUG");
+        CloudAnnotation secondAnnotation = new CloudAnnotation("issue2", 2, "link", "message", "path", "LOW", "CODE_SMELL");
 
         when(client.newCall(any())).thenReturn(call);
         when(call.execute()).thenReturn(response);
+        when(response.code()).thenReturn(200);
+        when(response.isSuccessful()).thenReturn(true);
+        when(response.body()).thenReturn(responseBody);
+        when(responseBody.string()).thenReturn("page1", "page2");
+        when(mapper.readValue("page1", CloudAnnotationsPage.class)).thenReturn(new CloudAnnotationsPage(List.of(firstAnnotation), "https://api.bitbucket.org/next-page"));
+        when(mapper.readValue("page2", CloudAnnotationsPage.class)).thenReturn(new CloudAnnotationsPage(List.of(secondAnnotation), null));
 
         // when
-        underTest.deleteExistingReport("commit", "reportKey");
+        Set<CodeInsightsAnnotation> result = underTest.retrieveAnnotations("commit", "reportKey");
 
         // then
-        verify(client).newCall(captor.capture());
-        Request request = captor.getValue();
-        assertEquals("DELETE", request.method());
-        assertEquals("https://api.bitbucket.org/2.0/repositories/project/repository/commit/commit/reports/reportKey", request.url().toString());
+        verify(client, times(2)).newCall(captor.capture());
+        assertEquals("https://api.bitbucket.org/2.0/repositories/project/repository/commit/commit/reports/reportKey/annotations?pagelen=100", captor.getAllValues().get(0).url().toString());
+        assertEquals("https://api.bitbucket.org/next-page", captor.getAllValues().get(1).url().toString());
+        assertEquals(Set.of(firstAnnotation, secondAnnotation), result);
+    }
+
+    @Test
+    public void testDeleteAnnotations() throws IOException {
+        // given
+        Call call = mock(Call.class);
+        Response response = mock(Response.class);
+        ArgumentCaptor<Request> captor = ArgumentCaptor.forClass(Request.class);
+
+        when(client.newCall(any())).thenReturn(call);
+        when(call.execute()).thenReturn(response);
+        when(response.code()).thenReturn(204);
+        when(response.isSuccessful()).thenReturn(true);
+
+        // when
+        underTest.deleteAnnotations("commit", "reportKey", new LinkedHashSet<>(List.of("issue1", "issue2")));
+
+        // then
+        verify(client, times(2)).newCall(captor.capture());
+        assertEquals("DELETE", captor.getAllValues().get(0).method());
+        assertEquals("https://api.bitbucket.org/2.0/repositories/project/repository/commit/commit/reports/reportKey/annotations/issue1", captor.getAllValues().get(0).url().toString());
+        assertEquals("https://api.bitbucket.org/2.0/repositories/project/repository/commit/commit/reports/reportKey/annotations/issue2", captor.getAllValues().get(1).url().toString());
     }
 
     @Test
@@ -231,6 +265,11 @@ public class BitbucketCloudClientUnitTest {
         assertTrue(result);
     }
 
+    @Test
+    public void testCloudUploadReplacesAnnotations() {
+        assertTrue(underTest.replacesAnnotationsOnUpload());
+    }
+
     @Test
     public void testCreateCloudReport() {
         // given
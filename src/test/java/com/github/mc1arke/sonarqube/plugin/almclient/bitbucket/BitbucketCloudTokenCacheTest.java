@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient.bitbucket;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class BitbucketCloudTokenCacheTest {
+
+    @Test
+    void shouldReuseTokenUntilShortlyBeforeExpiry() {
+        Clock clock = mock(Clock.class);
+        Instant now = Instant.parse("2024-01-01T10:00:00Z");
+        when(clock.instant()).thenReturn(now);
+        BitbucketCloudTokenCache underTest = new BitbucketCloudTokenCache(clock);
+        Supplier<BitbucketCloudClient.AuthToken> tokenNegotiator = mockNegotiator(7200L, "first", "second");
+
+        assertThat(underTest.getToken("clientId", "secret", tokenNegotiator)).isEqualTo("first");
+        when(clock.instant()).thenReturn(now.plus(Duration.ofMinutes(118)));
+        assertThat(underTest.getToken("clientId", "secret", tokenNegotiator)).isEqualTo("first");
+        when(clock.instant()).thenReturn(now.plus(Duration.ofMinutes(119)));
+        assertThat(underTest.getToken("clientId", "secret", tokenNegotiator)).isEqualTo("second");
+
+        verify(tokenNegotiator, times(2)).get();
+    }
+
+    @Test
+    void shouldNegotiateNewTokenIfSecretChanges() {
+        BitbucketCloudTokenCache underTest = new BitbucketCloudTokenCache();
+        Supplier<BitbucketCloudClient.AuthToken> tokenNegotiator = mockNegotiator(7200L, "first", "second");
+
+        assertThat(underTest.getToken("clientId", "secret", tokenNegotiator)).isEqualTo("first");
+        assertThat(underTest.getToken("clientId", "new-secret", tokenNegotiator)).isEqualTo("second");
+    }
+
+    @Test
+    void shouldNotRetainTokenWithoutExpiry() {
+        BitbucketCloudTokenCache underTest = new BitbucketCloudTokenCache(Clock.fixed(Instant.now(), ZoneId.of("UTC")));
+        Supplier<BitbucketCloudClient.AuthToken> tokenNegotiator = mockNegotiator(null, "first", "second");
+
+        assertThat(underTest.getToken("clientId", "secret", tokenNegotiator)).isEqualTo("first");
+        assertThat(underTest.getToken("clientId", "secret", tokenNegotiator)).isEqualTo("second");
+    }
+
+    @Test
+    void shouldOnlyInvalidateTokenIfItIsStillCached() {
+        BitbucketCloudTokenCache underTest = new BitbucketCloudTokenCache();
+        Supplier<BitbucketCloudClient.AuthToken> tokenNegotiator = mockNegotiator(7200L, "first", "second", "third");
+
+        assertThat(underTest.getToken("clientId", "secret", tokenNegotiator)).isEqualTo("first");
+        underTest.invalidate("clientId", "first");
+        assertThat(underTest.getToken("clientId", "secret", tokenNegotiator)).isEqualTo("second");
+        underTest.invalidate("clientId", "first");
+        underTest.invalidate("otherClientId", "second");
+        assertThat(underTest.getToken("clientId", "secret", tokenNegotiator)).isEqualTo("second");
+    }
+
+    @Test
+    void shouldNegotiateSingleTokenForConcurrentRequests() throws Exception {
+        BitbucketCloudTokenCache underTest = new BitbucketCloudTokenCache();
+        AtomicInteger negotiations = new AtomicInteger();
+        CountDownLatch negotiationStarted = new CountDownLatch(1);
+        CountDownLatch releaseNegotiation = new CountDownLatch(1);
+        Supplier<BitbucketCloudClient.AuthToken> tokenNegotiator = () -> {
+            negotiations.incrementAndGet();
+            negotiationStarted.countDown();
+            try {
+                releaseNegotiation.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            return new BitbucketCloudClient.AuthToken("token", 7200L);
+        };
+
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            results.add(executorService.submit(() -> underTest.getToken("clientId", "secret", tokenNegotiator)));
+            negotiationStarted.await(5, TimeUnit.SECONDS);
+            for (int i = 0; i < 3; i++) {
+                results.add(executorService.submit(() -> underTest.getToken("clientId", "secret", tokenNegotiator)));
+            }
+            releaseNegotiation.countDown();
+
+            for (Future<String> result : results) {
+                assertThat(result.get(5, TimeUnit.SECONDS)).isEqualTo("token");
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+
+        assertThat(negotiations).hasValue(1);
+    }
+
+    @Test
+    void shouldReadExpiryFromTokenResponse() throws IOException {
+        BitbucketCloudClient.AuthToken authToken = new ObjectMapper().readValue("{\"access_token\": \"token\", \"expires_in\": 7200}",
+                BitbucketCloudClient.AuthToken.class);
+
+        assertThat(authToken.getAccessToken()).isEqualTo("token");
+        assertThat(authToken.getExpiresIn()).isEqualTo(7200L);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Supplier<BitbucketCloudClient.AuthToken> mockNegotiator(Long expiresIn, String token, String... tokens) {
+        Supplier<BitbucketCloudClient.AuthToken> tokenNegotiator = mock(Supplier.class);
+        BitbucketCloudClient.AuthToken[] subsequentTokens = new BitbucketCloudClient.AuthToken[tokens.length];
+        for (int i = 0; i < tokens.length; i++) {
+            subsequentTokens[i] = new BitbucketCloudClient.AuthToken(tokens[i], expiresIn);
+        }
+        when(tokenNegotiator.get()).thenReturn(new BitbucketCloudClient.AuthToken(token, expiresIn), subsequentTokens);
+        return tokenNegotiator;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient.bitbucket;
+
+import okhttp3.OkHttpClient;
+import org.junit.jupiter.api.Test;
+import org.sonar.api.config.Configuration;
+import org.sonar.db.alm.setting.AlmSettingDto;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class BitbucketHttpClientProviderTest {
+
+    private final Configuration configuration = mock(Configuration.class);
+    private final BitbucketHttpClientProvider underTest = new BitbucketHttpClientProvider(configuration, new HttpClientBuilderFactory());
+
+    @Test
+    void shouldReturnSameClientForUnchangedAlmSetting() {
+        OkHttpClient first = underTest.getHttpClient(createAlmSettingDto("uuid", "http://url.test", 1234));
+        OkHttpClient second = underTest.getHttpClient(createAlmSettingDto("uuid", "http://url.test", 1234));
+
+        assertThat(second).isSameAs(first);
+    }
+
+    @Test
+    void shouldShareConnectionPoolAndDispatcherWithDerivedClients() {
+        OkHttpClient baseClient = underTest.getHttpClient(createAlmSettingDto("uuid", "http://url.test", 1234));
+        OkHttpClient derivedClient = baseClient.newBuilder().addInterceptor(chain -> chain.proceed(chain.request())).build();
+
+        assertThat(derivedClient.connectionPool()).isSameAs(baseClient.connectionPool());
+        assertThat(derivedClient.dispatcher()).isSameAs(baseClient.dispatcher());
+    }
+
+    @Test
+    void shouldReturnDifferentClientsForDifferentAlmSettings() {
+        OkHttpClient first = underTest.getHttpClient(createAlmSettingDto("uuid1", "http://url.test", 1234));
+        OkHttpClient second = underTest.getHttpClient(createAlmSettingDto("uuid2", "http://url.test", 1234));
+
+        assertThat(second).isNotSameAs(first);
+        assertThat(second.connectionPool()).isNotSameAs(first.connectionPool());
+    }
+
+    @Test
+    void shouldReplaceClientWhenAlmSettingUpdated() {
+        OkHttpClient first = underTest.getHttpClient(createAlmSettingDto("uuid", "http://url.test", 1234));
+        OkHttpClient second = underTest.getHttpClient(createAlmSettingDto("uuid", "http://url.test", 5678));
+        OkHttpClient third = underTest.getHttpClient(createAlmSettingDto("uuid", "http://other.url.test", 5678));
+
+        assertThat(second).isNotSameAs(first);
+        assertThat(third).isNotSameAs(second);
+        assertThat(first.dispatcher().executorService().isShutdown()).isTrue();
+    }
+
+    @Test
+    void shouldCreateNewClientAfterStop() {
+        underTest.start();
+        OkHttpClient first = underTest.getHttpClient(createAlmSettingDto("uuid", "http://url.test", 1234));
+        underTest.stop();
+        OkHttpClient second = underTest.getHttpClient(createAlmSettingDto("uuid", "http://url.test", 1234));
+
+        assertThat(second).isNotSameAs(first);
+    }
+
+    private static AlmSettingDto createAlmSettingDto(String uuid, String url, long updatedAt) {
+        AlmSettingDto almSettingDto = mock(AlmSettingDto.class);
+        when(almSettingDto.getUuid()).thenReturn(uuid);
+        when(almSettingDto.getUrl()).thenReturn(url);
+        when(almSettingDto.getUpdatedAt()).thenReturn(updatedAt);
+        return almSettingDto;
+    }
+}
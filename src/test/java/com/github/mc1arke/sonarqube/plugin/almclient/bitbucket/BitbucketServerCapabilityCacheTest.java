@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient.bitbucket;
+
+import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.model.server.ServerProperties;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class BitbucketServerCapabilityCacheTest {
+
+    private final Clock clock = mock(Clock.class);
+    private final BitbucketServerCapabilityCache underTest = new BitbucketServerCapabilityCache(clock);
+    private final Instant now = Instant.parse("2024-01-01T10:00:00Z");
+
+    @Test
+    void shouldReuseCapabilitiesWithinRefreshInterval() throws IOException {
+        when(clock.instant()).thenReturn(now);
+        BitbucketServerCapabilityCache.ServerPropertiesLoader loader = mockLoader("5.15", "5.0");
+
+        BitbucketServerCapabilityCache.Capabilities first = underTest.getCapabilities("http://bitbucket", loader);
+        when(clock.instant()).thenReturn(now.plus(BitbucketServerCapabilityCache.REFRESH_AFTER).minusSeconds(1));
+        BitbucketServerCapabilityCache.Capabilities second = underTest.getCapabilities("http://bitbucket", loader);
+
+        assertThat(second).isSameAs(first);
+        assertThat(first.getVersion()).isEqualTo("5.15");
+        assertThat(first.isCodeInsightsSupported()).isTrue();
+        assertThat(first.getAnnotationUploadLimit().getTotalAllowedAnnotations()).isEqualTo(1000);
+        verify(loader).load();
+    }
+
+    @Test
+    void shouldRefreshStaleCapabilitiesOnNextRequest() throws IOException {
+        when(clock.instant()).thenReturn(now);
+        BitbucketServerCapabilityCache.ServerPropertiesLoader loader = mockLoader("5.15");
+        underTest.getCapabilities("http://bitbucket", loader);
+
+        when(clock.instant()).thenReturn(now.plus(BitbucketServerCapabilityCache.REFRESH_AFTER));
+        BitbucketServerCapabilityCache.ServerPropertiesLoader nextDecorationLoader = mockLoader("5.0");
+        BitbucketServerCapabilityCache.Capabilities refreshed = underTest.getCapabilities("http://bitbucket", nextDecorationLoader);
+
+        assertThat(refreshed.getVersion()).isEqualTo("5.0");
+        assertThat(refreshed.isCodeInsightsSupported()).isFalse();
+        assertThat(underTest.getCapabilities("http://bitbucket", nextDecorationLoader)).isSameAs(refreshed);
+        verify(loader).load();
+        verify(nextDecorationLoader).load();
+    }
+
+    @Test
+    void shouldKeepStaleCapabilitiesIfRefreshFails() throws IOException {
+        when(clock.instant()).thenReturn(now);
+        BitbucketServerCapabilityCache.ServerPropertiesLoader loader = mock(BitbucketServerCapabilityCache.ServerPropertiesLoader.class);
+        when(loader.load()).thenReturn(new ServerProperties("6.0")).thenThrow(new IOException("dummy")).thenReturn(new ServerProperties("7.0"));
+        underTest.getCapabilities("http://bitbucket", loader);
+
+        when(clock.instant()).thenReturn(now.plus(BitbucketServerCapabilityCache.REFRESH_AFTER));
+        assertThat(underTest.getCapabilities("http://bitbucket", loader).getVersion()).isEqualTo("6.0");
+        assertThat(underTest.getCapabilities("http://bitbucket", loader).getVersion()).isEqualTo("7.0");
+        verify(loader, times(3)).load();
+    }
+
+    @Test
+    void shouldReturnStaleCapabilitiesToOtherRequestsWhilstRefreshing() throws Exception {
+        when(clock.instant()).thenReturn(now);
+        underTest.getCapabilities("http://bitbucket", mockLoader("5.15"));
+        when(clock.instant()).thenReturn(now.plus(BitbucketServerCapabilityCache.REFRESH_AFTER));
+
+        CountDownLatch refreshStarted = new CountDownLatch(1);
+        CountDownLatch releaseRefresh = new CountDownLatch(1);
+        BitbucketServerCapabilityCache.ServerPropertiesLoader blockingLoader = mock(BitbucketServerCapabilityCache.ServerPropertiesLoader.class);
+        when(blockingLoader.load()).thenAnswer(invocation -> {
+            refreshStarted.countDown();
+            releaseRefresh.await(5, TimeUnit.SECONDS);
+            return new ServerProperties("5.0");
+        });
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        try {
+            Future<BitbucketServerCapabilityCache.Capabilities> refreshing = executorService.submit(() -> underTest.getCapabilities("http://bitbucket", blockingLoader));
+            assertThat(refreshStarted.await(5, TimeUnit.SECONDS)).isTrue();
+
+            BitbucketServerCapabilityCache.ServerPropertiesLoader concurrentLoader = mockLoader("4.0");
+            assertThat(underTest.getCapabilities("http://bitbucket", concurrentLoader).getVersion()).isEqualTo("5.15");
+            verify(concurrentLoader, never()).load();
+
+            releaseRefresh.countDown();
+            assertThat(refreshing.get(5, TimeUnit.SECONDS).getVersion()).isEqualTo("5.0");
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    void shouldReloadExpiredCapabilitiesBeforeReturning() throws IOException {
+        when(clock.instant()).thenReturn(now);
+        BitbucketServerCapabilityCache.ServerPropertiesLoader loader = mockLoader("5.15", "7.0");
+        underTest.getCapabilities("http://bitbucket", loader);
+
+        when(clock.instant()).thenReturn(now.plus(BitbucketServerCapabilityCache.EXPIRE_AFTER));
+        assertThat(underTest.getCachedCapabilities("http://bitbucket")).isEmpty();
+        assertThat(underTest.getCapabilities("http://bitbucket", loader).getVersion()).isEqualTo("7.0");
+        assertThat(underTest.getCachedCapabilities("http://bitbucket")).get()
+                .extracting(BitbucketServerCapabilityCache.Capabilities::getVersion).isEqualTo("7.0");
+    }
+
+    @Test
+    void shouldCacheCapabilitiesPerUrl() throws IOException {
+        when(clock.instant()).thenReturn(now);
+
+        underTest.getCapabilities("http://bitbucket1", mockLoader("5.15"));
+        underTest.getCapabilities("http://bitbucket2", mockLoader("5.0"));
+
+        assertThat(underTest.getCachedCapabilities("http://bitbucket1")).get()
+                .extracting(BitbucketServerCapabilityCache.Capabilities::getVersion).isEqualTo("5.15");
+        assertThat(underTest.getCachedCapabilities("http://bitbucket2")).get()
+                .extracting(BitbucketServerCapabilityCache.Capabilities::getVersion).isEqualTo("5.0");
+        assertThat(underTest.getCachedCapabilities("http://bitbucket3")).isEmpty();
+    }
+
+    @Test
+    void shouldNotCacheFailedLoad() throws IOException {
+        when(clock.instant()).thenReturn(now);
+        BitbucketServerCapabilityCache.ServerPropertiesLoader loader = mock(BitbucketServerCapabilityCache.ServerPropertiesLoader.class);
+        when(loader.load()).thenThrow(new IOException("dummy")).thenReturn(new ServerProperties("6.0"));
+
+        assertThatThrownBy(() -> underTest.getCapabilities("http://bitbucket", loader)).isInstanceOf(IOException.class);
+        assertThat(underTest.getCapabilities("http://bitbucket", loader).getVersion()).isEqualTo("6.0");
+    }
+
+    @Test
+    void shouldClearCapabilitiesOnStop() throws IOException {
+        when(clock.instant()).thenReturn(now);
+        underTest.start();
+        underTest.getCapabilities("http://bitbucket", mockLoader("5.15"));
+
+        underTest.stop();
+
+        assertThat(underTest.getCachedCapabilities("http://bitbucket")).isEmpty();
+    }
+
+    private static BitbucketServerCapabilityCache.ServerPropertiesLoader mockLoader(String version, String... versions) throws IOException {
+        BitbucketServerCapabilityCache.ServerPropertiesLoader loader = mock(BitbucketServerCapabilityCache.ServerPropertiesLoader.class);
+        ServerProperties[] subsequentProperties = new ServerProperties[versions.length];
+        for (int i = 0; i < versions.length; i++) {
+            subsequentProperties[i] = new ServerProperties(versions[i]);
+        }
+        when(loader.load()).thenReturn(new ServerProperties(version), subsequentProperties);
+        return loader;
+    }
+}
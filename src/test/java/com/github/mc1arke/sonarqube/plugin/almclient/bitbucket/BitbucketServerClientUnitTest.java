@@ -48,6 +48,8 @@ import org.mockito.junit.MockitoJUnitRunner;
 import java.io.IOException;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
 
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
@@ -75,7 +77,7 @@ public class BitbucketServerClientUnitTest {
     public void before() {
         BitbucketServerConfiguration
                 config = new BitbucketServerConfiguration("project", "repository", "https://my-server.org");
-        underTest = new BitbucketServerClient(config, mapper, client);
+        underTest = new BitbucketServerClient(config, mapper, client, new BitbucketServerCapabilityCache());
     }
 
     @Test
@@ -105,6 +107,11 @@ public class BitbucketServerClientUnitTest {
         assertFalse(result);
     }
 
+    @Test
+    public void testServerUploadDoesNotReplaceAnnotations() {
+        assertFalse(underTest.replacesAnnotationsOnUpload());
+    }
+
     @Test
     public void testSupportsCodeInsightsIsTrueWhenVersionEqual() throws IOException {
         // given
@@ -159,6 +166,38 @@ public class BitbucketServerClientUnitTest {
         assertTrue(result);
     }
 
+    @Test
+    public void testSupportsCodeInsightsReusesCachedServerProperties() throws IOException {
+        // given
+        ServerProperties serverProperties = new ServerProperties("6.0");
+
+        Call call = mock(Call.class);
+        Response response = mock(Response.class);
+        ObjectReader reader = mock(ObjectReader.class);
+        ResponseBody responseBody = mock(ResponseBody.class);
+
+        when(client.newCall(any())).thenReturn(call);
+        when(call.execute()).thenReturn(response);
+        when(response.isSuccessful()).thenReturn(true);
+        when(response.body()).thenReturn(responseBody);
+        when(responseBody.string()).thenReturn("test");
+
+        when(mapper.reader()).thenReturn(reader);
+        when(reader.forType(ServerProperties.class)).thenReturn(reader);
+        when(reader.readValue(any(String.class))).thenReturn(serverProperties);
+
+        // when
+        boolean first = underTest.supportsCodeInsights();
+        boolean second = underTest.supportsCodeInsights();
+        AnnotationUploadLimit annotationUploadLimit = underTest.getAnnotationUploadLimit();
+
+        // then
+        assertTrue(first);
+        assertTrue(second);
+        assertEquals(1000, annotationUploadLimit.getTotalAllowedAnnotations());
+        verify(client).newCall(any());
+    }
+
     @Test
     public void testSupportsCodeInsightsIsFalseWhenException() throws IOException {
         // given
@@ -333,7 +372,7 @@ public class BitbucketServerClientUnitTest {
 
         try (Buffer bodyContent = new Buffer()) {
             request.body().writeTo(bodyContent);
-            assertEquals("{\"annotations\":[{\"externalId\":\"external ID\",\"line\":12,\"type\":\"type\",\"link\":\"link\",\"message\":\"hello\",\"path\":\"path\",\"severity\":\"severe\"}]}", bodyContent.readUtf8());
+            assertEquals("{\"annotations\":[{\"externalId\":\"external ID\",\"line\":12,\"link\":\"link\",\"message\":\"hello\",\"path\":\"path\",\"severity\":\"severe\",\"type\":\"type\"}]}", bodyContent.readUtf8());
         }
     }
 
@@ -361,13 +400,66 @@ public class BitbucketServerClientUnitTest {
         when(response.isSuccessful()).thenReturn(true);
 
         // when
-        underTest.deleteAnnotations("commit", "reportKey");
+        underTest.deleteAnnotations("commit", "reportKey", new LinkedHashSet<>(List.of("issue1", "issue 2")));
 
         // then
         verify(client).newCall(captor.capture());
         Request request = captor.getValue();
         assertEquals("DELETE", request.method());
+        assertEquals("https://my-server.org/rest/insights/1.0/projects/project/repos/repository/commits/commit/reports/reportKey/annotations?externalId=issue1&externalId=issue%202", request.url().toString());
+    }
+
+    @Test
+    public void testDeleteAnnotationsWithNoExternalIds() throws IOException {
+        // when
+        underTest.deleteAnnotations("commit", "reportKey", Set.of());
+
+        // then
+        verify(client, never()).newCall(any());
+    }
+
+    @Test
+    public void testRetrieveAnnotations() throws IOException {
+        // given
+        Call call = mock(Call.class);
+        Response response = mock(Response.class);
+        ResponseBody responseBody = mock(ResponseBody.class);
+        ArgumentCaptor<Request> captor = ArgumentCaptor.forClass(Request.class);
+
+        when(client.newCall(any())).thenReturn(call);
+        when(call.execute()).thenReturn(response);
+        when(response.code()).thenReturn(200);
+        when(response.isSuccessful()).thenReturn(true);
+        when(response.body()).thenReturn(responseBody);
+        when(responseBody.string()).thenReturn("{\"annotations\":[{\"externalId\":\"issue1\",\"line\":12,\"link\":\"link\"," +
+                "\"message\":\"hello\",\"path\":\"path\",\"severity\":\"HIGH\",\"type\":\"BUG\"}]}");
+
+        // when
+        Set<CodeInsightsAnnotation> result = underTest.retrieveAnnotations("commit", "reportKey");
+
+        // then
+        verify(client).newCall(captor.capture());
+        Request request = captor.getValue();
+        assertEquals("GET", request.method());
         assertEquals("https://my-server.org/rest/insights/1.0/projects/project/repos/repository/commits/commit/reports/reportKey/annotations", request.url().toString());
+        assertEquals(Set.of(new Annotation("issue1", 12, "link", "hello", "path", "HIGH", "BUG")), result);
+    }
+
+    @Test
+    public void testRetrieveAnnotationsForMissingReport() throws IOException {
+        // given
+        Call call = mock(Call.class);
+        Response response = mock(Response.class);
+
+        when(client.newCall(any())).thenReturn(call);
+        when(call.execute()).thenReturn(response);
+        when(response.code()).thenReturn(404);
+
+        // when
+        Set<CodeInsightsAnnotation> result = underTest.retrieveAnnotations("commit", "reportKey");
+
+        // then
+        assertTrue(result.isEmpty());
     }
 
     @Test
@@ -1,11 +1,14 @@
 package com.github.mc1arke.sonarqube.plugin.almclient.bitbucket;
 
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmRequestThrottler;
 import okhttp3.Interceptor;
+import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
 import okhttp3.Request;
+import okhttp3.Response;
 import okhttp3.ResponseBody;
 import org.junit.Test;
-import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.sonar.api.config.internal.Encryption;
 import org.sonar.api.config.internal.Settings;
@@ -14,7 +17,12 @@ import org.sonar.db.alm.setting.AlmSettingDto;
 import org.sonar.db.alm.setting.ProjectAlmSettingDto;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
@@ -33,27 +41,29 @@ public class DefaultBitbucketClientFactoryUnitTest {
                 .setClientSecret("clientSecret");
         ProjectAlmSettingDto projectAlmSettingDto = new ProjectAlmSettingDto()
                 .setAlmRepo("almRepo");
+        OkHttpClient baseClient = mock(OkHttpClient.class, Mockito.RETURNS_DEEP_STUBS);
         OkHttpClient.Builder builder = mock(OkHttpClient.Builder.class, Mockito.RETURNS_DEEP_STUBS);
-        when(builder.addInterceptor(any())).thenReturn(builder);
+        when(baseClient.newBuilder()).thenReturn(builder);
+        List<Interceptor> interceptors = new ArrayList<>();
+        when(builder.interceptors()).thenReturn(interceptors);
 
         ResponseBody responseBody = mock(ResponseBody.class);
         when(responseBody.string()).thenReturn("{\"access_token\": \"dummy\"}");
-        when(builder.build().newCall(any()).execute().body()).thenReturn(responseBody);
+        when(baseClient.newCall(any()).execute().body()).thenReturn(responseBody);
 
         Settings settings = mock(Settings.class);
         Encryption encryption = mock(Encryption.class);
 
         // when
         when(settings.getEncryption()).thenReturn(encryption);
-        HttpClientBuilderFactory httpClientBuilderFactory = mock(HttpClientBuilderFactory.class);
-        when(httpClientBuilderFactory.createClientBuilder()).then(i -> builder);
-        BitbucketClient client = new DefaultBitbucketClientFactory(settings, httpClientBuilderFactory).createClient(projectAlmSettingDto, almSettingDto);
+        BitbucketHttpClientProvider bitbucketHttpClientProvider = mock(BitbucketHttpClientProvider.class);
+        when(bitbucketHttpClientProvider.getHttpClient(almSettingDto)).thenReturn(baseClient);
+        BitbucketClient client = new DefaultBitbucketClientFactory(settings, bitbucketHttpClientProvider, new BitbucketCloudTokenCache(), new BitbucketServerCapabilityCache()).createClient(projectAlmSettingDto, almSettingDto);
 
         // then
         assertTrue(client instanceof BitbucketCloudClient);
 
-        ArgumentCaptor<Interceptor> interceptorArgumentCaptor = ArgumentCaptor.forClass(Interceptor.class);
-        verify(builder, times(2)).addInterceptor(interceptorArgumentCaptor.capture());
+        assertEquals(1, interceptors.size());
 
         Interceptor.Chain chain = mock(Interceptor.Chain.class);
         Request request = mock(Request.class);
@@ -64,14 +74,70 @@ public class DefaultBitbucketClientFactoryUnitTest {
 
         Request request2 = mock(Request.class);
         when(requestBuilder.build()).thenReturn(request2);
+        Response response = mock(Response.class);
+        when(response.code()).thenReturn(200);
+        when(chain.proceed(request2)).thenReturn(response);
 
-        interceptorArgumentCaptor.getValue().intercept(chain);
+        interceptors.get(0).intercept(chain);
 
         verify(requestBuilder).addHeader("Authorization", "Bearer dummy");
         verify(requestBuilder).addHeader("Accept", "application/json");
         verify(chain).proceed(request2);
     }
 
+    @Test
+    public void shouldReuseCachedBearerTokenAndRenegotiateWhenRejected() throws IOException {
+        AlmSettingDto almSettingDto = new AlmSettingDto().setAlm(ALM.BITBUCKET_CLOUD)
+                .setClientId("clientId")
+                .setAppId("appId")
+                .setClientSecret("clientSecret");
+        ProjectAlmSettingDto projectAlmSettingDto = new ProjectAlmSettingDto()
+                .setAlmRepo("almRepo");
+        OkHttpClient baseClient = mock(OkHttpClient.class, Mockito.RETURNS_DEEP_STUBS);
+        OkHttpClient.Builder builder = mock(OkHttpClient.Builder.class, Mockito.RETURNS_DEEP_STUBS);
+        when(baseClient.newBuilder()).thenReturn(builder);
+        List<Interceptor> interceptors = new ArrayList<>();
+        when(builder.interceptors()).thenReturn(interceptors);
+
+        ResponseBody responseBody = mock(ResponseBody.class);
+        when(responseBody.string()).thenReturn("{\"access_token\": \"first\", \"expires_in\": 7200}", "{\"access_token\": \"second\", \"expires_in\": 7200}");
+        when(baseClient.newCall(any()).execute().body()).thenReturn(responseBody);
+
+        Settings settings = mock(Settings.class);
+        when(settings.getEncryption()).thenReturn(mock(Encryption.class));
+        BitbucketHttpClientProvider bitbucketHttpClientProvider = mock(BitbucketHttpClientProvider.class);
+        when(bitbucketHttpClientProvider.getHttpClient(almSettingDto)).thenReturn(baseClient);
+        DefaultBitbucketClientFactory underTest = new DefaultBitbucketClientFactory(settings, bitbucketHttpClientProvider, new BitbucketCloudTokenCache(), new BitbucketServerCapabilityCache());
+
+        underTest.createClient(projectAlmSettingDto, almSettingDto);
+        underTest.createClient(projectAlmSettingDto, almSettingDto);
+
+        verify(responseBody).string();
+
+        assertEquals(2, interceptors.size());
+
+        Interceptor.Chain chain = mock(Interceptor.Chain.class);
+        Request request = mock(Request.class);
+        when(chain.request()).thenReturn(request);
+        Request.Builder requestBuilder = mock(Request.Builder.class);
+        when(requestBuilder.addHeader(any(), any())).thenReturn(requestBuilder);
+        when(request.newBuilder()).thenReturn(requestBuilder);
+        Request authorisedRequest = mock(Request.class);
+        when(requestBuilder.build()).thenReturn(authorisedRequest);
+        Response unauthorisedResponse = mock(Response.class);
+        when(unauthorisedResponse.code()).thenReturn(401);
+        Response successfulResponse = mock(Response.class);
+        when(successfulResponse.code()).thenReturn(200);
+        when(chain.proceed(authorisedRequest)).thenReturn(unauthorisedResponse, successfulResponse);
+
+        assertEquals(successfulResponse, interceptors.get(0).intercept(chain));
+
+        verify(unauthorisedResponse).close();
+        verify(requestBuilder).addHeader("Authorization", "Bearer first");
+        verify(requestBuilder).addHeader("Authorization", "Bearer second");
+        verify(responseBody, times(2)).string();
+    }
+
     @Test
     public void testCreateClientIfNotCloudConfig() {
         // given
@@ -87,13 +153,45 @@ public class DefaultBitbucketClientFactoryUnitTest {
 
         // when
         when(settings.getEncryption()).thenReturn(encryption);
-        HttpClientBuilderFactory httpClientBuilderFactory = mock(HttpClientBuilderFactory.class);
-        when(httpClientBuilderFactory.createClientBuilder()).then(i -> mock(OkHttpClient.Builder.class, Mockito.RETURNS_DEEP_STUBS));
-        BitbucketClient client = new DefaultBitbucketClientFactory(settings, httpClientBuilderFactory).createClient(projectAlmSettingDto, almSettingDto);
+        BitbucketHttpClientProvider bitbucketHttpClientProvider = mock(BitbucketHttpClientProvider.class);
+        when(bitbucketHttpClientProvider.getHttpClient(almSettingDto)).thenReturn(mock(OkHttpClient.class, Mockito.RETURNS_DEEP_STUBS));
+        BitbucketClient client = new DefaultBitbucketClientFactory(settings, bitbucketHttpClientProvider, new BitbucketCloudTokenCache(), new BitbucketServerCapabilityCache()).createClient(projectAlmSettingDto, almSettingDto);
 
         // then
         assertTrue(client instanceof BitbucketServerClient);
     }
 
+    @Test
+    public void shouldThrottleRequestsAgainstCredentialTheyAreSentWith() throws IOException {
+        AlmSettingDto almSettingDto = new AlmSettingDto().setAlm(ALM.BITBUCKET)
+                .setUrl("https://credential-throttle.bitbucket.test")
+                .setPersonalAccessToken("personalAccessToken");
+        ProjectAlmSettingDto projectAlmSettingDto = new ProjectAlmSettingDto()
+                .setAlmRepo("almRepo")
+                .setAlmSlug("almSlug");
+        OkHttpClient baseClient = new HttpClientBuilderFactory().createClientBuilder()
+                .addInterceptor(chain -> new Response.Builder()
+                        .request(chain.request())
+                        .protocol(Protocol.HTTP_1_1)
+                        .code(204)
+                        .message("No Content")
+                        .header("RateLimit-Remaining", "5")
+                        .body(ResponseBody.create("", MediaType.get("application/json")))
+                        .build())
+                .build();
+
+        Settings settings = mock(Settings.class);
+        when(settings.getEncryption()).thenReturn(mock(Encryption.class));
+        BitbucketHttpClientProvider bitbucketHttpClientProvider = mock(BitbucketHttpClientProvider.class);
+        when(bitbucketHttpClientProvider.getHttpClient(almSettingDto)).thenReturn(baseClient);
+        BitbucketClient client = new DefaultBitbucketClientFactory(settings, bitbucketHttpClientProvider, new BitbucketCloudTokenCache(), new BitbucketServerCapabilityCache()).createClient(projectAlmSettingDto, almSettingDto);
+
+        client.deleteAnnotations("commit", "reportKey", Set.of("issueKey"));
+
+        assertEquals(Long.valueOf(5), AlmRequestThrottler.getRemainingBudgets()
+                .get("credential-throttle.bitbucket.test [" + Integer.toHexString("Bearer personalAccessToken".hashCode()) + "]"));
+        assertFalse(AlmRequestThrottler.getRemainingBudgets().containsKey("credential-throttle.bitbucket.test"));
+    }
+
 
 }
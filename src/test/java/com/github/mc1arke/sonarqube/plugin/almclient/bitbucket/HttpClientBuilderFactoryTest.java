@@ -18,9 +18,18 @@
  */
 package com.github.mc1arke.sonarqube.plugin.almclient.bitbucket;
 
+import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static org.assertj.core.api.Assertions.assertThat;
 
 class HttpClientBuilderFactoryTest {
@@ -33,4 +42,47 @@ class HttpClientBuilderFactoryTest {
 
         assertThat(builder1).isNotSameAs(builder2);
     }
+
+    @Test
+    void shouldRetryRateLimitedRequest() throws IOException {
+        AtomicInteger attempts = new AtomicInteger();
+        OkHttpClient client = new HttpClientBuilderFactory().createClientBuilder()
+                .addInterceptor(chain -> createResponse(chain.request(), attempts.incrementAndGet() == 1 ? 429 : 200))
+                .build();
+
+        try (Response response = client.newCall(new Request.Builder().url("https://rate-limited.bitbucket.test/rest").build()).execute()) {
+            assertThat(response.code()).isEqualTo(200);
+        }
+        assertThat(attempts).hasValue(2);
+    }
+
+    @Test
+    void shouldNotRetryFailedPostRequest() throws IOException {
+        AtomicInteger attempts = new AtomicInteger();
+        OkHttpClient client = new HttpClientBuilderFactory().createClientBuilder()
+                .addInterceptor(chain -> {
+                    attempts.incrementAndGet();
+                    return createResponse(chain.request(), 503);
+                })
+                .build();
+
+        Request request = new Request.Builder().url("https://unavailable.bitbucket.test/rest")
+                .post(RequestBody.create("{}", MediaType.get("application/json")))
+                .build();
+        try (Response response = client.newCall(request).execute()) {
+            assertThat(response.code()).isEqualTo(503);
+        }
+        assertThat(attempts).hasValue(1);
+    }
+
+    private static Response createResponse(Request request, int code) {
+        return new Response.Builder()
+                .request(request)
+                .protocol(Protocol.HTTP_1_1)
+                .code(code)
+                .message("message")
+                .header("Retry-After", "0")
+                .body(ResponseBody.create("", MediaType.get("application/json")))
+                .build();
+    }
 }
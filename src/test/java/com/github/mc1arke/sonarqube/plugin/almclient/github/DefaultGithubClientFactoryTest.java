@@ -23,8 +23,10 @@ import com.github.mc1arke.sonarqube.plugin.almclient.github.v3.RestApplicationAu
 import com.github.mc1arke.sonarqube.plugin.almclient.github.v4.GraphqlGithubClient;
 import com.github.mc1arke.sonarqube.plugin.almclient.github.v4.GraphqlProvider;
 import org.assertj.core.api.Condition;
+import org.assertj.core.api.InstanceOfAssertFactories;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
 import org.sonar.api.config.internal.Encryption;
 import org.sonar.api.config.internal.Settings;
 import org.sonar.db.alm.setting.AlmSettingDto;
@@ -35,6 +37,7 @@ import java.io.IOException;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -112,6 +115,25 @@ class DefaultGithubClientFactoryTest {
 
         RepositoryAuthenticationToken repositoryAuthenticationToken = mock(RepositoryAuthenticationToken.class);
         when(restApplicationAuthenticationProvider.getInstallationToken(any(), any(), any(), any())).thenReturn(repositoryAuthenticationToken);
-        assertThat(underTest.createClient(projectAlmSettingDto, almSettingDto)).usingRecursiveComparison().isEqualTo(new GraphqlGithubClient(graphqlProvider, "url", repositoryAuthenticationToken));
+        assertThat(underTest.createClient(projectAlmSettingDto, almSettingDto)).usingRecursiveComparison().ignoringFields("tokenRefresher")
+                .isEqualTo(new GraphqlGithubClient(graphqlProvider, "url", repositoryAuthenticationToken));
+    }
+
+    @Test
+    void shouldInvalidateRejectedTokenAndRequestReplacementWhenRefreshingToken() throws IOException {
+        DefaultGithubClientFactory underTest = new DefaultGithubClientFactory(restApplicationAuthenticationProvider, settings, graphqlProvider);
+        when(projectAlmSettingDto.getAlmRepo()).thenReturn("alm/slug");
+
+        RepositoryAuthenticationToken initialToken = new RepositoryAuthenticationToken("repositoryId", "initial token", "url", "slug", "alm");
+        RepositoryAuthenticationToken replacementToken = new RepositoryAuthenticationToken("repositoryId", "replacement token", "url", "slug", "alm");
+        when(restApplicationAuthenticationProvider.getInstallationToken("url", "appId", "privateKey", "alm/slug")).thenReturn(initialToken, replacementToken);
+
+        assertThat(underTest.createClient(projectAlmSettingDto, almSettingDto))
+                .extracting("tokenRefresher", InstanceOfAssertFactories.type(GraphqlGithubClient.TokenRefresher.class))
+                .satisfies(tokenRefresher -> assertThat(tokenRefresher.refreshToken("initial token")).isEqualTo("replacement token"));
+
+        InOrder inOrder = inOrder(restApplicationAuthenticationProvider);
+        inOrder.verify(restApplicationAuthenticationProvider).invalidateInstallationToken("url", "appId", "alm/slug", "initial token");
+        inOrder.verify(restApplicationAuthenticationProvider).getInstallationToken("url", "appId", "privateKey", "alm/slug");
     }
 }
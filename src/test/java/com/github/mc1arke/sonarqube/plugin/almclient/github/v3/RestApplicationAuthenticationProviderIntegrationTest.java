@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient.github.v3;
+
+import com.github.mc1arke.sonarqube.plugin.almclient.DefaultLinkHeaderReader;
+import com.github.mc1arke.sonarqube.plugin.almclient.github.RepositoryAuthenticationToken;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmClientMetrics;
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.Map;
+import java.util.Optional;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.matching;
+import static com.github.tomakehurst.wiremock.client.WireMock.notFound;
+import static com.github.tomakehurst.wiremock.client.WireMock.okJson;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.serverError;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class RestApplicationAuthenticationProviderIntegrationTest {
+
+    @Rule
+    public final WireMockRule wireMockRule = new WireMockRule(wireMockConfig().dynamicPort());
+
+    private final Clock clock = Clock.fixed(Instant.parse("2024-01-01T10:00:00Z"), ZoneId.of("UTC"));
+
+    @Test
+    public void shouldResolveInstallationDirectlyFromRepository() throws IOException {
+        wireMockRule.stubFor(get(urlEqualTo("/api/v3/repos/owner/repository/installation"))
+                .withHeader("Authorization", matching("Bearer [^.]+\\.[^.]+\\.[^.]+"))
+                .willReturn(okJson(installationJson())));
+        wireMockRule.stubFor(post(urlEqualTo("/api/v3/app/installations/123/access_tokens"))
+                .willReturn(okJson("{\"token\": \"installation-token\", \"expires_at\": \"2024-01-01T11:00:00Z\"}")));
+        wireMockRule.stubFor(get(urlEqualTo("/api/v3/repos/owner/repository"))
+                .withHeader("Authorization", equalTo("Bearer installation-token"))
+                .willReturn(okJson(repositoryJson())));
+
+        RepositoryAuthenticationToken result = createTestCase().getInstallationToken(wireMockRule.baseUrl() + "/api", "appId", readPrivateKey(), "owner/repository");
+
+        assertThat(result).usingRecursiveComparison().isEqualTo(new RepositoryAuthenticationToken("repositoryId", "installation-token", "http://github/owner/repository", "repository", "owner"));
+        wireMockRule.verify(0, getRequestedFor(urlEqualTo("/api/v3/app/installations")));
+        wireMockRule.verify(1, postRequestedFor(urlEqualTo("/api/v3/app/installations/123/access_tokens")));
+    }
+
+    @Test
+    public void shouldScanApplicationInstallationsIfRepositoryInstallationEndpointIsNotAvailable() throws IOException {
+        wireMockRule.stubFor(get(urlEqualTo("/api/v3/repos/owner/repository/installation"))
+                .willReturn(notFound()));
+        wireMockRule.stubFor(get(urlEqualTo("/api/v3/app/installations"))
+                .willReturn(okJson("[" + installationJson() + "]")));
+        wireMockRule.stubFor(post(urlEqualTo("/api/v3/app/installations/123/access_tokens"))
+                .willReturn(okJson("{\"token\": \"installation-token\", \"expires_at\": \"2024-01-01T11:00:00Z\"}")));
+        wireMockRule.stubFor(get(urlEqualTo("/api/v3/installation/repositories"))
+                .withHeader("Authorization", equalTo("Bearer installation-token"))
+                .willReturn(okJson("{\"repositories\": [" + repositoryJson() + "]}")));
+
+        RepositoryAuthenticationToken result = createTestCase().getInstallationToken(wireMockRule.baseUrl() + "/api", "appId", readPrivateKey(), "owner/repository");
+
+        assertThat(result).usingRecursiveComparison().isEqualTo(new RepositoryAuthenticationToken("repositoryId", "installation-token", "http://github/owner/repository", "repository", "owner"));
+        wireMockRule.verify(1, getRequestedFor(urlEqualTo("/api/v3/app/installations")));
+        wireMockRule.verify(0, getRequestedFor(urlEqualTo("/api/v3/repos/owner/repository")));
+    }
+
+    @Test
+    public void shouldNotScanApplicationInstallationsIfRepositoryInstallationLookupFails() throws IOException {
+        wireMockRule.stubFor(get(urlEqualTo("/api/v3/repos/owner/repository/installation"))
+                .willReturn(serverError()));
+
+        RestApplicationAuthenticationProvider testCase = createTestCase();
+        String apiUrl = wireMockRule.baseUrl() + "/api";
+        String privateKey = readPrivateKey();
+
+        assertThatThrownBy(() -> testCase.getInstallationToken(apiUrl, "appId", privateKey, "owner/repository"))
+                .isInstanceOf(IOException.class);
+        wireMockRule.verify(0, getRequestedFor(urlEqualTo("/api/v3/app/installations")));
+    }
+
+    @Test
+    public void shouldReuseCachedInstallationTokenForRepeatedLookups() throws IOException {
+        wireMockRule.stubFor(get(urlEqualTo("/api/v3/repos/owner/repository/installation"))
+                .willReturn(okJson(installationJson())));
+        wireMockRule.stubFor(post(urlEqualTo("/api/v3/app/installations/123/access_tokens"))
+                .willReturn(aResponse().withStatus(201).withHeader("Content-Type", "application/json")
+                        .withBody("{\"token\": \"installation-token\", \"expires_at\": \"2024-01-01T11:00:00Z\"}")));
+        wireMockRule.stubFor(get(urlEqualTo("/api/v3/repos/owner/repository"))
+                .willReturn(okJson(repositoryJson())));
+
+        RestApplicationAuthenticationProvider testCase = createTestCase();
+        testCase.getInstallationToken(wireMockRule.baseUrl() + "/api", "appId", readPrivateKey(), "owner/repository");
+        testCase.getInstallationToken(wireMockRule.baseUrl() + "/api", "appId", readPrivateKey(), "owner/repository");
+
+        wireMockRule.verify(1, getRequestedFor(urlEqualTo("/api/v3/repos/owner/repository/installation")));
+        wireMockRule.verify(1, postRequestedFor(urlEqualTo("/api/v3/app/installations/123/access_tokens")));
+    }
+
+    @Test
+    public void shouldRecordCallsAgainstDecorationMetrics() throws IOException {
+        String tokenResponse = "{\"token\": \"installation-token\", \"expires_at\": \"2024-01-01T11:00:00Z\"}";
+        wireMockRule.stubFor(get(urlEqualTo("/api/v3/repos/owner/repository/installation"))
+                .willReturn(okJson(installationJson())));
+        wireMockRule.stubFor(post(urlEqualTo("/api/v3/app/installations/123/access_tokens"))
+                .willReturn(okJson(tokenResponse)));
+        wireMockRule.stubFor(get(urlEqualTo("/api/v3/repos/owner/repository"))
+                .willReturn(okJson(repositoryJson())));
+
+        try (AlmClientMetrics metrics = AlmClientMetrics.start()) {
+            createTestCase().getInstallationToken(wireMockRule.baseUrl() + "/api", "appId", readPrivateKey(), "owner/repository");
+
+            assertThat(metrics.getApiCalls()).isEqualTo(Map.of(
+                    "GET /api/v3/repos/owner/repository/installation", 1L,
+                    "POST /api/v3/app/installations/{id}/access_tokens", 1L,
+                    "GET /api/v3/repos/owner/repository", 1L));
+            assertThat(metrics.getBytesReceived()).isEqualTo(installationJson().length() + tokenResponse.length() + repositoryJson().length());
+        }
+    }
+
+    private RestApplicationAuthenticationProvider createTestCase() {
+        return new RestApplicationAuthenticationProvider(clock, new DefaultLinkHeaderReader(), new DefaultUrlConnectionProvider(), new InstallationTokenCache());
+    }
+
+    private String installationJson() {
+        return "{\"id\": 123, \"access_tokens_url\": \"" + wireMockRule.baseUrl() + "/api/v3/app/installations/123/access_tokens\", " +
+                "\"repositories_url\": \"" + wireMockRule.baseUrl() + "/api/v3/installation/repositories\"}";
+    }
+
+    private static String repositoryJson() {
+        return "{\"node_id\": \"repositoryId\", \"full_name\": \"owner/repository\", \"html_url\": \"http://github/owner/repository\", " +
+                "\"name\": \"repository\", \"owner\": {\"login\": \"owner\"}}";
+    }
+
+    private String readPrivateKey() throws IOException {
+        try (InputStream inputStream = Optional.ofNullable(getClass().getResourceAsStream("/rsa-private-key.pem")).orElseThrow()) {
+            return IOUtils.toString(inputStream, StandardCharsets.UTF_8);
+        }
+    }
+}
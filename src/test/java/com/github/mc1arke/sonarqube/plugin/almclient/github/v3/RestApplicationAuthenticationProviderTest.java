@@ -32,6 +32,7 @@ import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
 
 import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
@@ -80,10 +81,10 @@ class RestApplicationAuthenticationProviderTest {
             List<AppInstallation> appPageContents = new ArrayList<>();
             for (int i = 0; i < 10; i++) {
                 int itemNumber = (appPage * 10) + i;
-                appPageContents.add(new AppInstallation("http://repository.url/item-" + itemNumber, "http://acccess-token.url/item-" + itemNumber));
+                appPageContents.add(new AppInstallation(itemNumber, "http://repository.url/item-" + itemNumber, "http://acccess-token.url/item-" + itemNumber));
 
                 HttpURLConnection appTokenConnection = mock(HttpURLConnection.class);
-                when(appTokenConnection.getInputStream()).thenReturn(new ByteArrayInputStream(objectMapper.writeValueAsBytes(new AppToken("token-" + itemNumber))));
+                when(appTokenConnection.getInputStream()).thenReturn(new ByteArrayInputStream(objectMapper.writeValueAsBytes(new AppToken("token-" + itemNumber, null))));
                 when(urlConnectionProvider.createUrlConnection("http://acccess-token.url/item-" + itemNumber)).thenReturn(appTokenConnection);
                 appTokenConnections.add(appTokenConnection);
 
@@ -113,9 +114,11 @@ class RestApplicationAuthenticationProviderTest {
             }
         }
 
+        mockMissingRepositoryInstallationEndpoint(urlConnectionProvider, apiUrl + "/repos/path/repo-49.3/installation");
+
         RepositoryAuthenticationToken expected = new RepositoryAuthenticationToken("nodeId", "token-49", "url", "repo-49.3", "login");
 
-        RestApplicationAuthenticationProvider restApplicationAuthenticationProvider = new RestApplicationAuthenticationProvider(clock, linkHeaderReader, urlConnectionProvider);
+        RestApplicationAuthenticationProvider restApplicationAuthenticationProvider = new RestApplicationAuthenticationProvider(clock, linkHeaderReader, urlConnectionProvider, new InstallationTokenCache());
 
         RepositoryAuthenticationToken repositoryAuthenticationToken = restApplicationAuthenticationProvider.getInstallationToken("https://api.url/api/", appId, apiPrivateKey, projectPath);
         assertThat(repositoryAuthenticationToken).usingRecursiveComparison().isEqualTo(expected);
@@ -189,6 +192,7 @@ class RestApplicationAuthenticationProviderTest {
 
         String apiUrl = "apiUrl";
         doReturn(installationsUrlConnection).when(urlProvider).createUrlConnection(apiUrl + "/app/installations");
+        mockMissingRepositoryInstallationEndpoint(urlProvider, apiUrl + "/repos/project path/installation");
 
         String appId = "appID";
 
@@ -197,7 +201,7 @@ class RestApplicationAuthenticationProviderTest {
             apiPrivateKey = IOUtils.toString(inputStream, StandardCharsets.UTF_8);
         }
 
-        RestApplicationAuthenticationProvider testCase = new RestApplicationAuthenticationProvider(clock, h -> Optional.empty(), urlProvider);
+        RestApplicationAuthenticationProvider testCase = new RestApplicationAuthenticationProvider(clock, h -> Optional.empty(), urlProvider, new InstallationTokenCache());
         assertThatThrownBy(() -> testCase.getInstallationToken(apiUrl, appId, apiPrivateKey, projectPath)).hasMessage(
                 "No token could be found with access to the requested repository using the given application ID and key")
                 .isExactlyInstanceOf(InvalidConfigurationException.class);
@@ -223,4 +227,173 @@ class RestApplicationAuthenticationProviderTest {
                                    "Bearer " + expectedAuthenticationToken));
 
     }
+
+    @Test
+    void shouldReuseCachedInstallationAndTokenForSubsequentRequests() throws IOException {
+        UrlConnectionProvider urlProvider = mock(UrlConnectionProvider.class);
+        Clock clock = Clock.fixed(Instant.parse("2024-01-01T10:00:00Z"), ZoneId.of("UTC"));
+
+        URLConnection installationsUrlConnection = mockInstallationsConnection(urlProvider);
+        HttpURLConnection accessTokensUrlConnection = mockAccessTokenConnection("token", "2024-01-01T11:00:00Z");
+        doReturn(accessTokensUrlConnection).when(urlProvider).createUrlConnection("tokens_url");
+        HttpURLConnection repositoriesUrlConnection = mockRepositoriesConnection(urlProvider);
+
+        RestApplicationAuthenticationProvider testCase = new RestApplicationAuthenticationProvider(clock, h -> Optional.empty(), urlProvider, new InstallationTokenCache());
+        RepositoryAuthenticationToken firstToken = testCase.getInstallationToken("apiUrl", "appID", readPrivateKey(), "owner/repository");
+        RepositoryAuthenticationToken secondToken = testCase.getInstallationToken("apiUrl", "appID", readPrivateKey(), "owner/repository");
+
+        RepositoryAuthenticationToken expected = new RepositoryAuthenticationToken("repositoryId", "token", "html_url", "repository", "owner");
+        assertThat(firstToken).usingRecursiveComparison().isEqualTo(expected);
+        assertThat(secondToken).usingRecursiveComparison().isEqualTo(expected);
+
+        verify(installationsUrlConnection).getInputStream();
+        verify(accessTokensUrlConnection).getInputStream();
+        verify(repositoriesUrlConnection).getInputStream();
+    }
+
+    @Test
+    void shouldRefreshTokenForCachedInstallationWhenTokenIsCloseToExpiring() throws IOException {
+        UrlConnectionProvider urlProvider = mock(UrlConnectionProvider.class);
+        Clock clock = Clock.fixed(Instant.parse("2024-01-01T10:00:00Z"), ZoneId.of("UTC"));
+
+        URLConnection installationsUrlConnection = mockInstallationsConnection(urlProvider);
+        HttpURLConnection initialAccessTokensUrlConnection = mockAccessTokenConnection("token", "2024-01-01T10:02:00Z");
+        HttpURLConnection refreshedAccessTokensUrlConnection = mockAccessTokenConnection("refreshed token", "2024-01-01T11:00:00Z");
+        when(urlProvider.createUrlConnection("tokens_url")).thenReturn(initialAccessTokensUrlConnection, refreshedAccessTokensUrlConnection);
+        HttpURLConnection repositoriesUrlConnection = mockRepositoriesConnection(urlProvider);
+
+        RestApplicationAuthenticationProvider testCase = new RestApplicationAuthenticationProvider(clock, h -> Optional.empty(), urlProvider, new InstallationTokenCache());
+        testCase.getInstallationToken("apiUrl", "appID", readPrivateKey(), "owner/repository");
+        RepositoryAuthenticationToken result = testCase.getInstallationToken("apiUrl", "appID", readPrivateKey(), "owner/repository");
+
+        assertThat(result).usingRecursiveComparison().isEqualTo(new RepositoryAuthenticationToken("repositoryId", "refreshed token", "html_url", "repository", "owner"));
+
+        verify(installationsUrlConnection).getInputStream();
+        verify(repositoriesUrlConnection).getInputStream();
+        verify(refreshedAccessTokensUrlConnection).setRequestMethod("POST");
+    }
+
+    @Test
+    void shouldMintNewTokenForCachedInstallationWhenTokenIsInvalidated() throws IOException {
+        UrlConnectionProvider urlProvider = mock(UrlConnectionProvider.class);
+        Clock clock = Clock.fixed(Instant.parse("2024-01-01T10:00:00Z"), ZoneId.of("UTC"));
+
+        URLConnection installationsUrlConnection = mockInstallationsConnection(urlProvider);
+        HttpURLConnection initialAccessTokensUrlConnection = mockAccessTokenConnection("token", "2024-01-01T11:00:00Z");
+        HttpURLConnection replacementAccessTokensUrlConnection = mockAccessTokenConnection("replacement token", "2024-01-01T11:00:00Z");
+        when(urlProvider.createUrlConnection("tokens_url")).thenReturn(initialAccessTokensUrlConnection, replacementAccessTokensUrlConnection);
+        HttpURLConnection repositoriesUrlConnection = mockRepositoriesConnection(urlProvider);
+
+        RestApplicationAuthenticationProvider testCase = new RestApplicationAuthenticationProvider(clock, h -> Optional.empty(), urlProvider, new InstallationTokenCache());
+        testCase.getInstallationToken("apiUrl", "appID", readPrivateKey(), "owner/repository");
+        testCase.invalidateInstallationToken("apiUrl", "appID", "owner/repository", "token");
+        RepositoryAuthenticationToken result = testCase.getInstallationToken("apiUrl", "appID", readPrivateKey(), "owner/repository");
+
+        assertThat(result).usingRecursiveComparison().isEqualTo(new RepositoryAuthenticationToken("repositoryId", "replacement token", "html_url", "repository", "owner"));
+        verify(installationsUrlConnection).getInputStream();
+        verify(repositoriesUrlConnection).getInputStream();
+        verify(replacementAccessTokensUrlConnection).setRequestMethod("POST");
+    }
+
+    @Test
+    void shouldKeepCachedTokenWhenDifferentTokenIsInvalidated() throws IOException {
+        UrlConnectionProvider urlProvider = mock(UrlConnectionProvider.class);
+        Clock clock = Clock.fixed(Instant.parse("2024-01-01T10:00:00Z"), ZoneId.of("UTC"));
+
+        mockInstallationsConnection(urlProvider);
+        HttpURLConnection accessTokensUrlConnection = mockAccessTokenConnection("token", "2024-01-01T11:00:00Z");
+        doReturn(accessTokensUrlConnection).when(urlProvider).createUrlConnection("tokens_url");
+        mockRepositoriesConnection(urlProvider);
+
+        RestApplicationAuthenticationProvider testCase = new RestApplicationAuthenticationProvider(clock, h -> Optional.empty(), urlProvider, new InstallationTokenCache());
+        testCase.getInstallationToken("apiUrl", "appID", readPrivateKey(), "owner/repository");
+        testCase.invalidateInstallationToken("apiUrl", "appID", "owner/repository", "previous token");
+        RepositoryAuthenticationToken result = testCase.getInstallationToken("apiUrl", "appID", readPrivateKey(), "owner/repository");
+
+        assertThat(result.getAuthenticationToken()).isEqualTo("token");
+        verify(accessTokensUrlConnection).getInputStream();
+    }
+
+    @Test
+    void shouldScanInstallationsAgainIfCachedInstallationIsRejected() throws IOException {
+        UrlConnectionProvider urlProvider = mock(UrlConnectionProvider.class);
+        Clock clock = Clock.fixed(Instant.parse("2024-01-01T10:00:00Z"), ZoneId.of("UTC"));
+
+        URLConnection installationsUrlConnection = mockInstallationsConnection(urlProvider);
+        HttpURLConnection initialAccessTokensUrlConnection = mockAccessTokenConnection("token", "2024-01-01T10:02:00Z");
+        HttpURLConnection rejectedAccessTokensUrlConnection = mock(HttpURLConnection.class);
+        when(rejectedAccessTokensUrlConnection.getInputStream()).thenThrow(new IOException("Unauthorized"));
+        when(rejectedAccessTokensUrlConnection.getResponseCode()).thenReturn(401);
+        HttpURLConnection rescannedAccessTokensUrlConnection = mockAccessTokenConnection("new token", "2024-01-01T11:00:00Z");
+        when(urlProvider.createUrlConnection("tokens_url")).thenReturn(initialAccessTokensUrlConnection, rejectedAccessTokensUrlConnection, rescannedAccessTokensUrlConnection);
+        mockRepositoriesConnection(urlProvider);
+
+        RestApplicationAuthenticationProvider testCase = new RestApplicationAuthenticationProvider(clock, h -> Optional.empty(), urlProvider, new InstallationTokenCache());
+        testCase.getInstallationToken("apiUrl", "appID", readPrivateKey(), "owner/repository");
+        RepositoryAuthenticationToken result = testCase.getInstallationToken("apiUrl", "appID", readPrivateKey(), "owner/repository");
+
+        assertThat(result).usingRecursiveComparison().isEqualTo(new RepositoryAuthenticationToken("repositoryId", "new token", "html_url", "repository", "owner"));
+        verify(installationsUrlConnection, times(2)).getInputStream();
+    }
+
+    @Test
+    void shouldNotScanInstallationsAgainIfCachedInstallationFailsForOtherReason() throws IOException {
+        UrlConnectionProvider urlProvider = mock(UrlConnectionProvider.class);
+        Clock clock = Clock.fixed(Instant.parse("2024-01-01T10:00:00Z"), ZoneId.of("UTC"));
+
+        URLConnection installationsUrlConnection = mockInstallationsConnection(urlProvider);
+        HttpURLConnection initialAccessTokensUrlConnection = mockAccessTokenConnection("token", "2024-01-01T10:02:00Z");
+        HttpURLConnection failingAccessTokensUrlConnection = mock(HttpURLConnection.class);
+        when(failingAccessTokensUrlConnection.getInputStream()).thenThrow(new IOException("Server Error"));
+        when(failingAccessTokensUrlConnection.getResponseCode()).thenReturn(500);
+        when(urlProvider.createUrlConnection("tokens_url")).thenReturn(initialAccessTokensUrlConnection, failingAccessTokensUrlConnection);
+        mockRepositoriesConnection(urlProvider);
+
+        RestApplicationAuthenticationProvider testCase = new RestApplicationAuthenticationProvider(clock, h -> Optional.empty(), urlProvider, new InstallationTokenCache());
+        testCase.getInstallationToken("apiUrl", "appID", readPrivateKey(), "owner/repository");
+        assertThatThrownBy(() -> testCase.getInstallationToken("apiUrl", "appID", readPrivateKey(), "owner/repository"))
+                .isExactlyInstanceOf(IOException.class)
+                .hasMessage("Server Error");
+
+        verify(installationsUrlConnection).getInputStream();
+    }
+
+    private static URLConnection mockInstallationsConnection(UrlConnectionProvider urlProvider) throws IOException {
+        URLConnection installationsUrlConnection = mock(URLConnection.class);
+        when(installationsUrlConnection.getInputStream()).thenAnswer(i -> new ByteArrayInputStream(
+                "[{\"id\": 123, \"repositories_url\": \"repositories_url\", \"access_tokens_url\": \"tokens_url\"}]"
+                        .getBytes(StandardCharsets.UTF_8)));
+        doReturn(installationsUrlConnection).when(urlProvider).createUrlConnection("apiUrl/app/installations");
+        mockMissingRepositoryInstallationEndpoint(urlProvider, "apiUrl/repos/owner/repository/installation");
+        return installationsUrlConnection;
+    }
+
+    private static void mockMissingRepositoryInstallationEndpoint(UrlConnectionProvider urlProvider, String url) throws IOException {
+        HttpURLConnection repositoryInstallationConnection = mock(HttpURLConnection.class);
+        when(repositoryInstallationConnection.getInputStream()).thenThrow(new FileNotFoundException(url));
+        when(repositoryInstallationConnection.getResponseCode()).thenReturn(404);
+        doReturn(repositoryInstallationConnection).when(urlProvider).createUrlConnection(url);
+    }
+
+    private static HttpURLConnection mockAccessTokenConnection(String token, String expiresAt) throws IOException {
+        HttpURLConnection accessTokensUrlConnection = mock(HttpURLConnection.class);
+        when(accessTokensUrlConnection.getInputStream()).thenAnswer(i -> new ByteArrayInputStream(
+                ("{\"token\": \"" + token + "\", \"expires_at\": \"" + expiresAt + "\"}").getBytes(StandardCharsets.UTF_8)));
+        return accessTokensUrlConnection;
+    }
+
+    private static HttpURLConnection mockRepositoriesConnection(UrlConnectionProvider urlProvider) throws IOException {
+        HttpURLConnection repositoriesUrlConnection = mock(HttpURLConnection.class);
+        when(repositoriesUrlConnection.getInputStream()).thenAnswer(i -> new ByteArrayInputStream(
+                ("{\"repositories\": [{\"node_id\": \"repositoryId\", \"full_name\": \"owner/repository\", \"html_url\": \"html_url\", " +
+                        "\"name\": \"repository\", \"owner\": {\"login\": \"owner\"}}]}").getBytes(StandardCharsets.UTF_8)));
+        doReturn(repositoriesUrlConnection).when(urlProvider).createUrlConnection("repositories_url");
+        return repositoriesUrlConnection;
+    }
+
+    private String readPrivateKey() throws IOException {
+        try (InputStream inputStream = Optional.ofNullable(getClass().getResourceAsStream("/rsa-private-key.pem")).orElseThrow()) {
+            return IOUtils.toString(inputStream, StandardCharsets.UTF_8);
+        }
+    }
 }
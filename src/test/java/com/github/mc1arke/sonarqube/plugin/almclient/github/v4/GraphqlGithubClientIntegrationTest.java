@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient.github.v4;
+
+import com.github.mc1arke.sonarqube.plugin.almclient.github.RepositoryAuthenticationToken;
+import com.github.mc1arke.sonarqube.plugin.almclient.github.model.CheckRunDetails;
+import com.github.mc1arke.sonarqube.plugin.almclient.github.v4.model.CheckConclusionState;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmClientMetrics;
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.containing;
+import static com.github.tomakehurst.wiremock.client.WireMock.notContaining;
+import static com.github.tomakehurst.wiremock.client.WireMock.okJson;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class GraphqlGithubClientIntegrationTest {
+
+    @Rule
+    public final WireMockRule wireMockRule = new WireMockRule(wireMockConfig().dynamicPort());
+
+    @Test
+    public void shouldRetrieveSummaryCommentDetailsInOneRequestAndOnlyRequestCommentsForSubsequentPages() throws IOException {
+        wireMockRule.stubFor(post(urlEqualTo("/api/graphql"))
+                .withRequestBody(containing("createCheckRun"))
+                .willReturn(okJson("{\"data\": {\"createCheckRun\": {\"checkRun\": {\"id\": \"check-run\"}}}}")));
+        wireMockRule.stubFor(post(urlEqualTo("/api/graphql"))
+                .withRequestBody(containing("viewer"))
+                .willReturn(okJson("{\"data\": {\"viewer\": {\"login\": \"sonar[bot]\"}, \"repository\": {\"pullRequest\": {\"id\": \"pull-request\", \"comments\": {" +
+                        "\"nodes\": [" + comment("comment1", "sonar") + ", " + comment("comment2", "user") + "], " +
+                        "\"pageInfo\": {\"hasNextPage\": true, \"endCursor\": \"cursor1\"}}}}}}")));
+        wireMockRule.stubFor(post(urlEqualTo("/api/graphql"))
+                .withRequestBody(containing("cursor1"))
+                .willReturn(okJson("{\"data\": {\"repository\": {\"pullRequest\": {\"comments\": {" +
+                        "\"nodes\": [" + comment("comment3", "sonar") + "], " +
+                        "\"pageInfo\": {\"hasNextPage\": false, \"endCursor\": \"cursor2\"}}}}}}")));
+        wireMockRule.stubFor(post(urlEqualTo("/api/graphql"))
+                .withRequestBody(containing("minimizeComment"))
+                .willReturn(okJson("{\"data\": {\"minimize0\": {\"clientMutationId\": null}, \"minimize1\": {\"clientMutationId\": null}}}")));
+        wireMockRule.stubFor(post(urlEqualTo("/api/graphql"))
+                .withRequestBody(containing("addComment"))
+                .willReturn(okJson("{\"data\": {\"addComment\": {\"clientMutationId\": null}}}")));
+
+        GraphqlGithubClient testCase = new GraphqlGithubClient(new DefaultGraphqlProvider(), wireMockRule.baseUrl() + "/api/v3",
+                new RepositoryAuthenticationToken("repository-id", "token", "http://github/owner/repository", "repository", "owner"));
+
+        String checkRunId = testCase.createCheckRun(CheckRunDetails.builder()
+                .withAnnotations(List.of())
+                .withCheckConclusionState(CheckConclusionState.SUCCESS)
+                .withCommitId("commit-id")
+                .withSummary("Summary message")
+                .withDashboardUrl("http://sonarqube/dashboard")
+                .withStartTime(ZonedDateTime.of(2024, 1, 1, 10, 0, 0, 0, ZoneId.of("UTC")))
+                .withEndTime(ZonedDateTime.of(2024, 1, 1, 10, 1, 0, 0, ZoneId.of("UTC")))
+                .withExternalId("external-id")
+                .withName("Name")
+                .withTitle("Title")
+                .withPullRequestId(999)
+                .build(), true);
+
+        assertThat(checkRunId).isEqualTo("check-run");
+        // check run, viewer with first comment page, second comment page, minimize and add comment
+        wireMockRule.verify(5, postRequestedFor(urlEqualTo("/api/graphql")));
+        wireMockRule.verify(1, postRequestedFor(urlEqualTo("/api/graphql")).withRequestBody(containing("viewer")));
+        wireMockRule.verify(1, postRequestedFor(urlEqualTo("/api/graphql"))
+                .withRequestBody(containing("cursor1"))
+                .withRequestBody(notContaining("viewer"))
+                .withRequestBody(notContaining(" id comments")));
+        wireMockRule.verify(1, postRequestedFor(urlEqualTo("/api/graphql"))
+                .withRequestBody(containing("comment1"))
+                .withRequestBody(containing("comment3"))
+                .withRequestBody(notContaining("comment2")));
+        wireMockRule.verify(1, postRequestedFor(urlEqualTo("/api/graphql"))
+                .withRequestBody(containing("addComment"))
+                .withRequestBody(containing("pull-request")));
+    }
+
+    @Test
+    public void shouldRecordSizeOfGraphqlResponses() throws IOException {
+        String checkRunResponse = "{\"data\": {\"createCheckRun\": {\"checkRun\": {\"id\": \"check-run-\u00e9\"}}}}";
+        wireMockRule.stubFor(post(urlEqualTo("/api/graphql"))
+                .withRequestBody(containing("createCheckRun"))
+                .willReturn(okJson(checkRunResponse)));
+
+        GraphqlGithubClient testCase = new GraphqlGithubClient(new DefaultGraphqlProvider(), wireMockRule.baseUrl() + "/api/v3",
+                new RepositoryAuthenticationToken("repository-id", "token", "http://github/owner/repository", "repository", "owner"));
+
+        try (AlmClientMetrics metrics = AlmClientMetrics.start()) {
+            testCase.createCheckRun(CheckRunDetails.builder()
+                    .withAnnotations(List.of())
+                    .withCheckConclusionState(CheckConclusionState.SUCCESS)
+                    .withCommitId("commit-id")
+                    .withSummary("Summary message")
+                    .withDashboardUrl("http://sonarqube/dashboard")
+                    .withStartTime(ZonedDateTime.of(2024, 1, 1, 10, 0, 0, 0, ZoneId.of("UTC")))
+                    .withEndTime(ZonedDateTime.of(2024, 1, 1, 10, 1, 0, 0, ZoneId.of("UTC")))
+                    .withExternalId("external-id")
+                    .withName("Name")
+                    .withTitle("Title")
+                    .withPullRequestId(999)
+                    .build(), false);
+
+            assertThat(metrics.getApiCallCount()).isEqualTo(1);
+            assertThat(metrics.getBytesReceived()).isEqualTo(checkRunResponse.getBytes(StandardCharsets.UTF_8).length);
+        }
+    }
+
+    private static String comment(String id, String login) {
+        return "{\"id\": \"" + id + "\", \"isMinimized\": false, \"author\": {\"__typename\": \"" + ("sonar".equals(login) ? "Bot" : "User") + "\", \"login\": \"" + login + "\"}}";
+    }
+
+}
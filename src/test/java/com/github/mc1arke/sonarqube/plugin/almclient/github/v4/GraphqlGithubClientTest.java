@@ -19,6 +19,7 @@
 package com.github.mc1arke.sonarqube.plugin.almclient.github.v4;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.mc1arke.sonarqube.plugin.almclient.AlmRequestThrottler;
 import com.github.mc1arke.sonarqube.plugin.almclient.github.RepositoryAuthenticationToken;
 import com.github.mc1arke.sonarqube.plugin.almclient.github.model.Annotation;
 import com.github.mc1arke.sonarqube.plugin.almclient.github.model.CheckRunDetails;
@@ -32,6 +33,7 @@ import io.aexp.nodes.graphql.GraphQLRequestEntity;
 import io.aexp.nodes.graphql.GraphQLResponseEntity;
 import io.aexp.nodes.graphql.GraphQLTemplate;
 import io.aexp.nodes.graphql.InputObject;
+import io.aexp.nodes.graphql.exceptions.GraphQLException;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
 import org.sonar.api.issue.Issue;
@@ -53,6 +55,7 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
@@ -96,6 +99,95 @@ class GraphqlGithubClientTest {
                 "- Error{message='example message', locations=[]}").isExactlyInstanceOf(IllegalStateException.class);
     }
 
+    @Test
+    void shouldRetryRequestRateLimitedInSuccessfulResponse() throws IOException {
+        RepositoryAuthenticationToken repositoryAuthenticationToken = mock(RepositoryAuthenticationToken.class);
+        when(repositoryAuthenticationToken.getAuthenticationToken()).thenReturn("rateLimitedToken");
+        when(repositoryAuthenticationToken.getRepositoryId()).thenReturn("repository ID");
+
+        when(graphqlProvider.createRequestBuilder()).thenReturn(GraphQLRequestEntity.Builder());
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        GraphQLResponseEntity<CreateCheckRun> rateLimitedResponseEntity = objectMapper.readValue(
+                "{\"errors\": [{\"message\": \"API rate limit exceeded for installation ID 123.\", \"locations\": []}]}",
+                objectMapper.getTypeFactory().constructParametricType(GraphQLResponseEntity.class, CreateCheckRun.class));
+        GraphQLResponseEntity<CreateCheckRun> successfulResponseEntity = objectMapper.readValue(
+                "{\"headers\": {\"x-ratelimit-resource\": [\"graphql\"], \"x-ratelimit-remaining\": [\"4321\"]}, " +
+                        "\"response\": {\"checkRun\": {\"id\": \"ABC\"}}}",
+                objectMapper.getTypeFactory().constructParametricType(GraphQLResponseEntity.class, CreateCheckRun.class));
+        GraphQLTemplate graphQLTemplate = mock(GraphQLTemplate.class);
+        when(graphQLTemplate.mutate(any(), eq(CreateCheckRun.class))).thenReturn(rateLimitedResponseEntity, successfulResponseEntity);
+        when(graphqlProvider.createGraphQLTemplate()).thenReturn(graphQLTemplate);
+
+        GraphqlGithubClient testCase = new GraphqlGithubClient(graphqlProvider, "https://api.url", repositoryAuthenticationToken);
+        CheckRunDetails checkRunDetails = CheckRunDetails.builder().withAnnotations(List.of()).withStartTime(ZonedDateTime.now()).withEndTime(ZonedDateTime.now()).build();
+
+        assertThat(testCase.createCheckRun(checkRunDetails, false)).isEqualTo("ABC");
+        verify(graphQLTemplate, times(2)).mutate(any(), eq(CreateCheckRun.class));
+        assertThat(AlmRequestThrottler.getRemainingBudgets())
+                .containsEntry("api.url/graphql [" + Integer.toHexString("Bearer rateLimitedToken".hashCode()) + "]", 4321L);
+    }
+
+    @Test
+    void shouldRetryRequestOnceWithRefreshedTokenWhenTokenIsRejected() throws IOException {
+        RepositoryAuthenticationToken repositoryAuthenticationToken = mock(RepositoryAuthenticationToken.class);
+        when(repositoryAuthenticationToken.getAuthenticationToken()).thenReturn("revoked token");
+        when(repositoryAuthenticationToken.getRepositoryId()).thenReturn("repository ID");
+
+        when(graphqlProvider.createRequestBuilder()).thenReturn(GraphQLRequestEntity.Builder());
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        GraphQLResponseEntity<CreateCheckRun> successfulResponseEntity = objectMapper.readValue("{\"headers\": {}, \"response\": {\"checkRun\": {\"id\": \"ABC\"}}}",
+                objectMapper.getTypeFactory().constructParametricType(GraphQLResponseEntity.class, CreateCheckRun.class));
+        GraphQLException unauthorisedException = new GraphQLException("Unauthorized");
+        unauthorisedException.setStatus("401");
+        List<String> authorisationHeaders = new ArrayList<>();
+        GraphQLTemplate graphQLTemplate = mock(GraphQLTemplate.class);
+        when(graphQLTemplate.mutate(any(), eq(CreateCheckRun.class))).thenAnswer(invocation -> {
+            authorisationHeaders.add(invocation.<GraphQLRequestEntity>getArgument(0).getHeaders().get("Authorization"));
+            if (authorisationHeaders.size() == 1) {
+                throw unauthorisedException;
+            }
+            return successfulResponseEntity;
+        });
+        when(graphqlProvider.createGraphQLTemplate()).thenReturn(graphQLTemplate);
+
+        GraphqlGithubClient.TokenRefresher tokenRefresher = mock(GraphqlGithubClient.TokenRefresher.class);
+        when(tokenRefresher.refreshToken("revoked token")).thenReturn("replacement token");
+
+        GraphqlGithubClient testCase = new GraphqlGithubClient(graphqlProvider, "https://api.url", repositoryAuthenticationToken, 1, tokenRefresher);
+        CheckRunDetails checkRunDetails = CheckRunDetails.builder().withAnnotations(List.of()).withStartTime(ZonedDateTime.now()).withEndTime(ZonedDateTime.now()).build();
+
+        assertThat(testCase.createCheckRun(checkRunDetails, false)).isEqualTo("ABC");
+        assertThat(authorisationHeaders).containsExactly("Bearer revoked token", "Bearer replacement token");
+        verify(tokenRefresher).refreshToken("revoked token");
+    }
+
+    @Test
+    void shouldNotRefreshTokenMoreThanOnceForRequest() throws IOException {
+        RepositoryAuthenticationToken repositoryAuthenticationToken = mock(RepositoryAuthenticationToken.class);
+        when(repositoryAuthenticationToken.getAuthenticationToken()).thenReturn("revoked token");
+        when(repositoryAuthenticationToken.getRepositoryId()).thenReturn("repository ID");
+
+        when(graphqlProvider.createRequestBuilder()).thenReturn(GraphQLRequestEntity.Builder());
+
+        GraphQLException unauthorisedException = new GraphQLException("Unauthorized");
+        unauthorisedException.setStatus("401");
+        GraphQLTemplate graphQLTemplate = mock(GraphQLTemplate.class);
+        when(graphQLTemplate.mutate(any(), eq(CreateCheckRun.class))).thenThrow(unauthorisedException);
+        when(graphqlProvider.createGraphQLTemplate()).thenReturn(graphQLTemplate);
+
+        GraphqlGithubClient.TokenRefresher tokenRefresher = mock(GraphqlGithubClient.TokenRefresher.class);
+        when(tokenRefresher.refreshToken(any())).thenReturn("replacement token");
+
+        GraphqlGithubClient testCase = new GraphqlGithubClient(graphqlProvider, "https://api.url", repositoryAuthenticationToken, 1, tokenRefresher);
+        CheckRunDetails checkRunDetails = CheckRunDetails.builder().withAnnotations(List.of()).withStartTime(ZonedDateTime.now()).withEndTime(ZonedDateTime.now()).build();
+
+        assertThatThrownBy(() -> testCase.createCheckRun(checkRunDetails, false)).isSameAs(unauthorisedException);
+        verify(graphQLTemplate, times(2)).mutate(any(), eq(CreateCheckRun.class));
+        verify(tokenRefresher).refreshToken("revoked token");
+    }
+
     @Test
     void verifyCheckRunSubmitsCorrectAnnotations() throws IOException {
         RepositoryAuthenticationToken repositoryAuthenticationToken = mock(RepositoryAuthenticationToken.class);
@@ -132,58 +224,55 @@ class GraphqlGithubClientTest {
 
         ObjectMapper objectMapper = new ObjectMapper();
         GraphQLResponseEntity<CreateCheckRun> graphQLResponseEntity =
-            objectMapper.readValue("{\"response\": {\"checkRun\": {\"id\": \"ABC\"}}}", objectMapper.getTypeFactory().constructParametricType(GraphQLResponseEntity.class, CreateCheckRun.class));
+            objectMapper.readValue("{\"headers\": {}, \"response\": {\"checkRun\": {\"id\": \"ABC\"}}}", objectMapper.getTypeFactory().constructParametricType(GraphQLResponseEntity.class, CreateCheckRun.class));
 
         ArgumentCaptor<GraphQLRequestEntity> requestEntityArgumentCaptor = ArgumentCaptor.forClass(GraphQLRequestEntity.class);
 
         GraphQLTemplate graphQLTemplate = mock(GraphQLTemplate.class);
         when(graphQLTemplate.mutate(requestEntityArgumentCaptor.capture(), eq(CreateCheckRun.class))).thenReturn(graphQLResponseEntity);
 
-        GraphQLResponseEntity<Viewer> viewerResponseEntity = objectMapper.readValue("{" +
-                "  \"response\": {" +
-                "      \"login\": \"test-sonar[bot]\"" +
-                "  }" +
-                "}",
-            objectMapper.getTypeFactory().constructParametricType(GraphQLResponseEntity.class, Viewer.class));
-        ArgumentCaptor<GraphQLRequestEntity> getViewer = ArgumentCaptor.forClass(GraphQLRequestEntity.class);
-        when(graphQLTemplate.query(getViewer.capture(), eq(Viewer.class))).thenReturn(viewerResponseEntity);
-
-        GraphQLResponseEntity<GetRepository> getPullRequestResponseEntity =
+        GraphQLResponseEntity<SummaryCommentContext> summaryCommentContextResponseEntity =
             objectMapper.readValue("{" +
+                "\"headers\": {}, " +
                 "\"response\": " +
                 "  {" +
-                "    \"pullRequest\": {" +
-                "      \"id\": \"MDExOlB1bGxSZXF1ZXN0MzUzNDc=\"," +
-                "      \"comments\": {" +
-                "        \"nodes\": [" +
-                "          {" +
-                "            \"id\": \"MDEyOklzc3VlQ29tbWVudDE1MDE3\"," +
-                "            \"isMinimized\": false," +
-                "            \"author\": {" +
-                "              \"__typename\": \"Bot\"," +
-                "              \"login\": \"test-sonar\"" +
-                "            }" +
-                "          }"+
-                "        ],"+
-                "        \"pageInfo\": {" +
-                "          \"hasNextPage\": false" +
-                "        } " +
+                "    \"viewer\": {" +
+                "      \"login\": \"test-sonar[bot]\"" +
+                "    }," +
+                "    \"repository\": {" +
+                "      \"pullRequest\": {" +
+                "        \"id\": \"MDExOlB1bGxSZXF1ZXN0MzUzNDc=\"," +
+                "        \"comments\": {" +
+                "          \"nodes\": [" +
+                "            {" +
+                "              \"id\": \"MDEyOklzc3VlQ29tbWVudDE1MDE3\"," +
+                "              \"isMinimized\": false," +
+                "              \"author\": {" +
+                "                \"__typename\": \"Bot\"," +
+                "                \"login\": \"test-sonar\"" +
+                "              }" +
+                "            }"+
+                "          ],"+
+                "          \"pageInfo\": {" +
+                "            \"hasNextPage\": false" +
+                "          } " +
+                "        }"+
                 "      }"+
                 "    }" +
                 "  }" +
-                "}", objectMapper.getTypeFactory().constructParametricType(GraphQLResponseEntity.class, GetRepository.class));
+                "}", objectMapper.getTypeFactory().constructParametricType(GraphQLResponseEntity.class, SummaryCommentContext.class));
 
-        ArgumentCaptor<GraphQLRequestEntity> getPullRequestRequestEntityArgumentCaptor = ArgumentCaptor.forClass(GraphQLRequestEntity.class);
-        when(graphQLTemplate.query(getPullRequestRequestEntityArgumentCaptor.capture(), eq(GetRepository.class))).thenReturn(getPullRequestResponseEntity);
+        ArgumentCaptor<GraphQLRequestEntity> summaryCommentContextRequestEntityArgumentCaptor = ArgumentCaptor.forClass(GraphQLRequestEntity.class);
+        when(graphQLTemplate.query(summaryCommentContextRequestEntityArgumentCaptor.capture(), eq(SummaryCommentContext.class))).thenReturn(summaryCommentContextResponseEntity);
 
-        GraphQLResponseEntity<MinimizeComment> minimizeCommentResponseEntity =
-            objectMapper.readValue("{\"response\":{}}", objectMapper.getTypeFactory().constructParametricType(GraphQLResponseEntity.class, MinimizeComment.class));
+        GraphQLResponseEntity<MinimizeComments> minimizeCommentResponseEntity =
+            objectMapper.readValue("{\"headers\": {}, \"response\":{\"minimize0\":{}}}", objectMapper.getTypeFactory().constructParametricType(GraphQLResponseEntity.class, MinimizeComments.class));
 
         ArgumentCaptor<GraphQLRequestEntity> minimizeCommentRequestEntityArgumentCaptor = ArgumentCaptor.forClass(GraphQLRequestEntity.class);
-        when(graphQLTemplate.mutate(minimizeCommentRequestEntityArgumentCaptor.capture(), eq(MinimizeComment.class))).thenReturn(minimizeCommentResponseEntity);
+        when(graphQLTemplate.mutate(minimizeCommentRequestEntityArgumentCaptor.capture(), eq(MinimizeComments.class))).thenReturn(minimizeCommentResponseEntity);
 
         GraphQLResponseEntity<AddComment> addCommentResponseEntity =
-            objectMapper.readValue("{\"response\":{}}", objectMapper.getTypeFactory().constructParametricType(GraphQLResponseEntity.class, AddComment.class));
+            objectMapper.readValue("{\"headers\": {}, \"response\":{}}", objectMapper.getTypeFactory().constructParametricType(GraphQLResponseEntity.class, AddComment.class));
 
         ArgumentCaptor<GraphQLRequestEntity> addCommentRequestEntityArgumentCaptor = ArgumentCaptor.forClass(GraphQLRequestEntity.class);
         when(graphQLTemplate.mutate(addCommentRequestEntityArgumentCaptor.capture(), eq(AddComment.class))).thenReturn(addCommentResponseEntity);
@@ -214,7 +303,7 @@ class GraphqlGithubClientTest {
                 new GraphqlGithubClient(graphqlProvider, "http://api.target.domain/api", repositoryAuthenticationToken);
         testCase.createCheckRun(checkRunDetails, true);
 
-        assertEquals(5, requestBuilders.size());
+        assertEquals(4, requestBuilders.size());
 
         Map<String, String> headers = new HashMap<>();
         headers.put("Authorization", "Bearer dummyAuthToken");
@@ -257,7 +346,7 @@ class GraphqlGithubClientTest {
             position++;
         }
 
-        assertEquals(4 + position, inputObjectBuilders.size());
+        assertEquals(3 + position, inputObjectBuilders.size());
 
         assertThat(inputObjectBuilders.get(position).build())
                 .usingRecursiveComparison()
@@ -282,36 +371,29 @@ class GraphqlGithubClientTest {
                                 .put("output", inputObjects.get(position))
                                 .build());
 
-        for (int i = 0; i < 5; i++) {
+        for (int i = 0; i < 4; i++) {
             verify(requestBuilders.get(i)).url("http://api.target.domain/api/graphql");
             verify(requestBuilders.get(i)).headers(headers);
             verify(requestBuilders.get(i)).build();
         }
 
-        // Verify GetViewer
-        assertEquals(requestEntities.get(1), getViewer.getValue());
+        // Verify viewer, Pull Request and comments are retrieved in one query
+        assertEquals(requestEntities.get(1), summaryCommentContextRequestEntityArgumentCaptor.getValue());
         assertEquals(
-            "query { viewer { login } } ",
-            getViewer.getValue().getRequest()
-        );
-
-        // Verify GetPullRequest
-        assertEquals(requestEntities.get(2), getPullRequestRequestEntityArgumentCaptor.getValue());
-        assertEquals(
-            "query { repository (owner:\"owner\",name:\"repository\") { url pullRequest : pullRequest (number:999) { comments : comments (first:100) { nodes" +
-                " { author { type : __typename login } id minimized : isMinimized } pageInfo { hasNextPage endCursor } } id } } } ",
-            getPullRequestRequestEntityArgumentCaptor.getValue().getRequest()
+            "query { viewer { login } repository (owner:\"owner\",name:\"repository\") { pullRequest (number:999) { id comments (first:100) { nodes" +
+                " { id isMinimized author { __typename login } } pageInfo { hasNextPage endCursor } } } } }",
+            summaryCommentContextRequestEntityArgumentCaptor.getValue().getRequest()
         );
 
         // Validate Minimize Comment
-        assertEquals(requestEntities.get(3), minimizeCommentRequestEntityArgumentCaptor.getValue());
+        assertEquals(requestEntities.get(2), minimizeCommentRequestEntityArgumentCaptor.getValue());
         assertEquals(
-            "mutation { minimizeComment (input:{classifier:OUTDATED,subjectId:\"MDEyOklzc3VlQ29tbWVudDE1MDE3\"}) { clientMutationId } } ",
+            "mutation { minimize0: minimizeComment (input:{classifier:OUTDATED,subjectId:\"MDEyOklzc3VlQ29tbWVudDE1MDE3\"}) { clientMutationId } }",
             minimizeCommentRequestEntityArgumentCaptor.getValue().getRequest()
         );
 
         // Validate AddComment
-        assertEquals(requestEntities.get(4), addCommentRequestEntityArgumentCaptor.getValue());
+        assertEquals(requestEntities.get(3), addCommentRequestEntityArgumentCaptor.getValue());
         assertEquals(
           "mutation { addComment (input:{body:\"Summary message\",subjectId:\"MDExOlB1bGxSZXF1ZXN0MzUzNDc=\"}) { clientMutationId } } ",
             addCommentRequestEntityArgumentCaptor.getValue().getRequest()
@@ -365,10 +447,10 @@ class GraphqlGithubClientTest {
 
         GraphQLTemplate graphQLTemplate = mock(GraphQLTemplate.class);
         GraphQLResponseEntity<CreateCheckRun> graphQLResponseEntity =
-                new ObjectMapper().readValue("{\"response\": {\"checkRun\": {\"id\": \"ABC\"}}}", objectMapper.getTypeFactory().constructParametricType(GraphQLResponseEntity.class, CreateCheckRun.class));
+                new ObjectMapper().readValue("{\"headers\": {}, \"response\": {\"checkRun\": {\"id\": \"ABC\"}}}", objectMapper.getTypeFactory().constructParametricType(GraphQLResponseEntity.class, CreateCheckRun.class));
         when(graphQLTemplate.mutate(any(), eq(CreateCheckRun.class))).thenReturn(graphQLResponseEntity);
         GraphQLResponseEntity<UpdateCheckRun> graphQLResponseEntity2 =
-                new ObjectMapper().readValue("{\"response\": {\"checkRun\": {\"id\": \"ABC\"}}}", objectMapper.getTypeFactory().constructParametricType(GraphQLResponseEntity.class, UpdateCheckRun.class));
+                new ObjectMapper().readValue("{\"headers\": {}, \"response\": {\"checkRun\": {\"id\": \"ABC\"}}}", objectMapper.getTypeFactory().constructParametricType(GraphQLResponseEntity.class, UpdateCheckRun.class));
         when(graphQLTemplate.mutate(any(), eq(UpdateCheckRun.class))).thenReturn(graphQLResponseEntity2);
         when(graphqlProvider.createGraphQLTemplate()).thenReturn(graphQLTemplate);
 
@@ -396,10 +478,148 @@ class GraphqlGithubClientTest {
         assertThat(classArgumentCaptor.getAllValues()).containsExactly(CreateCheckRun.class, UpdateCheckRun.class, UpdateCheckRun.class);
 
         ArgumentCaptor<List<InputObject>> annotationsArgumentCaptor = ArgumentCaptor.forClass(List.class);
-        verify(builders.get(100), times(3)).put(eq("annotations"), annotationsArgumentCaptor.capture());
+        // each batch of annotations takes two input objects per annotation plus output and repository objects,
+        // with the output object for each update request being created before its annotations
+        assertThat(builders).hasSize(246);
+        verify(builders.get(100)).put(eq("annotations"), annotationsArgumentCaptor.capture());
+        verify(builders.get(102)).put(eq("annotations"), annotationsArgumentCaptor.capture());
+        verify(builders.get(204)).put(eq("annotations"), annotationsArgumentCaptor.capture());
         assertThat(annotationsArgumentCaptor.getAllValues().get(0)).hasSize(50);
         assertThat(annotationsArgumentCaptor.getAllValues().get(1)).hasSize(50);
         assertThat(annotationsArgumentCaptor.getAllValues().get(2)).hasSize(20);
     }
 
+    @Test
+    void shouldUploadEachRemainingAnnotationBatchOnceWithConcurrentRequests() throws IOException {
+        when(graphqlProvider.createInputObject()).thenAnswer(i -> new InputObject.Builder<>());
+        when(graphqlProvider.createRequestBuilder()).thenAnswer(i -> GraphQLRequestEntity.Builder());
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        GraphQLTemplate graphQLTemplate = mock(GraphQLTemplate.class);
+        when(graphqlProvider.createGraphQLTemplate()).thenReturn(graphQLTemplate);
+        ArgumentCaptor<GraphQLRequestEntity> createCheckRunArgumentCaptor = ArgumentCaptor.forClass(GraphQLRequestEntity.class);
+        when(graphQLTemplate.mutate(createCheckRunArgumentCaptor.capture(), eq(CreateCheckRun.class))).thenReturn(objectMapper.readValue("{\"headers\": {}, \"response\": {\"checkRun\": {\"id\": \"ABC\"}}}",
+                objectMapper.getTypeFactory().constructParametricType(GraphQLResponseEntity.class, CreateCheckRun.class)));
+        ArgumentCaptor<GraphQLRequestEntity> updateCheckRunArgumentCaptor = ArgumentCaptor.forClass(GraphQLRequestEntity.class);
+        when(graphQLTemplate.mutate(updateCheckRunArgumentCaptor.capture(), eq(UpdateCheckRun.class))).thenReturn(objectMapper.readValue("{\"headers\": {}, \"response\": {\"checkRun\": {\"id\": \"ABC\"}}}",
+                objectMapper.getTypeFactory().constructParametricType(GraphQLResponseEntity.class, UpdateCheckRun.class)));
+
+        GraphqlGithubClient testCase = new GraphqlGithubClient(graphqlProvider, "https://api.url/path", mock(RepositoryAuthenticationToken.class), 3);
+        testCase.createCheckRun(createCheckRunDetails(260), false);
+
+        assertThat(updateCheckRunArgumentCaptor.getAllValues()).hasSize(5);
+        List<String> requests = Stream.concat(createCheckRunArgumentCaptor.getAllValues().stream(), updateCheckRunArgumentCaptor.getAllValues().stream())
+                .map(GraphQLRequestEntity::getRequest)
+                .collect(Collectors.toList());
+        for (int i = 0; i < 260; i++) {
+            String message = "\"message " + i + "\"";
+            assertThat(requests).filteredOn(request -> request.contains(message)).hasSize(1);
+        }
+        assertThat(createCheckRunArgumentCaptor.getValue().getRequest()).contains("\"message 49\"").doesNotContain("\"message 50\"");
+    }
+
+    @Test
+    void shouldUploadRemainingAnnotationBatchesAndRethrowFailure() throws IOException {
+        when(graphqlProvider.createInputObject()).thenAnswer(i -> new InputObject.Builder<>());
+        when(graphqlProvider.createRequestBuilder()).thenAnswer(i -> GraphQLRequestEntity.Builder());
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        GraphQLTemplate graphQLTemplate = mock(GraphQLTemplate.class);
+        when(graphqlProvider.createGraphQLTemplate()).thenReturn(graphQLTemplate);
+        when(graphQLTemplate.mutate(any(), eq(CreateCheckRun.class))).thenReturn(objectMapper.readValue("{\"headers\": {}, \"response\": {\"checkRun\": {\"id\": \"ABC\"}}}",
+                objectMapper.getTypeFactory().constructParametricType(GraphQLResponseEntity.class, CreateCheckRun.class)));
+        when(graphQLTemplate.mutate(any(), eq(UpdateCheckRun.class)))
+                .thenThrow(new IllegalStateException("Dummy"))
+                .thenReturn(objectMapper.readValue("{\"headers\": {}, \"response\": {\"checkRun\": {\"id\": \"ABC\"}}}",
+                        objectMapper.getTypeFactory().constructParametricType(GraphQLResponseEntity.class, UpdateCheckRun.class)));
+
+        GraphqlGithubClient testCase = new GraphqlGithubClient(graphqlProvider, "https://api.url/path", mock(RepositoryAuthenticationToken.class), 2);
+        CheckRunDetails checkRunDetails = createCheckRunDetails(200);
+
+        assertThatThrownBy(() -> testCase.createCheckRun(checkRunDetails, false))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("Dummy");
+        verify(graphQLTemplate, times(3)).mutate(any(), eq(UpdateCheckRun.class));
+    }
+
+    private CheckRunDetails createCheckRunDetails(int annotationCount) {
+        return CheckRunDetails.builder()
+                .withAnnotations(IntStream.range(0, annotationCount).mapToObj(i -> Annotation.builder()
+                        .withLine(i)
+                        .withMessage("message " + i)
+                        .withSeverity(CheckAnnotationLevel.NOTICE)
+                        .withScmPath("path " + i)
+                        .build())
+                        .collect(Collectors.toList()))
+                .withCheckConclusionState(CheckConclusionState.SUCCESS)
+                .withCommitId("commit-id")
+                .withSummary("Summary message")
+                .withStartTime(clock.instant().atZone(ZoneId.of("UTC")))
+                .withEndTime(clock.instant().atZone(ZoneId.of("UTC")))
+                .build();
+    }
+
+    @Test
+    void shouldMinimizePreviousSummaryCommentsInBatches() throws IOException {
+        RepositoryAuthenticationToken repositoryAuthenticationToken = mock(RepositoryAuthenticationToken.class);
+        when(repositoryAuthenticationToken.getAuthenticationToken()).thenReturn("dummyAuthToken");
+        when(repositoryAuthenticationToken.getOwnerName()).thenReturn("owner");
+        when(repositoryAuthenticationToken.getRepositoryName()).thenReturn("repository");
+
+        when(graphqlProvider.createInputObject()).thenAnswer(i -> new InputObject.Builder<>());
+        when(graphqlProvider.createRequestBuilder()).thenAnswer(i -> GraphQLRequestEntity.Builder());
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        GraphQLTemplate graphQLTemplate = mock(GraphQLTemplate.class);
+        when(graphqlProvider.createGraphQLTemplate()).thenReturn(graphQLTemplate);
+        when(graphQLTemplate.mutate(any(), eq(CreateCheckRun.class))).thenReturn(objectMapper.readValue("{\"headers\": {}, \"response\": {\"checkRun\": {\"id\": \"ABC\"}}}",
+                objectMapper.getTypeFactory().constructParametricType(GraphQLResponseEntity.class, CreateCheckRun.class)));
+
+        String commentNodes = Stream.concat(
+                        Stream.concat(IntStream.range(0, 30).mapToObj(i -> "{\"id\": \"comment" + i + "\", \"isMinimized\": false, \"author\": {\"__typename\": \"Bot\", \"login\": \"test-sonar\"}}"),
+                                Stream.of("{\"id\": \"minimized\", \"isMinimized\": true, \"author\": {\"__typename\": \"Bot\", \"login\": \"test-sonar\"}}")),
+                        Stream.of("{\"id\": \"user\", \"isMinimized\": false, \"author\": {\"__typename\": \"User\", \"login\": \"test-sonar\"}}"))
+                .collect(Collectors.joining(","));
+        when(graphQLTemplate.query(any(), eq(SummaryCommentContext.class))).thenReturn(objectMapper.readValue("{\"headers\": {}, \"response\": {\"viewer\": {\"login\": \"test-sonar[bot]\"}, " +
+                        "\"repository\": {\"pullRequest\": {\"id\": \"pr\", \"comments\": {\"nodes\": [" + commentNodes + "], \"pageInfo\": {\"hasNextPage\": false}}}}}}",
+                objectMapper.getTypeFactory().constructParametricType(GraphQLResponseEntity.class, SummaryCommentContext.class)));
+
+        String firstBatchResults = IntStream.range(0, 25)
+                .mapToObj(i -> "\"minimize" + i + "\": " + (i == 3 ? "null" : "{}"))
+                .collect(Collectors.joining(","));
+        ArgumentCaptor<GraphQLRequestEntity> minimizeCommentsArgumentCaptor = ArgumentCaptor.forClass(GraphQLRequestEntity.class);
+        when(graphQLTemplate.mutate(minimizeCommentsArgumentCaptor.capture(), eq(MinimizeComments.class)))
+                .thenReturn(objectMapper.readValue("{\"headers\": {}, \"response\": {" + firstBatchResults + "}}",
+                        objectMapper.getTypeFactory().constructParametricType(GraphQLResponseEntity.class, MinimizeComments.class)))
+                .thenThrow(new IllegalStateException("Dummy"));
+        when(graphQLTemplate.mutate(any(), eq(AddComment.class))).thenReturn(objectMapper.readValue("{\"headers\": {}, \"response\": {}}",
+                objectMapper.getTypeFactory().constructParametricType(GraphQLResponseEntity.class, AddComment.class)));
+
+        CheckRunDetails checkRunDetails = CheckRunDetails.builder()
+                .withAnnotations(List.of())
+                .withCheckConclusionState(CheckConclusionState.SUCCESS)
+                .withCommitId("commit-id")
+                .withSummary("Summary message")
+                .withStartTime(clock.instant().atZone(ZoneId.of("UTC")))
+                .withEndTime(clock.instant().atZone(ZoneId.of("UTC")))
+                .withPullRequestId(999)
+                .build();
+
+        GraphqlGithubClient testCase = new GraphqlGithubClient(graphqlProvider, "http://api.target.domain/api", repositoryAuthenticationToken);
+        testCase.createCheckRun(checkRunDetails, true);
+
+        assertThat(minimizeCommentsArgumentCaptor.getAllValues()).hasSize(2);
+        assertThat(minimizeCommentsArgumentCaptor.getAllValues().get(0).getRequest())
+                .startsWith("mutation { minimize0: minimizeComment (input:{classifier:OUTDATED,subjectId:\"comment0\"}) { clientMutationId }")
+                .contains(" minimize24: minimizeComment (input:{classifier:OUTDATED,subjectId:\"comment24\"}) { clientMutationId } }")
+                .doesNotContain("minimize25");
+        assertThat(minimizeCommentsArgumentCaptor.getAllValues().get(1).getRequest())
+                .startsWith("mutation { minimize0: minimizeComment (input:{classifier:OUTDATED,subjectId:\"comment25\"}) { clientMutationId }")
+                .contains("minimize4: minimizeComment (input:{classifier:OUTDATED,subjectId:\"comment29\"})")
+                .doesNotContain("minimize5")
+                .doesNotContain("\"minimized\"")
+                .doesNotContain("\"user\"");
+        verify(graphQLTemplate).mutate(any(), eq(AddComment.class));
+    }
+
 }
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.almclient.gitlab;
+
+import com.github.mc1arke.sonarqube.plugin.CommunityBranchPlugin;
+import com.github.mc1arke.sonarqube.plugin.almclient.HttpClientProvider;
+import com.github.mc1arke.sonarqube.plugin.almclient.LinkHeaderReader;
+import org.apache.http.StatusLine;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.mockito.ArgumentCaptor;
+import org.sonar.api.config.internal.Encryption;
+import org.sonar.api.config.internal.Settings;
+import org.sonar.db.alm.setting.AlmSettingDto;
+import org.sonar.db.alm.setting.ProjectAlmSettingDto;
+
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class DefaultGitlabClientFactoryTest {
+
+    private final Settings settings = mock(Settings.class);
+    private final HttpClientProvider httpClientProvider = mock(HttpClientProvider.class);
+    private final CloseableHttpClient closeableHttpClient = mock(CloseableHttpClient.class);
+    private final AlmSettingDto almSettingDto = mock(AlmSettingDto.class);
+
+    @ParameterizedTest(name = "configured page size: {0} => per_page={1}")
+    @CsvSource({"20, 20", "100, 100", "0, 100", "-5, 100", "101, 100", "500, 100"})
+    void shouldRequestConfiguredPageSizeClampedToGitlabMaximum(int configuredPageSize, int expectedPageSize) throws IOException {
+        when(settings.getEncryption()).thenReturn(mock(Encryption.class));
+        when(settings.getInt(CommunityBranchPlugin.GITLAB_PAGE_SIZE)).thenReturn(configuredPageSize);
+        when(almSettingDto.getUrl()).thenReturn("http://api.url");
+        when(almSettingDto.getDecryptedPersonalAccessToken(any())).thenReturn("token");
+        when(httpClientProvider.getHttpClient(almSettingDto)).thenReturn(closeableHttpClient);
+
+        CloseableHttpResponse closeableHttpResponse = mock(CloseableHttpResponse.class);
+        StatusLine statusLine = mock(StatusLine.class);
+        when(statusLine.getStatusCode()).thenReturn(200);
+        when(closeableHttpResponse.getStatusLine()).thenReturn(statusLine);
+        when(closeableHttpResponse.getEntity()).thenReturn(new StringEntity("[]", ContentType.APPLICATION_JSON));
+        when(closeableHttpClient.execute(any())).thenReturn(closeableHttpResponse);
+
+        DefaultGitlabClientFactory underTest = new DefaultGitlabClientFactory(mock(LinkHeaderReader.class), settings, httpClientProvider);
+        GitlabClient gitlabClient = underTest.createClient(mock(ProjectAlmSettingDto.class), almSettingDto);
+
+        assertThat(gitlabClient.getMergeRequestDiscussions(123, 321)).isEmpty();
+
+        ArgumentCaptor<HttpUriRequest> requestArgumentCaptor = ArgumentCaptor.forClass(HttpUriRequest.class);
+        verify(closeableHttpClient).execute(requestArgumentCaptor.capture());
+        assertThat(requestArgumentCaptor.getValue().getRequestLine().getUri())
+                .isEqualTo("http://api.url/projects/123/merge_requests/321/discussions?per_page=" + expectedPageSize);
+    }
+
+}
@@ -2,6 +2,7 @@ package com.github.mc1arke.sonarqube.plugin.almclient.gitlab;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.mc1arke.sonarqube.plugin.almclient.LinkHeaderReader;
+import com.github.mc1arke.sonarqube.plugin.almclient.gitlab.model.Discussion;
 import com.github.mc1arke.sonarqube.plugin.almclient.gitlab.model.MergeRequestNote;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpEntityEnclosingRequest;
@@ -9,7 +10,10 @@ import org.apache.http.StatusLine;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.message.BasicHeader;
 import org.apache.http.message.BasicNameValuePair;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
@@ -17,11 +21,13 @@ import org.mockito.ArgumentCaptor;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -33,7 +39,7 @@ class GitlabRestClientTest {
 
     @Test
     void checkErrorThrownOnNonSuccessResponseStatus() throws IOException {
-        GitlabRestClient underTest = new GitlabRestClient("http://url.test/api", "token", linkHeaderReader, objectMapper, () -> closeableHttpClient);
+        GitlabRestClient underTest = new GitlabRestClient("http://url.test/api", "token", linkHeaderReader, objectMapper, closeableHttpClient, 100);
 
         CloseableHttpResponse closeableHttpResponse = mock(CloseableHttpResponse.class);
         StatusLine statusLine = mock(StatusLine.class);
@@ -71,7 +77,7 @@ class GitlabRestClientTest {
 
         MergeRequestNote mergeRequestNote = new MergeRequestNote("Merge request note");
 
-        GitlabRestClient underTest = new GitlabRestClient("http://api.url", "token", linkHeaderReader, objectMapper, () -> closeableHttpClient);
+        GitlabRestClient underTest = new GitlabRestClient("http://api.url", "token", linkHeaderReader, objectMapper, closeableHttpClient, 100);
         underTest.addMergeRequestDiscussion(123, 321, mergeRequestNote);
 
         ArgumentCaptor<HttpUriRequest> requestArgumentCaptor = ArgumentCaptor.forClass(HttpUriRequest.class);
@@ -84,4 +90,61 @@ class GitlabRestClientTest {
         assertThat(request.getEntity().getContent()).hasContent("body=Merge+request+note");
     }
 
-}
\ No newline at end of file
+    @Test
+    void shouldRetrieveAllPagesOfDiscussionsIteratively() throws IOException {
+        CloseableHttpResponse firstPageResponse = mockPageResponse("[{\"id\": \"discussion1\"}, {\"id\": \"discussion2\"}]", "<http://api.url/page2>; rel=\"next\"");
+        CloseableHttpResponse secondPageResponse = mockPageResponse("[{\"id\": \"discussion3\"}]", null);
+        when(closeableHttpClient.execute(any())).thenReturn(firstPageResponse, secondPageResponse);
+        when(linkHeaderReader.findNextLink(any())).thenReturn(Optional.empty());
+        when(linkHeaderReader.findNextLink("<http://api.url/page2>; rel=\"next\"")).thenReturn(Optional.of("http://api.url/page2"));
+
+        GitlabRestClient underTest = new GitlabRestClient("http://api.url", "token", linkHeaderReader, new ObjectMapper(), closeableHttpClient, 100);
+
+        assertThat(underTest.getMergeRequestDiscussions(123, 321)).extracting(Discussion::getId)
+                .containsExactly("discussion1", "discussion2", "discussion3");
+
+        ArgumentCaptor<HttpUriRequest> requestArgumentCaptor = ArgumentCaptor.forClass(HttpUriRequest.class);
+        verify(closeableHttpClient, times(2)).execute(requestArgumentCaptor.capture());
+        assertThat(requestArgumentCaptor.getAllValues()).extracting(request -> request.getRequestLine().getUri())
+                .containsExactly("http://api.url/projects/123/merge_requests/321/discussions?per_page=100", "http://api.url/page2");
+        verify(firstPageResponse).close();
+        verify(secondPageResponse).close();
+    }
+
+    @Test
+    void shouldPropagateIOExceptionFromSubsequentPage() throws IOException {
+        CloseableHttpResponse firstPageResponse = mockPageResponse("[{\"id\": \"ABC\"}]", "next");
+        IOException expectedException = new IOException("dummy");
+        when(closeableHttpClient.execute(any())).thenReturn(firstPageResponse).thenThrow(expectedException);
+        when(linkHeaderReader.findNextLink("next")).thenReturn(Optional.of("http://api.url/page2"));
+
+        GitlabRestClient underTest = new GitlabRestClient("http://api.url", "token", linkHeaderReader, new ObjectMapper(), closeableHttpClient, 100);
+
+        assertThatThrownBy(() -> underTest.getMergeRequestCommits(123, 321)).isSameAs(expectedException);
+    }
+
+    @Test
+    void shouldRejectNonArrayPageContent() throws IOException {
+        CloseableHttpResponse response = mockPageResponse("{\"message\": \"not a list\"}", null);
+        when(closeableHttpClient.execute(any())).thenReturn(response);
+
+        GitlabRestClient underTest = new GitlabRestClient("http://api.url", "token", linkHeaderReader, new ObjectMapper(), closeableHttpClient, 100);
+
+        assertThatThrownBy(() -> underTest.getMergeRequestCommits(123, 321))
+                .isExactlyInstanceOf(IllegalStateException.class)
+                .hasMessage("Expected an array of entities in the response from http://api.url/projects/123/merge_requests/321/commits?per_page=100");
+    }
+
+    private static CloseableHttpResponse mockPageResponse(String content, String linkHeader) {
+        CloseableHttpResponse closeableHttpResponse = mock(CloseableHttpResponse.class);
+        StatusLine statusLine = mock(StatusLine.class);
+        when(statusLine.getStatusCode()).thenReturn(200);
+        when(closeableHttpResponse.getStatusLine()).thenReturn(statusLine);
+        when(closeableHttpResponse.getEntity()).thenReturn(new StringEntity(content, ContentType.APPLICATION_JSON));
+        if (null != linkHeader) {
+            when(closeableHttpResponse.getFirstHeader("Link")).thenReturn(new BasicHeader("Link", linkHeader));
+        }
+        return closeableHttpResponse;
+    }
+
+}
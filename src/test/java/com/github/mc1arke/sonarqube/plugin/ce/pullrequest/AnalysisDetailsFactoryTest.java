@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.ce.pullrequest;
+
+import org.junit.jupiter.api.Test;
+import org.sonar.api.ce.posttask.PostProjectAnalysisTask;
+import org.sonar.api.ce.posttask.QualityGate;
+import org.sonar.api.issue.Issue;
+import org.sonar.api.measures.CoreMetrics;
+import org.sonar.ce.task.projectanalysis.component.Component;
+import org.sonar.ce.task.projectanalysis.component.ReportAttributes;
+import org.sonar.ce.task.projectanalysis.component.TreeRootHolder;
+import org.sonar.ce.task.projectanalysis.measure.Measure;
+import org.sonar.ce.task.projectanalysis.measure.MeasureRepository;
+import org.sonar.ce.task.projectanalysis.metric.Metric;
+import org.sonar.ce.task.projectanalysis.metric.MetricRepository;
+import org.sonar.ce.task.projectanalysis.scm.Changeset;
+import org.sonar.ce.task.projectanalysis.scm.ScmInfo;
+import org.sonar.ce.task.projectanalysis.scm.ScmInfoRepository;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class AnalysisDetailsFactoryTest {
+
+    private final PostAnalysisIssueVisitor postAnalysisIssueVisitor = mock(PostAnalysisIssueVisitor.class);
+    private final MeasureRepository measureRepository = mock(MeasureRepository.class);
+    private final MetricRepository metricRepository = mock(MetricRepository.class);
+    private final TreeRootHolder treeRootHolder = mock(TreeRootHolder.class);
+    private final ScmInfoRepository scmInfoRepository = mock(ScmInfoRepository.class);
+    private final AnalysisDetailsFactory underTest = new AnalysisDetailsFactory(postAnalysisIssueVisitor, measureRepository,
+            metricRepository, treeRootHolder, scmInfoRepository);
+
+    @Test
+    void shouldCaptureSummaryMeasuresFromProjectRoot() {
+        when(postAnalysisIssueVisitor.getCollectedIssues()).thenReturn(CollectedIssues.of(List.of()));
+        Component root = mock(Component.class);
+        when(treeRootHolder.getRoot()).thenReturn(root);
+        Metric coverageMetric = mock(Metric.class);
+        when(metricRepository.getByKey(CoreMetrics.COVERAGE_KEY)).thenReturn(coverageMetric);
+        Metric duplicationsMetric = mock(Metric.class);
+        when(metricRepository.getByKey(CoreMetrics.DUPLICATED_LINES_DENSITY_KEY)).thenReturn(duplicationsMetric);
+        when(measureRepository.getRawMeasure(root, coverageMetric)).thenReturn(Optional.of(Measure.newMeasureBuilder().create(72.5, 1, "data")));
+        when(measureRepository.getRawMeasure(root, duplicationsMetric)).thenReturn(Optional.empty());
+
+        AnalysisDetails analysisDetails = underTest.createAnalysisDetails("pull-request", "commit", mock(QualityGate.class),
+                mock(PostProjectAnalysisTask.ProjectAnalysis.class));
+
+        assertThat(analysisDetails.findMeasure(CoreMetrics.COVERAGE_KEY)).contains(72.5);
+        assertThat(analysisDetails.findMeasure(CoreMetrics.DUPLICATED_LINES_DENSITY_KEY)).isEmpty();
+        assertThat(analysisDetails.getPullRequestId()).isEqualTo("pull-request");
+        assertThat(analysisDetails.getCommitSha()).isEqualTo("commit");
+    }
+
+    @Test
+    void shouldCaptureRevisionOfLineEachIssueIsRaisedAgainst() {
+        Component component = createScmComponent();
+        PostAnalysisIssueVisitor.ComponentIssue changedLineIssue = createIssue(component, "issue1", 5);
+        PostAnalysisIssueVisitor.ComponentIssue unchangedLineIssue = createIssue(component, "issue2", 6);
+        PostAnalysisIssueVisitor.ComponentIssue fileIssue = createIssue(component, "issue3", null);
+        CollectedIssues collectedIssues = CollectedIssues.of(List.of(changedLineIssue, unchangedLineIssue, fileIssue));
+        when(postAnalysisIssueVisitor.getCollectedIssues()).thenReturn(collectedIssues);
+
+        ScmInfo scmInfo = mock(ScmInfo.class);
+        when(scmInfo.hasChangesetForLine(5)).thenReturn(true);
+        when(scmInfo.getChangesetForLine(5)).thenReturn(Changeset.newChangesetBuilder().setDate(0L).setRevision("abc").build());
+        when(scmInfoRepository.getScmInfo(component)).thenReturn(Optional.of(scmInfo));
+
+        AnalysisDetails analysisDetails = underTest.createAnalysisDetails("pull-request", "commit", mock(QualityGate.class),
+                mock(PostProjectAnalysisTask.ProjectAnalysis.class));
+
+        assertThat(analysisDetails.findIssueRevision(changedLineIssue)).contains("abc");
+        assertThat(analysisDetails.findIssueRevision(unchangedLineIssue)).isEmpty();
+        assertThat(analysisDetails.findIssueRevision(fileIssue)).isEmpty();
+    }
+
+    private static Component createScmComponent() {
+        Component component = mock(Component.class);
+        when(component.getType()).thenReturn(Component.Type.FILE);
+        ReportAttributes reportAttributes = mock(ReportAttributes.class);
+        when(reportAttributes.getScmPath()).thenReturn(Optional.of("path"));
+        when(component.getReportAttributes()).thenReturn(reportAttributes);
+        return component;
+    }
+
+    private static PostAnalysisIssueVisitor.ComponentIssue createIssue(Component component, String key, Integer line) {
+        PostAnalysisIssueVisitor.LightIssue lightIssue = mock(PostAnalysisIssueVisitor.LightIssue.class);
+        when(lightIssue.status()).thenReturn(Issue.STATUS_OPEN);
+        when(lightIssue.key()).thenReturn(key);
+        when(lightIssue.getLine()).thenReturn(line);
+        return new PostAnalysisIssueVisitor.ComponentIssue(component, lightIssue);
+    }
+}
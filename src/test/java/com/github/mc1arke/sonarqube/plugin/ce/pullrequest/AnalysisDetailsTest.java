@@ -54,7 +54,7 @@ class AnalysisDetailsTest {
         PostProjectAnalysisTask.ProjectAnalysis projectAnalysis = mock(PostProjectAnalysisTask.ProjectAnalysis.class);
 
         AnalysisDetails testCase =
-                new AnalysisDetails("pullRequestKey", "commitHash", new ArrayList<>(), qualityGate, projectAnalysis);
+                new AnalysisDetails("pullRequestKey", "commitHash", CollectedIssues.of(new ArrayList<>()), qualityGate, projectAnalysis, Map.of(), Map.of());
 
         assertEquals(QualityGate.Status.ERROR, testCase.getQualityGateStatus());
     }
@@ -68,7 +68,7 @@ class AnalysisDetailsTest {
         doReturn(new Date()).when(analysis).getDate();
 
         AnalysisDetails testCase =
-                new AnalysisDetails("pullRequestKey", "commitHash", new ArrayList<>(), qualityGate, projectAnalysis);
+                new AnalysisDetails("pullRequestKey", "commitHash", CollectedIssues.of(new ArrayList<>()), qualityGate, projectAnalysis, Map.of(), Map.of());
 
         assertEquals(analysis.getDate(), testCase.getAnalysisDate());
     }
@@ -82,7 +82,7 @@ class AnalysisDetailsTest {
         doReturn("Analysis ID").when(analysis).getAnalysisUuid();
 
         AnalysisDetails testCase =
-                new AnalysisDetails("pullRequestKey", "commitHash", new ArrayList<>(), qualityGate, projectAnalysis);
+                new AnalysisDetails("pullRequestKey", "commitHash", CollectedIssues.of(new ArrayList<>()), qualityGate, projectAnalysis, Map.of(), Map.of());
 
         assertEquals("Analysis ID", testCase.getAnalysisId());
     }
@@ -96,7 +96,7 @@ class AnalysisDetailsTest {
         when(projectAnalysis.getProject()).thenReturn(project);
 
         AnalysisDetails testCase =
-                new AnalysisDetails("pullRequestKey", "commitHash", new ArrayList<>(), qualityGate, projectAnalysis);
+                new AnalysisDetails("pullRequestKey", "commitHash", CollectedIssues.of(new ArrayList<>()), qualityGate, projectAnalysis, Map.of(), Map.of());
 
         assertEquals("Project Key", testCase.getAnalysisProjectKey());
     }
@@ -110,7 +110,7 @@ class AnalysisDetailsTest {
         when(projectAnalysis.getProject()).thenReturn(project);
 
         AnalysisDetails testCase =
-                new AnalysisDetails("pullRequestKey", "commitHash", new ArrayList<>(), qualityGate, projectAnalysis);
+                new AnalysisDetails("pullRequestKey", "commitHash", CollectedIssues.of(new ArrayList<>()), qualityGate, projectAnalysis, Map.of(), Map.of());
 
         assertEquals("Project Name", testCase.getAnalysisProjectName());
     }
@@ -157,8 +157,8 @@ class AnalysisDetailsTest {
         when(postAnalysisIssueVisitor.getIssues()).thenReturn(Arrays.asList(componentIssue1, componentIssue2, componentIssue3, componentIssue4));
         
         AnalysisDetails underTest = new AnalysisDetails("pullRequest", "commmitId",
-                Arrays.asList(componentIssue1, componentIssue2, componentIssue3, componentIssue4),
-                mock(QualityGate.class), mock(PostProjectAnalysisTask.ProjectAnalysis.class));
+                CollectedIssues.of(Arrays.asList(componentIssue1, componentIssue2, componentIssue3, componentIssue4)),
+                mock(QualityGate.class), mock(PostProjectAnalysisTask.ProjectAnalysis.class), Map.of(), Map.of());
         
         assertThat(underTest.getScmReportableIssues()).containsOnly(componentIssue1);
     }
@@ -178,7 +178,7 @@ class AnalysisDetailsTest {
 
         when(qualityGate.getConditions()).thenReturn(List.of(condition1, condition2, condition3, condition4));
 
-        AnalysisDetails underTest = new AnalysisDetails("pullRequest", "commit", List.of(), qualityGate, mock(PostProjectAnalysisTask.ProjectAnalysis.class));
+        AnalysisDetails underTest = new AnalysisDetails("pullRequest", "commit", CollectedIssues.of(List.of()), qualityGate, mock(PostProjectAnalysisTask.ProjectAnalysis.class), Map.of(), Map.of());
 
         assertThat(underTest.findFailedQualityGateConditions()).isEqualTo(List.of(condition2, condition4));
     }
@@ -195,7 +195,7 @@ class AnalysisDetailsTest {
 
         when(qualityGate.getConditions()).thenReturn(conditions);
 
-        AnalysisDetails underTest = new AnalysisDetails("pullRequest", "commit", List.of(), qualityGate, mock(PostProjectAnalysisTask.ProjectAnalysis.class));
+        AnalysisDetails underTest = new AnalysisDetails("pullRequest", "commit", CollectedIssues.of(List.of()), qualityGate, mock(PostProjectAnalysisTask.ProjectAnalysis.class), Map.of(), Map.of());
 
         assertThat(underTest.findQualityGateCondition("key2")).contains(conditions.get(2));
     }
@@ -210,7 +210,7 @@ class AnalysisDetailsTest {
         PostProjectAnalysisTask.ProjectAnalysis projectAnalysis = mock(PostProjectAnalysisTask.ProjectAnalysis.class);
         when(projectAnalysis.getScannerContext()).thenReturn(scannerContext);
 
-        AnalysisDetails underTest = new AnalysisDetails("PullRequest", "Commit", List.of(), mock(QualityGate.class), projectAnalysis);
+        AnalysisDetails underTest = new AnalysisDetails("PullRequest", "Commit", CollectedIssues.of(List.of()), mock(QualityGate.class), projectAnalysis, Map.of(), Map.of());
 
         assertThat(underTest.getScannerProperty("hello")).contains("world");
 
@@ -219,7 +219,7 @@ class AnalysisDetailsTest {
 
     @Test
     void shouldReturnPullRequestId() {
-        AnalysisDetails underTest = new AnalysisDetails("pull-request-id", "commit-id", List.of(), mock(QualityGate.class), mock(PostProjectAnalysisTask.ProjectAnalysis.class));
+        AnalysisDetails underTest = new AnalysisDetails("pull-request-id", "commit-id", CollectedIssues.of(List.of()), mock(QualityGate.class), mock(PostProjectAnalysisTask.ProjectAnalysis.class), Map.of(), Map.of());
 
         assertThat(underTest.getPullRequestId()).isEqualTo("pull-request-id");
     }
@@ -227,7 +227,7 @@ class AnalysisDetailsTest {
 
     @Test
     void shouldReturnCommitSha() {
-        AnalysisDetails underTest = new AnalysisDetails("pull-request-id", "commit-id", List.of(), mock(QualityGate.class), mock(PostProjectAnalysisTask.ProjectAnalysis.class));
+        AnalysisDetails underTest = new AnalysisDetails("pull-request-id", "commit-id", CollectedIssues.of(List.of()), mock(QualityGate.class), mock(PostProjectAnalysisTask.ProjectAnalysis.class), Map.of(), Map.of());
 
         assertThat(underTest.getCommitSha()).isEqualTo("commit-id");
     }
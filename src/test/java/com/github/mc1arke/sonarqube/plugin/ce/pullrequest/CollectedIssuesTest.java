@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.ce.pullrequest;
+
+import org.junit.jupiter.api.Test;
+import org.sonar.api.issue.Issue;
+import org.sonar.api.rules.RuleType;
+import org.sonar.ce.task.projectanalysis.component.Component;
+import org.sonar.ce.task.projectanalysis.component.ReportAttributes;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CollectedIssuesTest {
+
+    @Test
+    void shouldCountIssuesByTypeExcludingClosedAndResolvedIssues() {
+        Component component = mockFileComponent("path");
+        CollectedIssues underTest = CollectedIssues.of(List.of(
+                componentIssue(component, RuleType.BUG, Issue.STATUS_OPEN, null),
+                componentIssue(component, RuleType.BUG, Issue.STATUS_CONFIRMED, null),
+                componentIssue(component, RuleType.CODE_SMELL, Issue.STATUS_CLOSED, Issue.RESOLUTION_FIXED),
+                componentIssue(component, RuleType.VULNERABILITY, Issue.STATUS_RESOLVED, Issue.RESOLUTION_FALSE_POSITIVE),
+                componentIssue(component, RuleType.SECURITY_HOTSPOT, Issue.STATUS_REVIEWED, Issue.RESOLUTION_SAFE)));
+
+        assertThat(underTest.getIssueCountsByType()).isEqualTo(Map.of(
+                RuleType.BUG, 2L,
+                RuleType.CODE_SMELL, 0L,
+                RuleType.VULNERABILITY, 0L,
+                RuleType.SECURITY_HOTSPOT, 1L));
+    }
+
+    @Test
+    void shouldOnlyIncludeOpenUnresolvedFileIssuesWithScmPathAsReportable() {
+        Component fileWithPath = mockFileComponent("path");
+        Component fileWithoutPath = mock(Component.class);
+        when(fileWithoutPath.getType()).thenReturn(Component.Type.FILE);
+        ReportAttributes reportAttributes = mock(ReportAttributes.class);
+        when(reportAttributes.getScmPath()).thenReturn(Optional.empty());
+        when(fileWithoutPath.getReportAttributes()).thenReturn(reportAttributes);
+        Component project = mock(Component.class);
+        when(project.getType()).thenReturn(Component.Type.PROJECT);
+
+        PostAnalysisIssueVisitor.ComponentIssue reportable = componentIssue(fileWithPath, RuleType.BUG, Issue.STATUS_OPEN, null);
+        PostAnalysisIssueVisitor.ComponentIssue hotspotToReview = componentIssue(fileWithPath, RuleType.SECURITY_HOTSPOT, Issue.STATUS_TO_REVIEW, null);
+        List<PostAnalysisIssueVisitor.ComponentIssue> issues = List.of(reportable,
+                componentIssue(fileWithPath, RuleType.SECURITY_HOTSPOT, Issue.STATUS_REVIEWED, Issue.RESOLUTION_SAFE),
+                componentIssue(fileWithPath, RuleType.BUG, Issue.STATUS_CLOSED, Issue.RESOLUTION_FIXED),
+                componentIssue(fileWithoutPath, RuleType.BUG, Issue.STATUS_OPEN, null),
+                componentIssue(project, RuleType.BUG, Issue.STATUS_OPEN, null),
+                hotspotToReview);
+
+        CollectedIssues underTest = CollectedIssues.of(issues);
+
+        assertThat(underTest.getScmReportableIssues()).containsExactly(reportable, hotspotToReview);
+        assertThat(underTest.getIssues()).isEqualTo(issues);
+    }
+
+    @Test
+    void shouldOnlyResolveScmDetailsWhenComponentChanges() {
+        Component component = mockFileComponent("path");
+
+        CollectedIssues underTest = CollectedIssues.of(List.of(
+                componentIssue(component, RuleType.BUG, Issue.STATUS_OPEN, null),
+                componentIssue(component, RuleType.BUG, Issue.STATUS_OPEN, null),
+                componentIssue(component, RuleType.CODE_SMELL, Issue.STATUS_OPEN, null)));
+
+        assertThat(underTest.getScmReportableIssues()).hasSize(3);
+        verify(component, times(1)).getReportAttributes();
+    }
+
+    private static Component mockFileComponent(String scmPath) {
+        Component component = mock(Component.class);
+        when(component.getType()).thenReturn(Component.Type.FILE);
+        ReportAttributes reportAttributes = mock(ReportAttributes.class);
+        when(reportAttributes.getScmPath()).thenReturn(Optional.of(scmPath));
+        when(component.getReportAttributes()).thenReturn(reportAttributes);
+        return component;
+    }
+
+    private static PostAnalysisIssueVisitor.ComponentIssue componentIssue(Component component, RuleType type, String status, String resolution) {
+        PostAnalysisIssueVisitor.LightIssue issue = mock(PostAnalysisIssueVisitor.LightIssue.class);
+        when(issue.type()).thenReturn(type);
+        when(issue.status()).thenReturn(status);
+        when(issue.resolution()).thenReturn(resolution);
+        return new PostAnalysisIssueVisitor.ComponentIssue(component, issue);
+    }
+}
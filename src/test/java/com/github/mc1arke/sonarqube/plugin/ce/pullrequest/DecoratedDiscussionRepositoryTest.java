@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.ce.pullrequest;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.sonar.db.DbClient;
+import org.sonar.db.DbSession;
+import org.sonar.db.component.BranchDao;
+import org.sonar.db.component.BranchDto;
+import org.sonar.db.protobuf.DbProjectBranches;
+
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class DecoratedDiscussionRepositoryTest {
+
+    private final DbClient dbClient = mock(DbClient.class);
+    private final DbSession dbSession = mock(DbSession.class);
+    private final BranchDao branchDao = mock(BranchDao.class);
+    private final DecoratedDiscussionRepository underTest = new DecoratedDiscussionRepository(dbClient);
+
+    DecoratedDiscussionRepositoryTest() {
+        when(dbClient.openSession(false)).thenReturn(dbSession);
+        when(dbClient.branchDao()).thenReturn(branchDao);
+    }
+
+    @Test
+    void shouldReturnEmptyRecordIfPullRequestNotFound() {
+        when(branchDao.selectByPullRequestKey(dbSession, "projectUuid", "pullRequestKey")).thenReturn(Optional.empty());
+
+        DecorationRecord decorationRecord = underTest.findDecorationRecord("projectUuid", "pullRequestKey");
+
+        assertThat(decorationRecord.getIssueDiscussionIds()).isEmpty();
+        verify(dbSession).close();
+    }
+
+    @Test
+    void shouldReturnOnlyRecordedDiscussionAttributesFromSingleRead() {
+        BranchDto branchDto = new BranchDto().setPullRequestData(DbProjectBranches.PullRequestData.newBuilder()
+                .putAttributes("communityBranchPlugin.issueDiscussion.issueKey1", "discussion1")
+                .putAttributes("communityBranchPlugin.issueDiscussion.issueKey2", "discussion2")
+                .putAttributes("otherAttribute", "value")
+                .build());
+        when(branchDao.selectByPullRequestKey(dbSession, "projectUuid", "pullRequestKey")).thenReturn(Optional.of(branchDto));
+
+        DecorationRecord decorationRecord = underTest.findDecorationRecord("projectUuid", "pullRequestKey");
+
+        assertThat(decorationRecord.getIssueDiscussionIds()).isEqualTo(Map.of("issueKey1", "discussion1", "issueKey2", "discussion2"));
+        verify(branchDao).selectByPullRequestKey(dbSession, "projectUuid", "pullRequestKey");
+    }
+
+    @Test
+    void shouldSaveUrlAndDiscussionsInSingleUpdateAndRetainOtherAttributes() {
+        BranchDto branchDto = new BranchDto().setPullRequestData(DbProjectBranches.PullRequestData.newBuilder()
+                .putAttributes("communityBranchPlugin.issueDiscussion.issueKey1", "discussion1")
+                .putAttributes("otherAttribute", "value")
+                .build());
+        when(branchDao.selectByPullRequestKey(dbSession, "projectUuid", "pullRequestKey")).thenReturn(Optional.of(branchDto));
+
+        underTest.saveDecorationResult("projectUuid", "pullRequestKey", DecorationResult.builder()
+                .withPullRequestUrl("pullRequestUrl")
+                .withIssueDiscussionIds(Map.of("issueKey2", "discussion2"))
+                .build());
+
+        ArgumentCaptor<BranchDto> branchDtoArgumentCaptor = ArgumentCaptor.forClass(BranchDto.class);
+        verify(branchDao).selectByPullRequestKey(dbSession, "projectUuid", "pullRequestKey");
+        verify(branchDao).upsert(any(), branchDtoArgumentCaptor.capture());
+        verify(dbSession).commit();
+        verify(dbClient).openSession(false);
+        DbProjectBranches.PullRequestData pullRequestData = branchDtoArgumentCaptor.getValue().getPullRequestData();
+        assertThat(pullRequestData.getUrl()).isEqualTo("pullRequestUrl");
+        assertThat(pullRequestData.getAttributesMap()).isEqualTo(Map.of(
+                "communityBranchPlugin.issueDiscussion.issueKey2", "discussion2",
+                "otherAttribute", "value"));
+    }
+
+    @Test
+    void shouldRetainRecordedDiscussionsIfNotReported() {
+        BranchDto branchDto = new BranchDto().setPullRequestData(DbProjectBranches.PullRequestData.newBuilder()
+                .putAttributes("communityBranchPlugin.issueDiscussion.issueKey1", "discussion1")
+                .build());
+        when(branchDao.selectByPullRequestKey(dbSession, "projectUuid", "pullRequestKey")).thenReturn(Optional.of(branchDto));
+
+        underTest.saveDecorationResult("projectUuid", "pullRequestKey", DecorationResult.builder().withPullRequestUrl("pullRequestUrl").build());
+
+        ArgumentCaptor<BranchDto> branchDtoArgumentCaptor = ArgumentCaptor.forClass(BranchDto.class);
+        verify(branchDao).upsert(any(), branchDtoArgumentCaptor.capture());
+        assertThat(branchDtoArgumentCaptor.getValue().getPullRequestData().getAttributesMap())
+                .isEqualTo(Map.of("communityBranchPlugin.issueDiscussion.issueKey1", "discussion1"));
+    }
+
+    @Test
+    void shouldNotUpdatePullRequestIfRecordedDetailsUnchanged() {
+        BranchDto branchDto = new BranchDto().setPullRequestData(DbProjectBranches.PullRequestData.newBuilder()
+                .setUrl("pullRequestUrl")
+                .putAttributes("communityBranchPlugin.issueDiscussion.issueKey1", "discussion1")
+                .build());
+        when(branchDao.selectByPullRequestKey(dbSession, "projectUuid", "pullRequestKey")).thenReturn(Optional.of(branchDto));
+
+        underTest.saveDecorationResult("projectUuid", "pullRequestKey", DecorationResult.builder()
+                .withPullRequestUrl("pullRequestUrl")
+                .withIssueDiscussionIds(Map.of("issueKey1", "discussion1"))
+                .build());
+
+        verify(branchDao, never()).upsert(any(), any());
+        verify(dbSession, never()).commit();
+    }
+
+    @Test
+    void shouldNotReadPullRequestIfNothingReported() {
+        underTest.saveDecorationResult("projectUuid", "pullRequestKey", DecorationResult.builder().build());
+
+        verify(dbClient, never()).openSession(anyBoolean());
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2024 Michael Clarke
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ *
+ */
+package com.github.mc1arke.sonarqube.plugin.ce.pullrequest;
+
+import com.github.mc1arke.sonarqube.plugin.CommunityBranchPlugin;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.sonar.api.config.Configuration;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class DecorationOutboxTest {
+
+    private final Configuration configuration = mock(Configuration.class);
+    private DecorationOutbox underTest;
+
+    @AfterEach
+    void tearDown() {
+        if (null != underTest) {
+            underTest.stop();
+        }
+    }
+
+    @Test
+    void shouldNotQueueDecorationWhenWorkersDisabled() {
+        when(configuration.getInt(CommunityBranchPlugin.DECORATION_WORKER_THREADS)).thenReturn(Optional.of(0));
+        underTest = new DecorationOutbox(configuration);
+        underTest.start();
+
+        assertThat(underTest.enqueue("project", "1", () -> {})).isFalse();
+        assertThat(underTest.getQueueDepth()).isZero();
+    }
+
+    @Test
+    void shouldNotQueueDecorationBeforeStart() {
+        underTest = new DecorationOutbox(configuration);
+
+        assertThat(underTest.enqueue("project", "1", () -> {})).isFalse();
+    }
+
+    @Test
+    void shouldRunQueuedDecorationOnWorker() throws InterruptedException {
+        underTest = startOutbox(1, 10, 3);
+        CountDownLatch decorated = new CountDownLatch(1);
+        List<String> threadNames = new CopyOnWriteArrayList<>();
+
+        assertThat(underTest.enqueue("project", "1", () -> {
+            threadNames.add(Thread.currentThread().getName());
+            decorated.countDown();
+        })).isTrue();
+
+        assertThat(decorated.await(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(threadNames).containsExactly("pull-request-decoration-worker-1");
+    }
+
+    @Test
+    void shouldRejectDecorationWhenQueueFull() throws InterruptedException {
+        underTest = startOutbox(1, 1, 3);
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        assertThat(underTest.enqueue("project", "1", () -> block(running, release))).isTrue();
+        assertThat(running.await(10, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(underTest.enqueue("project", "2", () -> {})).isTrue();
+        assertThat(underTest.enqueue("project", "3", () -> {})).isFalse();
+        assertThat(underTest.enqueue("project", "2", () -> {})).isTrue();
+        assertThat(underTest.getQueueDepth()).isEqualTo(1);
+        assertThat(underTest.getOldestQueuedDecorationAgeMillis()).isGreaterThanOrEqualTo(0);
+
+        release.countDown();
+    }
+
+    @Test
+    void shouldOnlyRunLatestDecorationQueuedForPullRequestWhileEarlierDecorationRunning() throws InterruptedException {
+        underTest = startOutbox(2, 10, 3);
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch latestDecorated = new CountDownLatch(1);
+        AtomicInteger concurrentDecorations = new AtomicInteger();
+        List<String> decorations = new CopyOnWriteArrayList<>();
+
+        underTest.enqueue("project", "1", () -> {
+            concurrentDecorations.incrementAndGet();
+            decorations.add("first");
+            block(running, release);
+            concurrentDecorations.decrementAndGet();
+        });
+        assertThat(running.await(10, TimeUnit.SECONDS)).isTrue();
+
+        underTest.enqueue("project", "1", () -> decorations.add("second"));
+        underTest.enqueue("project", "1", () -> {
+            decorations.add("third:" + concurrentDecorations.get());
+            latestDecorated.countDown();
+        });
+        release.countDown();
+
+        assertThat(latestDecorated.await(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(decorations).containsExactly("first", "third:0");
+    }
+
+    @Test
+    void shouldRetryFailedDecorationUntilSuccessful() throws InterruptedException {
+        underTest = startOutbox(1, 10, 3);
+        AtomicInteger attempts = new AtomicInteger();
+        CountDownLatch decorated = new CountDownLatch(1);
+
+        underTest.enqueue("project", "1", () -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new IllegalStateException("Dummy");
+            }
+            decorated.countDown();
+        });
+
+        assertThat(decorated.await(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(attempts).hasValue(3);
+    }
+
+    @Test
+    void shouldStopRetryingDecorationAfterMaxAttempts() throws InterruptedException {
+        underTest = startOutbox(1, 10, 2);
+        AtomicInteger attempts = new AtomicInteger();
+        CountDownLatch failedTwice = new CountDownLatch(2);
+
+        underTest.enqueue("project", "1", () -> {
+            attempts.incrementAndGet();
+            failedTwice.countDown();
+            throw new IllegalStateException("Dummy");
+        });
+
+        assertThat(failedTwice.await(10, TimeUnit.SECONDS)).isTrue();
+        TimeUnit.MILLISECONDS.sleep(50);
+        assertThat(attempts).hasValue(2);
+        assertThat(underTest.getQueueDepth()).isZero();
+    }
+
+    private DecorationOutbox startOutbox(int workerThreads, int queueCapacity, int maxAttempts) {
+        when(configuration.getInt(CommunityBranchPlugin.DECORATION_WORKER_THREADS)).thenReturn(Optional.of(workerThreads));
+        when(configuration.getInt(CommunityBranchPlugin.DECORATION_QUEUE_CAPACITY)).thenReturn(Optional.of(queueCapacity));
+        when(configuration.getInt(CommunityBranchPlugin.DECORATION_MAX_ATTEMPTS)).thenReturn(Optional.of(maxAttempts));
+        DecorationOutbox decorationOutbox = new DecorationOutbox(configuration, 1);
+        decorationOutbox.start();
+        return decorationOutbox;
+    }
+
+    private static void block(CountDownLatch running, CountDownLatch release) {
+        running.countDown();
+        try {
+            release.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(ex);
+        }
+    }
+}
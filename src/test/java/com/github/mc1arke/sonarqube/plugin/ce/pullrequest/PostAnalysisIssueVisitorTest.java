@@ -19,12 +19,19 @@
 package com.github.mc1arke.sonarqube.plugin.ce.pullrequest;
 
 import org.junit.Test;
+import org.sonar.api.issue.Issue;
 import org.sonar.api.rule.RuleKey;
 import org.sonar.api.rules.RuleType;
+import org.sonar.ce.task.projectanalysis.analysis.AnalysisMetadataHolder;
 import org.sonar.ce.task.projectanalysis.component.Component;
 import org.sonar.ce.task.projectanalysis.component.ReportAttributes;
 import org.sonar.core.issue.DefaultIssue;
+import org.sonar.db.DbClient;
+import org.sonar.db.DbSession;
+import org.sonar.db.alm.setting.ProjectAlmSettingDao;
+import org.sonar.db.alm.setting.ProjectAlmSettingDto;
 import org.sonar.db.protobuf.DbIssues;
+import org.sonar.server.project.Project;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -33,9 +40,12 @@ import java.util.Optional;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
@@ -52,24 +62,40 @@ public class PostAnalysisIssueVisitorTest {
     private static final RuleKey EXAMPLE_ISSUE_RULEKEY = RuleKey.of("repo", "rule");
     private static final DbIssues.Locations EXAMPLE_ISSUE_LOCATIONS = DbIssues.Locations.getDefaultInstance();
 
+    private final AnalysisMetadataHolder analysisMetadataHolder = mock(AnalysisMetadataHolder.class);
+    private final DbClient dbClient = mock(DbClient.class);
+    private final ProjectAlmSettingDao projectAlmSettingDao = mock(ProjectAlmSettingDao.class);
+
+    private PostAnalysisIssueVisitor createPullRequestVisitor() {
+        Project project = mock(Project.class);
+        when(project.getUuid()).thenReturn("projectUuid");
+        when(analysisMetadataHolder.getProject()).thenReturn(project);
+        when(analysisMetadataHolder.isPullRequest()).thenReturn(true);
+        when(dbClient.openSession(false)).thenReturn(mock(DbSession.class));
+        when(dbClient.projectAlmSettingDao()).thenReturn(projectAlmSettingDao);
+        when(projectAlmSettingDao.selectByProject(any(), eq("projectUuid"))).thenReturn(Optional.of(mock(ProjectAlmSettingDto.class)));
+        return new PostAnalysisIssueVisitor(analysisMetadataHolder, dbClient);
+    }
+
     @Test
     public void checkAllIssuesCollected() {
-        PostAnalysisIssueVisitor testCase = new PostAnalysisIssueVisitor();
+        PostAnalysisIssueVisitor testCase = createPullRequestVisitor();
 
-        List<PostAnalysisIssueVisitor.ComponentIssue> expected = new ArrayList<>();
+        List<Component> expectedComponents = new ArrayList<>();
         for (int i = 0; i < 100; i++) {
             DefaultIssue issue = mock(DefaultIssue.class);
+            doReturn("issue" + i).when(issue).key();
             Component component = mock(Component.class);
-            expected.add(new PostAnalysisIssueVisitor.ComponentIssue(component, new PostAnalysisIssueVisitor.LightIssue(issue)));
+            expectedComponents.add(component);
 
             testCase.onIssue(component, issue);
         }
 
 
-        assertThat(testCase.getIssues().size()).isEqualTo(expected.size());
-        for (int i = 0; i < expected.size(); i++) {
-            assertThat(testCase.getIssues().get(i).getIssue()).isEqualTo(expected.get(i).getIssue());
-            assertThat(testCase.getIssues().get(i).getComponent()).isEqualTo(expected.get(i).getComponent());
+        assertThat(testCase.getIssues().size()).isEqualTo(expectedComponents.size());
+        for (int i = 0; i < expectedComponents.size(); i++) {
+            assertThat(testCase.getIssues().get(i).getIssue().key()).isEqualTo("issue" + i);
+            assertThat(testCase.getIssues().get(i).getComponent()).isEqualTo(expectedComponents.get(i));
         }
     }
 
@@ -95,7 +121,7 @@ public class PostAnalysisIssueVisitorTest {
         Component component = mock(Component.class);
 
         // map the DefaultIssue into a LightIssue (using PostAnalysisIssueVisitor to workaround private constructor)
-        PostAnalysisIssueVisitor visitor = new PostAnalysisIssueVisitor();
+        PostAnalysisIssueVisitor visitor = createPullRequestVisitor();
         visitor.onIssue(component, defaultIssue);
         PostAnalysisIssueVisitor.LightIssue lightIssue = visitor.getIssues().get(0).getIssue();
 
@@ -134,7 +160,7 @@ public class PostAnalysisIssueVisitorTest {
         Component component = mock(Component.class);
 
         // map the DefaultIssue into two equal LightIssues
-        PostAnalysisIssueVisitor visitor = new PostAnalysisIssueVisitor();
+        PostAnalysisIssueVisitor visitor = createPullRequestVisitor();
         visitor.onIssue(component, defaultIssue);
         visitor.onIssue(component, defaultIssue);
         PostAnalysisIssueVisitor.LightIssue lightIssue1 = visitor.getIssues().get(0).getIssue();
@@ -155,7 +181,7 @@ public class PostAnalysisIssueVisitorTest {
         Component component = mock(Component.class);
 
         // map the DefaultIssue into a first LightIssue
-        PostAnalysisIssueVisitor visitor = new PostAnalysisIssueVisitor();
+        PostAnalysisIssueVisitor visitor = createPullRequestVisitor();
         visitor.onIssue(component, defaultIssue);
         PostAnalysisIssueVisitor.LightIssue lightIssue1 = visitor.getIssues().get(0).getIssue();
 
@@ -174,6 +200,124 @@ public class PostAnalysisIssueVisitorTest {
         
     }
 
+    @Test
+    public void shouldNotCollectClosedOrResolvedIssues() {
+        PostAnalysisIssueVisitor underTest = createPullRequestVisitor();
+        Component component = mock(Component.class);
+
+        for (String status : List.of(Issue.STATUS_OPEN, Issue.STATUS_CLOSED, Issue.STATUS_RESOLVED, Issue.STATUS_TO_REVIEW)) {
+            DefaultIssue issue = mock(DefaultIssue.class);
+            when(issue.key()).thenReturn(status);
+            when(issue.status()).thenReturn(status);
+            underTest.onIssue(component, issue);
+        }
+
+        assertThat(underTest.getIssues())
+                .extracting(componentIssue -> componentIssue.getIssue().status())
+                .containsExactly(Issue.STATUS_OPEN, Issue.STATUS_TO_REVIEW);
+    }
+
+    @Test
+    public void shouldOnlyRetainPrimaryTextRangeFromLocations() {
+        DbIssues.TextRange textRange = DbIssues.TextRange.newBuilder()
+                .setStartLine(1)
+                .setStartOffset(2)
+                .setEndLine(3)
+                .setEndOffset(4)
+                .build();
+        DefaultIssue defaultIssue = exampleDefaultIssue();
+        doReturn(DbIssues.Locations.newBuilder()
+                .setTextRange(textRange)
+                .addFlow(DbIssues.Flow.newBuilder()
+                        .addLocation(DbIssues.Location.newBuilder().setTextRange(textRange).setMsg("secondary").build())
+                        .build())
+                .build()).when(defaultIssue).getLocations();
+
+        PostAnalysisIssueVisitor underTest = createPullRequestVisitor();
+        underTest.onIssue(mock(Component.class), defaultIssue);
+
+        assertThat(underTest.getIssues().get(0).getIssue().getLocations())
+                .isEqualTo(DbIssues.Locations.newBuilder().setTextRange(textRange).build());
+    }
+
+    @Test
+    public void shouldShareRepeatedValuesBetweenCollectedIssues() {
+        PostAnalysisIssueVisitor underTest = createPullRequestVisitor();
+        Component component = mock(Component.class);
+        underTest.onIssue(component, exampleDefaultIssue());
+        DefaultIssue secondIssue = exampleDefaultIssue();
+        doReturn(RuleKey.of("repo", "rule")).when(secondIssue).getRuleKey();
+        underTest.onIssue(component, secondIssue);
+
+        List<PostAnalysisIssueVisitor.ComponentIssue> issues = underTest.getIssues();
+        assertThat(issues.get(1).getIssue().getRuleKey()).isSameAs(issues.get(0).getIssue().getRuleKey());
+        assertThat(issues.get(1).getComponent()).isSameAs(component);
+        assertThat(issues.get(1)).isEqualTo(issues.get(0));
+    }
+
+    @Test
+    public void shouldNotCollectIssuesForNonPullRequestAnalysis() {
+        PostAnalysisIssueVisitor underTest = createPullRequestVisitor();
+        when(analysisMetadataHolder.isPullRequest()).thenReturn(false);
+
+        underTest.onIssue(mock(Component.class), exampleDefaultIssue());
+        underTest.onIssue(mock(Component.class), exampleDefaultIssue());
+
+        assertThat(underTest.getIssues()).isEmpty();
+        verify(analysisMetadataHolder).isPullRequest();
+        verifyNoInteractions(dbClient);
+    }
+
+    @Test
+    public void shouldNotCollectIssuesForProjectWithoutAlmBinding() {
+        PostAnalysisIssueVisitor underTest = createPullRequestVisitor();
+        when(projectAlmSettingDao.selectByProject(any(), eq("projectUuid"))).thenReturn(Optional.empty());
+
+        underTest.onIssue(mock(Component.class), exampleDefaultIssue());
+        underTest.onIssue(mock(Component.class), exampleDefaultIssue());
+
+        assertThat(underTest.getIssues()).isEmpty();
+        verify(projectAlmSettingDao).selectByProject(any(), eq("projectUuid"));
+    }
+
+    @Test
+    public void shouldOnlyCheckAlmBindingOnceForPullRequestAnalysis() {
+        PostAnalysisIssueVisitor underTest = createPullRequestVisitor();
+
+        underTest.onIssue(mock(Component.class), exampleDefaultIssue());
+        underTest.onIssue(mock(Component.class), exampleDefaultIssue());
+
+        assertThat(underTest.getIssues()).hasSize(2);
+        verify(projectAlmSettingDao).selectByProject(any(), eq("projectUuid"));
+    }
+
+    @Test
+    public void shouldMaintainAggregatesForCollectedIssues() {
+        Component component = mock(Component.class);
+        when(component.getType()).thenReturn(Component.Type.FILE);
+        ReportAttributes reportAttributes = mock(ReportAttributes.class);
+        when(reportAttributes.getScmPath()).thenReturn(Optional.of("path"));
+        when(component.getReportAttributes()).thenReturn(reportAttributes);
+
+        PostAnalysisIssueVisitor underTest = createPullRequestVisitor();
+        for (RuleType type : List.of(RuleType.BUG, RuleType.BUG, RuleType.CODE_SMELL)) {
+            DefaultIssue issue = mock(DefaultIssue.class);
+            when(issue.key()).thenReturn(type.name());
+            when(issue.status()).thenReturn(Issue.STATUS_OPEN);
+            when(issue.type()).thenReturn(type);
+            underTest.onIssue(component, issue);
+        }
+
+        CollectedIssues collectedIssues = underTest.getCollectedIssues();
+        assertThat(collectedIssues.getIssueCountsByType())
+                .containsEntry(RuleType.BUG, 2L)
+                .containsEntry(RuleType.CODE_SMELL, 1L)
+                .containsEntry(RuleType.VULNERABILITY, 0L);
+        assertThat(collectedIssues.getScmReportableIssues())
+                .extracting(componentIssue -> componentIssue.getIssue().key())
+                .containsExactly("BUG", "BUG", "CODE_SMELL");
+    }
+
     @Test
     public void shouldReturnScmInfoForFileComponent() {
         Component component = mock(Component.class);
@@ -27,6 +27,11 @@ import org.sonar.api.ce.posttask.PostProjectAnalysisTask;
 import org.sonar.api.ce.posttask.Project;
 import org.sonar.api.ce.posttask.QualityGate;
 import org.sonar.api.ce.posttask.ScannerContext;
+import org.sonar.ce.task.projectanalysis.component.Component;
+import org.sonar.ce.task.projectanalysis.component.TreeRootHolder;
+import org.sonar.ce.task.projectanalysis.measure.MeasureRepository;
+import org.sonar.ce.task.projectanalysis.metric.MetricRepository;
+import org.sonar.ce.task.projectanalysis.scm.ScmInfoRepository;
 import org.sonar.db.DbClient;
 import org.sonar.db.DbSession;
 import org.sonar.db.alm.setting.ALM;
@@ -43,6 +48,7 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -66,13 +72,17 @@ class PullRequestPostAnalysisTaskTest {
     private final List<PullRequestBuildStatusDecorator> pullRequestBuildStatusDecorators = new ArrayList<>();
     private final PostAnalysisIssueVisitor postAnalysisIssueVisitor = mock(PostAnalysisIssueVisitor.class);
     private final PostProjectAnalysisTask.Context context = mock(PostProjectAnalysisTask.Context.class);
+    private final PostProjectAnalysisTask.LogStatistics logStatistics = mock(PostProjectAnalysisTask.LogStatistics.class);
     private final DbClient dbClient = mock(DbClient.class);
+    private final DecorationOutbox decorationOutbox = mock(DecorationOutbox.class);
     private final Project project = mock(Project.class);
-    private final List<PostAnalysisIssueVisitor.ComponentIssue> componentIssues = List.of(mock(PostAnalysisIssueVisitor.ComponentIssue.class));
+    private final CollectedIssues collectedIssues = CollectedIssues.of(List.of(new PostAnalysisIssueVisitor.ComponentIssue(mock(Component.class), mock(PostAnalysisIssueVisitor.LightIssue.class))));
 
     private final PullRequestPostAnalysisTask testCase =
             new PullRequestPostAnalysisTask(pullRequestBuildStatusDecorators,
-                    postAnalysisIssueVisitor, dbClient);
+                    new AnalysisDetailsFactory(postAnalysisIssueVisitor, mock(MeasureRepository.class), mock(MetricRepository.class),
+                            mock(TreeRootHolder.class), mock(ScmInfoRepository.class)),
+                    dbClient, decorationOutbox, new DecoratedDiscussionRepository(dbClient));
 
     @BeforeEach
     void init() {
@@ -80,9 +90,10 @@ class PullRequestPostAnalysisTaskTest {
         doReturn(scannerContext).when(projectAnalysis).getScannerContext();
         doReturn(new HashMap<>()).when(scannerContext).getProperties();
         doReturn(projectAnalysis).when(context).getProjectAnalysis();
+        doReturn(logStatistics).when(context).getLogStatistics();
         doReturn(project).when(projectAnalysis).getProject();
         doReturn("uuid").when(project).getUuid();
-        doReturn(componentIssues).when(postAnalysisIssueVisitor).getIssues();
+        doReturn(collectedIssues).when(postAnalysisIssueVisitor).getCollectedIssues();
     }
 
     @Test
@@ -288,6 +299,7 @@ class PullRequestPostAnalysisTaskTest {
         verify(projectAnalysis).getAnalysis();
         verify(projectAnalysis).getQualityGate();
         verify(decorator2, never()).decorateQualityGateStatus(any(), any(), any());
+        verify(logStatistics, never()).add(any(), any());
     }
 
     @Test
@@ -297,6 +309,7 @@ class PullRequestPostAnalysisTaskTest {
 
         PostProjectAnalysisTask.Context context = mock(PostProjectAnalysisTask.Context.class);
         doReturn(projectAnalysis).when(context).getProjectAnalysis();
+        doReturn(logStatistics).when(context).getLogStatistics();
 
         Analysis analysis = mock(Analysis.class);
         doReturn(Optional.of("revision")).when(analysis).getRevision();
@@ -346,7 +359,7 @@ class PullRequestPostAnalysisTaskTest {
         verify(decorator2).decorateQualityGateStatus(analysisDetailsArgumentCaptor.capture(), eq(almSettingDto), eq(projectAlmSettingDto));
 
         AnalysisDetails analysisDetails =
-                new AnalysisDetails("pull-request", "revision", componentIssues, qualityGate, projectAnalysis);
+                new AnalysisDetails("pull-request", "revision", collectedIssues, qualityGate, projectAnalysis, Map.of(), Map.of());
         assertThat(analysisDetailsArgumentCaptor.getValue()).usingRecursiveComparison().isEqualTo(analysisDetails);
     }
 
@@ -415,9 +428,15 @@ class PullRequestPostAnalysisTaskTest {
         verify(dbSession).commit();
         verify(branchDao).upsert(dbSession, branchDto);
 
+        verify(logStatistics).add(eq("decorator"), any());
+        verify(logStatistics).add(eq("almApiCalls"), eq(0L));
+        verify(logStatistics).add(eq("loadAlmSettingsTimeMs"), any(Long.class));
+        verify(logStatistics).add(eq("decorateTimeMs"), any(Long.class));
+        verify(logStatistics).add(eq("saveDecorationRecordTimeMs"), any(Long.class));
+
         AnalysisDetails analysisDetails =
                 new AnalysisDetails("pull-request", "revision",
-                                    componentIssues, qualityGate, projectAnalysis);
+                                    collectedIssues, qualityGate, projectAnalysis, Map.of(), Map.of());
         assertThat(analysisDetailsArgumentCaptor.getValue()).usingRecursiveComparison().isEqualTo(analysisDetails);
     }
 
@@ -494,10 +513,67 @@ class PullRequestPostAnalysisTaskTest {
 
         AnalysisDetails analysisDetails =
                 new AnalysisDetails("pull-request", "revision",
-                                    componentIssues, qualityGate, projectAnalysis);
+                                    collectedIssues, qualityGate, projectAnalysis, Map.of(), Map.of());
         assertThat(analysisDetailsArgumentCaptor.getValue()).usingRecursiveComparison().isEqualTo(analysisDetails);
     }
 
+    @Test
+    void shouldDecorateFromOutboxWhenDecorationQueued() {
+        doReturn(Branch.Type.PULL_REQUEST).when(branch).getType();
+        doReturn(Optional.of("pull-request")).when(branch).getName();
+
+        Analysis analysis = mock(Analysis.class);
+        doReturn(Optional.of("revision")).when(analysis).getRevision();
+        doReturn(Optional.of(analysis)).when(projectAnalysis).getAnalysis();
+
+        QualityGate qualityGate = mock(QualityGate.class);
+        doReturn(qualityGate).when(projectAnalysis).getQualityGate();
+
+        PullRequestBuildStatusDecorator decorator = mock(PullRequestBuildStatusDecorator.class);
+        doReturn(Collections.singletonList(ALM.GITLAB)).when(decorator).alm();
+        doReturn(DecorationResult.builder().withPullRequestUrl("pullRequestUrl").build()).when(decorator).decorateQualityGateStatus(any(), any(), any());
+        pullRequestBuildStatusDecorators.add(decorator);
+
+        ProjectAlmSettingDto projectAlmSettingDto = mock(ProjectAlmSettingDto.class);
+        doReturn("setting-uuid").when(projectAlmSettingDto).getAlmSettingUuid();
+        AlmSettingDto almSettingDto = mock(AlmSettingDto.class);
+        doReturn(ALM.GITLAB).when(almSettingDto).getAlm();
+
+        DbSession dbSession = mock(DbSession.class);
+        doReturn(dbSession).when(dbClient).openSession(anyBoolean());
+        ProjectAlmSettingDao projectAlmSettingDao = mock(ProjectAlmSettingDao.class);
+        doReturn(Optional.of(projectAlmSettingDto)).when(projectAlmSettingDao).selectByProject(dbSession, "uuid");
+        doReturn(projectAlmSettingDao).when(dbClient).projectAlmSettingDao();
+        AlmSettingDao almSettingDao = mock(AlmSettingDao.class);
+        doReturn(Optional.of(almSettingDto)).when(almSettingDao).selectByUuid(dbSession, "setting-uuid");
+        doReturn(almSettingDao).when(dbClient).almSettingDao();
+        BranchDao branchDao = mock(BranchDao.class);
+        doReturn(branchDao).when(dbClient).branchDao();
+        BranchDto branchDto = mock(BranchDto.class);
+        doReturn(Optional.of(branchDto)).when(branchDao).selectByPullRequestKey(any(), any(), any());
+        doReturn(DbProjectBranches.PullRequestData.newBuilder().build()).when(branchDto).getPullRequestData();
+
+        doReturn(true).when(decorationOutbox).enqueue(any(), any(), any());
+        doReturn(3).when(decorationOutbox).getQueueDepth();
+        doReturn(150L).when(decorationOutbox).getOldestQueuedDecorationAgeMillis();
+
+        testCase.finished(context);
+
+        ArgumentCaptor<DecorationOutbox.Decoration> decorationArgumentCaptor = ArgumentCaptor.forClass(DecorationOutbox.Decoration.class);
+        verify(decorationOutbox).enqueue(eq("uuid"), eq("pull-request"), decorationArgumentCaptor.capture());
+        verify(decorator, never()).decorateQualityGateStatus(any(), any(), any());
+        verify(logStatistics).add("decorationQueued", true);
+        verify(logStatistics).add("decorationQueueDepth", 3);
+        verify(logStatistics).add("decorationQueueAgeMs", 150L);
+        verify(logStatistics, never()).add(eq("decorator"), any());
+
+        decorationArgumentCaptor.getValue().decorate();
+
+        verify(decorator).decorateQualityGateStatus(any(), eq(almSettingDto), eq(projectAlmSettingDto));
+        verify(branchDao).upsert(dbSession, branchDto);
+        verify(dbSession).commit();
+    }
+
     @Test
     void testCorrectDescriptionReturnedForTask() {
         assertThat(testCase.getDescription()).isEqualTo("Pull Request Decoration");
@@ -1,11 +1,14 @@
 package com.github.mc1arke.sonarqube.plugin.ce.pullrequest.azuredevops;
 
+import com.github.mc1arke.sonarqube.plugin.almclient.DefaultHttpClientProvider;
 import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.AzureDevopsClientFactory;
 import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.DefaultAzureDevopsClientFactory;
 import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.PullRequest;
 import com.github.mc1arke.sonarqube.plugin.almclient.azuredevops.model.Repository;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.AnalysisDetails;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.DecorationResult;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.DecoratedDiscussionRepository;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.DecorationRecord;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.PostAnalysisIssueVisitor;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.markup.MarkdownFormatterFactory;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.report.AnalysisIssueSummary;
@@ -16,15 +19,13 @@ import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.sonar.api.ce.posttask.QualityGate;
+import org.sonar.api.config.Configuration;
 import org.sonar.api.config.internal.Encryption;
 import org.sonar.api.config.internal.Settings;
 import org.sonar.api.issue.Issue;
 import org.sonar.api.rule.RuleKey;
 import org.sonar.api.rules.RuleType;
 import org.sonar.ce.task.projectanalysis.component.Component;
-import org.sonar.ce.task.projectanalysis.scm.Changeset;
-import org.sonar.ce.task.projectanalysis.scm.ScmInfo;
-import org.sonar.ce.task.projectanalysis.scm.ScmInfoRepository;
 import org.sonar.db.alm.setting.ALM;
 import org.sonar.db.alm.setting.AlmSettingDto;
 import org.sonar.db.alm.setting.ProjectAlmSettingDto;
@@ -45,7 +46,6 @@ import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMoc
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -73,12 +73,12 @@ public class AzureDevOpsPullRequestDecoratorTest {
 
     private final ProjectAlmSettingDto projectAlmSettingDto = mock(ProjectAlmSettingDto.class);
     private final AlmSettingDto almSettingDto = mock(AlmSettingDto.class);
-    private final ScmInfoRepository scmInfoRepository = mock(ScmInfoRepository.class);
     private final Settings settings = mock(Settings.class);
     private final Encryption encryption = mock(Encryption.class);
     private final ReportGenerator reportGenerator = mock(ReportGenerator.class);
     private final MarkdownFormatterFactory formatterFactory = mock(MarkdownFormatterFactory.class);
-    private final AzureDevOpsPullRequestDecorator pullRequestDecorator = new AzureDevOpsPullRequestDecorator(scmInfoRepository, new DefaultAzureDevopsClientFactory(settings), reportGenerator, formatterFactory);
+    private final DecoratedDiscussionRepository decoratedDiscussionRepository = mock(DecoratedDiscussionRepository.class);
+    private final AzureDevOpsPullRequestDecorator pullRequestDecorator = new AzureDevOpsPullRequestDecorator(new DefaultAzureDevopsClientFactory(settings, new DefaultHttpClientProvider(mock(Configuration.class))), reportGenerator, formatterFactory, mock(Configuration.class), decoratedDiscussionRepository);
     private final AnalysisDetails analysisDetails = mock(AnalysisDetails.class);
 
     private final PostAnalysisIssueVisitor.ComponentIssue componentIssue = mock(PostAnalysisIssueVisitor.ComponentIssue.class);
@@ -90,6 +90,7 @@ public class AzureDevOpsPullRequestDecoratorTest {
         when(settings.getEncryption()).thenReturn(encryption);
         when(reportGenerator.createAnalysisIssueSummary(any(), any())).thenReturn(mock(AnalysisIssueSummary.class));
         when(reportGenerator.createAnalysisSummary(any())).thenReturn(mock(AnalysisSummary.class));
+        when(decoratedDiscussionRepository.findDecorationRecord(any(), any())).thenReturn(DecorationRecord.empty());
     }
 
     private void configureTestDefaults() {
@@ -123,12 +124,7 @@ public class AzureDevOpsPullRequestDecoratorTest {
         when(defaultIssue.getMessage()).thenReturn(issueMessage);
         when(defaultIssue.getRuleKey()).thenReturn(ruleKey);
         when(defaultIssue.key()).thenReturn(issueKeyVal);
-        Changeset changeset = mock(Changeset.class);
-        when(changeset.getRevision()).thenReturn("revisionId");
-        ScmInfo scmInfo = mock(ScmInfo.class);
-        when(scmInfo.hasChangesetForLine(anyInt())).thenReturn(true);
-        when(scmInfo.getChangesetForLine(anyInt())).thenReturn(changeset);
-        when(scmInfoRepository.getScmInfo(component)).thenReturn(Optional.of(scmInfo));
+        when(analysisDetails.findIssueRevision(componentIssue)).thenReturn(Optional.of("revisionId"));
         when(ruleKey.toString()).thenReturn(ruleKeyVal);
 
         when(projectAlmSettingDto.getAlmSlug()).thenReturn(azureProject);
@@ -138,7 +134,7 @@ public class AzureDevOpsPullRequestDecoratorTest {
     }
 
     private void setupStubs() {
-        wireMockRule.stubFor(get(urlEqualTo("/azure%20Project/_apis/git/repositories/my%20Repository/pullRequests/"+ pullRequestId +"/threads?api-version=4.1"))
+        wireMockRule.stubFor(get(urlEqualTo("/azure%20Project/_apis/git/repositories/my%20Repository/pullRequests/"+ pullRequestId +"/threads?api-version=4.1&$top=100"))
                 .withHeader("Accept", equalTo("application/json"))
                 .withHeader("Authorization", equalTo(authHeader))
                 .willReturn(aResponse()
@@ -326,7 +322,7 @@ public class AzureDevOpsPullRequestDecoratorTest {
                 )
                 .willReturn(ok()));
 
-        wireMockRule.stubFor(get(urlEqualTo("/azure%20Project/_apis/git/repositories/my%20Repository/pullRequests/" + pullRequestId + "/commits?api-version=4.1"))
+        wireMockRule.stubFor(get(urlEqualTo("/azure%20Project/_apis/git/repositories/my%20Repository/pullRequests/" + pullRequestId + "/commits?api-version=4.1&$top=100"))
                 .withHeader("Accept", equalTo("application/json"))
                 .withHeader("Authorization", equalTo(authHeader))
                 .willReturn(aResponse().withStatus(200).withBody("{\"value\": [{" + System.lineSeparator() +
@@ -515,7 +511,7 @@ public class AzureDevOpsPullRequestDecoratorTest {
 
     @Test
     public void testName() {
-        assertThat(new AzureDevOpsPullRequestDecorator(mock(ScmInfoRepository.class), mock(AzureDevopsClientFactory.class), mock(ReportGenerator.class), mock(MarkdownFormatterFactory.class)).alm()).isEqualTo(Collections.singletonList(ALM.AZURE_DEVOPS));
+        assertThat(new AzureDevOpsPullRequestDecorator(mock(AzureDevopsClientFactory.class), mock(ReportGenerator.class), mock(MarkdownFormatterFactory.class), mock(Configuration.class), mock(DecoratedDiscussionRepository.class)).alm()).isEqualTo(Collections.singletonList(ALM.AZURE_DEVOPS));
     }
 
     @Test
@@ -588,12 +584,11 @@ public class AzureDevOpsPullRequestDecoratorTest {
 
     @Test
     public void shouldRemoveUserInfoFromRepositoryUrlForLinking() {
-        ScmInfoRepository scmInfoRepository = mock(ScmInfoRepository.class);
         AzureDevopsClientFactory azureDevopsClientFactory = mock(AzureDevopsClientFactory.class);
         ReportGenerator reportGenerator = mock(ReportGenerator.class);
         MarkdownFormatterFactory markdownFormatterFactory = mock(MarkdownFormatterFactory.class);
 
-        AzureDevOpsPullRequestDecorator underTest = new AzureDevOpsPullRequestDecorator(scmInfoRepository, azureDevopsClientFactory, reportGenerator, markdownFormatterFactory);
+        AzureDevOpsPullRequestDecorator underTest = new AzureDevOpsPullRequestDecorator(azureDevopsClientFactory, reportGenerator, markdownFormatterFactory, mock(Configuration.class), mock(DecoratedDiscussionRepository.class));
 
         Repository repository = mock(Repository.class);
         when(repository.getRemoteUrl()).thenReturn("https://user@domain.com/path/to/repo");
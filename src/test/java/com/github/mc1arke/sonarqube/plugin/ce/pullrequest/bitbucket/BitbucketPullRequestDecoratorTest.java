@@ -1,11 +1,14 @@
 package com.github.mc1arke.sonarqube.plugin.ce.pullrequest.bitbucket;
 
+import com.github.mc1arke.sonarqube.plugin.CommunityBranchPlugin;
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.BitbucketClient;
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.BitbucketClientFactory;
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.model.AnnotationUploadLimit;
+import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.model.CodeInsightsAnnotation;
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.model.DataValue;
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.model.ReportData;
 import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.model.ReportStatus;
+import com.github.mc1arke.sonarqube.plugin.almclient.bitbucket.model.server.Annotation;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.AnalysisDetails;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.PostAnalysisIssueVisitor;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.report.AnalysisIssueSummary;
@@ -13,10 +16,9 @@ import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.report.AnalysisSummary
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.report.ReportGenerator;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.junit.jupiter.params.ParameterizedTest;
-import org.junit.jupiter.params.provider.CsvSource;
 import org.mockito.ArgumentCaptor;
 import org.sonar.api.ce.posttask.QualityGate;
+import org.sonar.api.config.Configuration;
 import org.sonar.api.issue.Issue;
 import org.sonar.api.rule.Severity;
 import org.sonar.api.rules.RuleType;
@@ -31,12 +33,20 @@ import java.time.Instant;
 import java.util.Date;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
-import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -57,7 +67,8 @@ class BitbucketPullRequestDecoratorTest {
     private final ReportGenerator reportGenerator = mock(ReportGenerator.class);
     private final BitbucketClient client = mock(BitbucketClient.class);
     private final BitbucketClientFactory bitbucketClientFactory = mock(BitbucketClientFactory.class);
-    private final BitbucketPullRequestDecorator underTest = new BitbucketPullRequestDecorator(bitbucketClientFactory, reportGenerator);
+    private final Configuration configuration = mock(Configuration.class);
+    private final BitbucketPullRequestDecorator underTest = new BitbucketPullRequestDecorator(bitbucketClientFactory, reportGenerator, configuration);
 
     private final AlmSettingDto almSettingDto = mock(AlmSettingDto.class);
     private final ProjectAlmSettingDto projectAlmSettingDto = mock(ProjectAlmSettingDto.class);
@@ -75,6 +86,7 @@ class BitbucketPullRequestDecoratorTest {
         when(client.getAnnotationUploadLimit()).thenReturn(uploadLimit);
 
         mockValidAnalysis();
+        mockAnnotationCreation();
         when(analysisSummary.getNewDuplications()).thenReturn(BigDecimal.TEN);
         when(analysisSummary.getNewCoverage()).thenReturn(BigDecimal.ONE);
         underTest.decorateQualityGateStatus(analysisDetails, almSettingDto, projectAlmSettingDto);
@@ -83,7 +95,7 @@ class BitbucketPullRequestDecoratorTest {
         verify(client).createCodeInsightsAnnotation(ISSUE_KEY, ISSUE_LINE, ISSUE_LINK, ISSUE_MESSAGE, ISSUE_PATH, "HIGH", "BUG");
         verify(client).createLinkDataValue(DASHBOARD_URL);
         verify(client).createCodeInsightsReport(reportDataArgumentCaptor.capture(), eq("Quality Gate passed" + System.lineSeparator()), any(), eq(DASHBOARD_URL), eq(String.format("%s/common/icon.png", IMAGE_URL)), eq(ReportStatus.PASSED));
-        verify(client).deleteAnnotations(COMMIT, REPORT_KEY);
+        verify(client).deleteAnnotations(COMMIT, REPORT_KEY, Set.of());
 
         assertThat(reportDataArgumentCaptor.getValue())
                 .usingRecursiveComparison()
@@ -102,6 +114,7 @@ class BitbucketPullRequestDecoratorTest {
         when(client.getAnnotationUploadLimit()).thenReturn(uploadLimit);
 
         mockValidAnalysis();
+        mockAnnotationCreation();
         when(analysisSummary.getNewCoverage()).thenReturn(null);
         when(analysisSummary.getNewDuplications()).thenReturn(null);
         underTest.decorateQualityGateStatus(analysisDetails, almSettingDto, projectAlmSettingDto);
@@ -110,7 +123,7 @@ class BitbucketPullRequestDecoratorTest {
         verify(client).createCodeInsightsAnnotation(ISSUE_KEY, ISSUE_LINE, ISSUE_LINK, ISSUE_MESSAGE, ISSUE_PATH, "HIGH", "BUG");
         verify(client).createLinkDataValue(DASHBOARD_URL);
         verify(client).createCodeInsightsReport(reportDataArgumentCaptor.capture(), eq("Quality Gate passed" + System.lineSeparator()), any(), eq(DASHBOARD_URL), eq(String.format("%s/common/icon.png", IMAGE_URL)), eq(ReportStatus.PASSED));
-        verify(client).deleteAnnotations(COMMIT, REPORT_KEY);
+        verify(client).deleteAnnotations(COMMIT, REPORT_KEY, Set.of());
 
         assertThat(reportDataArgumentCaptor.getValue())
                 .usingRecursiveComparison()
@@ -122,19 +135,191 @@ class BitbucketPullRequestDecoratorTest {
                         new ReportData("Analysis details", null)));
     }
 
-    @ParameterizedTest(name = "{arguments}")
-    @CsvSource({"100, 1000, 2",
-            "1000, 1000, 1",
-            "100, 1000, 10"})
-    void testExceedsMaximumNumberOfAnnotations(int annotationBatchSize, int totalAllowedAnnotations, int counter) {
-        // given
-        AnnotationUploadLimit uploadLimit = new AnnotationUploadLimit(annotationBatchSize, totalAllowedAnnotations);
+    @Test
+    void shouldUploadMostSevereAnnotationsInFirstChunk() throws IOException {
+        when(client.supportsCodeInsights()).thenReturn(true);
+        when(client.getAnnotationUploadLimit()).thenReturn(new AnnotationUploadLimit(2, 1000));
+        when(configuration.getInt(String.format(CommunityBranchPlugin.DECORATION_CONCURRENT_REQUESTS, "bitbucket"))).thenReturn(Optional.of(1));
+        mockValidAnalysis();
+        mockAnnotationCreation();
+        List<PostAnalysisIssueVisitor.ComponentIssue> issues = List.of(
+                createComponentIssue("minor", Severity.MINOR),
+                createComponentIssue("blocker", Severity.BLOCKER),
+                createComponentIssue("info", Severity.INFO),
+                createComponentIssue("critical", Severity.CRITICAL),
+                createComponentIssue("major", Severity.MAJOR));
+        when(analysisDetails.getScmReportableIssues()).thenReturn(issues);
+
+        underTest.decorateQualityGateStatus(analysisDetails, almSettingDto, projectAlmSettingDto);
+
+        ArgumentCaptor<Set<CodeInsightsAnnotation>> annotationsCaptor = ArgumentCaptor.forClass(Set.class);
+        verify(client, times(3)).uploadAnnotations(eq(COMMIT), annotationsCaptor.capture(), eq(REPORT_KEY));
+        assertThat(annotationsCaptor.getAllValues())
+                .extracting(annotations -> annotations.stream().map(CodeInsightsAnnotation::getMessage).collect(Collectors.toList()))
+                .containsExactly(List.of("blocker", "critical"), List.of("major", "minor"), List.of("info"));
+    }
+
+    @Test
+    void shouldStopCreatingAnnotationsOnceTotalAllowedAnnotationsReached() throws IOException {
+        when(client.supportsCodeInsights()).thenReturn(true);
+        when(client.getAnnotationUploadLimit()).thenReturn(new AnnotationUploadLimit(2, 3));
+        mockValidAnalysis();
+        mockAnnotationCreation();
+        List<PostAnalysisIssueVisitor.ComponentIssue> issues = List.of(
+                createComponentIssue("issue1", Severity.MAJOR),
+                createComponentIssue("issue2", Severity.MAJOR),
+                createComponentIssue("issue3", Severity.MAJOR),
+                createComponentIssue("issue4", Severity.MAJOR),
+                createComponentIssue("issue5", Severity.MAJOR));
+        when(analysisDetails.getScmReportableIssues()).thenReturn(issues);
+
+        underTest.decorateQualityGateStatus(analysisDetails, almSettingDto, projectAlmSettingDto);
+
+        verify(client, times(3)).createCodeInsightsAnnotation(any(), anyInt(), any(), any(), any(), any(), any());
+        verify(reportGenerator, times(3)).createAnalysisIssueSummary(any(), any());
+        ArgumentCaptor<Set<CodeInsightsAnnotation>> annotationsCaptor = ArgumentCaptor.forClass(Set.class);
+        verify(client, times(2)).uploadAnnotations(eq(COMMIT), annotationsCaptor.capture(), eq(REPORT_KEY));
+        assertThat(annotationsCaptor.getAllValues()).extracting(Set::size).containsExactlyInAnyOrder(2, 1);
+    }
+
+    @Test
+    void shouldUploadRemainingChunksConcurrently() throws IOException {
+        when(client.supportsCodeInsights()).thenReturn(true);
+        when(client.getAnnotationUploadLimit()).thenReturn(new AnnotationUploadLimit(1, 1000));
+        mockValidAnalysis();
+        mockAnnotationCreation();
+        List<PostAnalysisIssueVisitor.ComponentIssue> issues = IntStream.range(0, 10)
+                .mapToObj(i -> createComponentIssue("issue" + i, Severity.MAJOR))
+                .collect(Collectors.toList());
+        when(analysisDetails.getScmReportableIssues()).thenReturn(issues);
+
+        Set<String> uploadThreads = ConcurrentHashMap.newKeySet();
+        doAnswer(invocation -> {
+            uploadThreads.add(Thread.currentThread().getName());
+            Thread.sleep(20);
+            return null;
+        }).when(client).uploadAnnotations(any(), any(), any());
+
+        underTest.decorateQualityGateStatus(analysisDetails, almSettingDto, projectAlmSettingDto);
+
+        verify(client, times(10)).uploadAnnotations(eq(COMMIT), any(), eq(REPORT_KEY));
+        assertThat(uploadThreads)
+                .contains(Thread.currentThread().getName())
+                .anyMatch(name -> name.startsWith("alm-request-"));
+    }
+
+    @Test
+    void shouldLogErrorIfChunkUploadFails() throws IOException {
+        when(client.supportsCodeInsights()).thenReturn(true);
+        when(client.getAnnotationUploadLimit()).thenReturn(new AnnotationUploadLimit(1, 1000));
+        mockValidAnalysis();
+        mockAnnotationCreation();
+        List<PostAnalysisIssueVisitor.ComponentIssue> issues = List.of(
+                createComponentIssue("issue1", Severity.MAJOR),
+                createComponentIssue("issue2", Severity.MAJOR),
+                createComponentIssue("issue3", Severity.MAJOR));
+        when(analysisDetails.getScmReportableIssues()).thenReturn(issues);
+        doNothing().doThrow(new IOException("dummy")).doNothing().when(client).uploadAnnotations(any(), any(), any());
+
+        underTest.decorateQualityGateStatus(analysisDetails, almSettingDto, projectAlmSettingDto);
+
+        verify(client, times(3)).uploadAnnotations(eq(COMMIT), any(), eq(REPORT_KEY));
+    }
+
+    @Test
+    void shouldOnlyUploadNewOrChangedAnnotationsAndDeleteRemovedOnes() throws IOException {
+        when(client.supportsCodeInsights()).thenReturn(true);
+        when(client.getAnnotationUploadLimit()).thenReturn(new AnnotationUploadLimit(100, 1000));
+        mockValidAnalysis();
+        mockAnnotationCreation();
+        List<PostAnalysisIssueVisitor.ComponentIssue> issues = List.of(
+                createComponentIssue("unchanged", Severity.MAJOR),
+                createComponentIssue("changed", Severity.MAJOR),
+                createComponentIssue("new", Severity.MAJOR));
+        when(analysisDetails.getScmReportableIssues()).thenReturn(issues);
+        when(client.retrieveAnnotations(COMMIT, REPORT_KEY)).thenReturn(Set.of(
+                new Annotation("unchanged", ISSUE_LINE, ISSUE_LINK, "unchanged", ISSUE_PATH, "MEDIUM", "CODE_SMELL"),
+                new Annotation("changed", ISSUE_LINE + 1, ISSUE_LINK, "changed", ISSUE_PATH, "MEDIUM", "CODE_SMELL"),
+                new Annotation("removed", ISSUE_LINE, ISSUE_LINK, "removed", ISSUE_PATH, "MEDIUM", "CODE_SMELL")));
 
-        // when
-        boolean result = BitbucketPullRequestDecorator.exceedsMaximumNumberOfAnnotations(counter, uploadLimit);
+        underTest.decorateQualityGateStatus(analysisDetails, almSettingDto, projectAlmSettingDto);
 
-        // then
-        assertFalse(result);
+        verify(client).deleteAnnotations(COMMIT, REPORT_KEY, Set.of("changed", "removed"));
+        ArgumentCaptor<Set<CodeInsightsAnnotation>> annotationsCaptor = ArgumentCaptor.forClass(Set.class);
+        verify(client).uploadAnnotations(eq(COMMIT), annotationsCaptor.capture(), eq(REPORT_KEY));
+        assertThat(annotationsCaptor.getValue())
+                .extracting(CodeInsightsAnnotation::getExternalId)
+                .containsExactly("changed", "new");
+    }
+
+    @Test
+    void shouldNotDeleteChangedAnnotationsWhenUploadReplacesThem() throws IOException {
+        when(client.supportsCodeInsights()).thenReturn(true);
+        when(client.replacesAnnotationsOnUpload()).thenReturn(true);
+        when(client.getAnnotationUploadLimit()).thenReturn(new AnnotationUploadLimit(100, 1000));
+        mockValidAnalysis();
+        mockAnnotationCreation();
+        List<PostAnalysisIssueVisitor.ComponentIssue> issues = List.of(
+                createComponentIssue("unchanged", Severity.MAJOR),
+                createComponentIssue("changed", Severity.MAJOR),
+                createComponentIssue("new", Severity.MAJOR));
+        when(analysisDetails.getScmReportableIssues()).thenReturn(issues);
+        when(client.retrieveAnnotations(COMMIT, REPORT_KEY)).thenReturn(Set.of(
+                new Annotation("unchanged", ISSUE_LINE, ISSUE_LINK, "unchanged", ISSUE_PATH, "MEDIUM", "CODE_SMELL"),
+                new Annotation("changed", ISSUE_LINE + 1, ISSUE_LINK, "changed", ISSUE_PATH, "MEDIUM", "CODE_SMELL"),
+                new Annotation("removed", ISSUE_LINE, ISSUE_LINK, "removed", ISSUE_PATH, "MEDIUM", "CODE_SMELL")));
+
+        underTest.decorateQualityGateStatus(analysisDetails, almSettingDto, projectAlmSettingDto);
+
+        verify(client).deleteAnnotations(COMMIT, REPORT_KEY, Set.of("removed"));
+        ArgumentCaptor<Set<CodeInsightsAnnotation>> annotationsCaptor = ArgumentCaptor.forClass(Set.class);
+        verify(client).uploadAnnotations(eq(COMMIT), annotationsCaptor.capture(), eq(REPORT_KEY));
+        assertThat(annotationsCaptor.getValue())
+                .extracting(CodeInsightsAnnotation::getExternalId)
+                .containsExactly("changed", "new");
+    }
+
+    @Test
+    void shouldNotUploadAnnotationsWhenNothingChanged() throws IOException {
+        when(client.supportsCodeInsights()).thenReturn(true);
+        when(client.getAnnotationUploadLimit()).thenReturn(new AnnotationUploadLimit(100, 1000));
+        mockValidAnalysis();
+        mockAnnotationCreation();
+        List<PostAnalysisIssueVisitor.ComponentIssue> issues = List.of(createComponentIssue("unchanged", Severity.MAJOR));
+        when(analysisDetails.getScmReportableIssues()).thenReturn(issues);
+        when(client.retrieveAnnotations(COMMIT, REPORT_KEY)).thenReturn(Set.of(
+                new Annotation("unchanged", ISSUE_LINE, ISSUE_LINK, "unchanged", ISSUE_PATH, "MEDIUM", "CODE_SMELL")));
+
+        underTest.decorateQualityGateStatus(analysisDetails, almSettingDto, projectAlmSettingDto);
+
+        verify(client).deleteAnnotations(COMMIT, REPORT_KEY, Set.of());
+        verify(client, never()).uploadAnnotations(any(), any(), any());
+    }
+
+    private void mockAnnotationCreation() {
+        when(client.createCodeInsightsAnnotation(any(), anyInt(), any(), any(), any(), any(), any()))
+                .thenAnswer(invocation -> new Annotation(invocation.getArgument(0), invocation.getArgument(1), invocation.getArgument(2),
+                        invocation.getArgument(0), invocation.getArgument(4), invocation.getArgument(5), invocation.getArgument(6)));
+    }
+
+    private static PostAnalysisIssueVisitor.ComponentIssue createComponentIssue(String key, String severity) {
+        ReportAttributes reportAttributes = mock(ReportAttributes.class);
+        when(reportAttributes.getScmPath()).thenReturn(Optional.of(ISSUE_PATH));
+
+        Component component = mock(Component.class);
+        when(component.getReportAttributes()).thenReturn(reportAttributes);
+
+        PostAnalysisIssueVisitor.LightIssue issue = mock(PostAnalysisIssueVisitor.LightIssue.class);
+        when(issue.key()).thenReturn(key);
+        when(issue.severity()).thenReturn(severity);
+        when(issue.type()).thenReturn(RuleType.CODE_SMELL);
+        when(issue.getLine()).thenReturn(ISSUE_LINE);
+        when(issue.getMessage()).thenReturn(ISSUE_MESSAGE);
+
+        PostAnalysisIssueVisitor.ComponentIssue componentIssue = mock(PostAnalysisIssueVisitor.ComponentIssue.class);
+        when(componentIssue.getIssue()).thenReturn(issue);
+        when(componentIssue.getComponent()).thenReturn(component);
+        return componentIssue;
     }
 
     private void mockValidAnalysis() {
@@ -18,9 +18,12 @@
  */
 package com.github.mc1arke.sonarqube.plugin.ce.pullrequest.gitlab;
 
+import com.github.mc1arke.sonarqube.plugin.almclient.DefaultHttpClientProvider;
 import com.github.mc1arke.sonarqube.plugin.almclient.LinkHeaderReader;
 import com.github.mc1arke.sonarqube.plugin.almclient.gitlab.DefaultGitlabClientFactory;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.AnalysisDetails;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.DecoratedDiscussionRepository;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.DecorationRecord;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.PostAnalysisIssueVisitor;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.markup.MarkdownFormatterFactory;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.report.AnalysisIssueSummary;
@@ -30,13 +33,11 @@ import com.github.tomakehurst.wiremock.junit.WireMockRule;
 import org.junit.Rule;
 import org.junit.Test;
 import org.sonar.api.ce.posttask.QualityGate;
+import org.sonar.api.config.Configuration;
 import org.sonar.api.config.internal.Encryption;
 import org.sonar.api.config.internal.Settings;
 import org.sonar.api.issue.Issue;
 import org.sonar.ce.task.projectanalysis.component.Component;
-import org.sonar.ce.task.projectanalysis.scm.Changeset;
-import org.sonar.ce.task.projectanalysis.scm.ScmInfo;
-import org.sonar.ce.task.projectanalysis.scm.ScmInfoRepository;
 import org.sonar.db.alm.setting.AlmSettingDto;
 import org.sonar.db.alm.setting.ProjectAlmSettingDto;
 
@@ -59,7 +60,6 @@ import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
 import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -105,8 +105,6 @@ public class GitlabMergeRequestDecoratorIntegrationTest {
         when(analysisDetails.getPullRequestId()).thenReturn(Long.toString(mergeRequestIid));
         when(analysisDetails.getCommitSha()).thenReturn(commitSHA);
 
-        ScmInfoRepository scmInfoRepository = mock(ScmInfoRepository.class);
-
         List<PostAnalysisIssueVisitor.ComponentIssue> issues = new ArrayList<>();
         for (int i = 0; i < 2; i++) {
             PostAnalysisIssueVisitor.ComponentIssue componentIssue = mock(PostAnalysisIssueVisitor.ComponentIssue.class);
@@ -119,13 +117,7 @@ public class GitlabMergeRequestDecoratorIntegrationTest {
             when(componentIssue.getComponent()).thenReturn(component);
             when(componentIssue.getScmPath()).thenReturn(Optional.of(filePath));
 
-            ScmInfo scmInfo = mock(ScmInfo.class);
-            when(scmInfo.hasChangesetForLine(anyInt())).thenReturn(true);
-            when(scmInfo.getChangesetForLine(anyInt())).thenReturn(Changeset.newChangesetBuilder()
-                    .setDate(0L)
-                    .setRevision(commitSHA)
-                    .build());
-            when(scmInfoRepository.getScmInfo(component)).thenReturn(Optional.of(scmInfo));
+            when(analysisDetails.findIssueRevision(componentIssue)).thenReturn(Optional.of(commitSHA));
 
             issues.add(componentIssue);
         }
@@ -239,8 +231,10 @@ public class GitlabMergeRequestDecoratorIntegrationTest {
         Settings settings = mock(Settings.class);
         Encryption encryption = mock(Encryption.class);
         when(settings.getEncryption()).thenReturn(encryption);
+        DecoratedDiscussionRepository decoratedDiscussionRepository = mock(DecoratedDiscussionRepository.class);
+        when(decoratedDiscussionRepository.findDecorationRecord(any(), any())).thenReturn(DecorationRecord.empty());
         GitlabMergeRequestDecorator pullRequestDecorator =
-                new GitlabMergeRequestDecorator(scmInfoRepository, new DefaultGitlabClientFactory(linkHeaderReader, settings), reportGenerator, mock(MarkdownFormatterFactory.class));
+                new GitlabMergeRequestDecorator(new DefaultGitlabClientFactory(linkHeaderReader, settings, new DefaultHttpClientProvider(mock(Configuration.class))), reportGenerator, mock(MarkdownFormatterFactory.class), mock(Configuration.class), decoratedDiscussionRepository);
 
 
         assertThat(pullRequestDecorator.decorateQualityGateStatus(analysisDetails, almSettingDto, projectAlmSettingDto).getPullRequestUrl()).isEqualTo(Optional.of("http://gitlab.example.com/my-group/my-project/merge_requests/1"));
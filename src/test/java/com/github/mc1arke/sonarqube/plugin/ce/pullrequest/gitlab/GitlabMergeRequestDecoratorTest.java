@@ -31,6 +31,8 @@ import com.github.mc1arke.sonarqube.plugin.almclient.gitlab.model.PipelineStatus
 import com.github.mc1arke.sonarqube.plugin.almclient.gitlab.model.User;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.AnalysisDetails;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.DecorationResult;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.DecoratedDiscussionRepository;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.DecorationRecord;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.PostAnalysisIssueVisitor;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.markup.MarkdownFormatterFactory;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.report.AnalysisIssueSummary;
@@ -40,11 +42,9 @@ import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 import org.sonar.api.ce.posttask.QualityGate;
+import org.sonar.api.config.Configuration;
 import org.sonar.api.issue.Issue;
 import org.sonar.ce.task.projectanalysis.component.Component;
-import org.sonar.ce.task.projectanalysis.scm.Changeset;
-import org.sonar.ce.task.projectanalysis.scm.ScmInfo;
-import org.sonar.ce.task.projectanalysis.scm.ScmInfoRepository;
 import org.sonar.db.alm.setting.ALM;
 import org.sonar.db.alm.setting.AlmSettingDto;
 import org.sonar.db.alm.setting.ProjectAlmSettingDto;
@@ -54,6 +54,9 @@ import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
@@ -61,6 +64,7 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
@@ -88,7 +92,6 @@ public class GitlabMergeRequestDecoratorTest {
 
     private final GitlabClient gitlabClient = mock(GitlabClient.class);
     private final GitlabClientFactory gitlabClientFactory = mock(GitlabClientFactory.class);
-    private final ScmInfoRepository scmInfoRepository = mock(ScmInfoRepository.class);
     private final AnalysisDetails analysisDetails = mock(AnalysisDetails.class);
     private final AlmSettingDto almSettingDto = mock(AlmSettingDto.class);
     private final ProjectAlmSettingDto projectAlmSettingDto = mock(ProjectAlmSettingDto.class);
@@ -98,8 +101,9 @@ public class GitlabMergeRequestDecoratorTest {
     private final ReportGenerator reportGenerator = mock(ReportGenerator.class);
     private final MarkdownFormatterFactory markdownFormatterFactory = mock(MarkdownFormatterFactory.class);
     private final AnalysisSummary analysisSummary = mock(AnalysisSummary.class);
+    private final DecoratedDiscussionRepository decoratedDiscussionRepository = mock(DecoratedDiscussionRepository.class);
 
-    private final GitlabMergeRequestDecorator underTest = new GitlabMergeRequestDecorator(scmInfoRepository, gitlabClientFactory, reportGenerator, markdownFormatterFactory);
+    private final GitlabMergeRequestDecorator underTest = new GitlabMergeRequestDecorator(gitlabClientFactory, reportGenerator, markdownFormatterFactory, mock(Configuration.class), decoratedDiscussionRepository);
 
     @Before
     public void setUp() throws IOException {
@@ -126,6 +130,7 @@ public class GitlabMergeRequestDecoratorTest {
                 .collect(Collectors.toList()));
         when(sonarqubeUser.getUsername()).thenReturn(SONARQUBE_USERNAME);
         when(gitlabClient.getCurrentUser()).thenReturn(sonarqubeUser);
+        when(decoratedDiscussionRepository.findDecorationRecord(any(), any())).thenReturn(DecorationRecord.empty());
         when(analysisDetails.getAnalysisProjectKey()).thenReturn(PROJECT_KEY);
         when(analysisDetails.getAnalysisId()).thenReturn(ANALYSIS_UUID);
         when(analysisDetails.getScmReportableIssues()).thenReturn(new ArrayList<>());
@@ -165,6 +170,13 @@ public class GitlabMergeRequestDecoratorTest {
 
     @Test
     public void shouldThrowErrorWhenGitlabMergeRequestCommitsRetrievalFails() throws IOException {
+        PostAnalysisIssueVisitor.LightIssue lightIssue = mock(PostAnalysisIssueVisitor.LightIssue.class);
+        when(lightIssue.key()).thenReturn("issueKey1");
+        when(lightIssue.getLine()).thenReturn(10);
+        PostAnalysisIssueVisitor.ComponentIssue componentIssue = mock(PostAnalysisIssueVisitor.ComponentIssue.class);
+        when(componentIssue.getIssue()).thenReturn(lightIssue);
+        when(componentIssue.getScmPath()).thenReturn(Optional.of("path-to-file"));
+        when(analysisDetails.getScmReportableIssues()).thenReturn(Collections.singletonList(componentIssue));
         when(gitlabClient.getMergeRequestCommits(anyLong(), anyLong())).thenThrow(new IOException("dummy"));
 
         assertThatThrownBy(() -> underTest.decorateQualityGateStatus(analysisDetails, almSettingDto, projectAlmSettingDto))
@@ -172,6 +184,13 @@ public class GitlabMergeRequestDecoratorTest {
                 .hasMessage("Could not retrieve commit details for Merge Request");
     }
 
+    @Test
+    public void shouldNotRetrieveCommitsWhenNoIssueNeedsCommentPosting() throws IOException {
+        underTest.decorateQualityGateStatus(analysisDetails, almSettingDto, projectAlmSettingDto);
+
+        verify(gitlabClient, never()).getMergeRequestCommits(anyLong(), anyLong());
+    }
+
     @Test
     public void shouldThrowErrorWhenGitlabMergeRequestDiscussionRetrievalFails() throws IOException {
         when(gitlabClient.getMergeRequestDiscussions(anyLong(), anyLong())).thenThrow(new IOException("dummy"));
@@ -278,6 +297,125 @@ public class GitlabMergeRequestDecoratorTest {
         assertThat(discussionIdArgumentCaptor.getValue()).isEqualTo(discussion.getId());
     }
 
+    @Test
+    public void shouldCloseDiscussionRecordedAgainstIssueWithoutParsingNoteBody() throws IOException {
+        when(analysisDetails.getAnalysisProjectUuid()).thenReturn("projectUuid");
+        when(decoratedDiscussionRepository.findDecorationRecord("projectUuid", Long.toString(MERGE_REQUEST_IID)))
+                .thenReturn(new DecorationRecord(Collections.singletonMap("issueKey1", "discussionId")));
+
+        Note note = mock(Note.class);
+        when(note.getAuthor()).thenReturn(sonarqubeUser);
+        when(note.getBody()).thenReturn("Edited note without any issue link");
+        when(note.isResolvable()).thenReturn(true);
+
+        Discussion discussion = mock(Discussion.class);
+        when(discussion.getId()).thenReturn("discussionId");
+        when(discussion.getNotes()).thenReturn(Collections.singletonList(note));
+
+        when(gitlabClient.getMergeRequestDiscussions(anyLong(), anyLong())).thenReturn(Collections.singletonList(discussion));
+
+        DecorationResult decorationResult = underTest.decorateQualityGateStatus(analysisDetails, almSettingDto, projectAlmSettingDto);
+
+        verify(gitlabClient).resolveMergeRequestDiscussion(PROJECT_ID, MERGE_REQUEST_IID, "discussionId");
+        verify(discussion).getNotes();
+        assertThat(decorationResult.getIssueDiscussionIds()).contains(Collections.emptyMap());
+    }
+
+    @Test
+    public void shouldNotRetrieveNotesForDiscussionRecordedAgainstOpenIssue() throws IOException {
+        when(analysisDetails.getAnalysisProjectUuid()).thenReturn("projectUuid");
+        when(decoratedDiscussionRepository.findDecorationRecord("projectUuid", Long.toString(MERGE_REQUEST_IID)))
+                .thenReturn(new DecorationRecord(Collections.singletonMap("issueKey1", "discussionId")));
+
+        PostAnalysisIssueVisitor.LightIssue lightIssue = mock(PostAnalysisIssueVisitor.LightIssue.class);
+        when(lightIssue.key()).thenReturn("issueKey1");
+        when(lightIssue.getLine()).thenReturn(10);
+        PostAnalysisIssueVisitor.ComponentIssue componentIssue = mock(PostAnalysisIssueVisitor.ComponentIssue.class);
+        when(componentIssue.getIssue()).thenReturn(lightIssue);
+        when(analysisDetails.getScmReportableIssues()).thenReturn(Collections.singletonList(componentIssue));
+
+        Discussion discussion = mock(Discussion.class);
+        when(discussion.getId()).thenReturn("discussionId");
+
+        when(gitlabClient.getMergeRequestDiscussions(anyLong(), anyLong())).thenReturn(Collections.singletonList(discussion));
+
+        DecorationResult decorationResult = underTest.decorateQualityGateStatus(analysisDetails, almSettingDto, projectAlmSettingDto);
+
+        verify(discussion, never()).getNotes();
+        verify(gitlabClient, never()).resolveMergeRequestDiscussion(anyLong(), anyLong(), any());
+        verify(gitlabClient, never()).addMergeRequestDiscussion(anyLong(), anyLong(), any(CommitNote.class));
+        assertThat(decorationResult.getIssueDiscussionIds()).contains(Collections.singletonMap("issueKey1", "discussionId"));
+    }
+
+    @Test
+    public void shouldNotReopenRecordedDiscussionAlreadyResolvedOnceIssueHasGone() throws IOException {
+        when(analysisDetails.getAnalysisProjectUuid()).thenReturn("projectUuid");
+        when(decoratedDiscussionRepository.findDecorationRecord("projectUuid", Long.toString(MERGE_REQUEST_IID)))
+                .thenReturn(new DecorationRecord(Collections.singletonMap("issueKey1", "discussionId")));
+
+        Note note = mock(Note.class);
+        when(note.getAuthor()).thenReturn(sonarqubeUser);
+        when(note.isResolved()).thenReturn(true);
+
+        Discussion discussion = mock(Discussion.class);
+        when(discussion.getId()).thenReturn("discussionId");
+        when(discussion.getNotes()).thenReturn(Collections.singletonList(note));
+
+        when(gitlabClient.getMergeRequestDiscussions(anyLong(), anyLong())).thenReturn(Collections.singletonList(discussion));
+
+        underTest.decorateQualityGateStatus(analysisDetails, almSettingDto, projectAlmSettingDto);
+
+        verify(gitlabClient, never()).resolveMergeRequestDiscussion(anyLong(), anyLong(), any());
+        verify(gitlabClient, never()).addMergeRequestDiscussionNote(anyLong(), anyLong(), any(), any());
+    }
+
+    @Test
+    public void shouldRecordDiscussionsForExistingAndNewIssues() throws IOException {
+        when(analysisDetails.getAnalysisProjectUuid()).thenReturn("projectUuid");
+
+        List<PostAnalysisIssueVisitor.ComponentIssue> componentIssues = new ArrayList<>();
+        for (int line = 998; line < 1000; line++) {
+            PostAnalysisIssueVisitor.LightIssue lightIssue = mock(PostAnalysisIssueVisitor.LightIssue.class);
+            when(lightIssue.key()).thenReturn("issueKey" + line);
+            when(lightIssue.getStatus()).thenReturn(Issue.STATUS_OPEN);
+            when(lightIssue.getLine()).thenReturn(line);
+
+            Component component = mock(Component.class);
+
+            PostAnalysisIssueVisitor.ComponentIssue componentIssue = mock(PostAnalysisIssueVisitor.ComponentIssue.class);
+            when(componentIssue.getIssue()).thenReturn(lightIssue);
+            when(componentIssue.getComponent()).thenReturn(component);
+            when(componentIssue.getScmPath()).thenReturn(Optional.of("path-to-file"));
+
+            when(analysisDetails.findIssueRevision(componentIssue)).thenReturn(Optional.of("DEF"));
+
+            componentIssues.add(componentIssue);
+        }
+
+        Note note = mock(Note.class);
+        when(note.getBody()).thenReturn("Reported issue\n[View in SonarQube](http://domain.url/sonar/issue?issues=issueKey998&id=" + PROJECT_KEY + ")");
+        when(note.getAuthor()).thenReturn(sonarqubeUser);
+        when(note.isResolvable()).thenReturn(true);
+
+        Discussion existingDiscussion = mock(Discussion.class);
+        when(existingDiscussion.getId()).thenReturn("existingDiscussionId");
+        when(existingDiscussion.getNotes()).thenReturn(Collections.singletonList(note));
+
+        Discussion newDiscussion = mock(Discussion.class);
+        when(newDiscussion.getId()).thenReturn("newDiscussionId");
+
+        when(analysisDetails.getScmReportableIssues()).thenReturn(componentIssues);
+        when(gitlabClient.getMergeRequestDiscussions(anyLong(), anyLong())).thenReturn(Collections.singletonList(existingDiscussion));
+        when(gitlabClient.addMergeRequestDiscussion(anyLong(), anyLong(), any(CommitNote.class))).thenReturn(newDiscussion);
+
+        DecorationResult decorationResult = underTest.decorateQualityGateStatus(analysisDetails, almSettingDto, projectAlmSettingDto);
+
+        Map<String, String> expectedDiscussionIds = new HashMap<>();
+        expectedDiscussionIds.put("issueKey998", "existingDiscussionId");
+        expectedDiscussionIds.put("issueKey999", "newDiscussionId");
+        assertThat(decorationResult.getIssueDiscussionIds()).contains(expectedDiscussionIds);
+    }
+
     @Test
     public void shouldNotAttemptCloseOfDiscussionWithMultipleResolvableNotesFromSonarqubeUserAndAnotherUserWithNoId() throws IOException {
         User otherUser = mock(User.class);
@@ -367,7 +505,7 @@ public class GitlabMergeRequestDecoratorTest {
         verify(gitlabClient).addMergeRequestDiscussionNote(eq(PROJECT_ID), eq(MERGE_REQUEST_IID), discussionIdArgumentCaptor.capture(), noteContentArgumentCaptor.capture());
 
         assertThat(discussionIdArgumentCaptor.getValue()).isEqualTo(discussion.getId());
-        assertThat(noteContentArgumentCaptor.getValue()).isEqualTo(OLD_SONARQUBE_ISSUE_COMMENT);
+        assertThat(noteContentArgumentCaptor.getValue()).isEqualTo(OLD_SONARQUBE_ISSUE_COMMENT);        verify(discussion).getNotes();
     }
 
     @Test
@@ -480,13 +618,7 @@ public class GitlabMergeRequestDecoratorTest {
         when(analysisDetails.getScmReportableIssues()).thenReturn(Collections.singletonList(componentIssue));
         when(gitlabClient.getMergeRequestDiscussions(anyLong(), anyLong())).thenReturn(new ArrayList<>());
 
-        Changeset changeset = mock(Changeset.class);
-        when(changeset.getRevision()).thenReturn("DEF");
-
-        ScmInfo scmInfo = mock(ScmInfo.class);
-        when(scmInfo.hasChangesetForLine(999)).thenReturn(true);
-        when(scmInfo.getChangesetForLine(999)).thenReturn(changeset);
-        when(scmInfoRepository.getScmInfo(component)).thenReturn(Optional.of(scmInfo));
+        when(analysisDetails.findIssueRevision(componentIssue)).thenReturn(Optional.of("DEF"));
 
         when(gitlabClient.addMergeRequestDiscussion(anyLong(), anyLong(), any())).thenThrow(new IOException("dummy"));
 
@@ -505,6 +637,45 @@ public class GitlabMergeRequestDecoratorTest {
                 .isEqualTo(new CommitNote("Issue Summary", BASE_SHA, START_SHA, HEAD_SHA, "path-to-file", "path-to-file", 999));
     }
 
+    @Test
+    public void shouldAttemptAllNewDiscussionsBeforeReportingSubmissionFailure() throws IOException {
+        List<PostAnalysisIssueVisitor.ComponentIssue> componentIssues = new ArrayList<>();
+        for (int line = 997; line < 1000; line++) {
+            PostAnalysisIssueVisitor.LightIssue lightIssue = mock(PostAnalysisIssueVisitor.LightIssue.class);
+            when(lightIssue.key()).thenReturn("issueKey" + line);
+            when(lightIssue.getStatus()).thenReturn(Issue.STATUS_OPEN);
+            when(lightIssue.getLine()).thenReturn(line);
+
+            Component component = mock(Component.class);
+
+            PostAnalysisIssueVisitor.ComponentIssue componentIssue = mock(PostAnalysisIssueVisitor.ComponentIssue.class);
+            when(componentIssue.getIssue()).thenReturn(lightIssue);
+            when(componentIssue.getComponent()).thenReturn(component);
+            when(componentIssue.getScmPath()).thenReturn(Optional.of("path-to-file"));
+
+            when(analysisDetails.findIssueRevision(componentIssue)).thenReturn(Optional.of("DEF"));
+
+            componentIssues.add(componentIssue);
+        }
+
+        when(analysisDetails.getScmReportableIssues()).thenReturn(componentIssues);
+        when(gitlabClient.getMergeRequestDiscussions(anyLong(), anyLong())).thenReturn(new ArrayList<>());
+        when(gitlabClient.addMergeRequestDiscussion(anyLong(), anyLong(), argThat(note -> note instanceof CommitNote && ((CommitNote) note).getNewLine() != 998)))
+                .thenThrow(new IOException("dummy"));
+
+        assertThatThrownBy(() -> underTest.decorateQualityGateStatus(analysisDetails, almSettingDto, projectAlmSettingDto))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("Could not submit commit comment to Gitlab")
+                .satisfies(ex -> assertThat(ex.getSuppressed()).hasSize(1));
+
+        ArgumentCaptor<MergeRequestNote> mergeRequestNoteArgumentCaptor = ArgumentCaptor.forClass(MergeRequestNote.class);
+        verify(gitlabClient, times(3)).addMergeRequestDiscussion(eq(PROJECT_ID), eq(MERGE_REQUEST_IID), mergeRequestNoteArgumentCaptor.capture());
+        assertThat(mergeRequestNoteArgumentCaptor.getAllValues())
+                .allMatch(CommitNote.class::isInstance)
+                .extracting(note -> ((CommitNote) note).getNewLine())
+                .containsExactlyInAnyOrder(997, 998, 999);
+    }
+
     @Test
     public void shouldStartNewDiscussionForNewIssueFromCommitInMergeRequest() throws IOException {
         PostAnalysisIssueVisitor.LightIssue lightIssue = mock(PostAnalysisIssueVisitor.LightIssue.class);
@@ -522,13 +693,7 @@ public class GitlabMergeRequestDecoratorTest {
         when(analysisDetails.getScmReportableIssues()).thenReturn(Collections.singletonList(componentIssue));
         when(gitlabClient.getMergeRequestDiscussions(anyLong(), anyLong())).thenReturn(new ArrayList<>());
 
-        Changeset changeset = mock(Changeset.class);
-        when(changeset.getRevision()).thenReturn("DEF");
-
-        ScmInfo scmInfo = mock(ScmInfo.class);
-        when(scmInfo.hasChangesetForLine(999)).thenReturn(true);
-        when(scmInfo.getChangesetForLine(999)).thenReturn(changeset);
-        when(scmInfoRepository.getScmInfo(component)).thenReturn(Optional.of(scmInfo));
+        when(analysisDetails.findIssueRevision(componentIssue)).thenReturn(Optional.of("DEF"));
 
         underTest.decorateQualityGateStatus(analysisDetails, almSettingDto, projectAlmSettingDto);
 
@@ -570,13 +735,7 @@ public class GitlabMergeRequestDecoratorTest {
         when(gitlabClient.getMergeRequestDiscussions(anyLong(), anyLong())).thenReturn(Collections.singletonList(discussion));
         when(analysisDetails.getScmReportableIssues()).thenReturn(Collections.singletonList(componentIssue));
 
-        Changeset changeset = mock(Changeset.class);
-        when(changeset.getRevision()).thenReturn("DEF");
-
-        ScmInfo scmInfo = mock(ScmInfo.class);
-        when(scmInfo.hasChangesetForLine(999)).thenReturn(true);
-        when(scmInfo.getChangesetForLine(999)).thenReturn(changeset);
-        when(scmInfoRepository.getScmInfo(component)).thenReturn(Optional.of(scmInfo));
+        when(analysisDetails.findIssueRevision(componentIssue)).thenReturn(Optional.of("DEF"));
 
         underTest.decorateQualityGateStatus(analysisDetails, almSettingDto, projectAlmSettingDto);
 
@@ -609,7 +768,7 @@ public class GitlabMergeRequestDecoratorTest {
 
         verify(gitlabClient, never()).resolveMergeRequestDiscussion(anyLong(), anyLong(), any());
         verify(gitlabClient, never()).addMergeRequestDiscussionNote(anyLong(), anyLong(), any(), any());
-        verify(scmInfoRepository, never()).getScmInfo(any());
+        verify(analysisDetails, never()).findIssueRevision(any());
 
         ArgumentCaptor<MergeRequestNote> mergeRequestNoteArgumentCaptor = ArgumentCaptor.forClass(MergeRequestNote.class);
         verify(gitlabClient).addMergeRequestDiscussion(eq(PROJECT_ID), eq(MERGE_REQUEST_IID), mergeRequestNoteArgumentCaptor.capture());
@@ -742,7 +901,7 @@ public class GitlabMergeRequestDecoratorTest {
     public void shouldReturnWebUrlFromMergeRequestIfScannerPropertyNotSet() {
         assertThat(underTest.decorateQualityGateStatus(analysisDetails, almSettingDto, projectAlmSettingDto))
                 .usingRecursiveComparison()
-                .isEqualTo(DecorationResult.builder().withPullRequestUrl(MERGE_REQUEST_WEB_URL).build());
+                .isEqualTo(DecorationResult.builder().withPullRequestUrl(MERGE_REQUEST_WEB_URL).withIssueDiscussionIds(Collections.emptyMap()).build());
     }
 
     @Test
@@ -750,6 +909,6 @@ public class GitlabMergeRequestDecoratorTest {
         when(analysisDetails.getScannerProperty("sonar.pullrequest.gitlab.projectUrl")).thenReturn(Optional.of(MERGE_REQUEST_WEB_URL + "/additional"));
         assertThat(underTest.decorateQualityGateStatus(analysisDetails, almSettingDto, projectAlmSettingDto))
                 .usingRecursiveComparison()
-                .isEqualTo(DecorationResult.builder().withPullRequestUrl(MERGE_REQUEST_WEB_URL + "/additional/merge_requests/" + MERGE_REQUEST_IID).build());
+                .isEqualTo(DecorationResult.builder().withPullRequestUrl(MERGE_REQUEST_WEB_URL + "/additional/merge_requests/" + MERGE_REQUEST_IID).withIssueDiscussionIds(Collections.emptyMap()).build());
     }
 }
@@ -19,6 +19,7 @@
 package com.github.mc1arke.sonarqube.plugin.ce.pullrequest.report;
 
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.AnalysisDetails;
+import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.CollectedIssues;
 import com.github.mc1arke.sonarqube.plugin.ce.pullrequest.PostAnalysisIssueVisitor;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvSource;
@@ -29,12 +30,6 @@ import org.sonar.api.issue.Issue;
 import org.sonar.api.measures.CoreMetrics;
 import org.sonar.api.platform.Server;
 import org.sonar.api.rules.RuleType;
-import org.sonar.ce.task.projectanalysis.component.Component;
-import org.sonar.ce.task.projectanalysis.component.TreeRootHolder;
-import org.sonar.ce.task.projectanalysis.measure.Measure;
-import org.sonar.ce.task.projectanalysis.measure.MeasureRepository;
-import org.sonar.ce.task.projectanalysis.metric.Metric;
-import org.sonar.ce.task.projectanalysis.metric.MetricRepository;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
@@ -47,8 +42,6 @@ import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.ArgumentMatchers.anyString;
-import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
@@ -64,8 +57,6 @@ class ReportGeneratorTest {
         doReturn("5").when(analysisDetails).getPullRequestId();
         doReturn("projectKey").when(analysisDetails).getAnalysisProjectKey();
 
-        TreeRootHolder treeRootHolder = mock(TreeRootHolder.class);
-
         PostAnalysisIssueVisitor.LightIssue issue1 = mock(PostAnalysisIssueVisitor.LightIssue.class);
         doReturn(Issue.STATUS_CLOSED).when(issue1).status();
 
@@ -89,12 +80,12 @@ class ReportGeneratorTest {
         doReturn(Issue.STATUS_OPEN).when(issue6).status();
         doReturn(RuleType.BUG).when(issue6).type();
 
-        doReturn(Stream.of(issue1, issue2, issue3, issue4, issue5, issue6).map(i -> {
+        doReturn(CollectedIssues.of(Stream.of(issue1, issue2, issue3, issue4, issue5, issue6).map(i -> {
             PostAnalysisIssueVisitor.ComponentIssue componentIssue =
                     mock(PostAnalysisIssueVisitor.ComponentIssue.class);
             doReturn(i).when(componentIssue).getIssue();
             return componentIssue;
-        }).collect(Collectors.toList())).when(analysisDetails).getIssues();
+        }).collect(Collectors.toList())).getIssueCountsByType()).when(analysisDetails).getIssueCountsByType();
 
         QualityGate.Condition condition1 = mock(QualityGate.Condition.class);
         doReturn(QualityGate.EvaluationStatus.ERROR).when(condition1).getStatus();
@@ -161,23 +152,13 @@ class ReportGeneratorTest {
         Project project = mock(Project.class);
         doReturn("Project Key").when(project).getKey();
 
-        Component rootComponent = mock(Component.class);
-        doReturn(rootComponent).when(treeRootHolder).getRoot();
-
-        MeasureRepository measureRepository = mock(MeasureRepository.class);
-        if (coverage != null) {
-            doReturn(Optional.of(Measure.newMeasureBuilder().create(Double.parseDouble(coverage), 2, "data")),
-                    Optional.of(Measure.newMeasureBuilder().create(Double.parseDouble(duplications), 2, "data"))).when(measureRepository)
-                    .getRawMeasure(eq(rootComponent), any(Metric.class));
-        }
-
-        MetricRepository metricRepository = mock(MetricRepository.class);
-        doReturn(mock(Metric.class)).when(metricRepository).getByKey(anyString());
+        doReturn(Optional.ofNullable(coverage).map(Double::parseDouble)).when(analysisDetails).findMeasure(CoreMetrics.COVERAGE_KEY);
+        doReturn(Optional.ofNullable(duplications).map(Double::parseDouble)).when(analysisDetails).findMeasure(CoreMetrics.DUPLICATED_LINES_DENSITY_KEY);
 
         Server server = mock(Server.class);
         doReturn("http://localhost:9000").when(server).getPublicRootUrl();
         Configuration configuration = mock(Configuration.class);
-        ReportGenerator underTest = new ReportGenerator(server, configuration, measureRepository, metricRepository, treeRootHolder);
+        ReportGenerator underTest = new ReportGenerator(server, configuration);
 
         AnalysisSummary expected = AnalysisSummary.builder()
                         .withBugCount(2)
@@ -219,14 +200,10 @@ class ReportGeneratorTest {
             "BUG, project/issues?id=project-key&pullRequest=pull-request-id&issues=issue-key&open=issue-key"})
     @ParameterizedTest
     void shouldProduceCorrectAnalysisIssueSummary(RuleType ruleType, String issueUrlPostfix) {
-        MeasureRepository measureRepository = mock(MeasureRepository.class);
-        MetricRepository metricRepository = mock(MetricRepository.class);
-        TreeRootHolder treeRootHolder = mock(TreeRootHolder.class);
-
         Server server = mock(Server.class);
         doReturn("http://target.host:port/path/to/root").when(server).getPublicRootUrl();
         Configuration configuration = mock(Configuration.class);
-        ReportGenerator underTest = new ReportGenerator(server, configuration, measureRepository, metricRepository, treeRootHolder);
+        ReportGenerator underTest = new ReportGenerator(server, configuration);
 
         AnalysisIssueSummary expected = AnalysisIssueSummary.builder()
                 .withEffortInMinutes(101L)